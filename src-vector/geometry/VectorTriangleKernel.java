@@ -0,0 +1,118 @@
+package geometry;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import tools.Epsilon;
+
+/**
+ * {@link TriangleKernel} built on the Vector API. Each lane tests the ray
+ * against a different triangle, so a BVH leaf of up to 8 triangles takes one
+ * or two passes on AVX2 (4 doubles per vector) and one on AVX-512 (8 doubles).
+ * The arithmetic is the same as {@link Triangle#intersect}, operation for
+ * operation, so hits match the scalar test exactly.<br/>
+ * <br/>
+ * Needs Java 16 or newer; compile and run with
+ * <code>--add-modules jdk.incubator.vector</code>. Loaded by name from
+ * {@link TriangleKernel#getVectorized()}.
+ *
+ * @author Don Isaac
+ *
+ */
+public class VectorTriangleKernel extends TriangleKernel {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	/** Determinants smaller than this count as 0, like Epsilon.nearlyEquals */
+	private static final double MIN_DET = Epsilon.E * Float.MIN_NORMAL;
+
+	/**
+	 * @throws UnsupportedOperationException
+	 *             if the CPU can't fit two doubles in a vector, or the vectors
+	 *             are wider than {@link TriangleBlock}s are padded for
+	 */
+	public VectorTriangleKernel() {
+		if (SPECIES.length() < 2 || SPECIES.length() > TriangleBlock.PADDING)
+			throw new UnsupportedOperationException("No usable vector width: " + SPECIES);
+	}
+
+	@Override
+	public int intersect(TriangleBlock b, int first, int count, double ox, double oy, double oz, double dx,
+			double dy, double dz, double tMin, double tMax, boolean anyHit, HitRecord hit) {
+		int end = first + count;
+		int best = -1;
+		double bestU = 0.0, bestV = 0.0;
+		for (int i = first; i < end; i += SPECIES.length()) {
+			// the padding makes full loads safe; lanes past the end are masked
+			VectorMask<Double> valid = SPECIES.indexInRange(i, end);
+			DoubleVector e1x = DoubleVector.fromArray(SPECIES, b.e1x, i);
+			DoubleVector e1y = DoubleVector.fromArray(SPECIES, b.e1y, i);
+			DoubleVector e1z = DoubleVector.fromArray(SPECIES, b.e1z, i);
+			DoubleVector e2x = DoubleVector.fromArray(SPECIES, b.e2x, i);
+			DoubleVector e2y = DoubleVector.fromArray(SPECIES, b.e2y, i);
+			DoubleVector e2z = DoubleVector.fromArray(SPECIES, b.e2z, i);
+
+			// p = d x e2
+			DoubleVector px = e2z.mul(dy).sub(e2y.mul(dz));
+			DoubleVector py = e2x.mul(dz).sub(e2z.mul(dx));
+			DoubleVector pz = e2y.mul(dx).sub(e2x.mul(dy));
+			DoubleVector det = e1x.mul(px).add(e1y.mul(py)).add(e1z.mul(pz));
+			valid = valid.and(det.abs().compare(VectorOperators.GE, MIN_DET));
+			if (!valid.anyTrue())
+				continue;
+			DoubleVector invDet = DoubleVector.broadcast(SPECIES, 1.0).div(det);
+
+			DoubleVector tx = DoubleVector.broadcast(SPECIES, ox).sub(DoubleVector.fromArray(SPECIES, b.ax, i));
+			DoubleVector ty = DoubleVector.broadcast(SPECIES, oy).sub(DoubleVector.fromArray(SPECIES, b.ay, i));
+			DoubleVector tz = DoubleVector.broadcast(SPECIES, oz).sub(DoubleVector.fromArray(SPECIES, b.az, i));
+			DoubleVector u = tx.mul(px).add(ty.mul(py)).add(tz.mul(pz)).mul(invDet);
+			valid = valid.and(u.compare(VectorOperators.GE, 0.0)).and(u.compare(VectorOperators.LE, 1.0));
+			if (!valid.anyTrue())
+				continue;
+
+			// q = t x e1
+			DoubleVector qx = ty.mul(e1z).sub(tz.mul(e1y));
+			DoubleVector qy = tz.mul(e1x).sub(tx.mul(e1z));
+			DoubleVector qz = tx.mul(e1y).sub(ty.mul(e1x));
+			DoubleVector v = qx.mul(dx).add(qy.mul(dy)).add(qz.mul(dz)).mul(invDet);
+			valid = valid.and(v.compare(VectorOperators.GE, 0.0)).and(u.add(v).compare(VectorOperators.LE, 1.0));
+			if (!valid.anyTrue())
+				continue;
+
+			DoubleVector t = e2x.mul(qx).add(e2y.mul(qy)).add(e2z.mul(qz)).mul(invDet);
+			valid = valid.and(t.compare(VectorOperators.GT, tMin)).and(t.compare(VectorOperators.LT, tMax));
+			if (!valid.anyTrue())
+				continue;
+
+			// closest lane; ties go to the earlier triangle, like the scalar loop
+			int lane;
+			if (anyHit) {
+				lane = valid.firstTrue();
+			} else {
+				double closest = t.reduceLanes(VectorOperators.MIN, valid);
+				lane = valid.and(t.compare(VectorOperators.EQ, closest)).firstTrue();
+			}
+			best = i + lane;
+			tMax = t.lane(lane);
+			bestU = u.lane(lane);
+			bestV = v.lane(lane);
+			if (anyHit)
+				break;
+		}
+		if (best >= 0) {
+			hit.t = tMax;
+			hit.u = bestU;
+			hit.v = bestV;
+		}
+		return best;
+	}
+
+	@Override
+	public int getWidth() {
+		return SPECIES.length();
+	}
+
+	@Override
+	public String toString() {
+		return "Vector API triangle kernel (" + SPECIES.length() + " doubles per vector)";
+	}
+}
@@ -0,0 +1,764 @@
+package accel;
+
+import java.util.Arrays;
+
+import geometry.BoundingBox;
+
+/**
+ * A bounding volume hierarchy (BVH) over a set of primitives. The hierarchy is
+ * built once using the surface area heuristic (SAH) and stored as flat arrays
+ * so that traversal does not chase object references.<br/>
+ * <br/>
+ * The BVH knows nothing about the primitives themselves, only their bounding
+ * boxes. Testing a {@link geometry.Ray} against the primitives in a leaf is left
+ * to a {@link LeafVisitor} supplied by the caller. Primitives are reordered
+ * during the build so that every leaf references a contiguous range;
+ * {@link #getPrimitive(int)} maps a position in that range back to the
+ * primitive's original index.
+ *
+ * @author Don Isaac
+ *
+ */
+public class BVH {
+	/** Number of buckets used when evaluating the SAH along an axis */
+	private static final int BIN_COUNT = 12;
+	/** Nodes with this many primitives or less always become leaves */
+	private static final int MIN_LEAF_SIZE = 2;
+	/** Nodes with more primitives than this are always split if possible */
+	private static final int MAX_LEAF_SIZE = 8;
+	/** Hard limit on the depth of the tree */
+	private static final int MAX_DEPTH = 64;
+	/** Relative cost of traversing a node versus intersecting a primitive */
+	private static final double TRAVERSAL_COST = 1.0;
+
+	/**
+	 * Called by {@link BVH#traverse} for every leaf the ray passes through.
+	 *
+	 * @author Don Isaac
+	 *
+	 */
+	public interface LeafVisitor {
+		/**
+		 * Tests a ray against the primitives of a leaf.
+		 *
+		 * @param first
+		 *            Position of the first primitive in the leaf. Use
+		 *            {@link BVH#getPrimitive(int)} to get its index.
+		 * @param count
+		 *            Number of primitives in the leaf
+		 * @param tMax
+		 *            Distance to the closest hit found so far
+		 * @return The new distance to the closest hit (or <b>tMax</b> if no
+		 *         closer hit was found). Returning a value smaller than the
+		 *         traversal's <b>tMin</b> stops the traversal immediately.
+		 */
+		public double visit(int first, int count, double tMax);
+	}
+
+	/**
+	 * Called by {@link BVH#traverse(RayPacket, PacketVisitor)} for every leaf
+	 * at least one ray of the packet passes through.
+	 *
+	 * @author Don Isaac
+	 *
+	 */
+	public interface PacketVisitor {
+		/**
+		 * Tests the rays of a packet against the primitives of a leaf, updating
+		 * {@link RayPacket#tMax} when a ray hits something closer.
+		 *
+		 * @param first
+		 *            Position of the first primitive in the leaf
+		 * @param count
+		 *            Number of primitives in the leaf
+		 * @param firstActive
+		 *            Index of the first ray that reaches the leaf. The rays
+		 *            before it are known to miss the leaf; the rays after it
+		 *            may or may not reach it.
+		 */
+		public void visit(int first, int count, int firstActive);
+	}
+
+	/**
+	 * Called by {@link BVH#query} for every leaf whose bounds contain the
+	 * query point.
+	 *
+	 * @author Don Isaac
+	 *
+	 */
+	public interface PointVisitor {
+		/**
+		 * @param first
+		 *            Position of the first primitive in the leaf. Use
+		 *            {@link BVH#getPrimitive(int)} to get its index.
+		 * @param count
+		 *            Number of primitives in the leaf
+		 */
+		public void visit(int first, int count);
+	}
+
+	/** Bounds of each node; 6 values per node (min xyz, max xyz) */
+	private double[] nodeBounds;
+	/**
+	 * 2 values per node. For leaves: position of the first primitive and the
+	 * primitive count. For interior nodes: index of the left child (the right
+	 * child always follows it) and 0.
+	 */
+	private int[] nodeData;
+	/** Original primitive indices, in leaf order */
+	private int[] primitives;
+	private int nodeCount;
+	private int depth;
+	/** Number of primitives a leaf can test for the price of one */
+	private int leafWidth = 1;
+	private long buildTime;
+
+	/**
+	 * Builds a BVH.
+	 *
+	 * @param bounds
+	 *            The bounding box of every primitive; 6 values per primitive
+	 *            (min x, min y, min z, max x, max y, max z).
+	 */
+	public BVH(double[] bounds) {
+		this(bounds, 1);
+	}
+
+	/**
+	 * Builds a BVH for primitives that are tested several at a time, like
+	 * triangles tested by a {@link geometry.TriangleKernel}. The SAH counts a
+	 * leaf of up to <b>leafWidth</b> primitives as costing the same as a leaf
+	 * of one, so the hierarchy ends up with fuller leaves and fewer nodes.
+	 *
+	 * @param bounds
+	 *            The bounding box of every primitive; 6 values per primitive
+	 *            (min x, min y, min z, max x, max y, max z).
+	 * @param leafWidth
+	 *            Number of primitives that can be tested for the price of one
+	 */
+	public BVH(double[] bounds, int leafWidth) {
+		if (leafWidth < 1)
+			throw new IllegalArgumentException("Leaf width must be at least 1");
+		long start = System.nanoTime();
+		this.leafWidth = leafWidth;
+		int n = bounds.length / 6;
+		this.primitives = new int[n];
+		for (int i = 0; i < n; i++)
+			primitives[i] = i;
+		int maxNodes = Math.max(1, 2 * n - 1);
+		this.nodeBounds = new double[maxNodes * 6];
+		this.nodeData = new int[maxNodes * 2];
+		if (n > 0) {
+			double[] centroids = new double[n * 3];
+			for (int i = 0; i < n; i++) {
+				centroids[i * 3] = (bounds[i * 6] + bounds[i * 6 + 3]) * .5;
+				centroids[i * 3 + 1] = (bounds[i * 6 + 1] + bounds[i * 6 + 4]) * .5;
+				centroids[i * 3 + 2] = (bounds[i * 6 + 2] + bounds[i * 6 + 5]) * .5;
+			}
+			nodeCount = 1;
+			build(0, 0, n, 1, bounds, centroids);
+		}
+		this.buildTime = System.nanoTime() - start;
+	}
+
+	/**
+	 * Wraps a hierarchy that was already built, e.g. one loaded from a file.
+	 * The arrays are used as is, not copied.
+	 *
+	 * @param nodeBounds
+	 *            6 values per node, as returned by {@link #getNodeBounds()}
+	 * @param nodeData
+	 *            2 values per node, as returned by {@link #getNodeData()}
+	 * @param primitives
+	 *            Primitive indices in leaf order, as returned by
+	 *            {@link #getPrimitives()}
+	 * @param depth
+	 *            Number of levels in the hierarchy
+	 */
+	public BVH(double[] nodeBounds, int[] nodeData, int[] primitives, int depth) {
+		this(nodeBounds, nodeData, primitives, depth, 1);
+	}
+
+	/**
+	 * Wraps a hierarchy that was already built for primitives tested several
+	 * at a time.
+	 *
+	 * @param leafWidth
+	 *            The leaf width the hierarchy was built with, as returned by
+	 *            {@link #getLeafWidth()}
+	 * @see #BVH(double[], int[], int[], int)
+	 */
+	public BVH(double[] nodeBounds, int[] nodeData, int[] primitives, int depth, int leafWidth) {
+		if (leafWidth < 1)
+			throw new IllegalArgumentException("Leaf width must be at least 1");
+		this.leafWidth = leafWidth;
+		if (nodeBounds.length % 6 != 0 || nodeData.length != nodeBounds.length / 3)
+			throw new IllegalArgumentException("Node arrays don't describe the same number of nodes");
+		if (primitives.length > 0 && nodeData.length == 0)
+			throw new IllegalArgumentException("A hierarchy with primitives needs at least one node");
+		this.nodeBounds = nodeBounds;
+		this.nodeData = nodeData;
+		this.primitives = primitives;
+		this.nodeCount = nodeData.length / 2;
+		this.depth = depth;
+	}
+
+	/**
+	 * Recursively splits a node using a binned surface area heuristic.
+	 */
+	private void build(int node, int start, int end, int level, double[] bounds, double[] centroids) {
+		depth = Math.max(depth, level);
+		int count = end - start;
+
+		// node bounds and centroid bounds
+		BoundingBox box = new BoundingBox();
+		BoundingBox cBox = new BoundingBox();
+		for (int i = start; i < end; i++) {
+			int p = primitives[i] * 6;
+			box.expand(bounds[p], bounds[p + 1], bounds[p + 2]);
+			box.expand(bounds[p + 3], bounds[p + 4], bounds[p + 5]);
+			int c = primitives[i] * 3;
+			cBox.expand(centroids[c], centroids[c + 1], centroids[c + 2]);
+		}
+		setNodeBounds(node, box);
+
+		if (count <= MIN_LEAF_SIZE || level >= MAX_DEPTH) {
+			makeLeaf(node, start, count);
+			return;
+		}
+
+		// find the cheapest split over all three axes
+		double[] cMin = { cBox.minX, cBox.minY, cBox.minZ };
+		double[] cMax = { cBox.maxX, cBox.maxY, cBox.maxZ };
+		int bestAxis = -1, bestBin = -1;
+		double bestCost = Double.POSITIVE_INFINITY;
+		int[] binCounts = new int[BIN_COUNT];
+		BoundingBox[] binBoxes = new BoundingBox[BIN_COUNT];
+		double[] rightArea = new double[BIN_COUNT];
+		int[] rightCount = new int[BIN_COUNT];
+
+		for (int axis = 0; axis < 3; axis++) {
+			double extent = cMax[axis] - cMin[axis];
+			if (extent <= 0.0)
+				continue;
+			for (int b = 0; b < BIN_COUNT; b++) {
+				binCounts[b] = 0;
+				binBoxes[b] = new BoundingBox();
+			}
+			for (int i = start; i < end; i++) {
+				int b = bin(centroids[primitives[i] * 3 + axis], cMin[axis], extent);
+				int p = primitives[i] * 6;
+				binCounts[b]++;
+				binBoxes[b].expand(bounds[p], bounds[p + 1], bounds[p + 2]);
+				binBoxes[b].expand(bounds[p + 3], bounds[p + 4], bounds[p + 5]);
+			}
+			// sweep from the right to get the area/count right of each split
+			BoundingBox acc = new BoundingBox();
+			int accCount = 0;
+			for (int b = BIN_COUNT - 1; b > 0; b--) {
+				acc.union(binBoxes[b]);
+				accCount += binCounts[b];
+				rightArea[b] = acc.surfaceArea();
+				rightCount[b] = accCount;
+			}
+			// sweep from the left and evaluate the split after bin b
+			acc = new BoundingBox();
+			accCount = 0;
+			for (int b = 0; b < BIN_COUNT - 1; b++) {
+				acc.union(binBoxes[b]);
+				accCount += binCounts[b];
+				if (accCount == 0 || rightCount[b + 1] == 0)
+					continue;
+				double cost = acc.surfaceArea() * leafCost(accCount)
+						+ rightArea[b + 1] * leafCost(rightCount[b + 1]);
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestAxis = axis;
+					bestBin = b;
+				}
+			}
+		}
+
+		double area = box.surfaceArea();
+		double splitCost = area > 0.0 ? TRAVERSAL_COST + bestCost / area : bestCost;
+		int maxLeafSize = Math.max(MAX_LEAF_SIZE, leafWidth);
+		if (bestAxis < 0 || (splitCost >= leafCost(count) && count <= maxLeafSize)) {
+			makeLeaf(node, start, count);
+			return;
+		}
+
+		// partition the primitives around the chosen split
+		double extent = cMax[bestAxis] - cMin[bestAxis];
+		int mid = start;
+		for (int i = start; i < end; i++) {
+			if (bin(centroids[primitives[i] * 3 + bestAxis], cMin[bestAxis], extent) <= bestBin) {
+				int tmp = primitives[i];
+				primitives[i] = primitives[mid];
+				primitives[mid] = tmp;
+				mid++;
+			}
+		}
+		if (mid == start || mid == end)
+			mid = start + count / 2;
+
+		int left = nodeCount;
+		nodeCount += 2;
+		nodeData[node * 2] = left;
+		nodeData[node * 2 + 1] = 0;
+		build(left, start, mid, level + 1, bounds, centroids);
+		build(left + 1, mid, end, level + 1, bounds, centroids);
+	}
+
+	/**
+	 * @return the cost of testing a number of primitives, in units of one
+	 *         primitive test
+	 */
+	private int leafCost(int count) {
+		return (count + leafWidth - 1) / leafWidth;
+	}
+
+	private int bin(double centroid, double min, double extent) {
+		int b = (int) (BIN_COUNT * (centroid - min) / extent);
+		return b < 0 ? 0 : (b >= BIN_COUNT ? BIN_COUNT - 1 : b);
+	}
+
+	private void makeLeaf(int node, int first, int count) {
+		nodeData[node * 2] = first;
+		nodeData[node * 2 + 1] = count;
+	}
+
+	private void setNodeBounds(int node, BoundingBox b) {
+		int i = node * 6;
+		nodeBounds[i] = b.minX;
+		nodeBounds[i + 1] = b.minY;
+		nodeBounds[i + 2] = b.minZ;
+		nodeBounds[i + 3] = b.maxX;
+		nodeBounds[i + 4] = b.maxY;
+		nodeBounds[i + 5] = b.maxZ;
+	}
+
+	/**
+	 * Walks the hierarchy front to back, calling the visitor for every leaf
+	 * whose bounds the ray enters before the closest hit found so far. The
+	 * direction does not need to be normalized; all distances are in units of
+	 * the direction's length.
+	 *
+	 * @param tMin
+	 *            Hits closer than this are ignored
+	 * @param tMax
+	 *            Hits farther than this are ignored
+	 * @param visitor
+	 *            Tests the ray against the primitives in a leaf
+	 * @return The distance to the closest hit, <b>tMax</b> if there was no hit,
+	 *         or the value the visitor returned to stop the traversal.
+	 */
+	public double traverse(double ox, double oy, double oz, double dx, double dy, double dz, double tMin,
+			double tMax, LeafVisitor visitor) {
+		if (nodeCount == 0)
+			return tMax;
+		double ix = 1.0 / dx, iy = 1.0 / dy, iz = 1.0 / dz;
+		if (enter(0, ox, oy, oz, ix, iy, iz, tMin, tMax) == Double.POSITIVE_INFINITY)
+			return tMax;
+
+		TraversalStack stack = STACKS.get();
+		int level = stack.push(depth + 1);
+		int[] nodes = stack.nodes[level];
+		double[] dists = stack.dists[level];
+		try {
+			int sp = 0;
+			int node = 0;
+			while (true) {
+				int count = nodeData[node * 2 + 1];
+				if (count > 0) {
+					tMax = visitor.visit(nodeData[node * 2], count, tMax);
+					if (tMax < tMin)
+						return tMax;
+				} else {
+					int left = nodeData[node * 2];
+					double tl = enter(left, ox, oy, oz, ix, iy, iz, tMin, tMax);
+					double tr = enter(left + 1, ox, oy, oz, ix, iy, iz, tMin, tMax);
+					if (tl != Double.POSITIVE_INFINITY && tr != Double.POSITIVE_INFINITY) {
+						// visit the closer child first, come back to the other later
+						if (tl <= tr) {
+							nodes[sp] = left + 1;
+							dists[sp++] = tr;
+							node = left;
+						} else {
+							nodes[sp] = left;
+							dists[sp++] = tl;
+							node = left + 1;
+						}
+						continue;
+					} else if (tl != Double.POSITIVE_INFINITY) {
+						node = left;
+						continue;
+					} else if (tr != Double.POSITIVE_INFINITY) {
+						node = left + 1;
+						continue;
+					}
+				}
+				// pop the next node that is still in front of the closest hit
+				node = -1;
+				while (sp > 0) {
+					sp--;
+					if (dists[sp] <= tMax) {
+						node = nodes[sp];
+						break;
+					}
+				}
+				if (node < 0)
+					return tMax;
+			}
+		} finally {
+			stack.pop();
+		}
+	}
+
+	/**
+	 * Walks the hierarchy with a whole {@link RayPacket} at once. A node is
+	 * entered if any ray of the packet enters it before that ray's closest hit
+	 * so far, and the search for that ray starts at the first ray that entered
+	 * the node's parent. Coherent packets usually find it on their first try,
+	 * so each node costs about one box test for the whole packet. When that
+	 * ray misses, {@link RayPacket#misses} tries to reject the node for every
+	 * ray at once before the other rays are tested one by one. Children are
+	 * visited closest first, as seen by the first ray that enters them.
+	 *
+	 * @param packet
+	 *            The rays to trace. Their {@link RayPacket#tMax} is read to
+	 *            cull nodes, so visitors should keep it up to date.
+	 * @param visitor
+	 *            Tests the packet against the primitives in a leaf
+	 */
+	public void traverse(RayPacket packet, PacketVisitor visitor) {
+		int n = packet.size();
+		if (nodeCount == 0 || n == 0)
+			return;
+		int active = firstActive(0, packet, 0);
+		if (active == n)
+			return;
+
+		PacketStack stack = PACKET_STACKS.get();
+		stack.ensure(depth + 1);
+		int[] nodes = stack.nodes, actives = stack.actives;
+		int sp = 0;
+		int node = 0;
+		while (true) {
+			int count = nodeData[node * 2 + 1];
+			if (count > 0) {
+				visitor.visit(nodeData[node * 2], count, active);
+			} else {
+				int left = nodeData[node * 2];
+				int al = firstActive(left, packet, active);
+				int ar = firstActive(left + 1, packet, active);
+				if (al < n && ar < n) {
+					int r = Math.min(al, ar);
+					double tl = enter(left, packet.ox[r], packet.oy[r], packet.oz[r], packet.ix[r], packet.iy[r],
+							packet.iz[r], 0.0, packet.tMax[r]);
+					double tr = enter(left + 1, packet.ox[r], packet.oy[r], packet.oz[r], packet.ix[r],
+							packet.iy[r], packet.iz[r], 0.0, packet.tMax[r]);
+					if (tl <= tr) {
+						nodes[sp] = left + 1;
+						actives[sp++] = ar;
+						node = left;
+						active = al;
+					} else {
+						nodes[sp] = left;
+						actives[sp++] = al;
+						node = left + 1;
+						active = ar;
+					}
+					continue;
+				} else if (al < n) {
+					node = left;
+					active = al;
+					continue;
+				} else if (ar < n) {
+					node = left + 1;
+					active = ar;
+					continue;
+				}
+			}
+			// pop the next node that some ray still reaches before its
+			// closest hit
+			node = -1;
+			while (sp > 0) {
+				sp--;
+				active = firstActive(nodes[sp], packet, actives[sp]);
+				if (active < n) {
+					node = nodes[sp];
+					break;
+				}
+			}
+			if (node < 0)
+				return;
+		}
+	}
+
+	/**
+	 * Calls the visitor for every leaf whose bounds contain a point. Only the
+	 * leaf bounds are tested; the visitor decides which of its primitives
+	 * actually contain the point.
+	 */
+	public void query(double x, double y, double z, PointVisitor visitor) {
+		if (nodeCount == 0 || !contains(0, x, y, z))
+			return;
+
+		TraversalStack stack = STACKS.get();
+		int level = stack.push(depth + 1);
+		int[] nodes = stack.nodes[level];
+		try {
+			int sp = 0;
+			int node = 0;
+			while (true) {
+				int count = nodeData[node * 2 + 1];
+				if (count > 0) {
+					visitor.visit(nodeData[node * 2], count);
+				} else {
+					int left = nodeData[node * 2];
+					boolean l = contains(left, x, y, z);
+					boolean r = contains(left + 1, x, y, z);
+					if (l && r) {
+						nodes[sp++] = left + 1;
+						node = left;
+						continue;
+					} else if (l) {
+						node = left;
+						continue;
+					} else if (r) {
+						node = left + 1;
+						continue;
+					}
+				}
+				if (sp == 0)
+					return;
+				node = nodes[--sp];
+			}
+		} finally {
+			stack.pop();
+		}
+	}
+
+	private boolean contains(int node, double x, double y, double z) {
+		int i = node * 6;
+		return x >= nodeBounds[i] && y >= nodeBounds[i + 1] && z >= nodeBounds[i + 2] && x <= nodeBounds[i + 3]
+				&& y <= nodeBounds[i + 4] && z <= nodeBounds[i + 5];
+	}
+
+	/**
+	 * @return the index of the first ray, starting at <b>start</b>, that enters
+	 *         a node before its closest hit, or the packet's size if none do
+	 */
+	private int firstActive(int node, RayPacket packet, int start) {
+		int i = node * 6;
+		double minX = nodeBounds[i], minY = nodeBounds[i + 1], minZ = nodeBounds[i + 2];
+		double maxX = nodeBounds[i + 3], maxY = nodeBounds[i + 4], maxZ = nodeBounds[i + 5];
+		int n = packet.size();
+		for (int r = start; r < n; r++) {
+			// if the first candidate misses, try to reject the whole packet
+			if (r == start + 1 && packet.misses(minX, minY, minZ, maxX, maxY, maxZ))
+				return n;
+			if (BoundingBox.intersects(minX, minY, minZ, maxX, maxY, maxZ, packet.ox[r], packet.oy[r],
+					packet.oz[r], packet.ix[r], packet.iy[r], packet.iz[r], 0.0,
+					packet.tMax[r]) != Double.POSITIVE_INFINITY)
+				return r;
+		}
+		return n;
+	}
+
+	private double enter(int node, double ox, double oy, double oz, double ix, double iy, double iz, double tMin,
+			double tMax) {
+		int i = node * 6;
+		return BoundingBox.intersects(nodeBounds[i], nodeBounds[i + 1], nodeBounds[i + 2], nodeBounds[i + 3],
+				nodeBounds[i + 4], nodeBounds[i + 5], ox, oy, oz, ix, iy, iz, tMin, tMax);
+	}
+
+	/**
+	 * Recomputes the bounds of every node from new primitive bounds without
+	 * changing the structure of the hierarchy. Refitting is much cheaper than
+	 * rebuilding, but the hierarchy gets less efficient the further the
+	 * primitives move from where they were when it was built.
+	 *
+	 * @param bounds
+	 *            The new bounding box of every primitive, in the same layout
+	 *            and order as the array the hierarchy was built from.
+	 */
+	public void refit(double[] bounds) {
+		if (bounds.length != primitives.length * 6)
+			throw new IllegalArgumentException("Refit bounds must match the number of primitives");
+		// children are always stored after their parent, so walking the nodes
+		// backwards visits children first
+		for (int node = nodeCount - 1; node >= 0; node--) {
+			int i = node * 6;
+			int count = nodeData[node * 2 + 1];
+			if (count > 0) {
+				int first = nodeData[node * 2];
+				for (int axis = 0; axis < 3; axis++) {
+					nodeBounds[i + axis] = Double.POSITIVE_INFINITY;
+					nodeBounds[i + 3 + axis] = Double.NEGATIVE_INFINITY;
+				}
+				for (int p = first; p < first + count; p++) {
+					int b = primitives[p] * 6;
+					for (int axis = 0; axis < 3; axis++) {
+						nodeBounds[i + axis] = Math.min(nodeBounds[i + axis], bounds[b + axis]);
+						nodeBounds[i + 3 + axis] = Math.max(nodeBounds[i + 3 + axis], bounds[b + 3 + axis]);
+					}
+				}
+			} else {
+				int l = nodeData[node * 2] * 6;
+				int r = l + 6;
+				for (int axis = 0; axis < 3; axis++) {
+					nodeBounds[i + axis] = Math.min(nodeBounds[l + axis], nodeBounds[r + axis]);
+					nodeBounds[i + 3 + axis] = Math.max(nodeBounds[l + 3 + axis], nodeBounds[r + 3 + axis]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maps a position in leaf order back to the primitive's original index.
+	 *
+	 * @param i
+	 *            A position inside a leaf's range
+	 * @return The index of the primitive in the array the BVH was built from
+	 */
+	public int getPrimitive(int i) {
+		return primitives[i];
+	}
+
+	/**
+	 *
+	 * @return the bounds of every node; 6 values per node (min xyz, max xyz).
+	 *         The array may be longer than needed. Do not modify.
+	 */
+	public double[] getNodeBounds() {
+		return nodeBounds;
+	}
+
+	/**
+	 *
+	 * @return 2 values per node: first primitive and count for leaves, left
+	 *         child and 0 for interior nodes. The array may be longer than
+	 *         needed. Do not modify.
+	 */
+	public int[] getNodeData() {
+		return nodeData;
+	}
+
+	/**
+	 *
+	 * @return the original primitive indices, in leaf order. Do not modify.
+	 */
+	public int[] getPrimitives() {
+		return primitives;
+	}
+
+	/**
+	 *
+	 * @return the number of primitives in the hierarchy
+	 */
+	public int getPrimitiveCount() {
+		return primitives.length;
+	}
+
+	/**
+	 *
+	 * @return the bounds of the whole hierarchy
+	 */
+	public BoundingBox getBounds() {
+		BoundingBox b = new BoundingBox();
+		if (nodeCount > 0) {
+			b.expand(nodeBounds[0], nodeBounds[1], nodeBounds[2]);
+			b.expand(nodeBounds[3], nodeBounds[4], nodeBounds[5]);
+		}
+		return b;
+	}
+
+	/**
+	 *
+	 * @return the time it took to build the hierarchy in nanoseconds
+	 */
+	public long getBuildTime() {
+		return buildTime;
+	}
+
+	/**
+	 *
+	 * @return the number of nodes (interior nodes and leaves) in the hierarchy
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 *
+	 * @return the number of levels in the hierarchy. A BVH that is a single
+	 *         leaf has a depth of 1.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 *
+	 * @return the number of primitives the hierarchy assumed a leaf could test
+	 *         for the price of one; 1 unless it was built for a vector kernel
+	 */
+	public int getLeafWidth() {
+		return leafWidth;
+	}
+
+	@Override
+	public String toString() {
+		return "BVH primitives: " + primitives.length + " nodes: " + nodeCount + " depth: " + depth
+				+ " build time: " + (buildTime / 1000000.0) + "ms";
+	}
+
+	/**
+	 * Per-thread traversal stacks. Traversals can nest (the scene's BVH visits
+	 * a model that traverses its own BVH), so every nesting level gets its own
+	 * pair of arrays. Reusing them keeps traversal allocation-free.
+	 */
+	private static final ThreadLocal<TraversalStack> STACKS = ThreadLocal.withInitial(TraversalStack::new);
+
+	/**
+	 * Per-thread stacks for packet traversal. Packet traversals don't nest, so
+	 * one pair of arrays per thread is enough.
+	 */
+	private static final ThreadLocal<PacketStack> PACKET_STACKS = ThreadLocal.withInitial(PacketStack::new);
+
+	private static class PacketStack {
+		int[] nodes = new int[0];
+		/** First active ray of each node on the stack */
+		int[] actives = new int[0];
+
+		void ensure(int size) {
+			if (nodes.length < size) {
+				nodes = new int[size];
+				actives = new int[size];
+			}
+		}
+	}
+
+	private static class TraversalStack {
+		int[][] nodes = new int[4][];
+		double[][] dists = new double[4][];
+		int level = 0;
+
+		int push(int size) {
+			if (level == nodes.length) {
+				nodes = Arrays.copyOf(nodes, level * 2);
+				dists = Arrays.copyOf(dists, level * 2);
+			}
+			if (nodes[level] == null || nodes[level].length < size) {
+				nodes[level] = new int[size];
+				dists[level] = new double[size];
+			}
+			return level++;
+		}
+
+		void pop() {
+			level--;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package accel;
+
+import java.util.Arrays;
+import java.util.List;
+
+import geometry.Vector3;
+import lighting.Light;
+import lighting.PointLight;
+
+/**
+ * Finds the lights that reach a point. A light reaches a point if its
+ * intensity there is at least a cutoff; {@link PointLight}s fall off with the
+ * square of the distance, so each one only reaches a sphere around it. Those
+ * spheres are put in a {@link BVH}, so finding the lights near a point costs
+ * about the log of the number of lights instead of testing all of them.
+ * Lights that don't fall off are kept in a separate list and checked at every
+ * point.<br/>
+ * <br/>
+ * Queries return light indices in the order of the list the tree was built
+ * from, so shading with the lights found adds them up in the same order as
+ * looping over every light. With a cutoff of 0 every light reaches
+ * everywhere and no hierarchy is built.<br/>
+ * <br/>
+ * A light that stopped dead at the edge of its range would leave a hard edge
+ * in the picture, so lights fade out towards it; see {@link #getFade}. A light
+ * is culled only where it has faded out completely, which makes the culling
+ * itself invisible.<br/>
+ * <br/>
+ * The tree is built from where the lights are when it is created. Moving a
+ * light needs a new tree; {@link scene.Scene#update()} takes care of that.
+ *
+ * @author Don Isaac
+ *
+ */
+public class LightTree {
+	/**
+	 * Relative amount the bounds of a light's sphere are grown by, so that
+	 * rounding never leaves out a point the light reaches. The exact test is
+	 * done on the light itself.
+	 */
+	private static final double BOUNDS_SLACK = 1e-9;
+
+	private final Light[] lights;
+	private final double cutoff;
+	/** Lights inside the BVH. Primitive <i>i</i> of the BVH is bounded[i]. */
+	private final int[] bounded;
+	/** Lights that don't fall off with distance */
+	private final int[] unbounded;
+	private final BVH bvh;
+
+	/**
+	 * Builds the tree.
+	 *
+	 * @param lights
+	 *            The lights to search
+	 * @param cutoff
+	 *            Lights are left out where their intensity is below this. 0
+	 *            keeps every light everywhere.
+	 */
+	public LightTree(List<Light> lights, double cutoff) {
+		this.lights = lights.toArray(new Light[lights.size()]);
+		this.cutoff = cutoff;
+		int[] inside = new int[this.lights.length], outside = new int[this.lights.length];
+		int nIn = 0, nOut = 0;
+		double[] bounds = new double[this.lights.length * 6];
+		for (int i = 0; i < this.lights.length; i++) {
+			double range = getRange(this.lights[i], cutoff);
+			if (range == Double.POSITIVE_INFINITY) {
+				outside[nOut++] = i;
+				continue;
+			}
+			Vector3 p = this.lights[i].getPos();
+			double r = range * (1 + BOUNDS_SLACK);
+			int b = nIn * 6;
+			bounds[b] = p.x - r;
+			bounds[b + 1] = p.y - r;
+			bounds[b + 2] = p.z - r;
+			bounds[b + 3] = p.x + r;
+			bounds[b + 4] = p.y + r;
+			bounds[b + 5] = p.z + r;
+			inside[nIn++] = i;
+		}
+		this.bounded = Arrays.copyOf(inside, nIn);
+		this.unbounded = Arrays.copyOf(outside, nOut);
+		this.bvh = nIn > 0 ? new BVH(Arrays.copyOf(bounds, nIn * 6)) : null;
+	}
+
+	/**
+	 * Gets how far a light reaches before its intensity drops below a cutoff.
+	 * Only {@link PointLight}s are known to fall off with distance; every
+	 * other light is assumed to reach everywhere.
+	 *
+	 * @return the light's range, or {@link Double#POSITIVE_INFINITY}
+	 */
+	public static double getRange(Light l, double cutoff) {
+		if (cutoff <= 0 || !(l instanceof PointLight))
+			return Double.POSITIVE_INFINITY;
+		return Math.sqrt(Math.max(0, l.getInitialIntensity()) / cutoff);
+	}
+
+	/**
+	 * Finds the lights that reach a point.
+	 *
+	 * @param p
+	 *            The point being shaded
+	 * @param out
+	 *            Receives the indices of the lights found, in ascending
+	 *            order. Needs room for {@link #size()} indices.
+	 * @return the number of lights found
+	 */
+	public int query(Vector3 p, int[] out) {
+		if (cutoff <= 0) {
+			for (int i = 0; i < lights.length; i++)
+				out[i] = i;
+			return lights.length;
+		}
+		int n = 0;
+		for (int i : unbounded) {
+			if (reaches(i, p))
+				out[n++] = i;
+		}
+		if (bvh != null) {
+			Query q = QUERIES.get();
+			q.tree = this;
+			q.p = p;
+			q.out = out;
+			q.n = n;
+			bvh.query(p.x, p.y, p.z, q);
+			n = q.n;
+			q.p = null;
+			q.out = null;
+			q.tree = null;
+			// leaves come out in tree order, not scene order
+			Arrays.sort(out, 0, n);
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the fraction of a light's color that reaches a point. With
+	 * <i>x</i> the cutoff over the light's intensity at the point, which grows
+	 * with the square of the distance, the fraction is
+	 * <code>(1 - x<sup>2</sup>)<sup>2</sup></code>: almost 1 near the light,
+	 * and falling smoothly to 0 at the edge of its range. Lights that don't
+	 * fall off with distance, and every light of a tree without a cutoff,
+	 * always give 1.
+	 *
+	 * @param i
+	 *            The index of a light returned by {@link #query}
+	 * @param p
+	 *            The point being shaded
+	 * @return the fraction, from 0 to 1
+	 */
+	public double getFade(int i, Vector3 p) {
+		if (cutoff <= 0 || !(lights[i] instanceof PointLight))
+			return 1;
+		double x = cutoff / lights[i].getIntensityAt(p);
+		if (x >= 1)
+			return 0;
+		double f = 1 - x * x;
+		return f * f;
+	}
+
+	private boolean reaches(int i, Vector3 p) {
+		return lights[i].getIntensityAt(p) >= cutoff;
+	}
+
+	/**
+	 * Collects the lights of the leaves a query point falls in. One per
+	 * thread so queries don't allocate.
+	 */
+	private static class Query implements BVH.PointVisitor {
+		LightTree tree;
+		Vector3 p;
+		int[] out;
+		int n;
+
+		@Override
+		public void visit(int first, int count) {
+			for (int j = first; j < first + count; j++) {
+				int i = tree.bounded[tree.bvh.getPrimitive(j)];
+				if (tree.reaches(i, p))
+					out[n++] = i;
+			}
+		}
+	}
+
+	private static final ThreadLocal<Query> QUERIES = new ThreadLocal<Query>() {
+		@Override
+		protected Query initialValue() {
+			return new Query();
+		}
+	};
+
+	/**
+	 *
+	 * @return the light at an index returned by {@link #query}
+	 */
+	public Light getLight(int i) {
+		return lights[i];
+	}
+
+	/**
+	 *
+	 * @return the number of lights in the tree
+	 */
+	public int size() {
+		return lights.length;
+	}
+
+	/**
+	 *
+	 * @return the cutoff the tree was built with
+	 */
+	public double getCutoff() {
+		return cutoff;
+	}
+
+	/**
+	 *
+	 * @return <code>true</code> if some points are out of reach of some lights
+	 */
+	public boolean isCulling() {
+		return cutoff > 0;
+	}
+}
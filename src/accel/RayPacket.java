@@ -0,0 +1,215 @@
+package accel;
+
+import geometry.HitRecord;
+import geometry.Ray;
+import geometry.Vector3;
+import model.IModel;
+
+/**
+ * A bundle of rays that are traced through a {@link SceneBVH} together. Rays
+ * that start close together and point in similar directions (like the primary
+ * rays of a block of pixels) pass through mostly the same nodes, so the
+ * packet is culled against each node once instead of once per ray.<br/>
+ * <br/>
+ * The rays are stored as a structure of arrays: origins, reciprocal
+ * directions and closest hit distances each get their own array, so node
+ * tests run over plain <code>double[]</code>s. The {@link Ray}s themselves are
+ * kept as well, for testing objects and for shading. The packet also keeps the
+ * range of its rays' origins and directions, so that a box that none of the
+ * rays can hit is rejected with a single test. After a trace, the
+ * closest hit of ray <i>i</i> is in {@link #models}, {@link #hits} and
+ * {@link #tMax} at index <i>i</i>; the hit point and normal are left to
+ * {@link IModel#getSurface}.
+ *
+ * @author Don Isaac
+ *
+ */
+public class RayPacket {
+	/** Hits closer than this to a ray's origin are ignored */
+	public final double tMin;
+	public final Ray[] rays;
+	public final double[] ox, oy, oz;
+	/** Reciprocals of the rays' directions */
+	public final double[] ix, iy, iz;
+	/**
+	 * Distance to each ray's closest hit so far, or {@link Double#MAX_VALUE}
+	 * if it hasn't hit anything
+	 */
+	public final double[] tMax;
+	/** The object each ray hit, or <code>null</code> */
+	public final IModel[] models;
+	/** Where each ray hit its object. Only meaningful if the ray hit something. */
+	public final HitRecord[] hits;
+	private int size;
+	/**
+	 * Ranges of the rays' origins and reciprocal directions, for culling a
+	 * whole packet with one test
+	 */
+	private double oxMin, oxMax, oyMin, oyMax, ozMin, ozMax;
+	private double ixMin, ixMax, iyMin, iyMax, izMin, izMax;
+
+	/**
+	 * Creates an empty packet.
+	 *
+	 * @param capacity
+	 *            The maximum number of rays in the packet
+	 * @param tMin
+	 *            Hits closer than this to a ray's origin are ignored
+	 */
+	public RayPacket(int capacity, double tMin) {
+		this.tMin = tMin;
+		this.rays = new Ray[capacity];
+		this.ox = new double[capacity];
+		this.oy = new double[capacity];
+		this.oz = new double[capacity];
+		this.ix = new double[capacity];
+		this.iy = new double[capacity];
+		this.iz = new double[capacity];
+		this.tMax = new double[capacity];
+		this.models = new IModel[capacity];
+		this.hits = new HitRecord[capacity];
+		for (int i = 0; i < capacity; i++)
+			hits[i] = new HitRecord();
+	}
+
+	/**
+	 * Adds a ray to the packet.
+	 *
+	 * @param r
+	 *            The {@link Ray} to add
+	 * @return the ray's index in the packet
+	 * @throws IllegalStateException
+	 *             if the packet is full
+	 */
+	public int add(Ray r) {
+		if (size == rays.length)
+			throw new IllegalStateException("Packet is full (" + size + " rays)");
+		Vector3 o = r.getOrigin();
+		Vector3 d = r.getDir();
+		int i = size++;
+		rays[i] = r;
+		ox[i] = o.x;
+		oy[i] = o.y;
+		oz[i] = o.z;
+		ix[i] = 1.0 / d.x;
+		iy[i] = 1.0 / d.y;
+		iz[i] = 1.0 / d.z;
+		tMax[i] = Double.MAX_VALUE;
+		models[i] = null;
+		if (i == 0) {
+			oxMin = oxMax = ox[i];
+			oyMin = oyMax = oy[i];
+			ozMin = ozMax = oz[i];
+			ixMin = ixMax = ix[i];
+			iyMin = iyMax = iy[i];
+			izMin = izMax = iz[i];
+		} else {
+			oxMin = Math.min(oxMin, ox[i]);
+			oxMax = Math.max(oxMax, ox[i]);
+			oyMin = Math.min(oyMin, oy[i]);
+			oyMax = Math.max(oyMax, oy[i]);
+			ozMin = Math.min(ozMin, oz[i]);
+			ozMax = Math.max(ozMax, oz[i]);
+			ixMin = Math.min(ixMin, ix[i]);
+			ixMax = Math.max(ixMax, ix[i]);
+			iyMin = Math.min(iyMin, iy[i]);
+			iyMax = Math.max(iyMax, iy[i]);
+			izMin = Math.min(izMin, iz[i]);
+			izMax = Math.max(izMax, iz[i]);
+		}
+		return i;
+	}
+
+	/**
+	 * Checks if every ray in the packet misses a box, using interval
+	 * arithmetic over the ranges of the rays' origins and directions. The test
+	 * is conservative: <code>false</code> only means that some ray might hit
+	 * the box. Axes along which the rays point in different directions can't
+	 * be bounded and are left out of the test.
+	 *
+	 * @return <code>true</code> if no ray of the packet can hit the box in
+	 *         front of its origin
+	 */
+	public boolean misses(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+		double near = 0.0, far = Double.POSITIVE_INFINITY;
+		if (ixMin > 0.0 && ixMax < Double.POSITIVE_INFINITY) {
+			near = Math.max(near, low(minX - oxMax, minX - oxMin, ixMin, ixMax));
+			far = Math.min(far, high(maxX - oxMax, maxX - oxMin, ixMin, ixMax));
+		} else if (ixMax < 0.0 && ixMin > Double.NEGATIVE_INFINITY) {
+			near = Math.max(near, low(maxX - oxMax, maxX - oxMin, ixMin, ixMax));
+			far = Math.min(far, high(minX - oxMax, minX - oxMin, ixMin, ixMax));
+		}
+		if (iyMin > 0.0 && iyMax < Double.POSITIVE_INFINITY) {
+			near = Math.max(near, low(minY - oyMax, minY - oyMin, iyMin, iyMax));
+			far = Math.min(far, high(maxY - oyMax, maxY - oyMin, iyMin, iyMax));
+		} else if (iyMax < 0.0 && iyMin > Double.NEGATIVE_INFINITY) {
+			near = Math.max(near, low(maxY - oyMax, maxY - oyMin, iyMin, iyMax));
+			far = Math.min(far, high(minY - oyMax, minY - oyMin, iyMin, iyMax));
+		}
+		if (izMin > 0.0 && izMax < Double.POSITIVE_INFINITY) {
+			near = Math.max(near, low(minZ - ozMax, minZ - ozMin, izMin, izMax));
+			far = Math.min(far, high(maxZ - ozMax, maxZ - ozMin, izMin, izMax));
+		} else if (izMax < 0.0 && izMin > Double.NEGATIVE_INFINITY) {
+			near = Math.max(near, low(maxZ - ozMax, maxZ - ozMin, izMin, izMax));
+			far = Math.min(far, high(minZ - ozMax, minZ - ozMin, izMin, izMax));
+		}
+		return near > far;
+	}
+
+	/** @return the lowest product of a number in [a0, a1] and one in [b0, b1] */
+	private static double low(double a0, double a1, double b0, double b1) {
+		return Math.min(Math.min(a0 * b0, a0 * b1), Math.min(a1 * b0, a1 * b1));
+	}
+
+	/** @return the highest product of a number in [a0, a1] and one in [b0, b1] */
+	private static double high(double a0, double a1, double b0, double b1) {
+		return Math.max(Math.max(a0 * b0, a0 * b1), Math.max(a1 * b0, a1 * b1));
+	}
+
+	/**
+	 * Tests a ray of the packet against an object, keeping the hit if it is
+	 * the closest one so far. Objects farther than the closest hit give up
+	 * early.
+	 *
+	 * @param i
+	 *            The ray's index
+	 * @param model
+	 *            The object to test
+	 */
+	public void test(int i, IModel model) {
+		double t = model.intersect(rays[i], tMin, tMax[i], hits[i]);
+		if (t < tMax[i]) {
+			tMax[i] = t;
+			models[i] = model;
+		}
+	}
+
+	/**
+	 * Removes every ray from the packet.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			rays[i] = null;
+			models[i] = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 *
+	 * @return the number of rays in the packet
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @param i
+	 *            A ray's index
+	 * @return true if the ray hit something
+	 */
+	public boolean isHit(int i) {
+		return models[i] != null;
+	}
+}
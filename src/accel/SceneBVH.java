@@ -0,0 +1,285 @@
+package accel;
+
+import java.util.List;
+
+import geometry.BoundingBox;
+import geometry.Ray;
+import geometry.Vector3;
+import model.IModel;
+
+/**
+ * Top level acceleration structure over the objects in a {@link scene.Scene}.
+ * This is the first of two levels: the hierarchy only knows about the world
+ * space bounds of each {@link IModel}, and models with their own acceleration
+ * structure (like {@link model.ModelInstance}s) use it once a ray reaches
+ * them.<br/>
+ * <br/>
+ * Models without bounds (like planes) can't be put in a hierarchy, so they are
+ * kept in a separate list that every ray checks.
+ *
+ * @author Don Isaac
+ *
+ */
+public class SceneBVH {
+
+	/**
+	 * Called by {@link SceneBVH#traverse} for every object a ray might hit.
+	 *
+	 * @author Don Isaac
+	 *
+	 */
+	public interface ObjectVisitor {
+		/**
+		 * Tests a ray against an object.
+		 *
+		 * @param model
+		 *            The object to test
+		 * @param tMax
+		 *            Distance to the closest hit found so far
+		 * @return The new distance to the closest hit, or <b>tMax</b> if the
+		 *         object was not hit or was farther away. Returning a negative
+		 *         value stops the traversal.
+		 */
+		public double visit(IModel model, double tMax);
+	}
+
+	/** Objects the BVH was built from, in the same order as the scene */
+	private IModel[] objects;
+	/** Objects inside the BVH. Primitive <i>i</i> of the BVH is bounded[i]. */
+	private IModel[] bounded;
+	/** Objects that can't be bounded */
+	private IModel[] unbounded;
+	private double[] bounds;
+	private BVH bvh;
+
+	/**
+	 * Builds the acceleration structure.
+	 *
+	 * @param objects
+	 *            The objects in the scene
+	 */
+	public SceneBVH(List<IModel> objects) {
+		build(objects);
+	}
+
+	private void build(List<IModel> objects) {
+		this.objects = objects.toArray(new IModel[objects.size()]);
+		int boundedCount = 0;
+		BoundingBox[] boxes = new BoundingBox[this.objects.length];
+		for (int i = 0; i < this.objects.length; i++) {
+			boxes[i] = this.objects[i].getBounds();
+			if (boxes[i] != null)
+				boundedCount++;
+		}
+		this.bounded = new IModel[boundedCount];
+		this.unbounded = new IModel[this.objects.length - boundedCount];
+		this.bounds = new double[boundedCount * 6];
+		int b = 0, u = 0;
+		for (int i = 0; i < this.objects.length; i++) {
+			if (boxes[i] == null) {
+				unbounded[u++] = this.objects[i];
+			} else {
+				setBounds(b, boxes[i]);
+				bounded[b++] = this.objects[i];
+			}
+		}
+		this.bvh = new BVH(bounds);
+	}
+
+	private void setBounds(int i, BoundingBox box) {
+		bounds[i * 6] = box.minX;
+		bounds[i * 6 + 1] = box.minY;
+		bounds[i * 6 + 2] = box.minZ;
+		bounds[i * 6 + 3] = box.maxX;
+		bounds[i * 6 + 4] = box.maxY;
+		bounds[i * 6 + 5] = box.maxZ;
+	}
+
+	/**
+	 * Brings the acceleration structure up to date with the scene. If objects
+	 * were added or removed, the hierarchy is rebuilt. If objects only moved,
+	 * it is refit to their new bounds.
+	 *
+	 * @param objects
+	 *            The objects currently in the scene
+	 */
+	public void update(List<IModel> objects) {
+		if (!containsSameObjects(objects)) {
+			build(objects);
+			return;
+		}
+		boolean moved = false;
+		for (int i = 0; i < bounded.length; i++) {
+			BoundingBox box = bounded[i].getBounds();
+			if (box == null) {
+				// an object became unbounded; it needs to change lists
+				build(objects);
+				return;
+			}
+			int o = i * 6;
+			if (box.minX != bounds[o] || box.minY != bounds[o + 1] || box.minZ != bounds[o + 2]
+					|| box.maxX != bounds[o + 3] || box.maxY != bounds[o + 4] || box.maxZ != bounds[o + 5]) {
+				setBounds(i, box);
+				moved = true;
+			}
+		}
+		if (moved)
+			bvh.refit(bounds);
+	}
+
+	private boolean containsSameObjects(List<IModel> objects) {
+		if (objects.size() != this.objects.length)
+			return false;
+		for (int i = 0; i < this.objects.length; i++) {
+			if (objects.get(i) != this.objects[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Visits every object the ray might hit. Unbounded objects are always
+	 * visited first; bounded objects are visited roughly front to back, and
+	 * objects that start beyond the closest hit found so far are skipped.
+	 *
+	 * @param r
+	 *            The {@link Ray} to cast
+	 * @param tMax
+	 *            Objects farther than this along the ray are skipped
+	 * @param visitor
+	 *            Tests the ray against each object
+	 * @return The distance to the closest hit reported by the visitor, or
+	 *         <b>tMax</b> if there was none.
+	 */
+	public double traverse(Ray r, double tMax, ObjectVisitor visitor) {
+		for (IModel model : unbounded) {
+			tMax = visitor.visit(model, tMax);
+			if (tMax < 0.0)
+				return tMax;
+		}
+		Vector3 o = r.getOrigin();
+		Vector3 d = r.getDir();
+		return bvh.traverse(o.x, o.y, o.z, d.x, d.y, d.z, 0.0, tMax, (first, count, max) -> {
+			for (int i = first; i < first + count; i++) {
+				max = visitor.visit(bounded[bvh.getPrimitive(i)], max);
+				if (max < 0.0)
+					return max;
+			}
+			return max;
+		});
+	}
+
+	/**
+	 * Finds the closest hit of every ray in a {@link RayPacket}. The packet
+	 * walks the hierarchy together (see
+	 * {@link BVH#traverse(RayPacket, BVH.PacketVisitor)}); in each leaf, every
+	 * ray that might reach it is checked against each object's bounds before
+	 * the object itself is tested. The results are left in the packet.
+	 *
+	 * @param packet
+	 *            The rays to cast
+	 */
+	public void intersect(RayPacket packet) {
+		int n = packet.size();
+		for (IModel model : unbounded) {
+			for (int r = 0; r < n; r++)
+				packet.test(r, model);
+		}
+		bvh.traverse(packet, (first, count, firstActive) -> {
+			for (int i = first; i < first + count; i++) {
+				int prim = bvh.getPrimitive(i);
+				int o = prim * 6;
+				for (int r = firstActive; r < n; r++) {
+					if (BoundingBox.intersects(bounds[o], bounds[o + 1], bounds[o + 2], bounds[o + 3],
+							bounds[o + 4], bounds[o + 5], packet.ox[r], packet.oy[r], packet.oz[r], packet.ix[r],
+							packet.iy[r], packet.iz[r], 0.0, packet.tMax[r]) != Double.POSITIVE_INFINITY)
+						packet.test(r, bounded[prim]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Checks if anything blocks a {@link Ray} between two distances along it.
+	 * Unlike {@link #traverse}, the search stops at the first object that
+	 * blocks the ray, no matter how far away it is, and nothing is allocated.
+	 * Used for shadow rays, where all that matters is whether the light is
+	 * visible.
+	 * 
+	 * @param r
+	 *            The {@link Ray} to cast
+	 * @param tMin
+	 *            Hits closer than this along the ray are ignored
+	 * @param tMax
+	 *            Hits farther than this along the ray are ignored (e.g. the
+	 *            distance to a light)
+	 * @return <code>true</code> if any object is hit between <b>tMin</b> and
+	 *         <b>tMax</b>
+	 */
+	public boolean occluded(Ray r, double tMin, double tMax) {
+		for (IModel model : unbounded) {
+			if (model.occludes(r, tMin, tMax))
+				return true;
+		}
+		OcclusionVisitor visitor = OCCLUSION_VISITOR.get();
+		visitor.begin(this, r, tMin);
+		Vector3 o = r.getOrigin();
+		Vector3 d = r.getDir();
+		bvh.traverse(o.x, o.y, o.z, d.x, d.y, d.z, tMin, tMax, visitor);
+		return visitor.end();
+	}
+
+	/** Each thread reuses a single visitor so occlusion tests don't allocate */
+	private static final ThreadLocal<OcclusionVisitor> OCCLUSION_VISITOR = ThreadLocal
+			.withInitial(OcclusionVisitor::new);
+
+	/**
+	 * Tests the objects in a leaf for occlusion, stopping the traversal at the
+	 * first one that blocks the ray.
+	 */
+	private static class OcclusionVisitor implements BVH.LeafVisitor {
+		private SceneBVH scene;
+		private Ray r;
+		private double tMin;
+		private boolean occluded;
+
+		private void begin(SceneBVH scene, Ray r, double tMin) {
+			this.scene = scene;
+			this.r = r;
+			this.tMin = tMin;
+			this.occluded = false;
+		}
+
+		private boolean end() {
+			this.scene = null;
+			this.r = null;
+			return occluded;
+		}
+
+		public double visit(int first, int count, double tMax) {
+			for (int i = first; i < first + count; i++) {
+				if (scene.bounded[scene.bvh.getPrimitive(i)].occludes(r, tMin, tMax)) {
+					occluded = true;
+					return Double.NEGATIVE_INFINITY;
+				}
+			}
+			return tMax;
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of objects the structure was built from
+	 */
+	public int size() {
+		return objects.length;
+	}
+
+	/**
+	 *
+	 * @return the hierarchy over the bounded objects
+	 */
+	public BVH getBVH() {
+		return bvh;
+	}
+}
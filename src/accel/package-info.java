@@ -0,0 +1,7 @@
+/**
+ * This package contains acceleration structures used to speed up raycasts.
+ * Acceleration structures cull geometry that a ray cannot possibly hit so that
+ * the cost of a raycast grows with the logarithm of the amount of geometry
+ * instead of linearly.
+ */
+package accel;
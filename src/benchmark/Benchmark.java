@@ -0,0 +1,177 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * A single benchmark: a named piece of work that is run repeatedly, first to
+ * let the JIT warm up and then to measure it. Each run reports how many
+ * operations (rays, triangles, frames...) it performed, so results are given
+ * as operations per second instead of time per run.<br/>
+ * <br/>
+ * Allocation is measured with the JVM's per-thread allocation counter, so it
+ * only includes what the benchmarking thread allocates. Work handed to other
+ * threads (like the workers of {@link render.Camera#takePicture}) is timed,
+ * but its allocations are not counted.
+ *
+ * @author Don Isaac
+ *
+ */
+public class Benchmark {
+
+	/**
+	 * The work being measured.
+	 *
+	 * @author Don Isaac
+	 *
+	 */
+	public interface Workload {
+		/**
+		 * Does one iteration of work.
+		 *
+		 * @return the number of operations performed
+		 * @throws Exception
+		 *             if the work fails. The benchmark is aborted.
+		 */
+		public long run() throws Exception;
+	}
+
+	/**
+	 * Measurements from a {@link Benchmark}.
+	 *
+	 * @author Don Isaac
+	 *
+	 */
+	public static class Result {
+		public final String name, unit;
+		/** Mean and standard deviation of operations per second */
+		public final double opsPerSecond, error;
+		/** Bytes allocated per operation, or NaN if it couldn't be measured */
+		public final double bytesPerOp;
+
+		private Result(String name, String unit, double opsPerSecond, double error, double bytesPerOp) {
+			this.name = name;
+			this.unit = unit;
+			this.opsPerSecond = opsPerSecond;
+			this.error = error;
+			this.bytesPerOp = bytesPerOp;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-40s %14.1f +- %-12.1f %-10s %s", name, opsPerSecond, error,
+					unit + "/s", Double.isNaN(bytesPerOp) ? "n/a" : String.format(Locale.ROOT, "%.1f B/op",
+							bytesPerOp));
+		}
+	}
+
+	private final String name, unit;
+	private final Workload workload;
+	/** Frees what the workload holds between runs, or null */
+	private final AutoCloseable teardown;
+
+	/**
+	 * Creates a benchmark that holds nothing between runs.
+	 *
+	 * @param name
+	 *            Name of the benchmark
+	 * @param unit
+	 *            What an operation is, e.g. "rays"
+	 * @param workload
+	 *            The work to measure
+	 */
+	public Benchmark(String name, String unit, Workload workload) {
+		this(name, unit, workload, null);
+	}
+
+	/**
+	 * Full constructor.
+	 *
+	 * @param name
+	 *            Name of the benchmark
+	 * @param unit
+	 *            What an operation is, e.g. "rays"
+	 * @param workload
+	 *            The work to measure
+	 * @param teardown
+	 *            Called once the benchmark is done, even if it failed, to
+	 *            free what the workload kept between runs (e.g. a
+	 *            {@link render.Camera}'s workers)
+	 */
+	public Benchmark(String name, String unit, Workload workload, AutoCloseable teardown) {
+		this.name = name;
+		this.unit = unit;
+		this.workload = workload;
+		this.teardown = teardown;
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param warmups
+	 *            Number of iterations to run before measuring
+	 * @param iterations
+	 *            Number of iterations to measure
+	 * @return the measurements
+	 * @throws Exception
+	 *             if the workload fails
+	 */
+	public Result measure(int warmups, int iterations) throws Exception {
+		try {
+			return run(warmups, iterations);
+		} finally {
+			if (teardown != null)
+				teardown.close();
+		}
+	}
+
+	private Result run(int warmups, int iterations) throws Exception {
+		for (int i = 0; i < warmups; i++)
+			workload.run();
+
+		double[] rates = new double[iterations];
+		long ops = 0, bytes = 0;
+		boolean measuredBytes = true;
+		for (int i = 0; i < iterations; i++) {
+			long before = allocatedBytes();
+			long start = System.nanoTime();
+			long n = workload.run();
+			long elapsed = System.nanoTime() - start;
+			long after = allocatedBytes();
+			rates[i] = n / (Math.max(elapsed, 1) / 1e9);
+			ops += n;
+			if (before < 0 || after < 0)
+				measuredBytes = false;
+			else
+				bytes += after - before;
+		}
+
+		double mean = 0.0;
+		for (double r : rates)
+			mean += r;
+		mean /= iterations;
+		double variance = 0.0;
+		for (double r : rates)
+			variance += (r - mean) * (r - mean);
+		double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0.0;
+		return new Result(name, unit, mean, error, measuredBytes && ops > 0 ? (double) bytes / ops : Double.NaN);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the number of bytes the current thread has allocated, if the JVM
+	 * supports it.
+	 *
+	 * @return the number of bytes, or -1 if it's unknown
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+}
@@ -0,0 +1,424 @@
+package benchmark;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import accel.RayPacket;
+import geometry.Ray;
+import geometry.Transform;
+import geometry.Vector3;
+import lighting.PointLight;
+import model.IModel;
+import model.MeshCache;
+import model.ModelInstance;
+import model.ModelLoader;
+import model.ObjParser;
+import model.PlaneModel;
+import model.SphereModel;
+import model.TriangleModel;
+import render.Camera;
+import render.ExecutionMode;
+import render.GBuffer;
+import render.ImageData;
+import render.strategies.WhittedStrategy;
+import scene.Scene;
+import scene.SceneLibrary;
+import tools.VirtualThreads;
+
+/**
+ * Runs the engine's benchmarks and prints a table of the results. Covers
+ * single ray-primitive tests, closest hit raycasts (one at a time and in
+ * packets) and shadow rays against scenes of increasing size, .obj loading and full frames, with and without anti-aliasing.<br/>
+ * <br/>
+ * <code>load.*</code> parses the .obj file and builds its hierarchy every
+ * time; <code>load.cache.*</code> loads the same model from a
+ * {@link MeshCache}.<br/>
+ * <br/>
+ * Usage: <code>java benchmark.Benchmarks [-w warmups] [-i iterations]
+ * [filter...]</code><br/>
+ * Only benchmarks whose names contain one of the filters are run. .obj files
+ * are looked up in the working directory; benchmarks for missing files are
+ * skipped.
+ *
+ * @author Don Isaac
+ *
+ */
+public class Benchmarks {
+	/** Number of rays cast per iteration of the ray benchmarks */
+	private static final int RAY_COUNT = 1 << 16;
+	/** Scene sizes used by the raycast and shadow ray benchmarks */
+	private static final int[] SCENE_SIZES = { 10, 100, 1000, 10000, 100000 };
+	private static final int FRAME_WIDTH = 320, FRAME_HEIGHT = 180;
+	/** Width and height of the grid of coherent rays, and of its packets */
+	private static final int GRID_SIZE = 256, PACKET_SIZE = 8;
+	/** About an eighth of the secondary rays the mirrors frame casts without a budget */
+	private static final long MIRROR_RAY_BUDGET = 2000;
+	/** Lights in the many light frames reach about 2 units at this cutoff */
+	private static final double LIGHT_CUTOFF = .25;
+
+	/**
+	 * Results are added here so the JIT can't throw the work away.
+	 */
+	public static volatile long sink;
+
+	public static void main(String[] args) throws Exception {
+		int warmups = 3, iterations = 5;
+		List<String> filters = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-w"))
+				warmups = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-i"))
+				iterations = Integer.parseInt(args[++i]);
+			else
+				filters.add(args[i]);
+		}
+
+		List<Benchmark> benchmarks = createBenchmarks();
+		System.out.println("Running with " + warmups + " warmup and " + iterations + " measured iterations");
+		for (Benchmark b : benchmarks) {
+			if (!matches(b.getName(), filters))
+				continue;
+			System.out.println(b.measure(warmups, iterations));
+		}
+	}
+
+	private static boolean matches(String name, List<String> filters) {
+		if (filters.isEmpty())
+			return true;
+		for (String f : filters) {
+			if (name.contains(f))
+				return true;
+		}
+		return false;
+	}
+
+	private static List<Benchmark> createBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		Random random = new Random(42);
+
+		// single primitives, with rays aimed at a unit area around the origin
+		Ray[] rays = aimedRays(random, new Vector3(0, 0, -4), 1.5, RAY_COUNT);
+		benchmarks.add(intersects("intersects.sphere",
+				new SphereModel(Vector3.ZERO.clone(), 1.0, SceneLibrary.WHITE), rays));
+		benchmarks.add(intersects("intersects.plane",
+				new PlaneModel(Vector3.ZERO.clone(), new Vector3(0, 1, -1), SceneLibrary.WHITE), rays));
+		benchmarks.add(intersects("intersects.triangle", new TriangleModel(new Vector3(-1, -1, 0),
+				new Vector3(1, -1, 0), new Vector3(0, 1, 0), SceneLibrary.WHITE), rays));
+		File monkey = new File("monkey_smooth.obj");
+		if (monkey.exists()) {
+			try {
+				benchmarks.add(intersects("intersects.mesh", ModelLoader.loadObjModel(monkey, SceneLibrary.RED),
+						rays));
+			} catch (Exception e) {
+				System.err.println("Skipping intersects.mesh: " + e);
+			}
+		}
+
+		// closest hit and shadow rays against growing piles of spheres
+		for (int size : SCENE_SIZES) {
+			Scene s = randomSpheres(random, size);
+			Ray[] primaries = aimedRays(random, new Vector3(0, 0, -100), 50, RAY_COUNT);
+			benchmarks.add(raycast("raycast.spheres." + size, s, primaries));
+			Ray[] grid = gridRays(new Vector3(0, 0, -100), 50);
+			benchmarks.add(raycast("primary.spheres." + size, s, grid));
+			benchmarks.add(packets("primary.packets.spheres." + size, s, grid));
+			benchmarks.add(shadows("shadow.spheres." + size, s, random));
+		}
+
+		for (String obj : new String[] { "monkey_smooth.obj", "Iso.obj" }) {
+			File file = new File(obj);
+			if (file.exists()) {
+				benchmarks.add(load("load." + obj, file));
+				benchmarks.add(loadCached("load.cache." + obj, file));
+			} else {
+				System.err.println("Skipping load." + obj + ": file not found");
+			}
+		}
+
+		benchmarks.add(frame("frame.snowman", (s, cam) -> SceneLibrary.loadSnowman(s, cam)));
+		benchmarks.add(frame("frame.spheres", (s, cam) -> SceneLibrary.loadSphereModels(s, cam)));
+		benchmarks.add(frame("frame.snowman.aa", (s, cam) -> SceneLibrary.loadSnowman(s, cam),
+				data -> data.antiAliasing = true));
+		benchmarks.add(frame("frame.snowman.adaptive", (s, cam) -> SceneLibrary.loadSnowman(s, cam),
+				data -> data.setAdaptiveDepth(2)));
+		benchmarks.add(frame("frame.snowman.wavefront", (s, cam) -> SceneLibrary.loadSnowman(s, cam),
+				data -> data.setWavefront(true)));
+		benchmarks.add(reshade("frame.snowman.reshade", (s, cam) -> SceneLibrary.loadSnowman(s, cam)));
+		benchmarks.add(frame("frame.lights.100.all", manyLights(100, 0)));
+		benchmarks.add(frame("frame.lights.100", manyLights(100, LIGHT_CUTOFF)));
+		benchmarks.add(frame("frame.lights.1000", manyLights(1000, LIGHT_CUTOFF)));
+		benchmarks.add(frame("frame.mirrors.phong", (s, cam) -> SceneLibrary.loadMirrors(s, cam)));
+		benchmarks.add(frame("frame.mirrors.whitted", whitted(WhittedStrategy.UNLIMITED)));
+		benchmarks.add(frame("frame.mirrors.whitted.budget", whitted(MIRROR_RAY_BUDGET)));
+		if (VirtualThreads.isAvailable())
+			benchmarks.add(frame("frame.snowman.virtual", (s, cam) -> SceneLibrary.loadSnowman(s, cam),
+					data -> data.setExecutionMode(ExecutionMode.VIRTUAL)));
+		else
+			System.err.println("Skipping frame.snowman.virtual: virtual threads need Java 21");
+		return benchmarks;
+	}
+
+	/**
+	 * Creates rays starting at a point, aimed at random points in a square on
+	 * the z = 0 plane.
+	 */
+	private static Ray[] aimedRays(Random random, Vector3 origin, double halfSize, int count) {
+		Ray[] rays = new Ray[count];
+		for (int i = 0; i < count; i++) {
+			Vector3 target = new Vector3((random.nextDouble() * 2 - 1) * halfSize,
+					(random.nextDouble() * 2 - 1) * halfSize, 0);
+			rays[i] = Ray.createRayFromPoints(origin, target);
+		}
+		return rays;
+	}
+
+	/**
+	 * Creates coherent rays like a camera's primary rays: one through every
+	 * point of a {@link #GRID_SIZE} square grid on the z = 0 plane, in
+	 * {@link #PACKET_SIZE} square blocks.
+	 */
+	private static Ray[] gridRays(Vector3 origin, double halfSize) {
+		Ray[] rays = new Ray[GRID_SIZE * GRID_SIZE];
+		double step = 2 * halfSize / GRID_SIZE;
+		int n = 0;
+		for (int by = 0; by < GRID_SIZE; by += PACKET_SIZE) {
+			for (int bx = 0; bx < GRID_SIZE; bx += PACKET_SIZE) {
+				for (int y = by; y < by + PACKET_SIZE; y++) {
+					for (int x = bx; x < bx + PACKET_SIZE; x++) {
+						Vector3 target = new Vector3(x * step - halfSize, y * step - halfSize, 0);
+						rays[n++] = Ray.createRayFromPoints(origin, target);
+					}
+				}
+			}
+		}
+		return rays;
+	}
+
+	/**
+	 * The snowman lit by many dim lights scattered over the ground around it,
+	 * like the lamps of a street. Each light reaches about 2 units at
+	 * {@link #LIGHT_CUTOFF}.
+	 *
+	 * @param cutoff
+	 *            The scene's light cutoff; 0 lights every point with every
+	 *            light
+	 */
+	private static SceneBuilder manyLights(int count, double cutoff) {
+		return (s, cam) -> {
+			SceneLibrary.loadSnowman(s, cam);
+			Random random = new Random(count);
+			for (int i = 0; i < count; i++)
+				s.lights.add(new PointLight(new Vector3(random.nextDouble() * 20 - 10, random.nextDouble() * 4 - 1,
+						random.nextDouble() * 20), Color.getHSBColor(random.nextFloat(), .5f, 1), 1.0));
+			s.lightCutoff = cutoff;
+		};
+	}
+
+	/**
+	 * The mirrors scene rendered with a {@link WhittedStrategy}.
+	 *
+	 * @param rayBudget
+	 *            Secondary rays the frame may cast
+	 */
+	private static SceneBuilder whitted(long rayBudget) {
+		return (s, cam) -> {
+			SceneLibrary.loadMirrors(s, cam);
+			WhittedStrategy whitted = new WhittedStrategy();
+			whitted.setRayBudget(rayBudget);
+			cam.setRenderStrategy(whitted);
+		};
+	}
+
+	/**
+	 * Creates a scene with spheres scattered through a 100 unit cube. The
+	 * spheres shrink as their number grows so the cube stays about as full.
+	 */
+	private static Scene randomSpheres(Random random, int count) {
+		Scene s = new Scene();
+		double radius = 0.2 * 100.0 / Math.cbrt(count);
+		for (int i = 0; i < count; i++) {
+			Vector3 c = new Vector3(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50,
+					random.nextDouble() * 100 - 50);
+			s.objects.add(new SphereModel(c, radius * (0.5 + random.nextDouble()), SceneLibrary.WHITE));
+		}
+		s.update();
+		return s;
+	}
+
+	private static Benchmark intersects(String name, IModel model, Ray[] rays) {
+		return new Benchmark(name, "rays", () -> {
+			long hits = 0;
+			for (Ray r : rays) {
+				if (model.intersects(r).isHit)
+					hits++;
+			}
+			sink += hits;
+			return rays.length;
+		});
+	}
+
+	private static Benchmark raycast(String name, Scene s, Ray[] rays) {
+		Camera cam = new Camera(Vector3.ZERO.clone(), Transform.getIdentityInstance(), 1.7);
+		return new Benchmark(name, "rays", () -> {
+			long hits = 0;
+			for (Ray r : rays) {
+				if (cam.raycast(r, s).isHit)
+					hits++;
+			}
+			sink += hits;
+			return rays.length;
+		});
+	}
+
+	/**
+	 * Casts rays in packets of {@link #PACKET_SIZE} squared, in order.
+	 */
+	private static Benchmark packets(String name, Scene s, Ray[] rays) {
+		RayPacket packet = new RayPacket(PACKET_SIZE * PACKET_SIZE, 1e-6);
+		return new Benchmark(name, "rays", () -> {
+			long hits = 0;
+			for (int first = 0; first < rays.length; first += packet.rays.length) {
+				packet.clear();
+				for (int i = first; i < Math.min(first + packet.rays.length, rays.length); i++)
+					packet.add(rays[i]);
+				s.intersect(packet);
+				for (int i = 0; i < packet.size(); i++) {
+					if (packet.isHit(i))
+						hits++;
+				}
+			}
+			sink += hits;
+			return rays.length;
+		});
+	}
+
+	/**
+	 * Casts shadow rays from random points in the scene to a light above it.
+	 */
+	private static Benchmark shadows(String name, Scene s, Random random) {
+		Vector3 light = new Vector3(0, 200, 0);
+		Ray[] rays = new Ray[RAY_COUNT];
+		double[] distances = new double[RAY_COUNT];
+		for (int i = 0; i < RAY_COUNT; i++) {
+			Vector3 p = new Vector3(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50,
+					random.nextDouble() * 100 - 50);
+			rays[i] = Ray.createRayFromPoints(p, light);
+			distances[i] = light.getSubtract(p).len();
+		}
+		return new Benchmark(name, "rays", () -> {
+			long blocked = 0;
+			for (int i = 0; i < rays.length; i++) {
+				if (s.occluded(rays[i], 1e-5, distances[i]))
+					blocked++;
+			}
+			sink += blocked;
+			return rays.length;
+		});
+	}
+
+	/**
+	 * Parses a .obj file and builds its hierarchy, bypassing the
+	 * {@link MeshCache}.
+	 */
+	private static Benchmark load(String name, File file) {
+		return new Benchmark(name, "triangles", () -> {
+			ModelInstance m = new ModelInstance(ObjParser.parse(file), SceneLibrary.WHITE);
+			return m.getMesh().getTriangleCount();
+		});
+	}
+
+	/**
+	 * Loads a model from its {@link MeshCache}, like
+	 * {@link ModelLoader#loadObjModel} does once the cache is written. The
+	 * cache is written to a temporary file in the first run, which the
+	 * warmups absorb, so the working directory is left alone.
+	 */
+	private static Benchmark loadCached(String name, File file) {
+		File[] cache = new File[1];
+		return new Benchmark(name, "triangles", () -> {
+			if (cache[0] == null) {
+				ModelInstance m = new ModelInstance(ObjParser.parse(file), SceneLibrary.WHITE);
+				File temp = File.createTempFile("benchmark", MeshCache.EXTENSION);
+				temp.deleteOnExit();
+				MeshCache.write(temp, file, m.getMesh(), m.getBVH());
+				cache[0] = temp;
+			}
+			MeshCache.Entry entry = MeshCache.read(cache[0], file);
+			if (entry == null)
+				throw new IllegalStateException("Unreadable mesh cache " + cache[0]);
+			ModelInstance m = new ModelInstance(entry.mesh, entry.bvh, SceneLibrary.WHITE);
+			return m.getMesh().getTriangleCount();
+		}, () -> {
+			if (cache[0] != null)
+				cache[0].delete();
+		});
+	}
+
+	/**
+	 * Builds a scene into a {@link Scene} and {@link Camera}.
+	 */
+	private interface SceneBuilder {
+		public void build(Scene s, Camera cam) throws Exception;
+	}
+
+	private static Benchmark frame(String name, SceneBuilder builder) {
+		return frame(name, builder, data -> {
+		});
+	}
+
+	/**
+	 * Renders a frame with its {@link ImageData} changed by
+	 * <code>settings</code>, e.g. to turn on anti-aliasing.
+	 */
+	private static Benchmark frame(String name, SceneBuilder builder, Consumer<ImageData> settings) {
+		// the camera of the last frame, which holds the shared worker pool
+		Camera[] held = new Camera[1];
+		return new Benchmark(name, "pixels", () -> {
+			Scene s = new Scene();
+			Camera cam = new Camera(Vector3.ZERO.clone(), Transform.getIdentityInstance(), 1.7);
+			try {
+				builder.build(s, cam);
+				ImageData data = new ImageData(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB, false);
+				settings.accept(data);
+				BufferedImage img = cam.takePicture(s, data);
+				sink += img.getRGB(FRAME_WIDTH / 2, FRAME_HEIGHT / 2);
+			} finally {
+				// the previous camera is only let go of once this one holds the
+				// pool, so frames don't time starting its workers
+				Camera previous = held[0];
+				held[0] = cam;
+				if (previous != null)
+					previous.shutdown();
+			}
+			return FRAME_WIDTH * FRAME_HEIGHT;
+		}, () -> {
+			if (held[0] != null)
+				held[0].shutdown();
+		});
+	}
+
+	/**
+	 * Shades a frame from a {@link GBuffer} that is only traced once, like a
+	 * look-dev iteration after a light or material changed. The scene is built
+	 * and traced in the first run, which the warmups absorb.
+	 */
+	private static Benchmark reshade(String name, SceneBuilder builder) {
+		Scene s = new Scene();
+		Camera cam = new Camera(Vector3.ZERO.clone(), Transform.getIdentityInstance(), 1.7);
+		GBuffer[] g = new GBuffer[1];
+		return new Benchmark(name, "pixels", () -> {
+			if (g[0] == null) {
+				builder.build(s, cam);
+				g[0] = cam.trace(s, new ImageData(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB, false));
+			}
+			BufferedImage img = cam.shade(g[0], s);
+			sink += img.getRGB(FRAME_WIDTH / 2, FRAME_HEIGHT / 2);
+			return FRAME_WIDTH * FRAME_HEIGHT;
+		}, cam::shutdown);
+	}
+}
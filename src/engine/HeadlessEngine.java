@@ -0,0 +1,326 @@
+package engine;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+import geometry.Transform;
+import geometry.Vector3;
+import lighting.AmbientLight;
+import render.Camera;
+import render.ExecutionMode;
+import render.ImageData;
+import render.TileOrder;
+import render.strategies.RenderStrategy;
+import render.strategies.WhittedStrategy;
+import scene.Scene;
+import scene.SceneLibrary;
+import scene.SceneLoader;
+
+/**
+ * Command line driver for the ray tracing program. Renders one image without
+ * opening any windows, saves it, prints how long each step took and exits, so
+ * it can run on headless machines and be scripted.
+ *
+ * <pre>
+ * java engine.HeadlessEngine [options] &lt;scene&gt;
+ * </pre>
+ *
+ * The scene is the name of a scene from {@link SceneLibrary} (snowman,
+ * spheres, spheres2, mirrors), a scene file read by {@link SceneLoader}, or an .obj
+ * file, which is shown the way {@link SceneLibrary#loadModel} shows it. Run with <code>--help</code> for the
+ * options.<br/>
+ * <br/>
+ * Exits with 0 on success, 1 if the scene can't be loaded or the image can't be
+ * saved, and 2 if the arguments are wrong.
+ *
+ * @author Don Isaac
+ *
+ */
+public class HeadlessEngine {
+	private static final String USAGE = "Usage: java engine.HeadlessEngine [options] <scene>\n"
+			+ "  <scene>              snowman, spheres, spheres2, mirrors, a .scene file, or an .obj file\n"
+			+ "  -o, --output FILE    Image to write; the extension picks the format (default render.png)\n"
+			+ "  -w, --width N        Width in pixels (default 1920)\n"
+			+ "  -h, --height N       Height in pixels (default 1080)\n"
+			+ "  -s, --samples N      Samples per pixel: 1, or 4 for anti-aliasing (default 1)\n"
+			+ "  -a, --adaptive N     Adaptive anti-aliasing depth; overrides --samples (default 0, off)\n"
+			+ "      --threshold X    Contrast that triggers adaptive refinement, 0 to 1 (default "
+			+ ImageData.DEFAULT_ADAPTIVE_THRESHOLD + ")\n"
+			+ "  -t, --threads N      Number of render threads (default: one per processor)\n"
+			+ "      --tile N         Tile size in pixels (default " + ImageData.DEFAULT_TILE_SIZE + ")\n"
+			+ "      --order ORDER    Tile order: scanline, hilbert or spiral (default scanline)\n"
+			+ "      --mode MODE      Thread type: pool or virtual (default pool)\n"
+			+ "      --packet N       Primary ray packet size, 1 for none (default "
+			+ ImageData.DEFAULT_PACKET_SIZE + ")\n"
+			+ "      --wavefront      Render in waves of queued rays instead of tiles (Phong only)\n"
+			+ "      --strategy NAME  Render strategy: phong, or whitted for reflections (default phong)\n"
+			+ "      --depth N        Bounces per path with the whitted strategy (default "
+			+ WhittedStrategy.DEFAULT_MAX_DEPTH + ")\n"
+			+ "      --ray-budget N   Secondary rays per frame with the whitted strategy (default: no limit)\n"
+			+ "      --help           Print this message\n";
+
+	private static final double FOCAL_LENGTH = 1.7;
+	/** Same ambient light as the {@link NonVisualEngine} */
+	private static final double AMBIENT = .1;
+
+	private String scene;
+	private File output = new File("render.png");
+	private int width = 1920, height = 1080, samples = 1;
+	private RenderStrategy strategy = RenderStrategy.getStrategy();
+	private int maxDepth = WhittedStrategy.DEFAULT_MAX_DEPTH;
+	private long rayBudget = WhittedStrategy.UNLIMITED;
+	private ImageData data;
+
+	/**
+	 * Thrown when the command line arguments are wrong.
+	 */
+	private static class UsageException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public UsageException(String message) {
+			super(message);
+		}
+	}
+
+	public static void main(String[] args) {
+		System.exit(run(args, System.out, System.err));
+	}
+
+	/**
+	 * Parses the arguments, renders the image and saves it.
+	 *
+	 * @param args The command line arguments
+	 * @param out  Receives the timing statistics
+	 * @param err  Receives errors and usage information
+	 * @return the exit status
+	 */
+	public static int run(String[] args, PrintStream out, PrintStream err) {
+		// nothing is drawn on screen, but BufferedImage and Color are AWT classes
+		System.setProperty("java.awt.headless", "true");
+		HeadlessEngine engine = new HeadlessEngine();
+		try {
+			if (!engine.parse(args)) {
+				out.print(USAGE);
+				return 0;
+			}
+		} catch (UsageException e) {
+			err.println(e.getMessage());
+			err.print(USAGE);
+			return 2;
+		}
+		try {
+			engine.render(out);
+			return 0;
+		} catch (IOException e) {
+			err.println(e.getMessage());
+			return 1;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			err.println("Interrupted");
+			return 1;
+		}
+	}
+
+	/**
+	 * Reads the command line arguments into the engine's settings.
+	 *
+	 * @return <b>false</b> if only the usage was asked for
+	 */
+	private boolean parse(String[] args) throws UsageException {
+		// the resolution is needed to build the ImageData, so other settings
+		// are applied to this placeholder and copied over at the end
+		ImageData settings = new ImageData(1, 1, BufferedImage.TYPE_INT_RGB, false);
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			try {
+				switch (arg) {
+				case "--help":
+					return false;
+				case "-o":
+				case "--output":
+					output = new File(value(args, ++i, arg));
+					break;
+				case "-w":
+				case "--width":
+					width = positive(value(args, ++i, arg), arg);
+					break;
+				case "-h":
+				case "--height":
+					height = positive(value(args, ++i, arg), arg);
+					break;
+				case "-s":
+				case "--samples":
+					samples = positive(value(args, ++i, arg), arg);
+					if (samples != 1 && samples != 4)
+						throw new UsageException(arg + " must be 1 or 4");
+					break;
+				case "-a":
+				case "--adaptive":
+					settings.setAdaptiveDepth(Integer.parseInt(value(args, ++i, arg)));
+					break;
+				case "--threshold":
+					settings.setAdaptiveThreshold(Double.parseDouble(value(args, ++i, arg)));
+					break;
+				case "-t":
+				case "--threads":
+					settings.setWorkerCount(positive(value(args, ++i, arg), arg));
+					break;
+				case "--tile":
+					settings.setTileSize(positive(value(args, ++i, arg), arg));
+					break;
+				case "--order":
+					settings.setTileOrder(TileOrder.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT)));
+					break;
+				case "--mode":
+					settings.setExecutionMode(ExecutionMode.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT)));
+					break;
+				case "--packet":
+					settings.setPacketSize(positive(value(args, ++i, arg), arg));
+					break;
+				case "--wavefront":
+					settings.setWavefront(true);
+					break;
+				case "--strategy":
+					String name = value(args, ++i, arg).toLowerCase(Locale.ROOT);
+					// a new instance, so its limits don't leak into the shared one
+					strategy = name.equals("whitted") ? new WhittedStrategy() : RenderStrategy.getStrategy(name);
+					break;
+				case "--depth":
+					maxDepth = Integer.parseInt(value(args, ++i, arg));
+					if (maxDepth < 0)
+						throw new UsageException(arg + " can't be negative");
+					break;
+				case "--ray-budget":
+					rayBudget = Long.parseLong(value(args, ++i, arg));
+					if (rayBudget < 0)
+						throw new UsageException(arg + " can't be negative");
+					break;
+				default:
+					if (arg.startsWith("-"))
+						throw new UsageException("Unknown option " + arg);
+					if (scene != null)
+						throw new UsageException("Only one scene can be rendered at a time");
+					scene = arg;
+				}
+			} catch (IllegalArgumentException e) {
+				// also catches NumberFormatException and bad enum names
+				throw new UsageException("Bad value for " + arg + ": " + e.getMessage());
+			}
+		}
+		if (scene == null)
+			throw new UsageException("No scene given");
+
+		data = new ImageData(width, height, BufferedImage.TYPE_INT_RGB, samples == 4);
+		data.setAdaptiveDepth(settings.getAdaptiveDepth());
+		data.setAdaptiveThreshold(settings.getAdaptiveThreshold());
+		data.setWorkerCount(settings.getWorkerCount());
+		data.setTileSize(settings.getTileSize());
+		data.setTileOrder(settings.getTileOrder());
+		data.setExecutionMode(settings.getExecutionMode());
+		data.setPacketSize(settings.getPacketSize());
+		data.setWavefront(settings.isWavefront());
+		if (strategy instanceof WhittedStrategy) {
+			((WhittedStrategy) strategy).setMaxDepth(maxDepth);
+			((WhittedStrategy) strategy).setRayBudget(rayBudget);
+		}
+		return true;
+	}
+
+	private static String value(String[] args, int i, String option) throws UsageException {
+		if (i >= args.length)
+			throw new UsageException(option + " needs a value");
+		return args[i];
+	}
+
+	private static int positive(String value, String option) throws UsageException {
+		int n = Integer.parseInt(value);
+		if (n < 1)
+			throw new UsageException(option + " must be at least 1");
+		return n;
+	}
+
+	/**
+	 * Loads the scene, renders it, saves the image and prints the timings.
+	 */
+	private void render(PrintStream out) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		Scene s = new Scene();
+		s.ambient = new AmbientLight(Color.white, AMBIENT);
+		Camera cam = load(s);
+		cam.setRenderStrategy(strategy);
+		long loaded = System.nanoTime();
+
+		BufferedImage img;
+		long rendered;
+		try {
+			img = cam.takePicture(s, data);
+			rendered = System.nanoTime();
+		} finally {
+			cam.shutdown();
+		}
+
+		String name = output.getName();
+		String format = name.substring(name.lastIndexOf('.') + 1);
+		if (!ImageIO.write(img, format, output))
+			throw new IOException("No image writer for ." + format + " files");
+		long saved = System.nanoTime();
+
+		long pixels = (long) width * height;
+		out.printf(Locale.ROOT, "Scene:   %s (%d objects, %d lights)%n", scene, s.objects.size(), s.lights.size());
+		out.printf(Locale.ROOT, "Image:   %dx%d, %s, %d threads (%s%s), %s%n", width, height,
+				describeSampling(), data.getWorkerCount(), data.getExecutionMode().name().toLowerCase(Locale.ROOT),
+				data.isWavefront() ? ", wavefront" : "", strategy.getName());
+		out.printf(Locale.ROOT, "Load:    %.1f ms%n", millis(start, loaded));
+		out.printf(Locale.ROOT, "Render:  %.1f ms (%.0f pixels/s)%n", millis(loaded, rendered),
+				pixels / ((rendered - loaded) / 1e9));
+		out.printf(Locale.ROOT, "Save:    %.1f ms -> %s%n", millis(rendered, saved), output.getPath());
+		out.printf(Locale.ROOT, "Total:   %.1f ms%n", millis(start, saved));
+	}
+
+	/**
+	 * Fills the scene in.
+	 *
+	 * @return the camera to render the scene with
+	 */
+	private Camera load(Scene s) throws IOException {
+		if (scene.endsWith(SceneLoader.EXTENSION))
+			return SceneLoader.load(new File(scene), s);
+		Camera cam = new Camera(Vector3.ZERO.clone(), Transform.getIdentityInstance(), FOCAL_LENGTH);
+		switch (scene) {
+		case "snowman":
+			SceneLibrary.loadSnowman(s, cam);
+			break;
+		case "spheres":
+			SceneLibrary.loadSphereModels(s, cam);
+			break;
+		case "spheres2":
+			SceneLibrary.loadSphereModels2(s, cam);
+			break;
+		case "mirrors":
+			SceneLibrary.loadMirrors(s, cam);
+			break;
+		default:
+			File file = new File(scene);
+			if (!file.isFile())
+				throw new IOException("No such scene or file: " + scene);
+			SceneLibrary.loadModel(s, cam, file);
+		}
+		return cam;
+	}
+
+	private String describeSampling() {
+		if (data.getAdaptiveDepth() > 0)
+			return "adaptive depth " + data.getAdaptiveDepth();
+		return samples + (samples == 1 ? " sample" : " samples");
+	}
+
+	private static double millis(long from, long to) {
+		return (to - from) / 1e6;
+	}
+}
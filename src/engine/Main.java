@@ -11,7 +11,9 @@ import tools.TeeOutputStream;
 
 import debug.DebugEnvironment;
 /**
- * Entry point for the Raytracing Engine
+ * Entry point for the Raytracing Engine. With command line arguments, the
+ * {@link HeadlessEngine} renders a single image; without any, the engine is
+ * picked by the flags below.
  * @author Donny
  * @version 3.2.1
  *
@@ -24,6 +26,10 @@ public class Main {
 	public static String LOG_NAME = "log.txt";
 	
 	public static void main(String[] args) throws FileNotFoundException {
+		if (args.length > 0) {
+			HeadlessEngine.main(args);
+			return;
+		}
 		if (PIPE_STDOUT_TO_FILE) {
 			TeeOutputStream stdoutStream = new TeeOutputStream(System.out, new BufferedOutputStream(new FileOutputStream(LOG_NAME)));
 			System.setOut(new PrintStream(stdoutStream, true));
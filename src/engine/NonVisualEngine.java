@@ -24,11 +24,10 @@ import lighting.DefaultMaterial;
 import lighting.PointLight;
 import model.ModelInstance;
 import model.ModelLoader;
-import model.PlaneModel;
-import model.SphereModel;
 import render.Camera;
 import render.ImageData;
 import scene.Scene;
+import scene.SceneLibrary;
 
 /**
  * Non-Visual driver class for the ray tracing program.
@@ -89,20 +88,8 @@ public class NonVisualEngine {
 //		
 //	}
 	private void loadModel() {
-		s.lights.add(new PointLight(new Vector3(-3, 5, -2), Color.white, 1.0));
-		// cam.translate(new Vector3(-1,.5,-3));
-		cam.translate(new Vector3(2.5, 1.5, -2.5));
-		cam.rotateX(.3, true);
-		cam.rotateY(-Math.PI / 4.0, true);
-		// cam.rotateX(.2, true);
-		// s.objects.add(new SphereModel(new Vector3(0, 0,0), 2.3, green));
 		try {
-			ModelInstance m = ModelLoader.loadObjModel(new File("moneky_smooth.obj"), red);
-			System.out.println(m);
-			s.objects.add(m);
-
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			SceneLibrary.loadModel(s, cam, new File("moneky_smooth.obj"));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -130,49 +117,28 @@ public class NonVisualEngine {
 	}
 
 	private void loadSnowman() {
-		s.lights.add(new PointLight(new Vector3(-3, 4, 0), Color.white, 1.0));
-		s.objects.add(new PlaneModel(new Vector3(0, -1.2, 0), new Vector3(0, 1, 0), green));
-		s.objects.add(new SphereModel(new Vector3(0, -.7, 4), 1.0, white));// bottom
-		s.objects.add(new SphereModel(new Vector3(0, .7, 4), .8, white));// middle
-		s.objects.add(new SphereModel(new Vector3(0, 1.8, 4), .5, white));// top
-		s.objects.add(new SphereModel(new Vector3(-.2, 1.7, 3), .1, black));// left
-																			// eye
-		s.objects.add(new SphereModel(new Vector3(.2, 1.7, 3), .1, black));// right
-																			// eye
-
+		SceneLibrary.loadSnowman(s, cam);
 	}
 
 	private void loadSphereModels() {
-		cam.translate(new Vector3(-.3f, .7f, 0f));
-		s.lights.add(new PointLight(new Vector3(-3, 4, 0), Color.white, 1.0));
-		s.objects.add(new SphereModel(new Vector3(0, 0, 3.5), 1.0, green));
-		s.objects.add(new SphereModel(new Vector3(0, 1.0, 3.8), 1.5, pink));
-		s.objects.add(new SphereModel(new Vector3(1.0, -.2, 3.0), .5, yellow));
-		s.objects.add(new SphereModel(new Vector3(-1, .8, 3.2), .7, cyan));
-		s.objects.add(new SphereModel(new Vector3(.8, .6, 2.8), .56, orange));
+		SceneLibrary.loadSphereModels(s, cam);
 	}
 
 	private void loadSphereModels2() {
-		cam.translate(Vector3.J.getScale(2));
-		cam.rotateX(20 * Math.PI / 180, true);
-		s.lights.add(new PointLight(new Vector3(-3, 3, 3.5), Color.white, 1.0));
-		s.objects.add(new PlaneModel(Vector3.ZERO, Vector3.J, blue));
-		s.objects.add(new SphereModel(new Vector3(-1, .8, 4), 1.2, green));
-		s.objects.add(new SphereModel(new Vector3(0, .8, 5.5), 1.2, red));
+		SceneLibrary.loadSphereModels2(s, cam);
 	}
 
 	private void loadMaterials() {
-		double alpha = 100, ks = .25, kd = 1.0;
-		red = new DefaultMaterial(Color.red, alpha, ks, kd);
-		orange = new DefaultMaterial(Color.orange, alpha, ks, kd);
-		green = new DefaultMaterial(Color.green, alpha, ks, kd);
-		cyan = new DefaultMaterial(Color.cyan, alpha, ks, kd);
-		yellow = new DefaultMaterial(Color.yellow, alpha, ks, kd);
-		blue = new DefaultMaterial(Color.blue, alpha, ks, kd);
-		pink = new DefaultMaterial(Color.pink, alpha, ks, kd);
-		white = new DefaultMaterial(Color.white, alpha, ks, kd);
-		grey = new DefaultMaterial(Color.white.darker(), alpha, ks, kd);
-		black = new DefaultMaterial(Color.black, alpha, ks, kd);
+		red = SceneLibrary.RED;
+		orange = SceneLibrary.ORANGE;
+		green = SceneLibrary.GREEN;
+		cyan = SceneLibrary.CYAN;
+		yellow = SceneLibrary.YELLOW;
+		blue = SceneLibrary.BLUE;
+		pink = SceneLibrary.PINK;
+		white = SceneLibrary.WHITE;
+		grey = SceneLibrary.GREY;
+		black = SceneLibrary.BLACK;
 	}
 
 	public NonVisualEngine() {
@@ -25,6 +25,7 @@ import lighting.PointLight;
 import model.PlaneModel;
 import model.SphereModel;
 import render.Camera;
+import render.FrameBuffer;
 import render.ImageData;
 import scene.Scene;
 /**
@@ -67,18 +68,15 @@ public class VisualEngine extends JPanel implements Runnable, KeyListener,
 	}
 
 	private void update() {
-		if (y < height) {
-			Color c = cam.raytrace(x, y, s, data);
-			screen.setRGB(x, y, c.getRGB());
-			System.out.println(100.0*(double)(y*width+x)/(double)(width*height)+"%");
-			x++;
-			if (x >= width) {
-				x = 0;
-				y++;
-			}
-		}
-		else{
-			if(!isRendered){
+		if (!isRendered) {
+			// Render progressively, drawing every pass as soon as it's done
+			cam.addListener((event, args) -> {
+				g.drawImage(((FrameBuffer) args[0]).getImage(), 0, 0, null);
+				System.out.println("Finished pass with " + args[1] + "px blocks");
+				paintScreen();
+			}, Camera.PROGRESS_EVENT);
+			cam.takeProgressivePicture(s, data, 0);
+
 			System.out.println("Finished!");
 			long dt = System.currentTimeMillis()-startTime;
 			int seconds=(int) ((dt/1000)%60);
@@ -87,13 +85,12 @@ public class VisualEngine extends JPanel implements Runnable, KeyListener,
 			screenshot();
 			isRendered=true;
 			//System.exit(0);
-			}
-			try {
-				Thread.sleep(200);
-			} catch (InterruptedException e) {
-				
-				e.printStackTrace();
-			}
+		}
+		try {
+			Thread.sleep(200);
+		} catch (InterruptedException e) {
+			
+			e.printStackTrace();
 		}
 	}
 
@@ -0,0 +1,209 @@
+package geometry;
+
+/**
+ * Represents an axis-aligned bounding box (AABB). Bounding boxes are used by
+ * acceleration structures to quickly reject {@link Ray}s that cannot possibly
+ * hit the geometry inside of them. This class is effectively a struct.
+ *
+ * @author Don Isaac
+ *
+ */
+public class BoundingBox {
+	/** The minimum corner of the box */
+	public double minX, minY, minZ;
+	/** The maximum corner of the box */
+	public double maxX, maxY, maxZ;
+
+	/**
+	 * Creates an empty bounding box. Expanding an empty box by a point results
+	 * in a box containing only that point.
+	 */
+	public BoundingBox() {
+		minX = minY = minZ = Double.POSITIVE_INFINITY;
+		maxX = maxY = maxZ = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Full constructor.
+	 *
+	 * @param min
+	 *            The minimum corner of the box
+	 * @param max
+	 *            The maximum corner of the box
+	 */
+	public BoundingBox(Vector3 min, Vector3 max) {
+		this.minX = min.x;
+		this.minY = min.y;
+		this.minZ = min.z;
+		this.maxX = max.x;
+		this.maxY = max.y;
+		this.maxZ = max.z;
+	}
+
+	/**
+	 * Grows the box so that it contains a point.
+	 *
+	 * @param x
+	 *            The point's x coordinate
+	 * @param y
+	 *            The point's y coordinate
+	 * @param z
+	 *            The point's z coordinate
+	 * @return this box
+	 */
+	public BoundingBox expand(double x, double y, double z) {
+		if (x < minX)
+			minX = x;
+		if (y < minY)
+			minY = y;
+		if (z < minZ)
+			minZ = z;
+		if (x > maxX)
+			maxX = x;
+		if (y > maxY)
+			maxY = y;
+		if (z > maxZ)
+			maxZ = z;
+		return this;
+	}
+
+	/**
+	 * Grows the box so that it contains a point.
+	 *
+	 * @param v
+	 *            The point
+	 * @return this box
+	 */
+	public BoundingBox expand(Vector3 v) {
+		return expand(v.x, v.y, v.z);
+	}
+
+	/**
+	 * Grows the box so that it contains another box.
+	 *
+	 * @param b
+	 *            The box to contain
+	 * @return this box
+	 */
+	public BoundingBox union(BoundingBox b) {
+		if (b.isEmpty())
+			return this;
+		expand(b.minX, b.minY, b.minZ);
+		return expand(b.maxX, b.maxY, b.maxZ);
+	}
+
+	/**
+	 *
+	 * @return <code>true</code> if the box does not contain any points.
+	 */
+	public boolean isEmpty() {
+		return minX > maxX || minY > maxY || minZ > maxZ;
+	}
+
+	/**
+	 *
+	 * @return The surface area of the box. Used by the surface area heuristic
+	 *         when building acceleration structures.
+	 */
+	public double surfaceArea() {
+		if (isEmpty())
+			return 0.0;
+		double dx = maxX - minX;
+		double dy = maxY - minY;
+		double dz = maxZ - minZ;
+		return 2.0 * (dx * dy + dy * dz + dz * dx);
+	}
+
+	/**
+	 *
+	 * @return The center of the box
+	 */
+	public Vector3 getCenter() {
+		return new Vector3((minX + maxX) * .5, (minY + maxY) * .5, (minZ + maxZ) * .5);
+	}
+
+	/**
+	 * Transforms all eight corners of this box and returns the box that
+	 * contains them. This method does not affect this box.
+	 *
+	 * @param t
+	 *            The {@link Transform} to apply
+	 * @return The transformed box
+	 */
+	public BoundingBox getTransformed(Transform t) {
+		BoundingBox b = new BoundingBox();
+		if (isEmpty())
+			return b;
+		for (int i = 0; i < 8; i++) {
+			double x = (i & 1) == 0 ? minX : maxX;
+			double y = (i & 2) == 0 ? minY : maxY;
+			double z = (i & 4) == 0 ? minZ : maxZ;
+			b.expand(t.getTransformed(new Vector3(x, y, z)));
+		}
+		return b;
+	}
+
+	/**
+	 * Checks for an intersection between the box and a {@link Ray} using the
+	 * slab method.
+	 *
+	 * @param r
+	 *            The {@link Ray} to test
+	 * @return The distance along the ray where it enters the box, or
+	 *         {@link Double#POSITIVE_INFINITY} if it misses.
+	 */
+	public double intersects(Ray r) {
+		Vector3 o = r.getOrigin();
+		Vector3 d = r.getDir();
+		return intersects(minX, minY, minZ, maxX, maxY, maxZ, o.x, o.y, o.z, 1.0 / d.x, 1.0 / d.y, 1.0 / d.z,
+				0.0, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Slab test on raw coordinates. The ray's direction is passed as its
+	 * reciprocal so that it can be computed once per ray instead of once per
+	 * box.
+	 *
+	 * @return The distance along the ray where it enters the box, or
+	 *         {@link Double#POSITIVE_INFINITY} if the ray misses the box or
+	 *         enters it outside of <code>[tMin, tMax]</code>.
+	 */
+	public static double intersects(double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+			double ox, double oy, double oz, double invDx, double invDy, double invDz, double tMin, double tMax) {
+		double t1 = (minX - ox) * invDx;
+		double t2 = (maxX - ox) * invDx;
+		double near = Math.min(t1, t2);
+		double far = Math.max(t1, t2);
+
+		t1 = (minY - oy) * invDy;
+		t2 = (maxY - oy) * invDy;
+		near = Math.max(near, Math.min(t1, t2));
+		far = Math.min(far, Math.max(t1, t2));
+
+		t1 = (minZ - oz) * invDz;
+		t2 = (maxZ - oz) * invDz;
+		near = Math.max(near, Math.min(t1, t2));
+		far = Math.min(far, Math.max(t1, t2));
+
+		near = Math.max(near, tMin);
+		far = Math.min(far, tMax);
+		return near <= far ? near : Double.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public BoundingBox clone() {
+		BoundingBox b = new BoundingBox();
+		b.minX = minX;
+		b.minY = minY;
+		b.minZ = minZ;
+		b.maxX = maxX;
+		b.maxY = maxY;
+		b.maxZ = maxZ;
+		return b;
+	}
+
+	@Override
+	public String toString() {
+		return "[<" + minX + "," + minY + "," + minZ + ">, <" + maxX + "," + maxY + "," + maxZ + ">]";
+	}
+}
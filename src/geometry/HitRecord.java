@@ -0,0 +1,47 @@
+package geometry;
+
+/**
+ * Stores the result of a low level {@link Ray}-primitive test. Unlike
+ * {@link Intersection}, a HitRecord is meant to be reused: intersection kernels
+ * only write to it when they find a hit closer than the one it already holds,
+ * so a single HitRecord can collect the closest hit over many primitives
+ * without allocating anything. This class is effectively a struct.
+ * 
+ * @author Don Isaac
+ *
+ */
+public class HitRecord {
+	/** Distance along the ray to the hit */
+	public double t;
+	/** Barycentric coordinates of the hit, if the primitive is a triangle */
+	public double u, v;
+	/** Index of the primitive that was hit, or -1 if nothing was hit */
+	public int primitive;
+
+	/**
+	 * Creates an empty HitRecord.
+	 */
+	public HitRecord() {
+		reset(Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Clears the record so it can be reused for a new ray.
+	 * 
+	 * @param tMax Hits farther than this will not be recorded
+	 */
+	public void reset(double tMax) {
+		this.t = tMax;
+		this.u = 0.0;
+		this.v = 0.0;
+		this.primitive = -1;
+	}
+
+	/**
+	 * 
+	 * @return <code>true</code> if a hit was recorded since the last reset
+	 */
+	public boolean isHit() {
+		return primitive >= 0;
+	}
+}
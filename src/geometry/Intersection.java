@@ -1,7 +1,5 @@
 package geometry;
 
-import java.util.ArrayList;
-
 /**
  * Stores information about a {@link Ray}-Geometry intersection. This class is
  * effectively a struct.
@@ -21,6 +19,13 @@ public class Intersection {
 	 * originally and this way works.</i>
 	 */
 	public boolean isHit;
+	/**
+	 * Index of the primitive (e.g. the face of a mesh) that was hit. 0 for
+	 * shapes made of a single surface.
+	 */
+	public int primitive;
+	/** Barycentric coordinates of the hit, if the primitive is a triangle */
+	public double u, v;
 	/**
 	 * Creates a new {@link Intersection} struct that stores the points of intersection.
 	 * @param isHit was there an intersection?
@@ -31,6 +36,21 @@ public class Intersection {
 		this.hit = intersection;
 		this.normal=normal;
 	}
+	/**
+	 * Creates an {@link Intersection} with a triangle that is part of a larger
+	 * shape.
+	 * @param intersection the point of intersection in world space
+	 * @param normal the normal at the point of intersection
+	 * @param primitive index of the triangle that was hit
+	 * @param u barycentric weight of the triangle's second vertex
+	 * @param v barycentric weight of the triangle's third vertex
+	 */
+	public Intersection(Vector3 intersection, Vector3 normal, int primitive, double u, double v) {
+		this(true, intersection, normal);
+		this.primitive = primitive;
+		this.u = u;
+		this.v = v;
+	}
 	/**
 	 * Quick Constructor for when there is no intersection.
 	 */
@@ -70,6 +70,15 @@ public class Plane implements Primitive {
 		n.nor();
 	}
 
+	/**
+	 * Planes are infinitely large, so they can't be bounded.
+	 * 
+	 * @return <code>null</code>
+	 */
+	public BoundingBox getBounds() {
+		return null;
+	}
+
 	public boolean contains(Vector3 v) {
 		return Epsilon.nearlyEquals(n.dot(v.getSubtract(p)), 0.0);
 	}
@@ -84,6 +93,65 @@ public class Plane implements Primitive {
 			return new Intersection();
 	}
 
+	/**
+	 * Finds where a {@link Ray} hits the Plane, if it is between <b>tMin</b>
+	 * and <b>tMax</b>. Doesn't allocate anything.
+	 * 
+	 * @param r
+	 *            The {@link Ray} to test
+	 * @param tMin
+	 *            Hits closer than this are ignored
+	 * @param tMax
+	 *            Hits farther than this are ignored
+	 * @param hit
+	 *            Receives the distance of the hit. Left untouched on a miss.
+	 * @return the distance to the hit, or {@link Double#POSITIVE_INFINITY}
+	 */
+	public double intersect(Ray r, double tMin, double tMax, HitRecord hit) {
+		Vector3 o = r.getOrigin();
+		Vector3 d = r.getDir();
+		double denom = n.x * d.x + n.y * d.y + n.z * d.z;
+		if (Epsilon.nearlyEquals(denom, 0.0))
+			return Double.POSITIVE_INFINITY;
+		double t = (n.x * (p.x - o.x) + n.y * (p.y - o.y) + n.z * (p.z - o.z)) / denom;
+		if (t <= tMin || t >= tMax)
+			return Double.POSITIVE_INFINITY;
+		hit.t = t;
+		hit.primitive = 0;
+		hit.u = hit.v = 0.0;
+		return t;
+	}
+
+	/**
+	 * Finds the point and normal of a hit found by
+	 * {@link #intersect(Ray, double, double, HitRecord)}.
+	 */
+	public Intersection getSurface(Ray r, HitRecord hit) {
+		return new Intersection(true, r.pointOnRay(hit.t), n);
+	}
+
+	/**
+	 * Checks if the Plane is hit between <b>tMin</b> and <b>tMax</b> along a
+	 * {@link Ray}. Doesn't allocate anything.
+	 * 
+	 * @param r
+	 *            The {@link Ray} to test
+	 * @param tMin
+	 *            Hits closer than this are ignored
+	 * @param tMax
+	 *            Hits farther than this are ignored
+	 * @return <code>true</code> if the hit is in range
+	 */
+	public boolean occludes(Ray r, double tMin, double tMax) {
+		Vector3 o = r.getOrigin();
+		Vector3 d = r.getDir();
+		double denom = n.x * d.x + n.y * d.y + n.z * d.z;
+		if (Epsilon.nearlyEquals(denom, 0.0))
+			return false;
+		double t = (n.x * (p.x - o.x) + n.y * (p.y - o.y) + n.z * (p.z - o.z)) / denom;
+		return t > tMin && t < tMax;
+	}
+
 	@Override
 	public Plane clone() {
 		return new Plane(p.clone(), n.clone());
@@ -60,10 +60,90 @@ public class Sphere implements Primitive {
 
 	}
 
+	/**
+	 * Finds the closest point where a {@link Ray} hits the Sphere between
+	 * <b>tMin</b> and <b>tMax</b>. Unlike {@link #intersects(Ray)}, a ray that
+	 * starts inside the Sphere hits its far side. Doesn't allocate anything.
+	 * 
+	 * @param ray
+	 *            The {@link Ray} to test
+	 * @param tMin
+	 *            Hits closer than this are ignored
+	 * @param tMax
+	 *            Hits farther than this are ignored
+	 * @param hit
+	 *            Receives the distance of the hit. Left untouched on a miss.
+	 * @return the distance to the hit, or {@link Double#POSITIVE_INFINITY}
+	 */
+	public double intersect(Ray ray, double tMin, double tMax, HitRecord hit) {
+		Vector3 o = ray.getOrigin();
+		Vector3 d = ray.getDir();
+		double px = o.x - c.x, py = o.y - c.y, pz = o.z - c.z;
+		double a = d.x * d.x + d.y * d.y + d.z * d.z;
+		double b = d.x * px + d.y * py + d.z * pz;
+		double discrim = b * b - a * (px * px + py * py + pz * pz - r * r);
+		if (discrim < 0)
+			return Double.POSITIVE_INFINITY;
+		double root = Math.sqrt(discrim);
+		double t = (-b - root) / a;
+		if (t <= tMin)
+			t = (-b + root) / a;
+		if (t <= tMin || t >= tMax)
+			return Double.POSITIVE_INFINITY;
+		hit.t = t;
+		hit.primitive = 0;
+		hit.u = hit.v = 0.0;
+		return t;
+	}
+
+	/**
+	 * Finds the point and normal of a hit found by
+	 * {@link #intersect(Ray, double, double, HitRecord)}.
+	 */
+	public Intersection getSurface(Ray ray, HitRecord hit) {
+		Vector3 p = ray.pointOnRay(hit.t);
+		return new Intersection(true, p, getNormal(p));
+	}
+
+	/**
+	 * Checks if the Sphere is hit anywhere between <b>tMin</b> and <b>tMax</b>
+	 * along a {@link Ray}. Doesn't allocate anything.
+	 * 
+	 * @param ray
+	 *            The {@link Ray} to test
+	 * @param tMin
+	 *            Hits closer than this are ignored
+	 * @param tMax
+	 *            Hits farther than this are ignored
+	 * @return <code>true</code> if either side of the Sphere is in range
+	 */
+	public boolean occludes(Ray ray, double tMin, double tMax) {
+		Vector3 o = ray.getOrigin();
+		Vector3 d = ray.getDir();
+		double px = o.x - c.x, py = o.y - c.y, pz = o.z - c.z;
+		double a = d.x * d.x + d.y * d.y + d.z * d.z;
+		double b = d.x * px + d.y * py + d.z * pz;
+		double discrim = b * b - a * (px * px + py * py + pz * pz - r * r);
+		if (discrim < 0)
+			return false;
+		double root = Math.sqrt(discrim);
+		double t1 = (-b - root) / a;
+		double t2 = (-b + root) / a;
+		return (t1 > tMin && t1 < tMax) || (t2 > tMin && t2 < tMax);
+	}
+
 	public Vector3 getNormal(Vector3 p) {
 		return p.getSubtract(c).getNormalized();
 	}
 
+	/**
+	 * 
+	 * @return the smallest {@link BoundingBox} containing the Sphere
+	 */
+	public BoundingBox getBounds() {
+		return new BoundingBox(new Vector3(c.x - r, c.y - r, c.z - r), new Vector3(c.x + r, c.y + r, c.z + r));
+	}
+
 	public Vector3 getCenter() {
 		return c;
 	}
@@ -231,6 +231,56 @@ public class Transform implements Transformable {
 		return new Vector3(x, y, z);
 	}
 
+	/**
+	 * Transforms a direction {@link Vector3} using this matrix. Unlike
+	 * {@link #getTransformed(Vector3)}, the translation is ignored. This method
+	 * does not affect the {@link Vector3} passed.
+	 *
+	 * @param v
+	 *            The direction to transform.
+	 * @return The transformed direction.
+	 */
+	public Vector3 getTransformedDirection(Vector3 v) {
+		double x = matrix[0][0] * v.x + matrix[0][1] * v.y + matrix[0][2] * v.z;
+		double y = matrix[1][0] * v.x + matrix[1][1] * v.y + matrix[1][2] * v.z;
+		double z = matrix[2][0] * v.x + matrix[2][1] * v.y + matrix[2][2] * v.z;
+		return new Vector3(x, y, z);
+	}
+
+	/**
+	 * Creates the inverse of this matrix. Transforming a {@link Vector3} by a
+	 * matrix and then by its inverse results in the original {@link Vector3}.
+	 * Used for bringing world space {@link Ray}s into an object's local space.
+	 * Assumes the bottom row of the matrix is <code>0 0 0 1</code>, which is
+	 * true for every matrix built from translations and rotations.
+	 *
+	 * @return The inverse matrix.
+	 */
+	public Transform getInverse() {
+		double[][] m = matrix;
+		// inverse of the upper left 3x3 block using the adjugate
+		double c00 = m[1][1] * m[2][2] - m[1][2] * m[2][1];
+		double c01 = m[0][2] * m[2][1] - m[0][1] * m[2][2];
+		double c02 = m[0][1] * m[1][2] - m[0][2] * m[1][1];
+		double c10 = m[1][2] * m[2][0] - m[1][0] * m[2][2];
+		double c11 = m[0][0] * m[2][2] - m[0][2] * m[2][0];
+		double c12 = m[0][2] * m[1][0] - m[0][0] * m[1][2];
+		double c20 = m[1][0] * m[2][1] - m[1][1] * m[2][0];
+		double c21 = m[0][1] * m[2][0] - m[0][0] * m[2][1];
+		double c22 = m[0][0] * m[1][1] - m[0][1] * m[1][0];
+		double det = m[0][0] * c00 + m[0][1] * c10 + m[0][2] * c20;
+		if (det == 0.0)
+			throw new IllegalStateException("Transformation matrix is not invertible");
+		double inv = 1.0 / det;
+		double[][] r = { { c00 * inv, c01 * inv, c02 * inv, 0.0 }, { c10 * inv, c11 * inv, c12 * inv, 0.0 },
+				{ c20 * inv, c21 * inv, c22 * inv, 0.0 }, { 0.0, 0.0, 0.0, 1.0 } };
+		// the inverse translation is the original translation run backwards
+		for (int row = 0; row < 3; row++) {
+			r[row][3] = -(r[row][0] * m[0][3] + r[row][1] * m[1][3] + r[row][2] * m[2][3]);
+		}
+		return new Transform(r);
+	}
+
 	/**
 	 * Multiplies two transformation matrices and stores the value in the
 	 * left-hand matrix.<br/><br/> i.e:</br> <code>A :=AxB</code>
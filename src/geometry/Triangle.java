@@ -15,7 +15,7 @@ public class Triangle implements Primitive {
 		this.v1 = p;
 		this.v2 = q;
 		this.v3 = t;
-		this.n = q.getSubtract(q).cross(t.getSubtract(p));
+		this.n = q.getSubtract(p).cross(t.getSubtract(p)).nor();
 	}
 
 	public void translate(Vector3 v) {
@@ -46,57 +46,153 @@ public class Triangle implements Primitive {
 		this.v3 = transform.getTransformed(v3);
 	}
 
+	/**
+	 * 
+	 * @return the smallest {@link BoundingBox} containing the Triangle
+	 */
+	public BoundingBox getBounds() {
+		return new BoundingBox().expand(v1).expand(v2).expand(v3);
+	}
+
 	public boolean contains(Vector3 v) {
 		return false;
 	}
 
 	public Intersection intersects(Ray r) {
-		System.out.println("r: "+r);
-		System.out.println("v1: "+v1);
-		System.out.println("v2: "+v2);
-		System.out.println("v3: "+v3);
-		
-		Vector3 e1 = v2.clone().sub(v1);
-		Vector3 e2 = v3.clone().sub(v1);
-		
-		System.out.println("e1: "+e1+" v2 - v1");
-		System.out.println("e2: "+e2+" v3 - v1");
-		Vector3 p = r.getDir().cross(e2);
-		System.out.println("pvec: "+p+" d x e2");
-		double det = e1.dot(p);
-		
-		System.out.println("det: "+det+" e1 * p");
-		if (Epsilon.nearlyEquals(det, 0.0))
+		HitRecord hit = HIT.get();
+		hit.reset(Double.POSITIVE_INFINITY);
+		Vector3 o = r.getOrigin();
+		Vector3 d = r.getDir();
+		if (!intersect(o.x, o.y, o.z, d.x, d.y, d.z, v1.x, v1.y, v1.z, v2.x, v2.y, v2.z, v3.x, v3.y, v3.z, 0.0,
+				Double.POSITIVE_INFINITY, hit))
 			return new Intersection();
+		return new Intersection(r.pointOnRay(hit.t), n, 0, hit.u, hit.v);
+	}
+
+	/**
+	 * Finds where a {@link Ray} hits the Triangle, if it is between
+	 * <b>tMin</b> and <b>tMax</b>. Doesn't allocate anything.
+	 * 
+	 * @param r
+	 *            The {@link Ray} to test
+	 * @param tMin
+	 *            Hits closer than this are ignored
+	 * @param tMax
+	 *            Hits farther than this are ignored
+	 * @param hit
+	 *            Receives the distance and barycentric coordinates of the hit.
+	 *            Left untouched on a miss.
+	 * @return the distance to the hit, or {@link Double#POSITIVE_INFINITY}
+	 */
+	public double intersect(Ray r, double tMin, double tMax, HitRecord hit) {
+		HitRecord scratch = HIT.get();
+		scratch.reset(tMax);
+		Vector3 o = r.getOrigin();
+		Vector3 d = r.getDir();
+		if (!intersect(o.x, o.y, o.z, d.x, d.y, d.z, v1.x, v1.y, v1.z, v2.x, v2.y, v2.z, v3.x, v3.y, v3.z, tMin,
+				tMax, scratch))
+			return Double.POSITIVE_INFINITY;
+		hit.t = scratch.t;
+		hit.u = scratch.u;
+		hit.v = scratch.v;
+		hit.primitive = 0;
+		return hit.t;
+	}
+
+	/**
+	 * Finds the point and normal of a hit found by
+	 * {@link #intersect(Ray, double, double, HitRecord)}.
+	 */
+	public Intersection getSurface(Ray r, HitRecord hit) {
+		return new Intersection(r.pointOnRay(hit.t), n, 0, hit.u, hit.v);
+	}
 
+	/**
+	 * Checks if the Triangle is hit between <b>tMin</b> and <b>tMax</b> along a
+	 * {@link Ray}. Doesn't allocate anything.
+	 * 
+	 * @param r
+	 *            The {@link Ray} to test
+	 * @param tMin
+	 *            Hits closer than this are ignored
+	 * @param tMax
+	 *            Hits farther than this are ignored
+	 * @return <code>true</code> if the hit is in range
+	 */
+	public boolean occludes(Ray r, double tMin, double tMax) {
+		HitRecord hit = HIT.get();
+		hit.reset(tMax);
+		Vector3 o = r.getOrigin();
+		Vector3 d = r.getDir();
+		return intersect(o.x, o.y, o.z, d.x, d.y, d.z, v1.x, v1.y, v1.z, v2.x, v2.y, v2.z, v3.x, v3.y, v3.z, tMin,
+				tMax, hit);
+	}
+
+	/** Reused by {@link #intersects(Ray)} so the kernel doesn't allocate */
+	private static final ThreadLocal<HitRecord> HIT = ThreadLocal.withInitial(HitRecord::new);
+
+	/**
+	 * Moller-Trumbore ray-triangle intersection on raw coordinates. Nothing is
+	 * allocated; the result is written to a {@link HitRecord} instead. The
+	 * ray's direction does not have to be normalized.
+	 * 
+	 * @param ox
+	 *            Ray origin (x, y, z)
+	 * @param dx
+	 *            Ray direction (x, y, z)
+	 * @param ax
+	 *            First vertex of the triangle (x, y, z)
+	 * @param bx
+	 *            Second vertex of the triangle (x, y, z)
+	 * @param cx
+	 *            Third vertex of the triangle (x, y, z)
+	 * @param tMin
+	 *            Hits at or before this distance are ignored
+	 * @param tMax
+	 *            Hits at or after this distance are ignored
+	 * @param hit
+	 *            Receives the distance and barycentric coordinates (u is the
+	 *            weight of the second vertex, v of the third) when there is a
+	 *            hit. Left untouched otherwise.
+	 * @return <code>true</code> if the ray hits the triangle between
+	 *         <b>tMin</b> and <b>tMax</b>
+	 */
+	public static boolean intersect(double ox, double oy, double oz, double dx, double dy, double dz, double ax,
+			double ay, double az, double bx, double by, double bz, double cx, double cy, double cz, double tMin,
+			double tMax, HitRecord hit) {
+		double e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+		double e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+
+		// p = d x e2
+		double px = dy * e2z - dz * e2y;
+		double py = dz * e2x - dx * e2z;
+		double pz = dx * e2y - dy * e2x;
+		double det = e1x * px + e1y * py + e1z * pz;
+		if (Epsilon.nearlyEquals(det, 0.0))
+			return false;
 		double invDet = 1.0 / det;
-		
-		System.out.println("invDet: "+ invDet+ "1/det");
-		
-		Vector3 t = r.getOrigin().clone().sub(v1);
-
-		System.out.println("tvec: "+t+" o - v1");
-		
-		double u = t.dot(p) * invDet;
-		
-		System.out.println("u: "+u+" (t * p)*invDet");
-		if (u < 0.0 || u > 1.0)
-			return new Intersection();
-		Vector3 q = t.cross(e1);
-		
-		System.out.println("q: "+q+"t x e1");
-		double v = r.getDir().dot(q) * invDet;
-		
-		System.out.println("v: "+v+" (d * q) * invDet");
-		if (v < 0.0 || v > 1.0)
-			return new Intersection();
-		double T = e2.dot(q) * invDet;
-		
-		System.out.println("T: "+T+" (e1 * q) * invDet");
-		if (T < 0.0)
-			return new Intersection();
 
-		return new Intersection(true, r.pointOnRay(T), n);
+		double tx = ox - ax, ty = oy - ay, tz = oz - az;
+		double u = (tx * px + ty * py + tz * pz) * invDet;
+		if (u < 0.0 || u > 1.0)
+			return false;
+
+		// q = t x e1
+		double qx = ty * e1z - tz * e1y;
+		double qy = tz * e1x - tx * e1z;
+		double qz = tx * e1y - ty * e1x;
+		double v = (dx * qx + dy * qy + dz * qz) * invDet;
+		if (v < 0.0 || u + v > 1.0)
+			return false;
+
+		double t = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+		if (t <= tMin || t >= tMax)
+			return false;
+
+		hit.t = t;
+		hit.u = u;
+		hit.v = v;
+		return true;
 	}
 
 	public Vector3 getNormal(Vector3 p) {
@@ -0,0 +1,79 @@
+package geometry;
+
+/**
+ * Triangles stored as a structure of arrays, ready for a
+ * {@link TriangleKernel} to test several of them at once. Each triangle is
+ * kept as its first vertex and its two edges from that vertex, which is the
+ * form the Moller-Trumbore test works on. Triangles are stored in the order
+ * they are given (usually the leaf order of a {@link accel.BVH}, so a leaf's
+ * triangles are next to each other), and every array is padded with
+ * degenerate triangles so kernels can read a full vector past the last one.
+ * This class is effectively a struct.
+ *
+ * @author Don Isaac
+ *
+ */
+public class TriangleBlock {
+	/**
+	 * Number of degenerate triangles added after the last one. Enough for
+	 * vectors of up to 16 lanes.
+	 */
+	public static final int PADDING = 16;
+
+	/** First vertex of each triangle */
+	public final double[] ax, ay, az;
+	/** Edge from the first to the second vertex of each triangle */
+	public final double[] e1x, e1y, e1z;
+	/** Edge from the first to the third vertex of each triangle */
+	public final double[] e2x, e2y, e2z;
+	private final int size;
+
+	/**
+	 * Builds a block from indexed triangles.
+	 *
+	 * @param positions
+	 *            Vertex positions; 3 values per vertex
+	 * @param indices
+	 *            Vertex indices; 3 values per triangle
+	 * @param order
+	 *            The triangles to store, in the order to store them in
+	 */
+	public TriangleBlock(float[] positions, int[] indices, int[] order) {
+		this.size = order.length;
+		int length = size + PADDING;
+		ax = new double[length];
+		ay = new double[length];
+		az = new double[length];
+		e1x = new double[length];
+		e1y = new double[length];
+		e1z = new double[length];
+		e2x = new double[length];
+		e2y = new double[length];
+		e2z = new double[length];
+		for (int i = 0; i < size; i++) {
+			int face = order[i];
+			int a = indices[face * 3] * 3;
+			int b = indices[face * 3 + 1] * 3;
+			int c = indices[face * 3 + 2] * 3;
+			// same arithmetic as Triangle.intersect, so results match exactly
+			double x = positions[a], y = positions[a + 1], z = positions[a + 2];
+			ax[i] = x;
+			ay[i] = y;
+			az[i] = z;
+			e1x[i] = positions[b] - x;
+			e1y[i] = positions[b + 1] - y;
+			e1z[i] = positions[b + 2] - z;
+			e2x[i] = positions[c] - x;
+			e2y[i] = positions[c + 1] - y;
+			e2z[i] = positions[c + 2] - z;
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of triangles, not counting the padding
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,90 @@
+package geometry;
+
+/**
+ * Tests one ray against a run of triangles in a {@link TriangleBlock} at once,
+ * using the CPU's vector units. The kernel is built on the
+ * <code>jdk.incubator.vector</code> module, which needs Java 16 or newer and
+ * has to be enabled with <code>--add-modules jdk.incubator.vector</code>, so
+ * it lives in the <code>src-vector</code> source folder and is loaded by name.
+ * When it can't be loaded, {@link #getVectorized()} returns <code>null</code>
+ * and callers keep using the scalar {@link Triangle#intersect} test.<br/>
+ * <br/>
+ * Setting the system property <code>raytracer.vector</code> to
+ * <code>false</code> turns the kernel off even when it is available.
+ *
+ * @author Don Isaac
+ *
+ */
+public abstract class TriangleKernel {
+	/** Name of the system property that can turn the kernel off */
+	public static final String PROPERTY = "raytracer.vector";
+	private static final String VECTOR_KERNEL = "geometry.VectorTriangleKernel";
+	private static final TriangleKernel VECTORIZED = load();
+
+	private static TriangleKernel load() {
+		if ("false".equalsIgnoreCase(System.getProperty(PROPERTY)))
+			return null;
+		try {
+			return (TriangleKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+			// not compiled in, running on an old JVM, module not enabled, or
+			// no vector units worth using
+			return null;
+		}
+	}
+
+	/**
+	 *
+	 * @return the vectorized kernel, or <code>null</code> if it is unavailable
+	 *         or turned off
+	 */
+	public static TriangleKernel getVectorized() {
+		return VECTORIZED;
+	}
+
+	/**
+	 *
+	 * @return the number of triangles a {@link accel.BVH} leaf should be
+	 *         allowed to hold for the price of one: the vectorized kernel's
+	 *         width, or 1 if it isn't available
+	 */
+	public static int getLeafWidth() {
+		return VECTORIZED == null ? 1 : VECTORIZED.getWidth();
+	}
+
+	/**
+	 *
+	 * @return the number of triangles tested at once
+	 */
+	public abstract int getWidth();
+
+	/**
+	 * Finds the closest triangle a ray hits among a run of triangles. Gives the
+	 * same result as testing the triangles one by one with
+	 * {@link Triangle#intersect}, in order.
+	 *
+	 * @param block
+	 *            The triangles
+	 * @param first
+	 *            Index of the first triangle to test
+	 * @param count
+	 *            Number of triangles to test
+	 * @param ox
+	 *            Ray origin (x, y, z)
+	 * @param dx
+	 *            Ray direction (x, y, z)
+	 * @param tMin
+	 *            Hits at or before this distance are ignored
+	 * @param tMax
+	 *            Hits at or after this distance are ignored
+	 * @param anyHit
+	 *            If <code>true</code>, the first triangle hit is returned
+	 *            instead of the closest one
+	 * @param hit
+	 *            Receives the distance and barycentric coordinates of the hit.
+	 *            Left untouched if nothing is hit.
+	 * @return the index of the triangle that was hit, or -1
+	 */
+	public abstract int intersect(TriangleBlock block, int first, int count, double ox, double oy, double oz,
+			double dx, double dy, double dz, double tMin, double tMax, boolean anyHit, HitRecord hit);
+}
@@ -57,7 +57,7 @@ public class Vector3 {
 		double dx = this.x - v.x;
 		double dy = this.y - v.y;
 		double dz = this.z - v.z;
-		return Math.sqrt(dx * dx + dy + dy + dz * dz);
+		return Math.sqrt(dx * dx + dy * dy + dz * dz);
 	}
 
 	public double dot(Vector3 v) {
@@ -5,7 +5,7 @@ import java.awt.Color;
 public class DefaultMaterial implements Material{
 	private Color c;
 	private double a,ks,kd;
-	//TODO opacity/snell's law, reflectiveness (not phong)
+	private double reflectivity,transparency,ior=1;
 	
 	public DefaultMaterial(Color color, double alpha, double specularCoefficent, double diffuseCoefficent){
 		this.c=color;
@@ -13,6 +13,18 @@ public class DefaultMaterial implements Material{
 		this.ks=specularCoefficent;
 		this.kd=diffuseCoefficent;
 	}
+	/**
+	 * A material for mirrors and glass. The reflectivity and transparency
+	 * should add up to at most 1; the rest of the light is shaded like the
+	 * other constructor's materials.
+	 */
+	public DefaultMaterial(Color color, double alpha, double specularCoefficent, double diffuseCoefficent,
+			double reflectivity, double transparency, double refractiveIndex){
+		this(color,alpha,specularCoefficent,diffuseCoefficent);
+		this.reflectivity=reflectivity;
+		this.transparency=transparency;
+		this.ior=refractiveIndex;
+	}
 	public Color getColor() {
 		return c;
 	}
@@ -26,9 +38,44 @@ public class DefaultMaterial implements Material{
 	public double Kd(){
 		return kd;
 	}
+	public double getReflectivity(){
+		return reflectivity;
+	}
+	public double getTransparency(){
+		return transparency;
+	}
+	public double getRefractiveIndex(){
+		return ior;
+	}
+	/*
+	 * Setters for tweaking a material between renders, e.g. when reshading a
+	 * render.GBuffer. Materials are shared between objects, so every object
+	 * using this one changes.
+	 */
+	public void setColor(Color color){
+		this.c=color;
+	}
+	public void setAlpha(double alpha){
+		this.a=alpha;
+	}
+	public void setKs(double specularCoefficent){
+		this.ks=specularCoefficent;
+	}
+	public void setKd(double diffuseCoefficent){
+		this.kd=diffuseCoefficent;
+	}
+	public void setReflectivity(double reflectivity){
+		this.reflectivity=reflectivity;
+	}
+	public void setTransparency(double transparency){
+		this.transparency=transparency;
+	}
+	public void setRefractiveIndex(double refractiveIndex){
+		this.ior=refractiveIndex;
+	}
 	@Override
 	public DefaultMaterial clone(){
-		return new DefaultMaterial(c,a,ks,kd);
+		return new DefaultMaterial(c,a,ks,kd,reflectivity,transparency,ior);
 	}
 
 }
@@ -26,5 +26,22 @@ public interface Material {
 	 * @return Diffuse coefficient
 	 */
 	public double Kd();
+	/**
+	 * 
+	 * @return Fraction of the light a mirror would reflect, from 0 to 1. Only
+	 *         used by strategies that trace reflections.
+	 */
+	public double getReflectivity();
+	/**
+	 * 
+	 * @return Fraction of the light let through the surface, from 0 to 1.
+	 *         Only used by strategies that trace refractions.
+	 */
+	public double getTransparency();
+	/**
+	 * 
+	 * @return Index of refraction of the material behind the surface
+	 */
+	public double getRefractiveIndex();
 	public Material clone();
 }
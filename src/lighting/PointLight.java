@@ -32,6 +32,12 @@ public class PointLight implements Light{
 	public void setPos(Vector3 newPos){
 		this.pos=newPos.clone();
 	}
+	public void setColor(Color color){
+		this.c=color;
+	}
+	public void setIntensity(double intensity){
+		this.i=intensity;
+	}
 	
 	private double clamp(double num, double min, double max) {
 		if (num < min)
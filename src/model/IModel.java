@@ -1,10 +1,13 @@
 package model;
 
+import geometry.BoundingBox;
+import geometry.HitRecord;
 import geometry.Intersection;
 import geometry.Ray;
 import geometry.Vector3;
 import lighting.Renderable;
 import render.Camera;
+import scene.Scene;
 /**
  * Represents a 3D model that can be rendered by a {@link Camera}.
  * @author Donny
@@ -12,5 +15,61 @@ import render.Camera;
  */
 public interface IModel extends Renderable{
 	public Intersection intersects(Ray r);
+	/**
+	 * Finds the closest point where a {@link Ray} hits the model between
+	 * <b>tMin</b> and <b>tMax</b>. Only the distance along the ray and the part
+	 * of the model that was hit are found; the hit point and normal are left to
+	 * {@link #getSurface}, so that when many models are tested only the
+	 * closest hit pays for them. Passing the closest hit so far as <b>tMax</b>
+	 * lets the model give up early.
+	 * 
+	 * @param r
+	 *            The {@link Ray} to test
+	 * @param tMin
+	 *            Hits closer than this along the ray are ignored
+	 * @param tMax
+	 *            Hits farther than this along the ray are ignored
+	 * @param hit
+	 *            Receives the hit's distance, primitive and barycentric
+	 *            coordinates. Left untouched if nothing is hit.
+	 * @return the distance along the ray to the hit, or
+	 *         {@link Double#POSITIVE_INFINITY} if nothing is hit in range
+	 */
+	public double intersect(Ray r, double tMin, double tMax, HitRecord hit);
+	/**
+	 * Finds the point and surface normal of a hit found by
+	 * {@link #intersect(Ray, double, double, HitRecord)}.
+	 * 
+	 * @param r
+	 *            The {@link Ray} that hit the model
+	 * @param hit
+	 *            The hit
+	 * @return the hit's point and normal in world space
+	 */
+	public Intersection getSurface(Ray r, HitRecord hit);
+	/**
+	 * Gets the world space bounds of the model. Used by the {@link Scene}'s
+	 * acceleration structure to skip models a {@link Ray} cannot hit.
+	 * 
+	 * @return the model's {@link BoundingBox}, or <code>null</code> if the
+	 *         model is infinitely large (e.g. a plane)
+	 */
+	public BoundingBox getBounds();
+	/**
+	 * Checks if the model blocks part of a {@link Ray}. This is cheaper than
+	 * {@link #intersects(Ray)}: any hit in range is good enough, so the search
+	 * can stop at the first one, and nothing about the hit is computed.
+	 * Used for shadow rays.
+	 * 
+	 * @param r
+	 *            The {@link Ray} to test
+	 * @param tMin
+	 *            Hits closer than this along the ray are ignored
+	 * @param tMax
+	 *            Hits farther than this along the ray are ignored
+	 * @return <code>true</code> if the model is hit between <b>tMin</b> and
+	 *         <b>tMax</b>
+	 */
+	public boolean occludes(Ray r, double tMin, double tMax);
 	public IModel clone();
 }
@@ -0,0 +1,426 @@
+package model;
+
+import java.util.Arrays;
+
+import geometry.BoundingBox;
+import geometry.Vector3;
+
+/**
+ * Compact, immutable triangle mesh. Geometry is stored as a structure of
+ * arrays instead of as objects: positions and normals are packed into
+ * <code>float[]</code>s (x, y, z for each one, one after the other), and each
+ * triangle is three <code>int</code> indices into each of them. A triangle
+ * costs 36 bytes of vertex, normal and texture coordinate indices plus its
+ * share of the vertices, or 24 bytes if the mesh has no texture coordinates,
+ * since their indices are then left out. Meshes with millions of triangles fit
+ * in memory, and intersection loops read sequential memory instead of chasing
+ * pointers.<br/>
+ * <br/>
+ * Meshes are created with a {@link Builder} or loaded with an
+ * {@link ObjParser}. Since they never change once built, any number of
+ * {@link ModelInstance}s can share the same Mesh.
+ *
+ * @author Don Isaac
+ *
+ */
+public class Mesh {
+	/** Texture coordinate indices of every mesh without texture coordinates */
+	static final int[] NO_INDICES = new int[0];
+
+	/** x, y, z of each vertex */
+	private final float[] positions;
+	/** x, y, z of each normal. Normals are unit length. */
+	private final float[] normals;
+	/** 3 vertex indices per triangle, 0 based */
+	private final int[] vertexIndices;
+	/**
+	 * 3 normal indices per triangle, 0 based. Triangles without normals use -1
+	 * and fall back to their geometric normal.
+	 */
+	private final int[] normalIndices;
+	/** u, v of each texture coordinate */
+	private final float[] texcoords;
+	/**
+	 * 3 texture coordinate indices per triangle, 0 based, or -1 for none.
+	 * Empty if the mesh has no texture coordinates.
+	 */
+	private final int[] texcoordIndices;
+
+	/**
+	 * Wraps already packed arrays. The arrays are not copied or checked, so
+	 * callers must make sure every index is in range. Without texture
+	 * coordinates, the texture coordinate indices are dropped, so callers can
+	 * pass {@link #NO_INDICES} instead of allocating them.
+	 */
+	Mesh(float[] positions, float[] normals, float[] texcoords, int[] vertexIndices, int[] normalIndices,
+			int[] texcoordIndices) {
+		this.positions = positions;
+		this.normals = normals;
+		this.texcoords = texcoords;
+		this.vertexIndices = vertexIndices;
+		this.normalIndices = normalIndices;
+		this.texcoordIndices = texcoords.length == 0 ? NO_INDICES : texcoordIndices;
+	}
+
+	public int getVertexCount() {
+		return positions.length / 3;
+	}
+
+	public int getNormalCount() {
+		return normals.length / 3;
+	}
+
+	public int getTriangleCount() {
+		return vertexIndices.length / 3;
+	}
+
+	public int getTexcoordCount() {
+		return texcoords.length / 2;
+	}
+
+	/**
+	 *
+	 * @return the packed vertex positions. Do not modify.
+	 */
+	public float[] getPositions() {
+		return positions;
+	}
+
+	/**
+	 *
+	 * @return the packed vertex normals. Do not modify.
+	 */
+	public float[] getNormals() {
+		return normals;
+	}
+
+	/**
+	 *
+	 * @return the vertex indices, 3 per triangle. Do not modify.
+	 */
+	public int[] getVertexIndices() {
+		return vertexIndices;
+	}
+
+	/**
+	 *
+	 * @return the normal indices, 3 per triangle. Do not modify.
+	 */
+	public int[] getNormalIndices() {
+		return normalIndices;
+	}
+
+	/**
+	 *
+	 * @return the packed texture coordinates, u then v. Do not modify.
+	 */
+	public float[] getTexcoords() {
+		return texcoords;
+	}
+
+	/**
+	 *
+	 * @return the texture coordinate indices, 3 per triangle, or an empty
+	 *         array if the mesh has no texture coordinates. Do not modify.
+	 */
+	public int[] getTexcoordIndices() {
+		return texcoordIndices;
+	}
+
+	/**
+	 * Gets the bounds of every triangle, in the layout {@link accel.BVH}
+	 * expects.
+	 *
+	 * @return 6 doubles per triangle: min x, y, z then max x, y, z
+	 */
+	public double[] getTriangleBounds() {
+		int count = getTriangleCount();
+		double[] bounds = new double[count * 6];
+		for (int i = 0; i < count; i++) {
+			int a = vertexIndices[i * 3] * 3;
+			int b = vertexIndices[i * 3 + 1] * 3;
+			int c = vertexIndices[i * 3 + 2] * 3;
+			for (int axis = 0; axis < 3; axis++) {
+				float pa = positions[a + axis], pb = positions[b + axis], pc = positions[c + axis];
+				bounds[i * 6 + axis] = Math.min(pa, Math.min(pb, pc));
+				bounds[i * 6 + 3 + axis] = Math.max(pa, Math.max(pb, pc));
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 *
+	 * @return the bounds of every vertex in the mesh
+	 */
+	public BoundingBox getBounds() {
+		BoundingBox b = new BoundingBox();
+		for (int i = 0; i < positions.length; i += 3)
+			b.expand(positions[i], positions[i + 1], positions[i + 2]);
+		return b;
+	}
+
+	/**
+	 *
+	 * @return the distance from the origin to the farthest vertex
+	 */
+	public double getRadius() {
+		double r2 = 0.0;
+		for (int i = 0; i < positions.length; i += 3) {
+			double x = positions[i], y = positions[i + 1], z = positions[i + 2];
+			r2 = Math.max(r2, x * x + y * y + z * z);
+		}
+		return Math.sqrt(r2);
+	}
+
+	/**
+	 * Gets the normal of a point on a triangle. If the triangle has vertex
+	 * normals they are interpolated (Phong shading), otherwise the triangle's
+	 * geometric normal is used.
+	 *
+	 * @param triangle
+	 *            Index of the triangle
+	 * @param u
+	 *            Barycentric weight of the second vertex
+	 * @param v
+	 *            Barycentric weight of the third vertex
+	 * @return the unit normal, in the mesh's space
+	 */
+	public Vector3 getNormal(int triangle, double u, double v) {
+		int i = triangle * 3;
+		int na = normalIndices[i], nb = normalIndices[i + 1], nc = normalIndices[i + 2];
+		if (na < 0 || nb < 0 || nc < 0)
+			return getFaceNormal(triangle);
+		na *= 3;
+		nb *= 3;
+		nc *= 3;
+		double t = 1.0 - u - v;
+		// Np = t*n1 + u*n2 + v*n3
+		return new Vector3(t * normals[na] + u * normals[nb] + v * normals[nc],
+				t * normals[na + 1] + u * normals[nb + 1] + v * normals[nc + 1],
+				t * normals[na + 2] + u * normals[nb + 2] + v * normals[nc + 2]).nor();
+	}
+
+	/**
+	 * Gets the geometric normal of a triangle. Vertices are assumed to be in
+	 * counter clockwise order.
+	 *
+	 * @param triangle
+	 *            Index of the triangle
+	 * @return the unit normal, in the mesh's space
+	 */
+	public Vector3 getFaceNormal(int triangle) {
+		int a = vertexIndices[triangle * 3] * 3;
+		int b = vertexIndices[triangle * 3 + 1] * 3;
+		int c = vertexIndices[triangle * 3 + 2] * 3;
+		double e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1],
+				e1z = positions[b + 2] - positions[a + 2];
+		double e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1],
+				e2z = positions[c + 2] - positions[a + 2];
+		return new Vector3(e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x).nor();
+	}
+
+	@Override
+	public String toString() {
+		return "verticies: " + getVertexCount() + " normals: " + getNormalCount() + " texcoords: "
+				+ getTexcoordCount() + " triangles: " + getTriangleCount();
+	}
+
+	/**
+	 * Collects vertices, normals and triangles into growable primitive arrays,
+	 * then packs them into a {@link Mesh}.
+	 *
+	 * @author Don Isaac
+	 *
+	 */
+	public static class Builder {
+		private float[] positions;
+		private float[] normals;
+		private float[] texcoords;
+		private int[] vertexIndices;
+		private int[] normalIndices;
+		/** Empty until a triangle with texture coordinates is added */
+		private int[] texcoordIndices = NO_INDICES;
+		private int positionSize, normalSize, texcoordSize, indexSize;
+
+		public Builder() {
+			this(64, 64);
+		}
+
+		/**
+		 * Creates a Builder with room for a number of vertices and triangles.
+		 * Both grow as needed.
+		 *
+		 * @param vertexCapacity
+		 *            Expected number of vertices (and normals)
+		 * @param triangleCapacity
+		 *            Expected number of triangles
+		 */
+		public Builder(int vertexCapacity, int triangleCapacity) {
+			positions = new float[Math.max(1, vertexCapacity) * 3];
+			normals = new float[Math.max(1, vertexCapacity) * 3];
+			texcoords = new float[2];
+			vertexIndices = new int[Math.max(1, triangleCapacity) * 3];
+			normalIndices = new int[Math.max(1, triangleCapacity) * 3];
+		}
+
+		/**
+		 * Adds a vertex.
+		 *
+		 * @return the index of the vertex
+		 */
+		public int addVertex(double x, double y, double z) {
+			positions = ensureCapacity(positions, positionSize + 3);
+			positions[positionSize++] = (float) x;
+			positions[positionSize++] = (float) y;
+			positions[positionSize++] = (float) z;
+			return positionSize / 3 - 1;
+		}
+
+		/**
+		 * Adds a normal. Normals are normalized as they are added.
+		 *
+		 * @return the index of the normal
+		 */
+		public int addNormal(double x, double y, double z) {
+			double len = Math.sqrt(x * x + y * y + z * z);
+			if (len > 0.0) {
+				x /= len;
+				y /= len;
+				z /= len;
+			}
+			normals = ensureCapacity(normals, normalSize + 3);
+			normals[normalSize++] = (float) x;
+			normals[normalSize++] = (float) y;
+			normals[normalSize++] = (float) z;
+			return normalSize / 3 - 1;
+		}
+
+		/**
+		 * Adds a texture coordinate.
+		 *
+		 * @return the index of the texture coordinate
+		 */
+		public int addTexcoord(double u, double v) {
+			texcoords = ensureCapacity(texcoords, texcoordSize + 2);
+			texcoords[texcoordSize++] = (float) u;
+			texcoords[texcoordSize++] = (float) v;
+			return texcoordSize / 2 - 1;
+		}
+
+		/**
+		 * Adds a triangle without vertex normals.
+		 *
+		 * @param a
+		 *            Index of the first vertex
+		 * @param b
+		 *            Index of the second vertex
+		 * @param c
+		 *            Index of the third vertex
+		 * @return this Builder, for chaining
+		 */
+		public Builder addTriangle(int a, int b, int c) {
+			return addTriangle(a, b, c, -1, -1, -1);
+		}
+
+		/**
+		 * Adds a triangle. Indices are 0 based.
+		 *
+		 * @param a
+		 *            Index of the first vertex
+		 * @param b
+		 *            Index of the second vertex
+		 * @param c
+		 *            Index of the third vertex
+		 * @param na
+		 *            Index of the first vertex's normal, or -1 for none
+		 * @param nb
+		 *            Index of the second vertex's normal, or -1 for none
+		 * @param nc
+		 *            Index of the third vertex's normal, or -1 for none
+		 * @return this Builder, for chaining
+		 */
+		public Builder addTriangle(int a, int b, int c, int na, int nb, int nc) {
+			return addTriangle(a, b, c, -1, -1, -1, na, nb, nc);
+		}
+
+		/**
+		 * Adds a triangle with texture coordinates. Indices are 0 based; use
+		 * -1 for missing texture coordinates or normals.
+		 *
+		 * @return this Builder, for chaining
+		 */
+		public Builder addTriangle(int a, int b, int c, int ta, int tb, int tc, int na, int nb, int nc) {
+			vertexIndices = ensureCapacity(vertexIndices, indexSize + 3);
+			normalIndices = ensureCapacity(normalIndices, indexSize + 3);
+			vertexIndices[indexSize] = a;
+			vertexIndices[indexSize + 1] = b;
+			vertexIndices[indexSize + 2] = c;
+			if (texcoordIndices == NO_INDICES && (ta >= 0 || tb >= 0 || tc >= 0)) {
+				// the earlier triangles had none
+				texcoordIndices = new int[vertexIndices.length];
+				Arrays.fill(texcoordIndices, 0, indexSize, -1);
+			}
+			if (texcoordIndices != NO_INDICES) {
+				texcoordIndices = ensureCapacity(texcoordIndices, indexSize + 3);
+				texcoordIndices[indexSize] = ta;
+				texcoordIndices[indexSize + 1] = tb;
+				texcoordIndices[indexSize + 2] = tc;
+			}
+			normalIndices[indexSize] = na;
+			normalIndices[indexSize + 1] = nb;
+			normalIndices[indexSize + 2] = nc;
+			indexSize += 3;
+			return this;
+		}
+
+		public int getVertexCount() {
+			return positionSize / 3;
+		}
+
+		public int getNormalCount() {
+			return normalSize / 3;
+		}
+
+		public int getTexcoordCount() {
+			return texcoordSize / 2;
+		}
+
+		public int getTriangleCount() {
+			return indexSize / 3;
+		}
+
+		/**
+		 * Packs everything added so far into a {@link Mesh}.
+		 *
+		 * @return the mesh
+		 * @throws IllegalStateException
+		 *             if a triangle refers to a vertex or normal that was never
+		 *             added
+		 */
+		public Mesh build() {
+			int vertexCount = getVertexCount(), normalCount = getNormalCount(), texcoordCount = getTexcoordCount();
+			for (int i = 0; i < indexSize; i++) {
+				if (vertexIndices[i] < 0 || vertexIndices[i] >= vertexCount)
+					throw new IllegalStateException("Triangle " + i / 3 + " refers to missing vertex " + vertexIndices[i]);
+				if (normalIndices[i] >= normalCount)
+					throw new IllegalStateException("Triangle " + i / 3 + " refers to missing normal " + normalIndices[i]);
+				if (texcoordIndices != NO_INDICES && texcoordIndices[i] >= texcoordCount)
+					throw new IllegalStateException(
+							"Triangle " + i / 3 + " refers to missing texture coordinate " + texcoordIndices[i]);
+			}
+			return new Mesh(Arrays.copyOf(positions, positionSize), Arrays.copyOf(normals, normalSize),
+					Arrays.copyOf(texcoords, texcoordSize), Arrays.copyOf(vertexIndices, indexSize),
+					Arrays.copyOf(normalIndices, indexSize),
+					texcoordIndices == NO_INDICES ? NO_INDICES : Arrays.copyOf(texcoordIndices, indexSize));
+		}
+
+		private static float[] ensureCapacity(float[] array, int size) {
+			return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+		}
+
+		private static int[] ensureCapacity(int[] array, int size) {
+			return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import accel.BVH;
+
+/**
+ * Binary cache of a parsed {@link Mesh} and its {@link BVH}, stored next to
+ * the .obj file it came from. Loading a cache is a memory map and a handful of
+ * bulk copies, so large models load in milliseconds instead of being parsed
+ * and having their hierarchy rebuilt on every run.<br/>
+ * <br/>
+ * A cache remembers the length and modification time of its source file and
+ * is ignored once either changes. A cache whose indices or hierarchy are out
+ * of range is ignored too, so a damaged cache falls back to parsing the
+ * source. The format is little endian:
+ * <ol>
+ * <li>A 64 byte header: magic number, version, source length, source
+ * modification time, then the length of every array, the BVH's depth and
+ * leaf width, and the number of texture coordinate indices</li>
+ * <li>BVH node bounds (<code>double</code>s)</li>
+ * <li>positions, normals and texture coordinates (<code>float</code>s)</li>
+ * <li>vertex, normal and texture coordinate indices, BVH node data and BVH
+ * primitives (<code>int</code>s). There are as many texture coordinate
+ * indices as vertex indices, or none if no face has texture coordinates.</li>
+ * </ol>
+ *
+ * @author Don Isaac
+ *
+ */
+public class MeshCache {
+	/** Extension added to the source file's name to get the cache's name */
+	public static final String EXTENSION = ".rtm";
+	private static final int MAGIC = 0x52544D31; // "RTM1"
+	private static final int VERSION = 4;
+	private static final int HEADER_SIZE = 64;
+
+	/**
+	 * A mesh loaded from a cache, along with its hierarchy.
+	 *
+	 * @author Don Isaac
+	 *
+	 */
+	public static class Entry {
+		public final Mesh mesh;
+		public final BVH bvh;
+
+		private Entry(Mesh mesh, BVH bvh) {
+			this.mesh = mesh;
+			this.bvh = bvh;
+		}
+	}
+
+	private MeshCache() {
+	}
+
+	/**
+	 *
+	 * @param source
+	 *            A .obj file
+	 * @return where the cache for the file is stored
+	 */
+	public static File getCacheFile(File source) {
+		return new File(source.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Loads a cache if it is up to date with its source file.
+	 *
+	 * @param cache
+	 *            The cache file
+	 * @param source
+	 *            The file the cache was made from
+	 * @return the cached mesh, or <code>null</code> if there is no cache, it
+	 *         is out of date, or it can't be read
+	 */
+	public static Entry read(File cache, File source) {
+		if (!cache.isFile() || !source.isFile())
+			return null;
+		try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_SIZE)
+				return null;
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != source.length()
+					|| buffer.getLong() != source.lastModified())
+				return null;
+
+			int positions = buffer.getInt(), normals = buffer.getInt(), texcoords = buffer.getInt();
+			int indices = buffer.getInt(), nodes = buffer.getInt(), primitives = buffer.getInt();
+			int depth = buffer.getInt(), leafWidth = buffer.getInt(), texcoordIndices = buffer.getInt();
+			long expected = HEADER_SIZE + 8L * nodes * 6 + 4L * (positions + normals + texcoords)
+					+ 4L * (2L * indices + texcoordIndices + nodes * 2 + primitives);
+			if (positions < 0 || normals < 0 || texcoords < 0 || indices < 0 || nodes < 0 || primitives < 0
+					|| primitives != indices / 3 || leafWidth < 1
+					|| (texcoordIndices != 0 && texcoordIndices != indices) || expected != size)
+				return null;
+
+			buffer.position(HEADER_SIZE);
+			double[] nodeBounds = new double[nodes * 6];
+			buffer.asDoubleBuffer().get(nodeBounds);
+			buffer.position(buffer.position() + nodeBounds.length * 8);
+			float[] p = readFloats(buffer, positions), n = readFloats(buffer, normals),
+					t = readFloats(buffer, texcoords);
+			int[] vi = readInts(buffer, indices), ni = readInts(buffer, indices),
+					ti = readInts(buffer, texcoordIndices);
+			int[] nodeData = readInts(buffer, nodes * 2), order = readInts(buffer, primitives);
+
+			if (!inRange(vi, p.length / 3, false) || !inRange(ni, n.length / 3, true)
+					|| !inRange(ti, t.length / 2, true) || !inRange(order, indices / 3, false)
+					|| !isTree(nodeData, primitives, depth))
+				return null;
+			return new Entry(new Mesh(p, n, t, vi, ni, ti), new BVH(nodeBounds, nodeData, order, depth, leafWidth));
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Ignoring unreadable mesh cache " + cache + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a cache. The cache is written to a temporary file first and then
+	 * moved into place, so a crash never leaves a half written cache behind.
+	 *
+	 * @param cache
+	 *            The cache file to write
+	 * @param source
+	 *            The file the mesh was loaded from
+	 * @param mesh
+	 *            The mesh
+	 * @param bvh
+	 *            The mesh's hierarchy
+	 * @throws IOException
+	 *             if the cache can't be written
+	 */
+	public static void write(File cache, File source, Mesh mesh, BVH bvh) throws IOException {
+		int nodes = bvh.getNodeCount();
+		File temp = new File(cache.getPath() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(source.length()).putLong(source.lastModified());
+			buffer.putInt(mesh.getPositions().length).putInt(mesh.getNormals().length)
+					.putInt(mesh.getTexcoords().length).putInt(mesh.getVertexIndices().length).putInt(nodes)
+					.putInt(bvh.getPrimitiveCount()).putInt(bvh.getDepth())
+					.putInt(bvh.getLeafWidth()).putInt(mesh.getTexcoordIndices().length);
+			buffer.position(HEADER_SIZE);
+
+			double[] nodeBounds = bvh.getNodeBounds();
+			for (int i = 0; i < nodes * 6; i++)
+				flushIfFull(channel, buffer, 8).putDouble(nodeBounds[i]);
+			writeFloats(channel, buffer, mesh.getPositions());
+			writeFloats(channel, buffer, mesh.getNormals());
+			writeFloats(channel, buffer, mesh.getTexcoords());
+			writeInts(channel, buffer, mesh.getVertexIndices(), mesh.getVertexIndices().length);
+			writeInts(channel, buffer, mesh.getNormalIndices(), mesh.getNormalIndices().length);
+			writeInts(channel, buffer, mesh.getTexcoordIndices(), mesh.getTexcoordIndices().length);
+			writeInts(channel, buffer, bvh.getNodeData(), nodes * 2);
+			writeInts(channel, buffer, bvh.getPrimitives(), bvh.getPrimitiveCount());
+			flush(channel, buffer);
+		}
+		try {
+			Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static float[] readFloats(ByteBuffer buffer, int count) {
+		float[] array = new float[count];
+		buffer.asFloatBuffer().get(array);
+		buffer.position(buffer.position() + count * 4);
+		return array;
+	}
+
+	private static int[] readInts(ByteBuffer buffer, int count) {
+		int[] array = new int[count];
+		buffer.asIntBuffer().get(array);
+		buffer.position(buffer.position() + count * 4);
+		return array;
+	}
+
+	private static boolean inRange(int[] indices, int count, boolean optional) {
+		for (int i : indices) {
+			if (i >= count || (i < 0 && !(optional && i == -1)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that a hierarchy's node data describes a tree the way
+	 * {@link BVH} lays it out: children come after their parent, in range,
+	 * and no node has two parents; every leaf's primitives are in range.
+	 * Traversal trusts all of this, and sizes its stack by the depth.
+	 *
+	 * @return <code>true</code> if the nodes form a sound tree with exactly
+	 *         <b>depth</b> levels
+	 */
+	private static boolean isTree(int[] nodeData, int primitives, int depth) {
+		int nodes = nodeData.length / 2;
+		if (nodes == 0)
+			return primitives == 0 && depth == 0;
+		boolean[] reached = new boolean[nodes];
+		int[] stack = new int[nodes], levels = new int[nodes];
+		int sp = 0, deepest = 0;
+		stack[sp] = 0;
+		levels[sp++] = 1;
+		reached[0] = true;
+		while (sp > 0) {
+			int node = stack[--sp], level = levels[sp];
+			deepest = Math.max(deepest, level);
+			int first = nodeData[node * 2], count = nodeData[node * 2 + 1];
+			if (count > 0) {
+				if (first < 0 || (long) first + count > primitives)
+					return false;
+				continue;
+			}
+			if (count < 0 || first <= node || first >= nodes - 1 || reached[first] || reached[first + 1])
+				return false;
+			reached[first] = reached[first + 1] = true;
+			stack[sp] = first;
+			levels[sp++] = level + 1;
+			stack[sp] = first + 1;
+			levels[sp++] = level + 1;
+		}
+		return deepest == depth;
+	}
+
+	private static void writeFloats(FileChannel channel, ByteBuffer buffer, float[] array) throws IOException {
+		for (float f : array)
+			flushIfFull(channel, buffer, 4).putFloat(f);
+	}
+
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] array, int count)
+			throws IOException {
+		for (int i = 0; i < count; i++)
+			flushIfFull(channel, buffer, 4).putInt(array[i]);
+	}
+
+	private static ByteBuffer flushIfFull(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+		if (buffer.remaining() < needed)
+			flush(channel, buffer);
+		return buffer;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
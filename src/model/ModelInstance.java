@@ -1,15 +1,19 @@
 package model;
 
-import java.util.ArrayList;
-
+import accel.BVH;
+import geometry.BoundingBox;
+import geometry.HitRecord;
 import geometry.Intersection;
 import geometry.Primitive;
 import geometry.Ray;
 import geometry.Sphere;
 import geometry.Transform;
+import geometry.Transformable;
+import geometry.Triangle;
+import geometry.TriangleBlock;
+import geometry.TriangleKernel;
 import geometry.Vector3;
 import lighting.Material;
-import tools.Epsilon;
 
 /**
  * Re
@@ -17,94 +21,251 @@ import tools.Epsilon;
  * @author Donny
  *
  */
-public class ModelInstance implements IModel {
+public class ModelInstance implements IModel, Transformable {
 
 	public ModelInstance() {
 		
 	}
 
+	/**
+	 * Creates an untransformed instance of a {@link Mesh}.
+	 * 
+	 * @param mesh
+	 *            The geometry. It is shared, not copied.
+	 * @param material
+	 *            The material to render the model with
+	 */
+	public ModelInstance(Mesh mesh, Material material) {
+		this(mesh, null, material);
+	}
+
+	/**
+	 * Creates an untransformed instance of a {@link Mesh} whose {@link BVH}
+	 * was already built.
+	 * 
+	 * @param mesh
+	 *            The geometry. It is shared, not copied.
+	 * @param bvh
+	 *            Hierarchy over the mesh's triangles, or <code>null</code> to
+	 *            build one
+	 * @param material
+	 *            The material to render the model with
+	 */
+	public ModelInstance(Mesh mesh, BVH bvh, Material material) {
+		this.mesh = mesh;
+		this.bvh = bvh;
+		this.mat = material;
+		this.boundingSphere = new Sphere(Vector3.ZERO.clone(), mesh.getRadius());
+		this.matrix = Transform.getIdentityInstance();
+		if (bvh == null)
+			buildBVH();
+		updateTransformCache();
+	}
+
 	protected Material mat;
-	protected ArrayList<Vector3> verticies = new ArrayList<Vector3>();
-	protected ArrayList<Vector3> normals = new ArrayList<Vector3>();
-	protected ArrayList<Face> faces = new ArrayList<Face>();
+	/** The model's geometry, in local space. Shared between clones. */
+	protected Mesh mesh;
 
 	protected Transform matrix;
 	public Sphere boundingSphere;
+	/**
+	 * Hits closer than this are ignored. Without it, rays that start on the
+	 * model's surface (like shadow rays) would hit the face they started on.
+	 */
+	private static final double SELF_INTERSECTION_EPSILON = 1e-6;
+	/** Acceleration structure over the faces, in local space */
+	protected BVH bvh;
+	/**
+	 * Top three rows of the inverse of {@link #matrix}, row by row. Cached so
+	 * that bringing a ray into local space costs a handful of multiplies and
+	 * no allocations. Replaced (never modified) whenever the model moves.
+	 */
+	private double[] toLocal;
+	/** World space bounds, cached alongside {@link #toLocal} */
+	private BoundingBox worldBounds;
+	/**
+	 * The faces in the {@link BVH}'s leaf order, for the vector kernel. Only
+	 * built when the kernel is available. Shared between clones.
+	 */
+	private TriangleBlock triangles;
+	/** Tests the faces of a leaf all at once, or null to test them one by one */
+	private static final TriangleKernel KERNEL = TriangleKernel.getVectorized();
 
 	public Material getMaterial() {
 		return mat;
 	}
 
 	public Intersection intersects(Ray r) {
-		/*
-		 * There was a problem with the intersection algorithm that caused it to
-		 * load the expected triangle, plus another one attached to it. I
-		 * noticed that when you rotated the points used in the algorithm (v1
-		 * becomes v2, v2 becomes v3, v3 becomes v1), it did the same thing,
-		 * except that the attached triangle was attached in a different place.
-		 * Because of this, instead of finding a proper fix, I decided to run
-		 * the intersection algorithm twice, once with v1, v2, v3 and once with
-		 * v2, v3, v1. This way, if it only hits once, I know that there was an
-		 * intersection with the extranious triangle and not an actual hit.
-		 * WOOOO lazy solutions!
-		 */
-		// test intersection with bounding sphere to improve efficency
-		Intersection i = boundingSphere.intersects(r);
-		if (!i.isHit)
+		HitRecord hit = VISITOR.get().trace(this, r, SELF_INTERSECTION_EPSILON, Double.MAX_VALUE, false);
+		if (!hit.isHit())
 			return new Intersection();
+		return getSurface(r, hit);
+	}
 
-		Vector3 hit = Vector3.ZERO.clone(), normal = Vector3.ZERO.clone();
-		double dist = Double.MAX_VALUE;
-		boolean isHit = false;
-
-		for (Face f : faces) {
-			Vector3 v1 = matrix.getTransformed(verticies.get((int) (f.vertex.x - 1)));
-			Vector3 v2 = matrix.getTransformed(verticies.get((int) (f.vertex.y - 1)));
-			Vector3 v3 = matrix.getTransformed(verticies.get((int) (f.vertex.z - 1)));
-			Vector3 intersect = intersect(v1, v2, v3, r);
-			if (intersect.x < 0.0)
-				continue;
-
-			Vector3 intersectCheck = intersect(v2, v3, v1, r);
-			if (intersectCheck.x < 0.0)
-				continue;
-			if (intersect.x < dist && intersect.x > 0.0) {
-				dist = intersect.x;
-				hit = r.pointOnRay(dist);
-				normal = getNormal(f, intersect.y, intersect.z);
-				isHit = true;
-			}
-
-		}
+	/**
+	 * Finds the closest face hit between <b>tMin</b> and <b>tMax</b>. The
+	 * {@link BVH} search skips every node farther than <b>tMax</b>.
+	 */
+	public double intersect(Ray r, double tMin, double tMax, HitRecord hit) {
+		HitRecord closest = VISITOR.get().trace(this, r, Math.max(tMin, SELF_INTERSECTION_EPSILON), tMax, false);
+		if (!closest.isHit())
+			return Double.POSITIVE_INFINITY;
+		hit.t = closest.t;
+		hit.u = closest.u;
+		hit.v = closest.v;
+		hit.primitive = closest.primitive;
+		return hit.t;
+	}
 
-		return new Intersection(isHit, hit, normal);
+	/**
+	 * Finds the point and interpolated normal of a hit found by
+	 * {@link #intersect(Ray, double, double, HitRecord)}.
+	 */
+	public Intersection getSurface(Ray r, HitRecord hit) {
+		Vector3 normal = matrix.getTransformedDirection(mesh.getNormal(hit.primitive, hit.u, hit.v)).nor();
+		return new Intersection(r.pointOnRay(hit.t), normal, hit.primitive, hit.u, hit.v);
+	}
 
+	/**
+	 * Checks if any face blocks part of a {@link Ray}. The {@link BVH} search
+	 * stops at the first face hit in range.
+	 */
+	public boolean occludes(Ray r, double tMin, double tMax) {
+		return VISITOR.get().trace(this, r, Math.max(tMin, SELF_INTERSECTION_EPSILON), tMax, true).isHit();
 	}
 
-	private Vector3 intersect(Vector3 v1, Vector3 v2, Vector3 v3, Ray r) {
-		// Moller-Trumbore ray-triangle intersection algorithm
+	/** Each thread reuses a single visitor so raycasts don't allocate one */
+	private static final ThreadLocal<FaceVisitor> VISITOR = ThreadLocal.withInitial(FaceVisitor::new);
 
-		Vector3 e1 = v2.clone().sub(v1);
-		Vector3 e2 = v3.clone().sub(v1);
+	/**
+	 * Tests a local space ray against the faces in the leaves of a model's
+	 * {@link BVH}, collecting the closest hit in a {@link HitRecord}. In any
+	 * hit mode the traversal is stopped at the first face that is hit instead.
+	 * When the vector kernel is available, all the faces of a leaf are tested
+	 * at once.
+	 */
+	private static class FaceVisitor implements BVH.LeafVisitor {
+		private final HitRecord hit = new HitRecord();
+		private BVH bvh;
+		private float[] positions;
+		private int[] indices;
+		private TriangleBlock triangles;
+		private double ox, oy, oz, dx, dy, dz, tMin;
+		private boolean anyHit;
+
+		/**
+		 * Casts a world space ray against a model's faces.
+		 * 
+		 * @return the visitor's {@link HitRecord}, valid until the next trace
+		 */
+		private HitRecord trace(ModelInstance model, Ray r, double tMin, double tMax, boolean anyHit) {
+			if (model.toLocal == null)
+				model.updateTransformCache();
+			this.bvh = model.bvh;
+			this.positions = model.mesh.getPositions();
+			this.indices = model.mesh.getVertexIndices();
+			this.triangles = model.triangles;
+			this.tMin = tMin;
+			this.anyHit = anyHit;
+
+			// Bring the ray into the model's local space instead of moving
+			// every vertex into world space. The direction is not rescaled, so
+			// distances along the local ray are the same as along the world ray.
+			double[] m = model.toLocal;
+			Vector3 wo = r.getOrigin();
+			Vector3 wd = r.getDir();
+			ox = m[0] * wo.x + m[1] * wo.y + m[2] * wo.z + m[3];
+			oy = m[4] * wo.x + m[5] * wo.y + m[6] * wo.z + m[7];
+			oz = m[8] * wo.x + m[9] * wo.y + m[10] * wo.z + m[11];
+			dx = m[0] * wd.x + m[1] * wd.y + m[2] * wd.z;
+			dy = m[4] * wd.x + m[5] * wd.y + m[6] * wd.z;
+			dz = m[8] * wd.x + m[9] * wd.y + m[10] * wd.z;
+
+			hit.reset(tMax);
+			bvh.traverse(ox, oy, oz, dx, dy, dz, tMin, tMax, this);
+
+			this.bvh = null;
+			this.positions = null;
+			this.indices = null;
+			this.triangles = null;
+			return hit;
+		}
 
-		Vector3 p = r.getDir().cross(e2);
-		double det = e1.dot(p);
-		if (Epsilon.nearlyEquals(det, 0.0))
-			return new Vector3(-1.0,0,0);
-		double invDet = 1.0 / det;
+		public double visit(int first, int count, double tMax) {
+			if (triangles != null) {
+				int i = KERNEL.intersect(triangles, first, count, ox, oy, oz, dx, dy, dz, tMin, tMax, anyHit, hit);
+				if (i < 0)
+					return tMax;
+				hit.primitive = bvh.getPrimitive(i);
+				return anyHit ? Double.NEGATIVE_INFINITY : hit.t;
+			}
+			for (int i = first; i < first + count; i++) {
+				int face = bvh.getPrimitive(i);
+				int a = indices[face * 3] * 3;
+				int b = indices[face * 3 + 1] * 3;
+				int c = indices[face * 3 + 2] * 3;
+				if (Triangle.intersect(ox, oy, oz, dx, dy, dz, positions[a], positions[a + 1], positions[a + 2],
+						positions[b], positions[b + 1], positions[b + 2], positions[c], positions[c + 1],
+						positions[c + 2], tMin, tMax, hit)) {
+					hit.primitive = face;
+					if (anyHit)
+						return Double.NEGATIVE_INFINITY;
+					tMax = hit.t;
+				}
+			}
+			return tMax;
+		}
+	}
 
-		Vector3 t = r.getOrigin().clone().sub(v1);
+	/**
+	 * Builds the {@link BVH} over the model's faces. The hierarchy is built in
+	 * the model's local space, so it stays valid when the model is
+	 * transformed. {@link ModelLoader} calls this once a model is loaded. If
+	 * the vector kernel is available, leaves are sized to fill its vectors.
+	 */
+	public void buildBVH() {
+		this.bvh = new BVH(mesh.getTriangleBounds(), TriangleKernel.getLeafWidth());
+		this.triangles = null;
+	}
 
-		double u = t.dot(p) * invDet;
-		if (u < 0.0 || u > 1.0)
-			return new Vector3(-1.0,0,0);
-		Vector3 q = t.cross(e1);
-		double v = r.getDir().dot(q) * invDet;
-		if (v < 0.0 || v > 1.0)
-			return new Vector3(-1.0,0,0);
-		double T = e2.dot(q) * invDet;
+	/**
+	 * 
+	 * @return the world space bounds of the model's faces
+	 */
+	public BoundingBox getBounds() {
+		if (toLocal == null)
+			updateTransformCache();
+		return worldBounds.clone();
+	}
+
+	/**
+	 * Recomputes everything that depends on the model's {@link Transform}: the
+	 * inverse used to bring rays into local space and the world space bounds.
+	 * Called whenever the model is translated or rotated, so raycasts never
+	 * have to.
+	 */
+	protected void updateTransformCache() {
+		if (bvh == null)
+			buildBVH();
+		double[][] inv = matrix.getInverse().getMatrix();
+		double[] m = new double[12];
+		for (int row = 0; row < 3; row++) {
+			for (int col = 0; col < 4; col++)
+				m[row * 4 + col] = inv[row][col];
+		}
+		this.worldBounds = bvh.getBounds().getTransformed(matrix);
+		this.toLocal = m;
+		if (KERNEL != null && triangles == null)
+			this.triangles = new TriangleBlock(mesh.getPositions(), mesh.getVertexIndices(), bvh.getPrimitives());
+	}
 
-		return new Vector3(T,u,v);
+	/**
+	 *
+	 * @return the {@link BVH} over the model's faces. Useful for tracking build
+	 *         time, node count and depth.
+	 */
+	public BVH getBVH() {
+		return bvh;
 	}
 
 	public void setMaterial(Material material) {
@@ -112,64 +273,45 @@ public class ModelInstance implements IModel {
 	}
 
 	/**
-	 * Gets the normal {@link Vector3} of a face (or really any triangle).
-	 * 
-	 * @param v1
-	 *            First vertex of the triangle
-	 * @param v2
-	 *            Second vertex of the triangle
-	 * @param r
-	 *            Third vertex of the triangle
-	 * @return the {@link Vector3} normal to the triangle
+	 *
+	 * @return the model's geometry, in local space
 	 */
-	private Vector3 getNormal(Face f, double u, double v) {
-		// TODO implement Phong interpolation
-		// return normals.get((int) (f.vertex.x - 1));// temp approximation
-		/*
-		 * Vector3 v1 = matrix.getTransformed(verticies.get((int) (f.vertex.x -
-		 * 1))); Vector3 v2 = matrix.getTransformed(verticies.get((int)
-		 * (f.vertex.y - 1))); Vector3 v3 =
-		 * matrix.getTransformed(verticies.get((int) (f.vertex.z - 1)));
-		 * 
-		 * Vector3 e1 = v2.clone().sub(v1); Vector3 e2 = v3.clone().sub(v1);
-		 * 
-		 * return e1.cross(e2);
-		 */
-		Vector3 n1 = this.normals.get((int) (f.normal.x - 1)).clone();
-		Vector3 n2 = this.normals.get((int) (f.normal.y - 1)).clone();
-		Vector3 n3 = this.normals.get((int) (f.normal.z - 1)).clone();
-
-		double t = 1.0-u-v;
-		//Np = t*n1 + u*n2 + v*n3  
-		return n1.scl(t).add(n2.scl(u)).add(n3.scl(v)).nor();
+	public Mesh getMesh() {
+		return mesh;
 	}
 
 	public void translate(Vector3 v) {
 		matrix.translate(v);
 		boundingSphere.translate(v);
+		updateTransformCache();
 
 	}
 
 	public void rotateX(double theta, boolean aroundOrigin) {
 		matrix.rotateX(theta, aroundOrigin);
+		updateTransformCache();
 	}
 
 	public void rotateY(double theta, boolean aroundOrigin) {
 		matrix.rotateY(theta, aroundOrigin);
+		updateTransformCache();
 	}
 
 	public void rotateZ(double theta, boolean aroundOrigin) {
 		matrix.rotateZ(theta, aroundOrigin);
+		updateTransformCache();
 	}
 
 	public ModelInstance clone() {
 		ModelInstance m = new ModelInstance();
-		m.verticies = (ArrayList<Vector3>) verticies.clone();
-		m.normals = (ArrayList<Vector3>) normals.clone();
-		m.faces = (ArrayList<Face>) faces.clone();
+		m.mesh = mesh;
 		m.matrix = matrix.clone();
 		m.setMaterial(mat.clone());
 		m.boundingSphere = boundingSphere.clone();
+		m.bvh = bvh;
+		m.toLocal = toLocal;
+		m.worldBounds = worldBounds;
+		m.triangles = triangles;
 		return m;
 	}
 
@@ -185,8 +327,7 @@ public class ModelInstance implements IModel {
 
 	@Override
 	public String toString() {
-		return "verticies: " + verticies.size() + " normals: " + normals.size() + " faces: " + faces.size()
-				+ " radius: " + boundingSphere.getRadius();
+		return mesh + " radius: " + boundingSphere.getRadius() + (bvh == null ? "" : " " + bvh);
 	}
 
 }
@@ -1,55 +1,54 @@
 package model;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 
-import geometry.Sphere;
-import geometry.Transform;
-import geometry.Vector3;
+import geometry.TriangleKernel;
 import lighting.Material;
 
 public class ModelLoader {
+	/**
+	 * If true, parsed models are cached in a binary {@link MeshCache} next to
+	 * their .obj file, and later loads use the cache while it is up to date.
+	 */
+	public static boolean USE_MESH_CACHE = true;
 
+	/**
+	 * Loads a Wavefront .obj file as a {@link ModelInstance}. Parsing is done
+	 * by an {@link ObjParser}, unless an up to date {@link MeshCache} of the
+	 * file exists.
+	 * 
+	 * @param file
+	 *            The .obj file
+	 * @param material
+	 *            The material to render the model with
+	 * @return the model, untransformed
+	 * @throws FileNotFoundException
+	 *             if the file doesn't exist
+	 * @throws IOException
+	 *             if the file can't be read or is malformed
+	 */
 	public static ModelInstance loadObjModel(File file, Material material) throws IOException, FileNotFoundException{
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		ModelInstance m = new ModelInstance();
-		double radius = 0.0;
-		String line;
-		while ((line = reader.readLine()) != null) {
-			if (line.startsWith("v ")) {
-				double x = Double.valueOf(line.split(" ")[1]);
-				double y = Double.valueOf(line.split(" ")[2]);
-				double z = Double.valueOf(line.split(" ")[3]);
-				Vector3 vertex = new Vector3(x, y, z);
-				m.verticies.add(vertex);
-				if (vertex.len() > radius)
-					radius = vertex.len();
-			} else if (line.startsWith("vn ")) {
-				double x = Double.valueOf(line.split(" ")[1]);
-				double y = Double.valueOf(line.split(" ")[2]);
-				double z = Double.valueOf(line.split(" ")[3]);
-				m.normals.add(new Vector3(x, y, z).getNormalized());
-			} else if (line.startsWith("f ")) {
-				double vertexIndex1 = Double.valueOf(line.split(" ")[1].split("/")[0]);
-				double vertexIndex2 = Double.valueOf(line.split(" ")[2].split("/")[0]);
-				double vertexIndex3 = Double.valueOf(line.split(" ")[3].split("/")[0]);
-				Vector3 vertexIndicies = new Vector3(vertexIndex1, vertexIndex2, vertexIndex3);
+		if (!file.isFile())
+			throw new FileNotFoundException(file.toString());
+		if (!USE_MESH_CACHE)
+			return new ModelInstance(ObjParser.parse(file), material);
 
-				double normalIndex1 = Double.valueOf(line.split(" ")[1].split("/")[2]);
-				double normalIndex2 = Double.valueOf(line.split(" ")[2].split("/")[2]);
-				double normalIndex3 = Double.valueOf(line.split(" ")[3].split("/")[2]);
-				Vector3 normalIndicies = new Vector3(normalIndex1, normalIndex2, normalIndex3);
-				m.faces.add(new Face(vertexIndicies, normalIndicies));
-				
-			}
+		File cache = MeshCache.getCacheFile(file);
+		MeshCache.Entry cached = MeshCache.read(cache, file);
+		if (cached != null && cached.bvh.getLeafWidth() == TriangleKernel.getLeafWidth())
+			return new ModelInstance(cached.mesh, cached.bvh, material);
+
+		// a hierarchy built for another triangle kernel is rebuilt, but the
+		// cached mesh is still good
+		ModelInstance m = new ModelInstance(cached != null ? cached.mesh : ObjParser.parse(file), material);
+		try {
+			MeshCache.write(cache, file, m.getMesh(), m.getBVH());
+		} catch (IOException e) {
+			// the model is fine, it just has to be parsed again next time
+			System.err.println("Could not write mesh cache " + cache + ": " + e.getMessage());
 		}
-		reader.close();
-		m.mat = material;
-		m.boundingSphere = new Sphere(Vector3.ZERO.clone(), radius);
-		m.matrix = Transform.getIdentityInstance();
 		return m;
 	}
 }
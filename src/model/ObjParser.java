@@ -0,0 +1,496 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tools.ThreadPool;
+
+/**
+ * Fast Wavefront .obj parser that produces a packed {@link Mesh}. The file is
+ * memory mapped instead of read line by line, and numbers are parsed straight
+ * from the mapped bytes without creating any Strings. Large files are split
+ * into chunks at line boundaries and the chunks are parsed in parallel, then
+ * stitched together.<br/>
+ * <br/>
+ * Supported statements are <code>v</code>, <code>vn</code>, <code>vt</code>
+ * and <code>f</code>. Faces can use any of the <code>v</code>,
+ * <code>v/t</code>, <code>v//n</code> and <code>v/t/n</code> forms, negative
+ * (relative) indices, and any number of vertices; polygons are split into a
+ * fan of triangles. Everything else (groups, materials, comments...) is
+ * skipped.
+ *
+ * @author Don Isaac
+ *
+ */
+public class ObjParser {
+	/** Files are split into chunks of about this many bytes */
+	public static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+
+	private final int chunkSize, workerCount;
+
+	/**
+	 * Creates a parser with the default chunk size that uses every available
+	 * processor.
+	 */
+	public ObjParser() {
+		this(DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Full constructor.
+	 *
+	 * @param chunkSize
+	 *            Approximate number of bytes parsed by each task
+	 * @param workerCount
+	 *            Number of threads to parse with
+	 */
+	public ObjParser(int chunkSize, int workerCount) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("Chunk size must be at least 1");
+		if (workerCount < 1)
+			throw new IllegalArgumentException("There must be at least 1 worker");
+		this.chunkSize = chunkSize;
+		this.workerCount = workerCount;
+	}
+
+	/**
+	 * Parses a file with the default settings.
+	 *
+	 * @param file
+	 *            The .obj file
+	 * @return the mesh described by the file
+	 * @throws IOException
+	 *             if the file can't be read or is malformed
+	 */
+	public static Mesh parse(File file) throws IOException {
+		return new ObjParser().read(file);
+	}
+
+	/**
+	 * Parses a file.
+	 *
+	 * @param file
+	 *            The .obj file
+	 * @return the mesh described by the file
+	 * @throws IOException
+	 *             if the file can't be read or is malformed
+	 */
+	public Mesh read(File file) throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long start = 0;
+			while (start < size) {
+				long end = lineEndAfter(channel, Math.min(size, start + chunkSize), size);
+				if (end - start > Integer.MAX_VALUE)
+					throw new IOException(file + " has a line longer than 2GB at byte " + start);
+				chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), start));
+				start = end;
+			}
+		}
+
+		if (chunks.size() <= 1 || workerCount == 1) {
+			for (Chunk c : chunks)
+				c.run();
+		} else {
+			parseInParallel(chunks);
+		}
+
+		for (Chunk c : chunks) {
+			if (c.error != null)
+				throw new IOException(c.error + " in " + file);
+		}
+		return merge(chunks, file);
+	}
+
+	/**
+	 * Finds the end of the line a position is on.
+	 *
+	 * @return the position just past the next '\n', or the end of the file
+	 */
+	private static long lineEndAfter(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n')
+					return position + i + 1;
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	private void parseInParallel(List<Chunk> chunks) throws IOException {
+		int workers = Math.min(workerCount, chunks.size());
+		AtomicInteger next = new AtomicInteger();
+		ThreadPool pool = new ThreadPool(workers);
+		for (int i = 0; i < workers; i++) {
+			pool.register(() -> {
+				int c;
+				while ((c = next.getAndIncrement()) < chunks.size())
+					chunks.get(c).run();
+			});
+		}
+		pool.start();
+		try {
+			pool.shutdown();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing", e);
+		}
+	}
+
+	/**
+	 * Concatenates the chunks' arrays and turns chunk relative indices into
+	 * global ones.
+	 */
+	private static Mesh merge(List<Chunk> chunks, File file) throws IOException {
+		int positionCount = 0, normalCount = 0, texcoordCount = 0, indexCount = 0;
+		for (Chunk c : chunks) {
+			positionCount += c.positionSize;
+			normalCount += c.normalSize;
+			texcoordCount += c.texcoordSize;
+			indexCount += c.indexSize;
+		}
+		float[] positions = new float[positionCount];
+		float[] normals = new float[normalCount];
+		float[] texcoords = new float[texcoordCount];
+		int[] vertexIndices = new int[indexCount];
+		int[] normalIndices = new int[indexCount];
+		// files without texture coordinates don't store their indices
+		boolean textured = false;
+		for (Chunk c : chunks)
+			textured |= c.texcoordIndices != Mesh.NO_INDICES;
+		int[] texcoordIndices = textured ? new int[indexCount] : Mesh.NO_INDICES;
+
+		int p = 0, n = 0, t = 0, i = 0;
+		for (Chunk c : chunks) {
+			System.arraycopy(c.positions, 0, positions, p, c.positionSize);
+			System.arraycopy(c.normals, 0, normals, n, c.normalSize);
+			System.arraycopy(c.texcoords, 0, texcoords, t, c.texcoordSize);
+			System.arraycopy(c.vertexIndices, 0, vertexIndices, i, c.indexSize);
+			System.arraycopy(c.normalIndices, 0, normalIndices, i, c.indexSize);
+			if (c.texcoordIndices != Mesh.NO_INDICES)
+				System.arraycopy(c.texcoordIndices, 0, texcoordIndices, i, c.indexSize);
+			else if (textured)
+				Arrays.fill(texcoordIndices, i, i + c.indexSize, -1);
+			// negative indices were resolved against the chunk's own counts
+			for (int k = 0; k < c.relativeSize; k++) {
+				int slot = c.relative[k];
+				int index = i + slot / 3;
+				switch (slot % 3) {
+				case 0:
+					vertexIndices[index] += p / 3;
+					break;
+				case 1:
+					texcoordIndices[index] += t / 2;
+					break;
+				default:
+					normalIndices[index] += n / 3;
+					break;
+				}
+			}
+			p += c.positionSize;
+			n += c.normalSize;
+			t += c.texcoordSize;
+			i += c.indexSize;
+		}
+
+		check(vertexIndices, positionCount / 3, false, "vertex", file);
+		check(normalIndices, normalCount / 3, true, "normal", file);
+		check(texcoordIndices, texcoordCount / 2, true, "texture coordinate", file);
+		return new Mesh(positions, normals, texcoords, vertexIndices, normalIndices, texcoordIndices);
+	}
+
+	private static void check(int[] indices, int count, boolean optional, String name, File file)
+			throws IOException {
+		for (int i = 0; i < indices.length; i++) {
+			int index = indices[i];
+			if (index >= count || (index < 0 && !(optional && index == -1)))
+				throw new IOException("Face " + i / 3 + " refers to missing " + name + " " + (index + 1) + " in "
+						+ file);
+		}
+	}
+
+	/** Exact powers of ten. Larger ones aren't exact as doubles. */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * A piece of the file, and the arrays parsed from it. Faces store indices
+	 * relative to the chunk; {@link ObjParser#merge} fixes them up once the
+	 * counts of every earlier chunk are known.
+	 */
+	private static class Chunk implements Runnable {
+		private final MappedByteBuffer buffer;
+		/** Offset of the chunk in the file, for error messages */
+		private final long offset;
+		private final int limit;
+		private int pos;
+		private String error;
+
+		private float[] positions = new float[3 * 1024];
+		private float[] normals = new float[3 * 1024];
+		private float[] texcoords = new float[2 * 64];
+		private int[] vertexIndices = new int[3 * 1024];
+		private int[] normalIndices = new int[3 * 1024];
+		/** Empty until a face gives a texture coordinate */
+		private int[] texcoordIndices = Mesh.NO_INDICES;
+		/**
+		 * Indices that came from negative (relative) indices, and so need the
+		 * global offset of the chunk added. Stored as 3 * index + kind, where
+		 * kind is 0 for vertices, 1 for texture coordinates and 2 for normals.
+		 */
+		private int[] relative = new int[16];
+		private int positionSize, normalSize, texcoordSize, indexSize, relativeSize;
+
+		/** Vertices of the polygon being parsed, 3 ints each: v, t, n */
+		private int[] polygon = new int[3 * 8];
+		/** Whether each index of {@link #polygon} is chunk relative */
+		private boolean[] polygonRelative = new boolean[3 * 8];
+
+		private Chunk(MappedByteBuffer buffer, long offset) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.limit = buffer.limit();
+		}
+
+		public void run() {
+			try {
+				parse();
+			} catch (IOException | RuntimeException e) {
+				error = e.getMessage();
+			}
+		}
+
+		private void parse() throws IOException {
+			while (pos < limit) {
+				skipSpaces();
+				if (pos >= limit)
+					break;
+				byte c = buffer.get(pos);
+				byte next = pos + 1 < limit ? buffer.get(pos + 1) : (byte) '\n';
+				if (c == 'v' && isSpace(next)) {
+					pos++;
+					float x = (float) parseNumber(), y = (float) parseNumber(), z = (float) parseNumber();
+					positions = ensureCapacity(positions, positionSize + 3);
+					positions[positionSize++] = x;
+					positions[positionSize++] = y;
+					positions[positionSize++] = z;
+				} else if (c == 'v' && next == 'n') {
+					pos += 2;
+					double x = parseNumber(), y = parseNumber(), z = parseNumber();
+					double len = Math.sqrt(x * x + y * y + z * z);
+					if (len > 0.0) {
+						x /= len;
+						y /= len;
+						z /= len;
+					}
+					normals = ensureCapacity(normals, normalSize + 3);
+					normals[normalSize++] = (float) x;
+					normals[normalSize++] = (float) y;
+					normals[normalSize++] = (float) z;
+				} else if (c == 'v' && next == 't') {
+					pos += 2;
+					float u = (float) parseNumber();
+					skipSpaces();
+					float v = atLineEnd() ? 0f : (float) parseNumber();
+					texcoords = ensureCapacity(texcoords, texcoordSize + 2);
+					texcoords[texcoordSize++] = u;
+					texcoords[texcoordSize++] = v;
+				} else if (c == 'f' && isSpace(next)) {
+					pos++;
+					parseFace();
+				}
+				skipLine();
+			}
+		}
+
+		/**
+		 * Parses the vertices of a face and adds it as a fan of triangles.
+		 */
+		private void parseFace() throws IOException {
+			int count = 0;
+			skipSpaces();
+			while (!atLineEnd()) {
+				if (polygon.length < (count + 1) * 3) {
+					polygon = Arrays.copyOf(polygon, polygon.length * 2);
+					polygonRelative = Arrays.copyOf(polygonRelative, polygonRelative.length * 2);
+				}
+				int o = count * 3;
+				parseIndex(o, positionSize / 3);
+				polygon[o + 1] = polygon[o + 2] = -1;
+				polygonRelative[o + 1] = polygonRelative[o + 2] = false;
+				if (pos < limit && buffer.get(pos) == '/') {
+					pos++;
+					if (pos < limit && buffer.get(pos) != '/')
+						parseIndex(o + 1, texcoordSize / 2);
+					if (pos < limit && buffer.get(pos) == '/') {
+						pos++;
+						parseIndex(o + 2, normalSize / 3);
+					}
+				}
+				count++;
+				skipSpaces();
+			}
+			if (count < 3)
+				throw new IOException("Face with fewer than 3 vertices at byte " + (offset + pos));
+			for (int i = 1; i < count - 1; i++) {
+				addCorner(0);
+				addCorner(i);
+				addCorner(i + 1);
+			}
+		}
+
+		/**
+		 * Parses an index into {@link #polygon}, converting it from 1 based to 0
+		 * based. Negative indices count back from the last element parsed; they
+		 * are resolved against the chunk and marked as relative.
+		 */
+		private void parseIndex(int slot, int parsedCount) throws IOException {
+			long start = pos;
+			double raw = parseNumber();
+			int index = (int) raw;
+			if (index != raw || index == 0)
+				throw new IOException("Invalid index at byte " + (offset + start));
+			if (index > 0) {
+				polygon[slot] = index - 1;
+				polygonRelative[slot] = false;
+			} else {
+				polygon[slot] = parsedCount + index;
+				polygonRelative[slot] = true;
+			}
+		}
+
+		private void addCorner(int corner) {
+			int o = corner * 3;
+			vertexIndices = ensureCapacity(vertexIndices, indexSize + 1);
+			normalIndices = ensureCapacity(normalIndices, indexSize + 1);
+			vertexIndices[indexSize] = polygon[o];
+			normalIndices[indexSize] = polygon[o + 2];
+			if (texcoordIndices == Mesh.NO_INDICES && (polygon[o + 1] != -1 || polygonRelative[o + 1])) {
+				// the earlier corners had none
+				texcoordIndices = new int[vertexIndices.length];
+				Arrays.fill(texcoordIndices, 0, indexSize, -1);
+			}
+			if (texcoordIndices != Mesh.NO_INDICES) {
+				texcoordIndices = ensureCapacity(texcoordIndices, indexSize + 1);
+				texcoordIndices[indexSize] = polygon[o + 1];
+			}
+			for (int kind = 0; kind < 3; kind++) {
+				if (polygonRelative[o + kind]) {
+					relative = ensureCapacity(relative, relativeSize + 1);
+					relative[relativeSize++] = indexSize * 3 + kind;
+				}
+			}
+			indexSize++;
+		}
+
+		/**
+		 * Parses a decimal number, with an optional sign, fraction and
+		 * exponent, starting at the next non-space character.
+		 */
+		private double parseNumber() throws IOException {
+			skipSpaces();
+			int start = pos;
+			boolean negative = false;
+			if (pos < limit && (buffer.get(pos) == '-' || buffer.get(pos) == '+'))
+				negative = buffer.get(pos++) == '-';
+
+			long mantissa = 0;
+			int exponent = 0, digits = 0;
+			boolean any = false;
+			byte c;
+			while (pos < limit && (c = buffer.get(pos)) >= '0' && c <= '9') {
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (c - '0');
+					if (mantissa > 0)
+						digits++;
+				} else {
+					exponent++;
+				}
+				any = true;
+				pos++;
+			}
+			if (pos < limit && buffer.get(pos) == '.') {
+				pos++;
+				while (pos < limit && (c = buffer.get(pos)) >= '0' && c <= '9') {
+					if (digits < 18) {
+						mantissa = mantissa * 10 + (c - '0');
+						if (mantissa > 0)
+							digits++;
+						exponent--;
+					}
+					any = true;
+					pos++;
+				}
+			}
+			if (!any)
+				throw new IOException("Expected a number at byte " + (offset + start));
+			if (pos < limit && (buffer.get(pos) == 'e' || buffer.get(pos) == 'E')) {
+				pos++;
+				boolean negativeExponent = false;
+				if (pos < limit && (buffer.get(pos) == '-' || buffer.get(pos) == '+'))
+					negativeExponent = buffer.get(pos++) == '-';
+				int e = 0;
+				while (pos < limit && (c = buffer.get(pos)) >= '0' && c <= '9') {
+					e = Math.min(e * 10 + (c - '0'), 1000);
+					pos++;
+				}
+				exponent += negativeExponent ? -e : e;
+			}
+
+			double value = mantissa;
+			if (exponent > 0)
+				value *= exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[exponent] : Math.pow(10, exponent);
+			else if (exponent < 0)
+				value /= -exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[-exponent] : Math.pow(10, -exponent);
+			return negative ? -value : value;
+		}
+
+		private void skipSpaces() {
+			while (pos < limit) {
+				byte c = buffer.get(pos);
+				if (c != ' ' && c != '\t' && c != '\r')
+					return;
+				pos++;
+			}
+		}
+
+		private void skipLine() {
+			while (pos < limit && buffer.get(pos++) != '\n')
+				;
+		}
+
+		private boolean atLineEnd() {
+			if (pos >= limit)
+				return true;
+			byte c = buffer.get(pos);
+			return c == '\n' || c == '#';
+		}
+
+		private static boolean isSpace(byte c) {
+			return c == ' ' || c == '\t';
+		}
+
+		private static float[] ensureCapacity(float[] array, int size) {
+			return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+		}
+
+		private static int[] ensureCapacity(int[] array, int size) {
+			return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+		}
+	}
+}
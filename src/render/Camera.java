@@ -2,9 +2,15 @@ package render;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import accel.RayPacket;
+import accel.SceneBVH;
 import engine.Main;
+import geometry.HitRecord;
 import geometry.Intersection;
 import geometry.Ray;
 import geometry.Transform;
@@ -13,20 +19,28 @@ import geometry.Vector3;
 import lighting.Light;
 import lighting.Material;
 import model.IModel;
+import render.strategies.PhongStrategy;
 import render.strategies.RenderStrategy;
 import scene.Scene;
 import tools.AbstractEventEmitter;
 import tools.RaycastHit;
 import tools.ThreadPool;
 
-import static org.junit.Assert.assertEquals;
+import static debug.Assert.assertEquals;
 
 /**
  * Represents the camera used to take picture of a {@link Scene}. A Camera is
  * not part of a {@link Scene}, but is instead it's own entity. This means that
  * it can take pictures of different {@link Scene}s. The resolution of the
  * Camera is also not static, but is instead passed when a the user wants to
- * take a picture of a {@link Scene}.
+ * take a picture of a {@link Scene}.<br/>
+ * <br/>
+ * Cameras render on worker pools shared by every camera with the same worker
+ * count, so creating many cameras doesn't start more threads. A camera holds
+ * its pool from its first picture until {@link #shutdown()}, and a pool's
+ * workers exit once no camera holds it. Callers own a camera's lifecycle:
+ * short lived cameras should be shut down, e.g. in a <code>finally</code>
+ * block, once they are done rendering.
  * 
  * @author Don Isaac
  *
@@ -39,63 +53,75 @@ public class Camera extends AbstractEventEmitter implements Transformable {
 	 */
 	Transform camToWorld;
 	double focalLength;
-	private int x, y, width, height;
+	private int width, height;
 	/**
 	 * True if the camera is currently rendering an image, false otherwise.
 	 */
 	private boolean rendering;
-	private ThreadPool pool;
 	private RenderStrategy render;
-	private int renderedPixelCount;
+	private AtomicInteger renderedPixelCount;
+	/**
+	 * Workers the camera renders on. Kept between pictures so their threads and
+	 * thread local scratch are only created once.
+	 */
+	private ThreadPool pool;
+	/** Pools shared by every camera, by worker count */
+	private static final Map<Integer, SharedPool> POOLS = new HashMap<Integer, SharedPool>();
+	/**
+	 * Hits closer than this to a {@link Ray}'s origin are ignored, so that rays
+	 * starting on a surface (like shadow rays) don't hit that surface.
+	 */
+	static final double SELF_INTERSECTION_EPSILON = 1e-6;
+	/**
+	 * Event emitted after each pass of a progressive render. Listeners receive
+	 * the {@link FrameBuffer} being rendered to and the pass's block size.
+	 */
+	public static final String PROGRESS_EVENT = "progress";
+	/**
+	 * Block sizes of the passes of a progressive render, coarsest first. Each
+	 * size must divide the one before it.
+	 */
+	private static final int[] PROGRESSIVE_BLOCK_SIZES = { 16, 8, 4, 2, 1 };
 
 	public Camera(Vector3 pos, Transform cameraToWorld, double focalLength) {
 		this.pos = pos;
 		this.camToWorld = cameraToWorld;
 		this.focalLength = focalLength;
 		this.rendering = false;
-		this.pool = new ThreadPool();
 		this.render = RenderStrategy.getStrategy();
-		this.renderedPixelCount = 0;
+		this.renderedPixelCount = new AtomicInteger(0);
 	}
 
 	/**
-	 * Takes a picture of a {@link Scene}.
+	 * Takes a picture of a {@link Scene}. The image is split into {@link Tile}s
+	 * that are rendered in parallel straight into a {@link FrameBuffer}; the
+	 * tile size, number of threads and order of the tiles are taken from the
+	 * {@link ImageData}. If the {@link ImageData} asks for adaptive
+	 * anti-aliasing, the picture is rendered by {@link #renderAdaptive};
+	 * otherwise, if it asks for a wavefront render and the strategy is a
+	 * {@link PhongStrategy}, by a {@link WavefrontRenderer}. Other strategies
+	 * are always rendered tile by tile.
 	 * 
 	 * @param s    The {@link Scene} to take a picture of
 	 * @param data The resolution information to use
 	 * @return A picture of the {@link Scene}
 	 */
 	public BufferedImage takePicture(Scene s, ImageData data) {
-		BufferedImage pic = new BufferedImage(data.getWidth(), data.getHeight(), data.getType());
+		FrameBuffer pic = new FrameBuffer(data);
+		s.update();
+		render.beginFrame();
 		rendering = true;
 		width = data.getWidth();
 		height = data.getHeight();
-		this.renderedPixelCount = 0;
-		int submittedCount = 0; // number of threads submitted to the thread pool
-
-		for (y = 0; y < height; y++) {
-			for (x = 0; x < width; x++) {
-
-				this.submitPixelRenderThread(pic, s, data, x, y);
-				submittedCount++;
-				// This line of code here prints out the rendering progress, but
-				// slows down the rendering process drastically (System calls
-				// are expensive).
-				// System.out.println(100.0*(double)(y*data.getWidth()+x)/(double)(data.getWidth()*data.getHeight())+"%");
-//				if (Main.DEBUG) {
-//					double percent = 100.0 * (double) (y * width + x) / (double) (width * height);
-//					if (percent % 10 == 0 || percent % 10 == 5) {
-//						System.out.println(percent + "%");
-//					}
-//
-//				}
-			}
-		}
+		this.renderedPixelCount.set(0);
+
 		try {
-			pool.shutdown();
-			System.out.println("Is pool running? " + pool.isRunning());
-			System.out.println("Threads in pool after shutdown(): " + pool.getTaskQueue().size());
-			System.out.println("Submitted threads: " + submittedCount);
+			if (data.getAdaptiveDepth() > 0)
+				renderAdaptive(pic, s, data);
+			else if (data.isWavefront() && render instanceof PhongStrategy)
+				new WavefrontRenderer(this, s, data, (PhongStrategy) render, renderedPixelCount).render(pic);
+			else
+				scheduler(data).render(tile -> renderTile(pic, s, data, tile));
 			int expectedCalculatedPixelCount = width * height;
 			assertEquals(expectedCalculatedPixelCount, getRenderedPixelCount());
 		} catch (InterruptedException e) {
@@ -105,29 +131,421 @@ public class Camera extends AbstractEventEmitter implements Transformable {
 		}
 
 		rendering = false;
-		return pic;
-	}
-	
-	private synchronized void submitPixelRenderThread(BufferedImage pic, Scene s, ImageData data, int x, int y) {
-		pool.submit(() -> {
-			
-			try {
-				synchronized (pic) {
-					Color pixel = raytrace(x, y, s, data);
-					pic.setRGB(x, y, pixel.getRGB());
-					this.incrementRenderedPixelCount();
+		return pic.getImage();
+	}
+
+	/**
+	 * The trace stage of a deferred render. Casts every primary ray of an image
+	 * and stores what it hit in a new {@link GBuffer}, without shading
+	 * anything. The buffer is turned into a picture by
+	 * {@link #shade(GBuffer, Scene)}.
+	 *
+	 * @param s    The {@link Scene} to trace
+	 * @param data The resolution information to use. Adaptive anti-aliasing
+	 *             is ignored.
+	 * @return the primary hits of the image
+	 */
+	public GBuffer trace(Scene s, ImageData data) {
+		return trace(s, new GBuffer(data));
+	}
+
+	/**
+	 * Traces a {@link Scene} again into an existing {@link GBuffer}, e.g. after
+	 * the camera or an object moved. The buffer's earlier contents are
+	 * replaced.
+	 *
+	 * @param s The {@link Scene} to trace
+	 * @param g The buffer to fill, sized for the image to render
+	 * @return <b>g</b>
+	 */
+	public GBuffer trace(Scene s, GBuffer g) {
+		ImageData data = g.getImageData();
+		s.update();
+		rendering = true;
+		width = data.getWidth();
+		height = data.getHeight();
+		this.renderedPixelCount.set(0);
+		g.begin(pos, s.objects);
+
+		try {
+			scheduler(data).render(tile -> traceTile(g, s, data, tile));
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+
+		rendering = false;
+		return g;
+	}
+
+	/**
+	 * The shade stage of a deferred render. Lights every sample of a
+	 * {@link GBuffer} with the camera's {@link RenderStrategy}, tile by tile in
+	 * parallel, and averages each pixel's samples. No primary rays are cast, so
+	 * after changing a light or a material the same buffer can be shaded again
+	 * for a fraction of the cost of {@link #takePicture}. With the same scene,
+	 * the picture is identical to the one {@link #takePicture} takes.
+	 *
+	 * @param g The buffer filled by {@link #trace(Scene, ImageData)}
+	 * @param s The {@link Scene} the buffer was traced from
+	 * @return A picture of the {@link Scene}
+	 */
+	public BufferedImage shade(GBuffer g, Scene s) {
+		ImageData data = g.getImageData();
+		FrameBuffer pic = new FrameBuffer(data);
+		s.update();
+		render.beginFrame();
+		rendering = true;
+		width = data.getWidth();
+		height = data.getHeight();
+		this.renderedPixelCount.set(0);
+
+		try {
+			scheduler(data).render(tile -> shadeTile(pic, g, s, tile));
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+
+		rendering = false;
+		return pic.getImage();
+	}
+
+	/**
+	 * Stores the primary hits of every pixel in a {@link Tile} in a
+	 * {@link GBuffer}.
+	 */
+	private void traceTile(GBuffer g, Scene s, ImageData data, Tile tile) {
+		if (g.samples == 1 && data.getPacketSize() > 1) {
+			tracePackets(s, data, tile, (x, y, r, hit) -> g.set(g.index(x, y, 0), hit));
+		} else {
+			for (int y = tile.y; y < tile.y + tile.height; y++) {
+				for (int x = tile.x; x < tile.x + tile.width; x++) {
+					Ray[] primaries = getPerspectiveRay(x, y, data);
+					for (int i = 0; i < primaries.length; i++)
+						g.set(g.index(x, y, i), raycast(primaries[i], s));
+				}
+			}
+		}
+		this.renderedPixelCount.addAndGet(tile.size());
+	}
+
+	/**
+	 * Shades every pixel in a {@link Tile} from a {@link GBuffer}, averaging
+	 * the samples the same way {@link #raytrace} does.
+	 */
+	private void shadeTile(FrameBuffer pic, GBuffer g, Scene s, Tile tile) {
+		for (int y = tile.y; y < tile.y + tile.height; y++) {
+			for (int x = tile.x; x < tile.x + tile.width; x++) {
+				Vector3 c = new Vector3(0.0, 0.0, 0.0);
+				for (int i = g.index(x, y, 0), end = i + g.samples; i < end; i++) {
+					if (g.isHit(i))
+						c.add(render.render(this, s, g, i));
+				}
+				c.scl(1.0 / (double) g.samples);
+				pic.setRGB(x, y, new Color(round(c.x), round(c.y), round(c.z)).getRGB());
+			}
+		}
+		this.renderedPixelCount.addAndGet(tile.size());
+	}
+
+	/**
+	 * Takes a picture of a {@link Scene} progressively. A coarse version of the
+	 * image, with one traced pixel per 16x16 block, is rendered first; every
+	 * following pass halves the block size until each pixel has been traced.
+	 * No pixel is traced twice, so a full progressive render costs about the
+	 * same as {@link #takePicture}.<br/>
+	 * <br/>
+	 * A {@link #PROGRESS_EVENT} is emitted after every pass with the
+	 * {@link FrameBuffer} and the pass's block size, so listeners can show or
+	 * save intermediate images. Listeners are called from the rendering thread
+	 * and should return quickly.
+	 * 
+	 * @param s          The {@link Scene} to take a picture of
+	 * @param data       The resolution information to use
+	 * @param timeBudget Time in milliseconds after which refinement stops, or
+	 *                   0 for no limit. The first (coarsest) pass is always
+	 *                   finished, so the picture is never empty.
+	 * @return A picture of the {@link Scene}, as refined as the time budget
+	 *         allowed
+	 */
+	public BufferedImage takeProgressivePicture(Scene s, ImageData data, long timeBudget) {
+		FrameBuffer pic = new FrameBuffer(data);
+		s.update();
+		render.beginFrame();
+		rendering = true;
+		width = data.getWidth();
+		height = data.getHeight();
+		this.renderedPixelCount.set(0);
+		long deadline = timeBudget > 0 ? System.nanoTime() + timeBudget * 1000000L : Long.MAX_VALUE;
+
+		try {
+			for (int i = 0; i < PROGRESSIVE_BLOCK_SIZES.length; i++) {
+				final int block = PROGRESSIVE_BLOCK_SIZES[i];
+				final int previous = i == 0 ? 0 : PROGRESSIVE_BLOCK_SIZES[i - 1];
+				final long passDeadline = i == 0 ? Long.MAX_VALUE : deadline;
+				scheduler(data).render(tile -> renderBlocks(pic, s, data, tile, block, previous, passDeadline));
+				emit(PROGRESS_EVENT, pic, block);
+				if (System.nanoTime() >= deadline)
+					break;
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+
+		rendering = false;
+		return pic.getImage();
+	}
+
+	/**
+	 * Renders one progressive pass over a {@link Tile}. The top left pixel of
+	 * every block that starts in the tile is traced (unless an earlier, coarser
+	 * pass already traced it) and its color fills the whole block.
+	 * 
+	 * @param block    Size of this pass's blocks
+	 * @param previous Size of the previous pass's blocks, or 0 if this is the
+	 *                 first pass
+	 * @param deadline {@link System#nanoTime()} after which the tile is skipped
+	 */
+	private void renderBlocks(FrameBuffer pic, Scene s, ImageData data, Tile tile, int block, int previous,
+			long deadline) {
+		if (System.nanoTime() >= deadline)
+			return;
+		int traced = 0;
+		int startX = (tile.x + block - 1) / block * block;
+		int startY = (tile.y + block - 1) / block * block;
+		for (int by = startY; by < tile.y + tile.height; by += block) {
+			for (int bx = startX; bx < tile.x + tile.width; bx += block) {
+				int rgb;
+				if (previous > 0 && bx % previous == 0 && by % previous == 0) {
+					rgb = pic.getRGB(bx, by);
+				} else {
+					rgb = raytrace(bx, by, s, data).getRGB();
+					traced++;
+				}
+				// blocks can reach into the next tile, but they are only ever
+				// written by the tile their top left pixel is in
+				int maxY = Math.min(by + block, height), maxX = Math.min(bx + block, width);
+				for (int y = by; y < maxY; y++) {
+					for (int x = bx; x < maxX; x++)
+						pic.setRGB(x, y, rgb);
 				}
-//				} else {
-//					System.out.println(String.format("Attempted to raytrace (%d, %d)", x, y));
-//				}
-			} catch (ArrayIndexOutOfBoundsException e) {
-				System.err.println("ArrayIndexOutOfBoundsException thrown while writing pixel data to pixel ("
-						+ x + "," + y + "). Width: " + width + " Height: " + height);
-				e.printStackTrace();
-			} 
-			
+			}
+		}
+		this.renderedPixelCount.addAndGet(traced);
+	}
 
-		});
+	/**
+	 * Renders every pixel in a {@link Tile} straight into the
+	 * {@link FrameBuffer}. {@link Tile}s never overlap, so no locking is needed.
+	 */
+	private void renderTile(FrameBuffer pic, Scene s, ImageData data, Tile tile) {
+		if (!data.antiAliasing && data.getPacketSize() > 1) {
+			tracePackets(s, data, tile, (x, y, r, hit) -> pic.setRGB(x, y, shade(s, r, hit)));
+		} else {
+			for (int y = tile.y; y < tile.y + tile.height; y++) {
+				for (int x = tile.x; x < tile.x + tile.width; x++) {
+					pic.setRGB(x, y, raytrace(x, y, s, data).getRGB());
+				}
+			}
+		}
+		this.renderedPixelCount.addAndGet(tile.size());
+	}
+
+	/**
+	 * Receives the closest hit of a primary ray.
+	 */
+	private interface PrimaryHitHandler {
+		public void hit(int x, int y, Ray r, RaycastHit hit);
+	}
+
+	/**
+	 * Traces one primary ray through every pixel of a {@link Tile}, in square
+	 * blocks of {@link ImageData#getPacketSize()} pixels whose rays are traced
+	 * together as a {@link RayPacket}. The rays of neighboring pixels pass
+	 * through mostly the same parts of the scene, so the packet shares the
+	 * work of walking the acceleration structure.
+	 * 
+	 * @param handler Called with the closest hit of every pixel's ray
+	 */
+	private void tracePackets(Scene s, ImageData data, Tile tile, PrimaryHitHandler handler) {
+		int size = data.getPacketSize();
+		RayPacket packet = new RayPacket(size * size, SELF_INTERSECTION_EPSILON);
+		int endX = tile.x + tile.width, endY = tile.y + tile.height;
+		for (int py = tile.y; py < endY; py += size) {
+			for (int px = tile.x; px < endX; px += size) {
+				int maxX = Math.min(px + size, endX), maxY = Math.min(py + size, endY);
+				packet.clear();
+				for (int y = py; y < maxY; y++) {
+					for (int x = px; x < maxX; x++)
+						packet.add(getRay(x, y, data));
+				}
+				s.intersect(packet);
+				int i = 0;
+				for (int y = py; y < maxY; y++) {
+					for (int x = px; x < maxX; x++, i++) {
+						RaycastHit hit = packet.isHit(i)
+								? toRaycastHit(packet.models[i], packet.models[i].getSurface(packet.rays[i],
+										packet.hits[i]), packet.tMax[i])
+								: miss();
+						handler.hit(x, y, packet.rays[i], hit);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shades a single ray.
+	 * 
+	 * @return the ray's color, packed the same way as {@link Color#getRGB()}
+	 */
+	private int shade(Scene s, Ray r, RaycastHit hit) {
+		if (!hit.isHit)
+			return Color.BLACK.getRGB();
+		Vector3 c = render.render(this, s, r, hit);
+		return new Color(round(c.x), round(c.y), round(c.z)).getRGB();
+	}
+
+	/**
+	 * Renders a picture with adaptive anti-aliasing, in two passes over the
+	 * image's {@link Tile}s. The first pass traces one ray per pixel and
+	 * remembers which object each pixel shows. The second pass copies those
+	 * colors into the {@link FrameBuffer}, supersampling only the pixels whose
+	 * color differs from a neighbor's by more than the
+	 * {@link ImageData#getAdaptiveThreshold() threshold} or that show a
+	 * different object than a neighbor. Most pixels are flat, so the picture
+	 * costs little more than one ray per pixel.
+	 * 
+	 * @throws InterruptedException if interrupted while waiting for a pass
+	 */
+	private void renderAdaptive(FrameBuffer pic, Scene s, ImageData data) throws InterruptedException {
+		// the first pass gets its own buffers; the second pass reads neighbors
+		// across tile borders while other tiles are being written
+		int[] colors = new int[width * height];
+		int[] ids = new int[width * height];
+		IdentityHashMap<IModel, Integer> objectIds = new IdentityHashMap<IModel, Integer>();
+		for (IModel m : s.objects)
+			objectIds.put(m, objectIds.size());
+
+		TileScheduler scheduler = scheduler(data);
+		scheduler.render(tile -> sampleTile(colors, ids, objectIds, s, data, tile));
+		scheduler.render(tile -> refineTile(pic, colors, ids, s, data, tile));
+	}
+
+	/**
+	 * First pass of {@link #renderAdaptive}. Traces one ray through every pixel
+	 * of a {@link Tile}, storing its color and the id of the object it hit (-1
+	 * for nothing).
+	 */
+	private void sampleTile(int[] colors, int[] ids, IdentityHashMap<IModel, Integer> objectIds, Scene s,
+			ImageData data, Tile tile) {
+		PrimaryHitHandler store = (x, y, r, hit) -> {
+			int i = y * width + x;
+			colors[i] = shade(s, r, hit);
+			if (hit.isHit) {
+				Integer id = objectIds.get(hit.itemHit);
+				ids[i] = id == null ? -2 : id;
+			} else {
+				ids[i] = -1;
+			}
+		};
+		if (data.getPacketSize() > 1) {
+			tracePackets(s, data, tile, store);
+		} else {
+			for (int y = tile.y; y < tile.y + tile.height; y++) {
+				for (int x = tile.x; x < tile.x + tile.width; x++) {
+					Ray r = getRay(x, y, data);
+					store.hit(x, y, r, raycast(r, s));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Second pass of {@link #renderAdaptive}. Writes every pixel of a
+	 * {@link Tile} to the {@link FrameBuffer}, supersampling the ones that
+	 * stand out from their neighbors.
+	 */
+	private void refineTile(FrameBuffer pic, int[] colors, int[] ids, Scene s, ImageData data, Tile tile) {
+		double threshold = data.getAdaptiveThreshold();
+		for (int y = tile.y; y < tile.y + tile.height; y++) {
+			for (int x = tile.x; x < tile.x + tile.width; x++) {
+				int rgb = colors[y * width + x];
+				if (isEdge(colors, ids, x, y, threshold)) {
+					Vector3 c = refine(x, y, 1.0, unpack(rgb), data.getAdaptiveDepth(), s, data);
+					rgb = new Color(round(c.x), round(c.y), round(c.z)).getRGB();
+				}
+				pic.setRGB(x, y, rgb);
+			}
+		}
+		this.renderedPixelCount.addAndGet(tile.size());
+	}
+
+	/**
+	 * 
+	 * @return true if a pixel shows a different object than one of its four
+	 *         neighbors, or if their colors differ by more than the threshold
+	 */
+	private boolean isEdge(int[] colors, int[] ids, int x, int y, double threshold) {
+		int i = y * width + x;
+		return (x > 0 && differs(colors, ids, i, i - 1, threshold))
+				|| (x < width - 1 && differs(colors, ids, i, i + 1, threshold))
+				|| (y > 0 && differs(colors, ids, i, i - width, threshold))
+				|| (y < height - 1 && differs(colors, ids, i, i + width, threshold));
+	}
+
+	private static boolean differs(int[] colors, int[] ids, int a, int b, double threshold) {
+		if (ids[a] != ids[b])
+			return true;
+		int ca = colors[a], cb = colors[b];
+		int diff = Math.max(Math.abs(((ca >> 16) & 0xFF) - ((cb >> 16) & 0xFF)),
+				Math.max(Math.abs(((ca >> 8) & 0xFF) - ((cb >> 8) & 0xFF)), Math.abs((ca & 0xFF) - (cb & 0xFF))));
+		return diff > threshold * 255.0;
+	}
+
+	/**
+	 * Finds the average color of a square area of the image by sampling the
+	 * centers of its four quadrants. Quadrants whose color differs from the
+	 * area's by more than the threshold are refined again, until the depth
+	 * runs out.
+	 * 
+	 * @param x      The x coordinate of the area's center
+	 * @param y      The y coordinate of the area's center
+	 * @param size   Width and height of the area, in pixels
+	 * @param center The color already sampled at the area's center
+	 * @param depth  The number of times the area may still be split
+	 * @return the area's average color
+	 */
+	private Vector3 refine(double x, double y, double size, Vector3 center, int depth, Scene s, ImageData data) {
+		double offset = size / 4.0;
+		double threshold = data.getAdaptiveThreshold() * 255.0;
+		Vector3 sum = new Vector3(0.0, 0.0, 0.0);
+		for (int q = 0; q < 4; q++) {
+			double qx = (q & 1) == 0 ? x - offset : x + offset;
+			double qy = (q & 2) == 0 ? y - offset : y + offset;
+			Vector3 c = sample(qx, qy, s, data);
+			if (depth > 1 && Math.max(Math.abs(c.x - center.x),
+					Math.max(Math.abs(c.y - center.y), Math.abs(c.z - center.z))) > threshold)
+				c = refine(qx, qy, size / 2.0, c, depth - 1, s, data);
+			sum.add(c);
+		}
+		return sum.scl(0.25);
+	}
+
+	private static Vector3 unpack(int rgb) {
+		return new Vector3((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+	}
+
+	/**
+	 * Traces a single ray through a point on the image.
+	 * 
+	 * @return the color seen along the ray, black if it hits nothing
+	 */
+	private Vector3 sample(double x, double y, Scene s, ImageData data) {
+		Ray r = getRay(x, y, data);
+		RaycastHit hit = raycast(r, s);
+		if (!hit.isHit)
+			return new Vector3(0.0, 0.0, 0.0);
+		return render.render(this, s, r, hit);
 	}
 
 	/**
@@ -171,16 +589,10 @@ public class Camera extends AbstractEventEmitter implements Transformable {
 	 * @return The {@link Ray} that is constructed
 	 */
 	private Ray[] getPerspectiveRay(int x, int y, ImageData i) {
-		double width = (double) i.getWidth();
-		double height = (double) i.getHeight();
 		double nx = (double) x;
 		double ny = (double) y;
 		if (!i.antiAliasing) {
-
-			double camX = (2.0 * (nx / width) - 1.0) * i.aspectRatio();
-			double camY = -(2.0 * (ny / height) - 1.0);
-			Vector3 dir = this.camToWorld.getTransformed(new Vector3(camX, camY, focalLength));
-			Ray[] rays = { new Ray(this.pos.clone(), dir) };
+			Ray[] rays = { getRay(nx, ny, i) };
 			return rays;
 		} else {
 			// 4 rays per pixel instead of 1
@@ -190,10 +602,7 @@ public class Camera extends AbstractEventEmitter implements Transformable {
 			int n = 0;
 			for (double xb : xa) {
 				for (double yb : ya) {
-					double camX = (2.0 * (xb / width) - 1.0) * i.aspectRatio();
-					double camY = -(2.0 * (yb / height) - 1.0);
-					Vector3 dir = this.camToWorld.getTransformed(new Vector3(camX, camY, focalLength));
-					rays[n] = new Ray(this.pos.clone(), dir);
+					rays[n] = getRay(xb, yb, i);
 					n++;
 				}
 			}
@@ -201,38 +610,175 @@ public class Camera extends AbstractEventEmitter implements Transformable {
 		}
 	}
 
+	/**
+	 * Constructs a perspective {@link Ray} through a point on the image. Pixel
+	 * (x, y) is centered on the point (x, y), so fractional coordinates reach
+	 * points between pixel centers.
+	 * 
+	 * @param x The x coordinate the {@link Ray} will pass through
+	 * @param y The y coordinate the {@link Ray} will pass through
+	 * @param i Data on the image
+	 * @return The {@link Ray} that is constructed
+	 */
+	Ray getRay(double x, double y, ImageData i) {
+		double width = (double) i.getWidth();
+		double height = (double) i.getHeight();
+		double camX = (2.0 * (x / width) - 1.0) * i.aspectRatio();
+		double camY = -(2.0 * (y / height) - 1.0);
+		Vector3 dir = this.camToWorld.getTransformed(new Vector3(camX, camY, focalLength));
+		return new Ray(this.pos.clone(), dir);
+	}
+
+	/**
+	 * Finds the closest object a {@link Ray} hits. Only the objects along the
+	 * {@link Ray}'s path are tested, using the {@link Scene}'s acceleration
+	 * structure.
+	 * 
+	 * @param r The {@link Ray} to cast
+	 * @param s The {@link Scene} to cast it into
+	 * @return Information about the closest hit. The hit's distance is
+	 *         measured along the {@link Ray} from its origin.
+	 */
 	public RaycastHit raycast(Ray r, Scene s) {
-		IModel primitive = null;
-		Vector3 hitPoint = Vector3.ZERO;
-		Vector3 normal = Vector3.ZERO;
-		double dist = Double.MAX_VALUE;
-		boolean isHit = false;
-
-		for (IModel p : s.objects) {
-			Intersection intersection = p.intersects(r);
-
-			if (intersection.isHit) {
-				double intersectionDist = pos.distFrom(intersection.hit);
-				if (intersectionDist < dist && intersectionDist > 0.0) {
-					primitive = p.clone();
-					hitPoint = intersection.hit;
-					normal = intersection.normal;
-					dist = intersectionDist;
-					isHit = true;
-				}
+		ClosestHit closest = new ClosestHit(r);
+		s.getAccelerator().traverse(r, Double.MAX_VALUE, closest);
+		if (closest.model == null)
+			return miss();
+		return toRaycastHit(closest.model, closest.model.getSurface(r, closest.hit), closest.dist);
+	}
+
+	private static RaycastHit miss() {
+		return new RaycastHit(null, Vector3.ZERO, Vector3.ZERO, Double.MAX_VALUE, false);
+	}
+
+	private static RaycastHit toRaycastHit(IModel model, Intersection i, double dist) {
+		return new RaycastHit(model, i.hit, i.normal, dist, true, i.primitive, i.u, i.v);
+	}
+
+	/**
+	 * Keeps track of the closest hit while the acceleration structure visits
+	 * the objects along a {@link Ray}. Each object is only asked for hits
+	 * closer than the best so far, and only the distance is found; the hit
+	 * point and normal are computed once, for the object that wins.
+	 */
+	private static class ClosestHit implements SceneBVH.ObjectVisitor {
+		private Ray r;
+		private IModel model = null;
+		private final HitRecord hit = new HitRecord();
+		private double dist = Double.MAX_VALUE;
+
+		private ClosestHit(Ray r) {
+			this.r = r;
+		}
+
+		public double visit(IModel p, double tMax) {
+			double t = p.intersect(r, SELF_INTERSECTION_EPSILON, dist, hit);
+			if (t < dist) {
+				this.model = p;
+				dist = t;
 			}
+			return Math.min(tMax, dist);
+		}
+	}
 
+	/**
+	 * 
+	 * @return the strategy that colors the hits of the camera's rays
+	 */
+	public RenderStrategy getRenderStrategy() {
+		return render;
+	}
+
+	/**
+	 * Changes how the hits of the camera's rays are colored, e.g. to a
+	 * {@link render.strategies.WhittedStrategy} for mirrors and glass. The
+	 * default is {@link RenderStrategy#getStrategy()}.
+	 */
+	public void setRenderStrategy(RenderStrategy strategy) {
+		this.render = strategy;
+	}
+
+	/**
+	 * Gets the camera's worker pool, switching to the shared pool with the
+	 * right number of workers if the worker count changed since the last
+	 * picture.
+	 *
+	 * @param workers Number of threads to render with
+	 */
+	synchronized ThreadPool getPool(int workers) throws InterruptedException {
+		if (pool != null && pool.getPoolSize() != workers)
+			release();
+		if (pool == null)
+			pool = acquire(workers);
+		return pool;
+	}
+
+	/**
+	 * Creates a scheduler for an image that renders on the camera's pool.
+	 */
+	TileScheduler scheduler(ImageData data) throws InterruptedException {
+		return new TileScheduler(data, getPool(data.getWorkerCount()));
+	}
+
+	/**
+	 * Lets go of the camera's worker pool. Its threads exit if no other camera
+	 * holds it; the camera can still take pictures, and holds a pool again
+	 * when it does.
+	 *
+	 * @throws InterruptedException if the current thread is interrupted while
+	 *                              waiting for the workers
+	 */
+	public synchronized void shutdown() throws InterruptedException {
+		if (pool != null)
+			release();
+	}
+
+	/**
+	 * A pool and the number of cameras holding it.
+	 */
+	private static class SharedPool {
+		final ThreadPool pool;
+		int users;
+
+		SharedPool(int workers) {
+			pool = new ThreadPool(workers);
 		}
-		// System.out.println(hitPoint);
-		return new RaycastHit(primitive, hitPoint, normal, dist, isHit);
 	}
 
-	private synchronized int incrementRenderedPixelCount() {
-		return this.renderedPixelCount++;
+	/**
+	 * Takes hold of the shared pool with a number of workers, starting it if
+	 * no camera holds it.
+	 */
+	private static ThreadPool acquire(int workers) {
+		synchronized (POOLS) {
+			SharedPool shared = POOLS.get(workers);
+			if (shared == null) {
+				shared = new SharedPool(workers);
+				POOLS.put(workers, shared);
+			}
+			shared.users++;
+			return shared.pool;
+		}
+	}
+
+	/**
+	 * Lets go of the camera's pool, shutting it down if it was the last
+	 * camera holding it.
+	 */
+	private void release() throws InterruptedException {
+		ThreadPool released = pool;
+		pool = null;
+		synchronized (POOLS) {
+			SharedPool shared = POOLS.get(released.getPoolSize());
+			if (--shared.users == 0) {
+				POOLS.remove(released.getPoolSize());
+				released.shutdown();
+			}
+		}
 	}
 
-	private synchronized int getRenderedPixelCount() {
-		return this.renderedPixelCount;
+	private int getRenderedPixelCount() {
+		return this.renderedPixelCount.get();
 	}
 
 	public void translate(Vector3 v) {
@@ -257,7 +803,7 @@ public class Camera extends AbstractEventEmitter implements Transformable {
 
 	public double requestProgress() {
 		if (rendering)
-			return 100.0 * (double) (y * width + x) / (double) (width * height);
+			return 100.0 * (double) getRenderedPixelCount() / (double) (width * height);
 		else {
 			System.err.println("progress requested while Camera was not rendering.");
 			return -1.0;
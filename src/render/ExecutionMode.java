@@ -0,0 +1,22 @@
+package render;
+
+/**
+ * How a {@link TileScheduler} runs its {@link Tile}s.
+ *
+ * <ul>
+ * <li><b>POOL:</b> A fixed number of platform threads from a
+ * {@link tools.ThreadPool}, each rendering tiles until none are left. The
+ * {@link Camera}'s pool keeps its threads between frames;</li>
+ * <li><b>VIRTUAL:</b> One virtual thread per worker, each rendering tiles
+ * until none are left. A tile that blocks, e.g. on a lazily loaded mesh or
+ * texture, frees its carrier thread for another worker instead of holding on
+ * to a platform thread. Needs Java 21 or newer; older
+ * JVMs fall back to <b>POOL</b>.</li>
+ * </ul>
+ *
+ * @author Don Isaac
+ *
+ */
+public enum ExecutionMode {
+	POOL, VIRTUAL
+}
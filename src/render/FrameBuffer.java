@@ -0,0 +1,112 @@
+package render;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Stores the pixels of an image while it is being rendered. Pixels are kept in
+ * a plain <code>int[]</code> of packed RGB values (one int per pixel, row by
+ * row) that threads write to directly. No locking is done: threads must write
+ * to disjoint regions (e.g. different {@link Tile}s), and the image should only
+ * be read once every thread writing to it has been joined.<br/>
+ * <br/>
+ * For the packed int image types ({@link BufferedImage#TYPE_INT_RGB} and
+ * {@link BufferedImage#TYPE_INT_ARGB}) the array is the image's own raster, so
+ * {@link #getImage()} does not copy anything. Other image types are rendered to
+ * a separate array and converted when the image is requested.
+ *
+ * @author Don Isaac
+ *
+ */
+public class FrameBuffer {
+	private final int width, height;
+	private final int[] pixels;
+	private final int imageType;
+	/** The image backed by {@link #pixels}, or null if the type is not direct */
+	private final BufferedImage image;
+
+	/**
+	 * Creates a FrameBuffer with the size and image type of an image.
+	 *
+	 * @param data Information about the image
+	 */
+	public FrameBuffer(ImageData data) {
+		this(data.getWidth(), data.getHeight(), data.getType());
+	}
+
+	/**
+	 * Full constructor.
+	 *
+	 * @param width     Width of the image in pixels
+	 * @param height    Height of the image in pixels
+	 * @param imageType The {@link BufferedImage} type of the resulting image
+	 */
+	public FrameBuffer(int width, int height, int imageType) {
+		this.width = width;
+		this.height = height;
+		this.imageType = imageType;
+		if (imageType == BufferedImage.TYPE_INT_RGB || imageType == BufferedImage.TYPE_INT_ARGB) {
+			this.image = new BufferedImage(width, height, imageType);
+			this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		} else {
+			this.image = null;
+			this.pixels = new int[width * height];
+		}
+	}
+
+	/**
+	 * Sets a pixel.
+	 *
+	 * @param x   The pixel's x coordinate
+	 * @param y   The pixel's y coordinate
+	 * @param rgb The pixel's color, packed the same way as
+	 *            {@link java.awt.Color#getRGB()}
+	 */
+	public void setRGB(int x, int y, int rgb) {
+		pixels[y * width + x] = rgb;
+	}
+
+	/**
+	 * Gets a pixel.
+	 *
+	 * @param x The pixel's x coordinate
+	 * @param y The pixel's y coordinate
+	 * @return The pixel's color, packed the same way as
+	 *         {@link java.awt.Color#getRGB()}
+	 */
+	public int getRGB(int x, int y) {
+		return pixels[y * width + x];
+	}
+
+	/**
+	 *
+	 * @return the pixel array, row by row. Writes to the array show up in the
+	 *         FrameBuffer.
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	/**
+	 * Gets the rendered image. For direct image types this is always the same
+	 * image, backed by the FrameBuffer's pixels. For other types a new image is
+	 * created from the pixels on every call.
+	 *
+	 * @return the image
+	 */
+	public BufferedImage getImage() {
+		if (image != null)
+			return image;
+		BufferedImage copy = new BufferedImage(width, height, imageType);
+		copy.setRGB(0, 0, width, height, pixels, 0, width);
+		return copy;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+}
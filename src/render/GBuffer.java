@@ -0,0 +1,173 @@
+package render;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import geometry.Vector3;
+import lighting.Material;
+import model.IModel;
+import tools.RaycastHit;
+
+/**
+ * The result of the trace stage of a deferred render: what every primary ray
+ * of an image hit, stored in flat primitive arrays with one entry per sample.
+ * {@link Camera#trace(scene.Scene, ImageData)} fills it in and
+ * {@link Camera#shade(GBuffer, scene.Scene)} turns it into a picture without
+ * casting any primary rays. Lights and materials are only read while shading,
+ * so after changing them the same buffer can be shaded again. Moving the
+ * camera or an object needs a new trace.<br/>
+ * <br/>
+ * Sample <code>i</code> of pixel (x, y) is at index
+ * <code>(y * width + x) * samples + i</code>. It is effectively a struct, so
+ * the arrays are public; they are only written by the trace stage.<br/>
+ * <br/>
+ * A buffer takes 60 bytes per sample, about 125MB for a 1920x1080 image
+ * without anti-aliasing.
+ *
+ * @author Don Isaac
+ *
+ */
+public class GBuffer {
+	/** Object id of samples that hit nothing */
+	public static final int MISS = -1;
+
+	public final int width, height;
+	/** Samples per pixel: 4 with anti-aliasing, 1 without */
+	public final int samples;
+	/** World space hit points */
+	public final double[] px, py, pz;
+	/** Surface normals at the hit points */
+	public final double[] nx, ny, nz;
+	/** Distance from the camera to the hit point */
+	public final double[] depth;
+	/**
+	 * Index of the object hit in the {@link scene.Scene}'s object list when
+	 * the buffer was traced, or {@link #MISS}. The object's material is looked
+	 * up while shading.
+	 */
+	public final int[] ids;
+
+	private final ImageData data;
+	/** The objects of the traced scene, by id */
+	private IModel[] objects = new IModel[0];
+	private IdentityHashMap<IModel, Integer> objectIds = new IdentityHashMap<IModel, Integer>();
+	/** Where the primary rays started */
+	private Vector3 eye = Vector3.ZERO.clone();
+
+	/**
+	 * Allocates an empty buffer the size of an image. Anti-aliased images get
+	 * four samples per pixel. Adaptive anti-aliasing is not used; deferred
+	 * renders always take a fixed number of samples.
+	 *
+	 * @param data The image the buffer is for
+	 */
+	public GBuffer(ImageData data) {
+		this.data = data;
+		this.width = data.getWidth();
+		this.height = data.getHeight();
+		this.samples = data.antiAliasing ? 4 : 1;
+		int n = width * height * samples;
+		px = new double[n];
+		py = new double[n];
+		pz = new double[n];
+		nx = new double[n];
+		ny = new double[n];
+		nz = new double[n];
+		depth = new double[n];
+		ids = new int[n];
+	}
+
+	/**
+	 *
+	 * @return the index of one of a pixel's samples
+	 */
+	public int index(int x, int y, int sample) {
+		return (y * width + x) * samples + sample;
+	}
+
+	public boolean isHit(int i) {
+		return ids[i] != MISS;
+	}
+
+	/**
+	 *
+	 * @return the object a sample hit, or null if it missed
+	 */
+	public IModel getObject(int i) {
+		return ids[i] == MISS ? null : objects[ids[i]];
+	}
+
+	/**
+	 *
+	 * @return the current material of the object a sample hit
+	 */
+	public Material getMaterial(int i) {
+		return objects[ids[i]].getMaterial();
+	}
+
+	public Vector3 getPosition(int i) {
+		return new Vector3(px[i], py[i], pz[i]);
+	}
+
+	public Vector3 getNormal(int i) {
+		return new Vector3(nx[i], ny[i], nz[i]);
+	}
+
+	/**
+	 *
+	 * @return where the primary rays started
+	 */
+	public Vector3 getEye() {
+		return eye;
+	}
+
+	/**
+	 * Rebuilds the {@link RaycastHit} of a sample, for strategies that shade
+	 * single hits.
+	 */
+	public RaycastHit getHit(int i) {
+		return new RaycastHit(getObject(i), getPosition(i), getNormal(i), depth[i], isHit(i));
+	}
+
+	/**
+	 *
+	 * @return the image the buffer was allocated for
+	 */
+	public ImageData getImageData() {
+		return data;
+	}
+
+	/**
+	 * Starts a new trace. Called before any sample is stored.
+	 *
+	 * @param eye     Where the primary rays start
+	 * @param objects The objects of the scene being traced
+	 */
+	void begin(Vector3 eye, List<IModel> objects) {
+		this.eye = eye.clone();
+		this.objects = objects.toArray(new IModel[objects.size()]);
+		this.objectIds = new IdentityHashMap<IModel, Integer>();
+		for (int id = 0; id < this.objects.length; id++)
+			objectIds.put(this.objects[id], id);
+	}
+
+	/**
+	 * Stores the closest hit of a sample's primary ray.
+	 */
+	void set(int i, RaycastHit hit) {
+		Integer id = hit.isHit ? objectIds.get(hit.itemHit) : null;
+		if (id == null) {
+			ids[i] = MISS;
+			depth[i] = Double.MAX_VALUE;
+			return;
+		}
+		ids[i] = id;
+		px[i] = hit.hitPoint.x;
+		py[i] = hit.hitPoint.y;
+		pz[i] = hit.hitPoint.z;
+		nx[i] = hit.normal.x;
+		ny[i] = hit.normal.y;
+		nz[i] = hit.normal.z;
+		depth[i] = hit.dist;
+	}
+}
@@ -1,8 +1,23 @@
 package render;
 
 public class ImageData {
+	/** Default width and height of the {@link Tile}s an image is split into */
+	public static final int DEFAULT_TILE_SIZE = 32;
+	/** Default contrast above which adaptive anti-aliasing refines a pixel */
+	public static final double DEFAULT_ADAPTIVE_THRESHOLD = 0.1;
+	/** Default width and height of the blocks of primary rays traced together */
+	public static final int DEFAULT_PACKET_SIZE = 8;
+
 	private int width,height,imageType;
 	public boolean antiAliasing;
+	private int tileSize = DEFAULT_TILE_SIZE;
+	private int workerCount = Runtime.getRuntime().availableProcessors();
+	private TileOrder tileOrder = TileOrder.SCANLINE;
+	private ExecutionMode executionMode = ExecutionMode.POOL;
+	private int adaptiveDepth = 0;
+	private double adaptiveThreshold = DEFAULT_ADAPTIVE_THRESHOLD;
+	private int packetSize = DEFAULT_PACKET_SIZE;
+	private boolean wavefront = false;
 	
 	public ImageData(int width, int height, int imageType, boolean antiAliasing){
 		this.width=width;
@@ -22,4 +37,147 @@ public class ImageData {
 	public int getType(){
 		return imageType;
 	}
+	/**
+	 * 
+	 * @return the width and height of the {@link Tile}s the image is split into
+	 */
+	public int getTileSize(){
+		return tileSize;
+	}
+	/**
+	 * Sets the width and height of the {@link Tile}s the image is split into.
+	 * @param tileSize the new tile size
+	 */
+	public void setTileSize(int tileSize){
+		if(tileSize<1)
+			throw new IllegalArgumentException("Tile size must be at least 1");
+		this.tileSize=tileSize;
+	}
+	/**
+	 * 
+	 * @return the number of threads used to render the image
+	 */
+	public int getWorkerCount(){
+		return workerCount;
+	}
+	/**
+	 * Sets the number of threads used to render the image. Defaults to the
+	 * number of available processors.
+	 * @param workerCount the new number of threads
+	 */
+	public void setWorkerCount(int workerCount){
+		if(workerCount<1)
+			throw new IllegalArgumentException("There must be at least 1 worker");
+		this.workerCount=workerCount;
+	}
+	/**
+	 * 
+	 * @return the order the image's {@link Tile}s are rendered in
+	 */
+	public TileOrder getTileOrder(){
+		return tileOrder;
+	}
+	/**
+	 * Sets the order the image's {@link Tile}s are rendered in.
+	 * @param tileOrder the new order
+	 */
+	public void setTileOrder(TileOrder tileOrder){
+		this.tileOrder=tileOrder;
+	}
+	/**
+	 * 
+	 * @return how the image's {@link Tile}s are run
+	 */
+	public ExecutionMode getExecutionMode(){
+		return executionMode;
+	}
+	/**
+	 * Sets how the image's {@link Tile}s are run: on a pool of platform threads
+	 * or on virtual threads. Either way, no more than
+	 * {@link #getWorkerCount()} tiles render at once.
+	 * @param executionMode the new mode
+	 */
+	public void setExecutionMode(ExecutionMode executionMode){
+		this.executionMode=executionMode;
+	}
+	/**
+	 * 
+	 * @return how many times a pixel may be subdivided by adaptive
+	 *         anti-aliasing, or 0 if adaptive anti-aliasing is off
+	 */
+	public int getAdaptiveDepth(){
+		return adaptiveDepth;
+	}
+	/**
+	 * Turns adaptive anti-aliasing on or off. When it is on, every pixel is
+	 * sampled once, and only pixels that differ from a neighbor are
+	 * supersampled: their four quadrants are sampled, and any quadrant that
+	 * still differs from the pixel is split again, up to <code>depth</code>
+	 * times. A depth of 1 costs at most as much as {@link #antiAliasing},
+	 * which is ignored while adaptive anti-aliasing is on.
+	 * @param depth the maximum number of subdivisions, or 0 to turn adaptive
+	 * anti-aliasing off
+	 */
+	public void setAdaptiveDepth(int depth){
+		if(depth<0)
+			throw new IllegalArgumentException("Adaptive depth can't be negative");
+		this.adaptiveDepth=depth;
+	}
+	/**
+	 * 
+	 * @return the contrast above which adaptive anti-aliasing refines a pixel
+	 */
+	public double getAdaptiveThreshold(){
+		return adaptiveThreshold;
+	}
+	/**
+	 * Sets the contrast above which adaptive anti-aliasing refines a pixel.
+	 * Contrast is the largest difference between two colors' channels, from 0
+	 * (identical) to 1 (black and white). Pixels that show a different object
+	 * than a neighbor are always refined.
+	 * @param threshold the new threshold
+	 */
+	public void setAdaptiveThreshold(double threshold){
+		if(threshold<0||threshold>1)
+			throw new IllegalArgumentException("Adaptive threshold must be between 0 and 1");
+		this.adaptiveThreshold=threshold;
+	}
+	/**
+	 * 
+	 * @return the width and height of the blocks of pixels whose primary rays
+	 *         are traced together as one {@link accel.RayPacket}
+	 */
+	public int getPacketSize(){
+		return packetSize;
+	}
+	/**
+	 * Sets the width and height of the blocks of pixels whose primary rays are
+	 * traced together as one {@link accel.RayPacket}. Packets are only used for
+	 * one ray per pixel: with {@link #antiAliasing} on and adaptive
+	 * anti-aliasing off, rays are traced one at a time.
+	 * @param packetSize the new packet size, or 1 to trace every ray on its own
+	 */
+	public void setPacketSize(int packetSize){
+		if(packetSize<1)
+			throw new IllegalArgumentException("Packet size must be at least 1");
+		this.packetSize=packetSize;
+	}
+	/**
+	 * 
+	 * @return true if the image is rendered by a {@link WavefrontRenderer}
+	 */
+	public boolean isWavefront(){
+		return wavefront;
+	}
+	/**
+	 * Picks between rendering tile by tile, each pixel traced and shaded in one
+	 * go, and rendering in waves with a {@link WavefrontRenderer}, which queues
+	 * every stage's rays and runs each queue in sorted batches. Only used
+	 * without adaptive anti-aliasing, and only for strategies the
+	 * {@link WavefrontRenderer} supports.
+	 * @param wavefront true to render in waves
+	 */
+	public void setWavefront(boolean wavefront){
+		this.wavefront=wavefront;
+	}
 }
@@ -0,0 +1,44 @@
+package render;
+
+/**
+ * A rectangular region of an image. Images are split into Tiles so that each
+ * thread can render a whole region at a time instead of a single pixel. This
+ * class is effectively a struct.
+ * 
+ * @author Don Isaac
+ *
+ */
+public class Tile {
+	/** Position of the Tile's top left pixel */
+	public final int x, y;
+	/** Size of the Tile in pixels */
+	public final int width, height;
+
+	/**
+	 * Full constructor.
+	 * 
+	 * @param x      The x coordinate of the Tile's top left pixel
+	 * @param y      The y coordinate of the Tile's top left pixel
+	 * @param width  The width of the Tile
+	 * @param height The height of the Tile
+	 */
+	public Tile(int x, int y, int width, int height) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * 
+	 * @return the number of pixels in the Tile
+	 */
+	public int size() {
+		return width * height;
+	}
+
+	@Override
+	public String toString() {
+		return "Tile(" + x + "," + y + " " + width + "x" + height + ")";
+	}
+}
@@ -0,0 +1,21 @@
+package render;
+
+/**
+ * The order in which the {@link Tile}s of an image are rendered. The order
+ * does not change the result, only which parts of the image finish first and
+ * how coherent the rays traced by neighbouring threads are.
+ * 
+ * <ul>
+ * <li><b>SCANLINE:</b> Row by row, left to right, top to bottom;</li>
+ * <li><b>HILBERT:</b> Along a Hilbert curve. Consecutive tiles are always
+ * adjacent, which keeps the geometry being hit by all threads similar;</li>
+ * <li><b>SPIRAL:</b> From the center of the image outwards. The most
+ * interesting part of a picture is usually finished first.</li>
+ * </ul>
+ * 
+ * @author Don Isaac
+ *
+ */
+public enum TileOrder {
+	SCANLINE, HILBERT, SPIRAL
+}
@@ -0,0 +1,269 @@
+package render;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tools.ThreadPool;
+import tools.VirtualThreads;
+
+/**
+ * Splits an image into {@link Tile}s and renders them on the workers of a
+ * {@link ThreadPool}. Every tile is submitted as a task, in the requested
+ * {@link TileOrder}, so the pool deals them out to its workers round-robin.
+ * Each worker renders its own tiles front to back; once it runs out, it steals
+ * tiles from the back of the other workers' queues so no thread sits idle while
+ * there is still work left. Workers never share a lock while rendering.<br/>
+ * <br/>
+ * A scheduler given a pool, like the one a {@link Camera} keeps, renders on
+ * that pool's workers, so their threads and thread local scratch outlive the
+ * frame. Otherwise it starts a pool of its own for each render.<br/>
+ * <br/>
+ * In {@link ExecutionMode#VIRTUAL} mode, one virtual thread is started per
+ * worker instead, and each one takes the next tile, in the requested order,
+ * until none are left. Tiles could each get a thread of their own, but the
+ * renderers keep their scratch (traversal stacks, visitors, light query
+ * buffers) in thread locals, which a thread per tile would allocate again for
+ * every tile. The virtual threads share the JVM's carrier pool, whose size can
+ * be set with the <code>jdk.virtualThreadScheduler.parallelism</code> system
+ * property.
+ *
+ * @author Don Isaac
+ *
+ */
+public class TileScheduler {
+
+	/**
+	 * Renders a single {@link Tile}. Called concurrently from every worker
+	 * thread, but never twice for the same {@link Tile}.
+	 *
+	 * @author Don Isaac
+	 *
+	 */
+	public interface TileRenderer {
+		public void render(Tile tile);
+	}
+
+	private int workerCount;
+	private ExecutionMode mode;
+	private List<Tile> tiles;
+	/** The pool to render on, or null to start one per render */
+	private ThreadPool pool;
+
+	/**
+	 * Creates a scheduler using the tile size, worker count, tile order and
+	 * execution mode of an image.
+	 *
+	 * @param data Information about the image to render
+	 */
+	public TileScheduler(ImageData data) {
+		this(data.getWidth(), data.getHeight(), data.getTileSize(), data.getWorkerCount(), data.getTileOrder(),
+				data.getExecutionMode());
+	}
+
+	/**
+	 * Creates a scheduler using the tile size, tile order and execution mode of
+	 * an image, that renders on an existing {@link ThreadPool}. The pool's size
+	 * takes the place of the image's worker count.
+	 *
+	 * @param data Information about the image to render
+	 * @param pool The pool to render on. It is left running.
+	 */
+	public TileScheduler(ImageData data, ThreadPool pool) {
+		this(data.getWidth(), data.getHeight(), data.getTileSize(), pool.getPoolSize(), data.getTileOrder(),
+				data.getExecutionMode());
+		this.pool = pool;
+	}
+
+	/**
+	 * Creates a scheduler that renders on a {@link ThreadPool}.
+	 *
+	 * @param width       Width of the image in pixels
+	 * @param height      Height of the image in pixels
+	 * @param tileSize    Width and height of each {@link Tile}
+	 * @param workerCount Number of threads to render with
+	 * @param order       The order to render the {@link Tile}s in
+	 */
+	public TileScheduler(int width, int height, int tileSize, int workerCount, TileOrder order) {
+		this(width, height, tileSize, workerCount, order, ExecutionMode.POOL);
+	}
+
+	/**
+	 * Full constructor.
+	 *
+	 * @param width       Width of the image in pixels
+	 * @param height      Height of the image in pixels
+	 * @param tileSize    Width and height of each {@link Tile}. Tiles on the
+	 *                    right and bottom edges of the image may be smaller.
+	 * @param workerCount Number of threads to render with
+	 * @param order       The order to render the {@link Tile}s in
+	 * @param mode        How the {@link Tile}s are run. Falls back to
+	 *                    {@link ExecutionMode#POOL} if the JVM has no
+	 *                    virtual threads.
+	 */
+	public TileScheduler(int width, int height, int tileSize, int workerCount, TileOrder order,
+			ExecutionMode mode) {
+		if (tileSize < 1)
+			throw new IllegalArgumentException("Tile size must be at least 1");
+		if (workerCount < 1)
+			throw new IllegalArgumentException("There must be at least 1 worker");
+		this.workerCount = workerCount;
+		this.mode = mode == ExecutionMode.VIRTUAL && !VirtualThreads.isAvailable() ? ExecutionMode.POOL : mode;
+		this.tiles = createTiles(width, height, tileSize, order);
+	}
+
+	/**
+	 * Renders every {@link Tile}, blocking until all of them are done.
+	 *
+	 * @param renderer Renders a single {@link Tile}
+	 * @throws InterruptedException if the calling thread is interrupted while
+	 *                              waiting for the workers to finish
+	 */
+	public void render(TileRenderer renderer) throws InterruptedException {
+		if (mode == ExecutionMode.VIRTUAL) {
+			renderVirtual(renderer);
+			return;
+		}
+		ThreadPool pool = this.pool != null ? this.pool
+				: new ThreadPool(Math.min(workerCount, Math.max(1, tiles.size())));
+		CountDownLatch done = new CountDownLatch(tiles.size());
+		// tiles of equal priority run in the order they are submitted, so the
+		// workers, together, still progress through the image in order
+		for (Tile tile : tiles) {
+			pool.submit(() -> {
+				try {
+					renderer.render(tile);
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+		try {
+			done.await();
+		} finally {
+			if (pool != this.pool)
+				pool.shutdown();
+		}
+	}
+
+	/**
+	 * Starts a virtual thread per worker. Each one renders the next
+	 * {@link Tile} until every tile has been taken.
+	 */
+	private void renderVirtual(TileRenderer renderer) throws InterruptedException {
+		int workers = Math.min(workerCount, Math.max(1, tiles.size()));
+		AtomicInteger next = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(workers);
+		for (int i = 0; i < workers; i++) {
+			VirtualThreads.start(() -> {
+				try {
+					int tile;
+					while ((tile = next.getAndIncrement()) < tiles.size())
+						renderer.render(tiles.get(tile));
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			// take the remaining tiles away, and let the ones already started
+			// finish
+			next.set(tiles.size());
+			boolean finished = false;
+			while (!finished) {
+				try {
+					done.await();
+					finished = true;
+				} catch (InterruptedException ignored) {
+				}
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 *
+	 * @return how the {@link Tile}s are run. {@link ExecutionMode#POOL} if
+	 *         {@link ExecutionMode#VIRTUAL} was asked for but is unavailable.
+	 */
+	public ExecutionMode getExecutionMode() {
+		return mode;
+	}
+
+	/**
+	 *
+	 * @return the {@link Tile}s in the order they are dealt to the workers
+	 */
+	public List<Tile> getTiles() {
+		return Collections.unmodifiableList(tiles);
+	}
+
+	private static List<Tile> createTiles(int width, int height, int tileSize, TileOrder order) {
+		int cols = (width + tileSize - 1) / tileSize;
+		int rows = (height + tileSize - 1) / tileSize;
+		List<Tile> tiles = new ArrayList<Tile>(cols * rows);
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				int x = col * tileSize;
+				int y = row * tileSize;
+				tiles.add(new Tile(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y)));
+			}
+		}
+
+		switch (order) {
+		case HILBERT:
+			int n = 1;
+			while (n < cols || n < rows)
+				n <<= 1;
+			final int side = n;
+			tiles.sort(Comparator.comparingLong(t -> hilbertIndex(side, t.x / tileSize, t.y / tileSize)));
+			break;
+		case SPIRAL:
+			final double cx = (cols - 1) / 2.0, cy = (rows - 1) / 2.0;
+			// sort by square ring around the center, then by angle within the
+			// ring so each ring is walked around in a circle
+			tiles.sort(Comparator.<Tile>comparingDouble(t -> Math.max(Math.abs(t.x / tileSize - cx),
+					Math.abs(t.y / tileSize - cy))).thenComparingDouble(t -> Math.atan2(t.y / tileSize - cy,
+							t.x / tileSize - cx)));
+			break;
+		case SCANLINE:
+		default:
+			break;
+		}
+		return tiles;
+	}
+
+	/**
+	 * Converts a position on an <b>n</b> by <b>n</b> grid to its distance along
+	 * a Hilbert curve covering the grid.
+	 *
+	 * @param n The size of the grid. Must be a power of two.
+	 * @param x The column
+	 * @param y The row
+	 * @return The distance along the curve
+	 */
+	private static long hilbertIndex(int n, int x, int y) {
+		long d = 0;
+		for (int s = n / 2; s > 0; s /= 2) {
+			int rx = (x & s) > 0 ? 1 : 0;
+			int ry = (y & s) > 0 ? 1 : 0;
+			d += (long) s * s * ((3 * rx) ^ ry);
+			// rotate the quadrant so the curve stays continuous
+			if (ry == 0) {
+				if (rx == 1) {
+					x = n - 1 - x;
+					y = n - 1 - y;
+				}
+				int t = x;
+				x = y;
+				y = t;
+			}
+		}
+		return d;
+	}
+}
@@ -0,0 +1,567 @@
+package render;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import accel.LightTree;
+import accel.RayPacket;
+import geometry.Intersection;
+import geometry.Ray;
+import geometry.Vector3;
+import lighting.Material;
+import model.IModel;
+import render.strategies.PhongStrategy;
+import scene.Scene;
+import tools.RaycastHit;
+import tools.ThreadPool;
+
+/**
+ * Renders an image in waves instead of pixel by pixel. Rather than tracing,
+ * shading and casting shadow rays for one pixel before moving on to the next,
+ * every stage runs over a whole wave of samples before the next stage starts,
+ * and hands its work to the next stage through a queue:
+ * <ol>
+ * <li><b>Generation</b> queues the primary ray of every sample in the
+ * wave.</li>
+ * <li><b>Extension</b> finds the closest hits of the primary rays, in
+ * {@link RayPacket}s when the image uses them.</li>
+ * <li><b>Shading</b> finds the lights that reach every hit, through the
+ * scene's {@link LightTree}, and the light each of them would add, faded
+ * towards the edge of its range. It queues a shadow ray for each light that
+ * adds anything.</li>
+ * <li><b>Shadows</b> sorts the shadow rays and tests them for blockers.</li>
+ * <li><b>Resolve</b> adds up the unblocked light and writes the pixels.</li>
+ * </ol>
+ * Each queue is processed in batches spread over
+ * {@link ImageData#getWorkerCount()} threads, so the rays of a batch walk
+ * mostly the same nodes of the scene and of its meshes. Shadow rays are sorted
+ * by the octant of their direction, then along a Morton curve through their
+ * origins. Primary rays all start at the camera, and their directions follow
+ * their pixels, so they are already in order when they are queued block by
+ * block ({@link ImageData#getPacketSize()} pixels wide) and need no sort.<br/>
+ * <br/>
+ * Only the {@link PhongStrategy} is supported; its lighting is split into
+ * steps for this, and the picture is the same as the one rendered tile by
+ * tile. Waves are bands of whole rows holding about {@link #WAVE_SIZE} shadow
+ * rays, and at least one row. Each sample gets one slot per light that reaches
+ * it. The first wave assumes every light reaches every sample, and later waves
+ * are sized by the number of lights per sample the wave before them found.
+ *
+ * @author Don Isaac
+ *
+ */
+public class WavefrontRenderer {
+	/** Number of shadow rays queued per wave, unless a row needs more */
+	public static final int WAVE_SIZE = 1 << 16;
+	/** Number of queue entries a worker takes at a time */
+	private static final int BATCH_SIZE = 512;
+	/** Bits of the sort key per axis of a ray's origin */
+	private static final int CELL_BITS = 4;
+	// per thread scratch of the shading stage, kept by the camera's workers
+	// from batch to batch and frame to frame
+	private static final ThreadLocal<int[]> NEARBY = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[0];
+		}
+	};
+	private static final ThreadLocal<double[]> TERMS = new ThreadLocal<double[]>() {
+		@Override
+		protected double[] initialValue() {
+			return new double[2];
+		}
+	};
+
+	private final Camera cam;
+	private final Scene s;
+	private final ImageData data;
+	private final PhongStrategy phong;
+	private final AtomicInteger progress;
+	private final LightTree lights;
+	/** Samples per pixel */
+	private final int samples;
+	/** Most rows of pixels a wave can hold */
+	private final int maxRows;
+	private final RayQueue primaries, shadows;
+
+	// what the extension stage found for each sample of the wave
+	private final IModel[] models;
+	private final double[] px, py, pz, nx, ny, nz;
+	/**
+	 * The shadow ray slots of sample <i>i</i> are
+	 * <code>[slots[i], slots[i + 1])</code>
+	 */
+	private final int[] slots;
+	// what the shading stage found for each shadow ray
+	private int[] lightIndices;
+	private double[] diffuse, specular;
+	/** Whether each shadow ray reached its light */
+	private boolean[] lit;
+
+	/**
+	 * Prepares the queues of a wavefront render.
+	 *
+	 * @param cam      The camera taking the picture
+	 * @param s        The {@link Scene} to render. Its acceleration structure
+	 *                 must be up to date.
+	 * @param data     The resolution information to use
+	 * @param phong    Lights the hits
+	 * @param progress Counts the pixels written, as each wave finishes
+	 */
+	public WavefrontRenderer(Camera cam, Scene s, ImageData data, PhongStrategy phong, AtomicInteger progress) {
+		this.cam = cam;
+		this.s = s;
+		this.data = data;
+		this.phong = phong;
+		this.progress = progress;
+		this.lights = s.getLightTree();
+		this.samples = data.antiAliasing ? 4 : 1;
+		int rowSamples = data.getWidth() * samples;
+		this.maxRows = Math.min(data.getHeight(), Math.max(1, WAVE_SIZE / rowSamples));
+		int waveSamples = maxRows * rowSamples;
+		this.primaries = new RayQueue(waveSamples);
+		this.shadows = new RayQueue(0);
+		this.slots = new int[waveSamples + 1];
+		this.lightIndices = new int[0];
+		this.models = new IModel[waveSamples];
+		this.px = new double[waveSamples];
+		this.py = new double[waveSamples];
+		this.pz = new double[waveSamples];
+		this.nx = new double[waveSamples];
+		this.ny = new double[waveSamples];
+		this.nz = new double[waveSamples];
+		this.diffuse = new double[0];
+		this.specular = new double[0];
+		this.lit = new boolean[0];
+	}
+
+	/**
+	 * Renders the whole image, one wave at a time.
+	 *
+	 * @param pic Receives the pixels
+	 * @throws InterruptedException if interrupted while waiting for a stage
+	 */
+	public void render(FrameBuffer pic) throws InterruptedException {
+		int width = data.getWidth(), height = data.getHeight();
+		int block = data.getPacketSize() > 1 ? data.getPacketSize() : ImageData.DEFAULT_PACKET_SIZE;
+		double lightsPerSample = lights.size();
+		for (int row = 0; row < height;) {
+			int rows = (int) Math.min(maxRows, WAVE_SIZE / Math.max(1, lightsPerSample) / (width * samples));
+			rows = Math.max(1, Math.min(rows, height - row));
+			final int first = row * width, pixels = rows * width;
+			final int count = pixels * samples;
+			parallel(count, (from, to) -> generate(first, from, to));
+			primaries.blockOrder(width, rows, samples, block);
+			parallel(primaries.size(), this::extend);
+			parallel(count, this::countLights);
+			int total = assignSlots(count);
+			parallel(count, this::shade);
+			shadows.sort(total);
+			parallel(shadows.size(), this::testShadows);
+			parallel(pixels, (from, to) -> resolve(pic, first, from, to));
+			progress.addAndGet(pixels);
+			lightsPerSample = total / (double) count;
+			row += rows;
+		}
+	}
+
+	/**
+	 * Generation stage. Queues the primary rays of samples
+	 * <code>[from, to)</code> of the wave.
+	 *
+	 * @param first Index of the wave's first pixel in the image
+	 */
+	private void generate(int first, int from, int to) {
+		int width = data.getWidth();
+		for (int i = from; i < to; i++) {
+			int pixel = first + i / samples;
+			double x = pixel % width, y = pixel / width;
+			if (samples > 1) {
+				// the same four points as Camera.getPerspectiveRay
+				int k = i % samples;
+				x += (k & 2) == 0 ? -.25 : .25;
+				y += (k & 1) == 0 ? -.25 : .25;
+			}
+			primaries.add(i, cam.getRay(x, y, data), Double.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Extension stage. Finds the closest hits of entries
+	 * <code>[from, to)</code> of the primary queue.
+	 */
+	private void extend(int from, int to) {
+		int size = data.getPacketSize() * data.getPacketSize();
+		if (size <= 1) {
+			for (int j = from; j < to; j++) {
+				int i = primaries.order[j];
+				RaycastHit hit = cam.raycast(primaries.get(i), s);
+				models[i] = hit.isHit ? hit.itemHit : null;
+				if (hit.isHit)
+					store(i, hit.hitPoint, hit.normal);
+			}
+			return;
+		}
+		RayPacket packet = new RayPacket(size, Camera.SELF_INTERSECTION_EPSILON);
+		for (int start = from; start < to; start += size) {
+			int end = Math.min(start + size, to);
+			packet.clear();
+			for (int j = start; j < end; j++)
+				packet.add(primaries.get(primaries.order[j]));
+			s.intersect(packet);
+			for (int j = start, p = 0; j < end; j++, p++) {
+				int i = primaries.order[j];
+				models[i] = packet.models[p];
+				if (packet.isHit(p)) {
+					Intersection surface = packet.models[p].getSurface(packet.rays[p], packet.hits[p]);
+					store(i, surface.hit, surface.normal);
+				}
+			}
+		}
+	}
+
+	private void store(int i, Vector3 point, Vector3 normal) {
+		px[i] = point.x;
+		py[i] = point.y;
+		pz[i] = point.z;
+		nx[i] = normal.x;
+		ny[i] = normal.y;
+		nz[i] = normal.z;
+	}
+
+	/**
+	 * First half of the shading stage. Counts the lights that reach samples
+	 * <code>[from, to)</code> of the wave, leaving the count of sample
+	 * <i>i</i> in <code>slots[i + 1]</code>.
+	 */
+	private void countLights(int from, int to) {
+		int[] nearby = nearby();
+		for (int i = from; i < to; i++)
+			slots[i + 1] = models[i] == null ? 0 : lights.query(new Vector3(px[i], py[i], pz[i]), nearby);
+	}
+
+	/**
+	 * Turns the light counts into the first shadow ray slot of each sample,
+	 * and makes room for the wave's shadow rays.
+	 *
+	 * @return the number of shadow ray slots the wave uses
+	 */
+	private int assignSlots(int count) {
+		slots[0] = 0;
+		for (int i = 0; i < count; i++)
+			slots[i + 1] += slots[i];
+		int total = slots[count];
+		if (total > shadows.capacity()) {
+			int capacity = Math.max(total, shadows.capacity() + shadows.capacity() / 2);
+			shadows.grow(capacity);
+			lightIndices = Arrays.copyOf(lightIndices, capacity);
+			diffuse = Arrays.copyOf(diffuse, capacity);
+			specular = Arrays.copyOf(specular, capacity);
+			lit = Arrays.copyOf(lit, capacity);
+		}
+		return total;
+	}
+
+	/**
+	 * Second half of the shading stage. Finds what every light that reaches
+	 * samples <code>[from, to)</code> of the wave adds to them, and queues a
+	 * shadow ray for every light that adds anything.
+	 */
+	private void shade(int from, int to) {
+		double[] terms = TERMS.get();
+		int[] nearby = nearby();
+		Vector3 eye = cam.pos;
+		for (int i = from; i < to; i++) {
+			if (models[i] == null)
+				continue;
+			Material m = models[i].getMaterial();
+			Vector3 p = new Vector3(px[i], py[i], pz[i]);
+			Vector3 n = new Vector3(nx[i], ny[i], nz[i]);
+			Vector3 lookVec = eye.getSubtract(p).getNormalized();
+			lights.query(p, nearby);
+			for (int slot = slots[i], j = 0; slot < slots[i + 1]; slot++, j++) {
+				lightIndices[slot] = nearby[j];
+				Vector3 lightPos = lights.getLight(nearby[j]).getPos();
+				Ray r = Ray.createRayFromPoints(p, lightPos);
+				if (phong.lightTerms(m, n, lookVec, r, terms)) {
+					double fade = lights.getFade(nearby[j], p);
+					shadows.add(slot, r, lightPos.getSubtract(p).len());
+					diffuse[slot] = terms[0] * fade;
+					specular[slot] = terms[1] * fade;
+				} else {
+					shadows.queued[slot] = false;
+				}
+				lit[slot] = false;
+			}
+		}
+	}
+
+	/**
+	 * Gets the calling thread's buffer for the results of a light query, with
+	 * room for every light.
+	 */
+	private int[] nearby() {
+		int[] nearby = NEARBY.get();
+		if (nearby.length < lights.size())
+			NEARBY.set(nearby = new int[lights.size()]);
+		return nearby;
+	}
+
+	/**
+	 * Shadow stage. Tests entries <code>[from, to)</code> of the sorted shadow
+	 * queue for blockers.
+	 */
+	private void testShadows(int from, int to) {
+		double epsilon = phong.getShadowEpsilon();
+		for (int j = from; j < to; j++) {
+			int slot = shadows.order[j];
+			lit[slot] = !s.occluded(shadows.get(slot), epsilon, shadows.tMax[slot]);
+		}
+	}
+
+	/**
+	 * Resolve stage. Adds up the light reaching the samples of pixels
+	 * <code>[from, to)</code> of the wave, in the same order as
+	 * {@link PhongStrategy}, and writes the pixels.
+	 *
+	 * @param first Index of the wave's first pixel in the image
+	 */
+	private void resolve(FrameBuffer pic, int first, int from, int to) {
+		int width = data.getWidth();
+		for (int p = from; p < to; p++) {
+			Vector3 c = new Vector3(0.0, 0.0, 0.0);
+			for (int i = p * samples; i < (p + 1) * samples; i++) {
+				if (models[i] == null)
+					continue;
+				Material m = models[i].getMaterial();
+				Vector3 color = phong.ambient(s, m);
+				for (int slot = slots[i]; slot < slots[i + 1]; slot++) {
+					if (lit[slot])
+						phong.addLight(color, m, lights.getLight(lightIndices[slot]), diffuse[slot], specular[slot]);
+				}
+				c.add(phong.clamp(color));
+			}
+			c.scl(1.0 / (double) samples);
+			int pixel = first + p;
+			pic.setRGB(pixel % width, pixel / width,
+					new Color(cam.round(c.x), cam.round(c.y), cam.round(c.z)).getRGB());
+		}
+	}
+
+	/**
+	 * Processes a range of queue entries.
+	 */
+	private interface Batch {
+		public void run(int from, int to);
+	}
+
+	/**
+	 * Splits <code>[0, count)</code> into batches and runs them on the
+	 * camera's worker threads, blocking until all of them are done. Workers
+	 * take the next batch as soon as they finish one. Every stage of every
+	 * wave runs on the same workers, so their thread local scratch is only
+	 * allocated once.
+	 */
+	private void parallel(int count, Batch batch) throws InterruptedException {
+		int workers = Math.min(data.getWorkerCount(), (count + BATCH_SIZE - 1) / BATCH_SIZE);
+		if (workers <= 1) {
+			if (count > 0)
+				batch.run(0, count);
+			return;
+		}
+		AtomicInteger next = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(workers);
+		ThreadPool pool = cam.getPool(data.getWorkerCount());
+		for (int i = 0; i < workers; i++) {
+			pool.submit(() -> {
+				try {
+					int from;
+					while ((from = next.getAndAdd(BATCH_SIZE)) < count)
+						batch.run(from, Math.min(from + BATCH_SIZE, count));
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+		done.await();
+	}
+
+	/**
+	 * A queue of rays waiting for a stage, stored by slot in flat arrays so a
+	 * full wave doesn't keep tens of thousands of objects alive. Slots may be
+	 * empty. {@link #order} lists the filled slots in traversal order.
+	 */
+	private static class RayQueue {
+		double[] ox, oy, oz, dx, dy, dz;
+		/** How far each ray is traced */
+		double[] tMax;
+		/** Whether each slot holds a ray */
+		boolean[] queued;
+		/** Filled slots, in traversal order */
+		int[] order;
+		/** Sort key of each slot */
+		private int[] keys;
+		private final int[] buckets = new int[1 << (3 + 3 * CELL_BITS)];
+		private int size;
+
+		RayQueue(int capacity) {
+			ox = new double[capacity];
+			oy = new double[capacity];
+			oz = new double[capacity];
+			dx = new double[capacity];
+			dy = new double[capacity];
+			dz = new double[capacity];
+			tMax = new double[capacity];
+			queued = new boolean[capacity];
+			order = new int[capacity];
+			keys = new int[capacity];
+		}
+
+		int capacity() {
+			return queued.length;
+		}
+
+		/**
+		 * Makes room for more slots, keeping the rays already queued.
+		 */
+		void grow(int capacity) {
+			ox = Arrays.copyOf(ox, capacity);
+			oy = Arrays.copyOf(oy, capacity);
+			oz = Arrays.copyOf(oz, capacity);
+			dx = Arrays.copyOf(dx, capacity);
+			dy = Arrays.copyOf(dy, capacity);
+			dz = Arrays.copyOf(dz, capacity);
+			tMax = Arrays.copyOf(tMax, capacity);
+			queued = Arrays.copyOf(queued, capacity);
+			order = Arrays.copyOf(order, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+		}
+
+		/**
+		 * Puts a ray in a slot.
+		 */
+		void add(int i, Ray r, double tMax) {
+			Vector3 o = r.getOrigin(), d = r.getDir();
+			ox[i] = o.x;
+			oy[i] = o.y;
+			oz[i] = o.z;
+			dx[i] = d.x;
+			dy[i] = d.y;
+			dz[i] = d.z;
+			this.tMax[i] = tMax;
+			queued[i] = true;
+		}
+
+		/**
+		 *
+		 * @return the ray in a slot, exactly as it was added
+		 */
+		Ray get(int i) {
+			// the direction is already normalized; this constructor doesn't
+			// normalize it again, which could change its last bits
+			Ray r = new Ray(new Vector3(dx[i], dy[i], dz[i]));
+			r.setOrigin(new Vector3(ox[i], oy[i], oz[i]));
+			return r;
+		}
+
+		/**
+		 *
+		 * @return the number of entries in {@link #order}
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Lists the slots of a band of pixels' samples block by block, and
+		 * pixel by pixel within a block. Every slot must be filled.
+		 *
+		 * @param width   Width of the band in pixels
+		 * @param height  Height of the band in pixels
+		 * @param samples Samples per pixel, which take consecutive slots
+		 * @param block   Width and height of the blocks
+		 */
+		void blockOrder(int width, int height, int samples, int block) {
+			size = 0;
+			for (int by = 0; by < height; by += block) {
+				for (int bx = 0; bx < width; bx += block) {
+					for (int y = by; y < Math.min(by + block, height); y++) {
+						for (int x = bx; x < Math.min(bx + block, width); x++) {
+							for (int k = 0; k < samples; k++)
+								order[size++] = (y * width + x) * samples + k;
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Lists the filled slots among the first <b>count</b>, sorted by the
+		 * octant of their direction and then along a Morton curve through
+		 * their origins. Slots with the same key stay in slot order. A counting
+		 * sort over the few thousand possible keys does this in two passes.
+		 */
+		void sort(int count) {
+			double minX = Double.POSITIVE_INFINITY, minY = minX, minZ = minX;
+			double maxX = Double.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+			for (int i = 0; i < count; i++) {
+				if (!queued[i])
+					continue;
+				minX = Math.min(minX, ox[i]);
+				minY = Math.min(minY, oy[i]);
+				minZ = Math.min(minZ, oz[i]);
+				maxX = Math.max(maxX, ox[i]);
+				maxY = Math.max(maxY, oy[i]);
+				maxZ = Math.max(maxZ, oz[i]);
+			}
+			Arrays.fill(buckets, 0);
+			for (int i = 0; i < count; i++) {
+				if (!queued[i])
+					continue;
+				int octant = (dx[i] < 0 ? 1 : 0) | (dy[i] < 0 ? 2 : 0) | (dz[i] < 0 ? 4 : 0);
+				int key = octant << (3 * CELL_BITS)
+						| morton(cell(ox[i], minX, maxX), cell(oy[i], minY, maxY), cell(oz[i], minZ, maxZ));
+				keys[i] = key;
+				buckets[key]++;
+			}
+			// turn the counts into the first position of each key
+			int position = 0;
+			for (int k = 0; k < buckets.length; k++) {
+				int n = buckets[k];
+				buckets[k] = position;
+				position += n;
+			}
+			for (int i = 0; i < count; i++) {
+				if (queued[i])
+					order[buckets[keys[i]]++] = i;
+			}
+			size = position;
+		}
+
+		/**
+		 *
+		 * @return which of 2^{@link #CELL_BITS} equal cells of [min, max] a
+		 *         value falls in
+		 */
+		private static int cell(double v, double min, double max) {
+			int cells = 1 << CELL_BITS;
+			if (!(max > min))
+				return 0;
+			int c = (int) ((v - min) / (max - min) * cells);
+			return Math.max(0, Math.min(cells - 1, c));
+		}
+
+		/**
+		 *
+		 * @return the bits of three cell numbers interleaved
+		 */
+		private static int morton(int x, int y, int z) {
+			int code = 0;
+			for (int b = CELL_BITS - 1; b >= 0; b--)
+				code = (code << 3) | ((x >> b) & 1) << 2 | ((y >> b) & 1) << 1 | ((z >> b) & 1);
+			return code;
+		}
+	}
+}
@@ -2,57 +2,162 @@ package render.strategies;
 
 import java.awt.Color;
 
+import accel.LightTree;
 import geometry.Ray;
 import geometry.Vector3;
 import lighting.Light;
 import lighting.Material;
-import model.IModel;
 import render.Camera;
+import render.GBuffer;
 import scene.Scene;
 import tools.RaycastHit;
 
 public class PhongStrategy extends RenderStrategy {
 
+	/**
+	 * Blockers closer than this to the point being shaded are ignored so
+	 * surfaces don't shadow themselves.
+	 */
+	private static final double SHADOW_EPSILON = .00001;
+
+	/** Receives the lights found by {@link LightTree#query}, one per thread */
+	private static final ThreadLocal<int[]> NEARBY = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[0];
+		}
+	};
+
 	public PhongStrategy() {
 		this.name = "phong";
 	}
 
 	@Override
 	public Vector3 render(Camera cam, Scene s, Ray ray, RaycastHit hit) {
-		Vector3 c = new Vector3(0.0, 0.0, 0.0);
-		IModel h = hit.itemHit;
-		Color itemColor = h.getMaterial().getColor();
-		Material m = h.getMaterial();
-		Vector3 n = hit.normal.clone();
-		c.x = (double) itemColor.getRed() * s.ambient.getInitialIntensity();
-		c.y = (double) itemColor.getGreen() * s.ambient.getInitialIntensity();
-		c.z = (double) itemColor.getBlue() * s.ambient.getInitialIntensity();
-		Vector3 lookVec = ray.getOrigin().getSubtract(hit.hitPoint).getNormalized();
-		for (Light l : s.lights) {
-
-			Ray r = Ray.createRayFromPoints(hit.hitPoint, l.getPos());
-			RaycastHit hitToLight = cam.raycast(r, s);
+		return shade(s, hit.itemHit.getMaterial(), hit.hitPoint, hit.normal.clone(), ray.getOrigin());
+	}
+
+	/**
+	 * Shades a {@link GBuffer} sample straight from the buffer's arrays.
+	 */
+	@Override
+	public Vector3 render(Camera cam, Scene s, GBuffer g, int i) {
+		return shade(s, g.getMaterial(i), g.getPosition(i), g.getNormal(i), g.getEye());
+	}
+
+	/**
+	 * Finds the color of a point on a surface, lit by the scene's ambient
+	 * light and by every point light that reaches it and isn't blocked. Lights
+	 * behind the surface or out of range are skipped before their shadow ray
+	 * is cast, and lights fade out towards the edge of their range (see
+	 * {@link LightTree#getFade}).
+	 * 
+	 * @param m   The surface's material
+	 * @param p   The point being shaded
+	 * @param n   The surface normal at the point
+	 * @param eye Where the point is seen from
+	 */
+	private Vector3 shade(Scene s, Material m, Vector3 p, Vector3 n, Vector3 eye) {
+		Vector3 c = ambient(s, m);
+		Vector3 lookVec = eye.getSubtract(p).getNormalized();
+		double[] terms = new double[2];
+		LightTree tree = s.getLightTree();
+		int[] nearby = NEARBY.get();
+		if (nearby.length < tree.size())
+			NEARBY.set(nearby = new int[tree.size()]);
+		int count = tree.query(p, nearby);
+		for (int j = 0; j < count; j++) {
+			Light l = tree.getLight(nearby[j]);
+			Ray r = Ray.createRayFromPoints(p, l.getPos());
+			if (!lightTerms(m, n, lookVec, r, terms))
+				continue;
 
 			//check if hitpoint is in a shadow
-			if (hitToLight.isHit && hitToLight.dist > .00001) 
-				 continue;
-			Vector3 refVec = n.getScale(2 * r.getDir().dot(n)).getSubtract(r.getDir());
-			// diffuse
-			double d = max(r.getDir().dot(n), 0);
-
-			c.x += m.Kd() * (double) itemColor.getRed() * d;
-			c.y += m.Kd() * (double) itemColor.getGreen() * d;
-			c.z += m.Kd() * (double) itemColor.getBlue() * d;
-			// specular
-			d = Math.pow(max(0, refVec.dot(lookVec)), hit.itemHit.getMaterial().getAlpha());
-			c.x += m.Ks() * (double) l.getColor().getRed() * d;
-			c.y += m.Ks() * (double) l.getColor().getGreen() * d;
-			c.z += m.Ks() * (double) l.getColor().getBlue() * d;
+			if (s.occluded(r, SHADOW_EPSILON, l.getPos().getSubtract(p).len()))
+				continue;
+			double fade = tree.getFade(nearby[j], p);
+			addLight(c, m, l, terms[0] * fade, terms[1] * fade);
+		}
+		return clamp(c);
+	}
+
+	/*
+	 * The steps of shade(), for renderers that cast the shadow rays
+	 * themselves, like render.WavefrontRenderer. Putting the steps back
+	 * together in the same order gives the same colors, bit for bit.
+	 */
+
+	/**
+	 * 
+	 * @return the color of a surface lit only by the scene's ambient light
+	 */
+	public Vector3 ambient(Scene s, Material m) {
+		Color itemColor = m.getColor();
+		return new Vector3((double) itemColor.getRed() * s.ambient.getInitialIntensity(),
+				(double) itemColor.getGreen() * s.ambient.getInitialIntensity(),
+				(double) itemColor.getBlue() * s.ambient.getInitialIntensity());
+	}
+
+	/**
+	 * Finds how strongly a light would shine on a point if nothing blocked it.
+	 * 
+	 * @param m       The surface's material
+	 * @param n       The surface normal at the point
+	 * @param lookVec Unit vector from the point towards the viewer
+	 * @param toLight The shadow ray from the point to the light
+	 * @param terms   Receives the diffuse factor at index 0 and the specular
+	 *                factor at index 1
+	 * @return false if the light adds nothing to the point's color, so its
+	 *         shadow ray can be skipped. Lights behind the surface never add
+	 *         anything, not even a highlight.
+	 */
+	public boolean lightTerms(Material m, Vector3 n, Vector3 lookVec, Ray toLight, double[] terms) {
+		Vector3 dir = toLight.getDir();
+		if (dir.dot(n) <= 0) {
+			terms[0] = terms[1] = 0;
+			return false;
 		}
+		Vector3 refVec = n.getScale(2 * dir.dot(n)).getSubtract(dir);
+		// diffuse
+		terms[0] = dir.dot(n);
+		// specular
+		terms[1] = Math.pow(max(0, refVec.dot(lookVec)), m.getAlpha());
+		return true;
+	}
+
+	/**
+	 * Adds the light found by {@link #lightTerms} to a color. The terms are
+	 * scaled by the light's {@link LightTree#getFade fade} at the point
+	 * first.
+	 */
+	public void addLight(Vector3 c, Material m, Light l, double diffuse, double specular) {
+		Color itemColor = m.getColor();
+		c.x += m.Kd() * (double) itemColor.getRed() * diffuse;
+		c.y += m.Kd() * (double) itemColor.getGreen() * diffuse;
+		c.z += m.Kd() * (double) itemColor.getBlue() * diffuse;
+		c.x += m.Ks() * (double) l.getColor().getRed() * specular;
+		c.y += m.Ks() * (double) l.getColor().getGreen() * specular;
+		c.z += m.Ks() * (double) l.getColor().getBlue() * specular;
+	}
+
+	/**
+	 * Clamps every channel of a color to [0, 255].
+	 * 
+	 * @return <b>c</b>
+	 */
+	public Vector3 clamp(Vector3 c) {
 		c.x = clamp(c.x, 0.0, 255.0);
 		c.y = clamp(c.y, 0.0, 255.0);
 		c.z = clamp(c.z, 0.0, 255.0);
 		return c;
 	}
 
+	/**
+	 * 
+	 * @return the distance from a point that shadow rays start at
+	 */
+	public double getShadowEpsilon() {
+		return SHADOW_EPSILON;
+	}
+
 }
@@ -3,6 +3,7 @@ package render.strategies;
 import geometry.Ray;
 import geometry.Vector3;
 import render.Camera;
+import render.GBuffer;
 import scene.Scene;
 import tools.RaycastHit;
 
@@ -33,6 +34,8 @@ public abstract class RenderStrategy {
 		switch (name.toLowerCase()) {
 		case "phong":
 			return new PhongStrategy();
+		case "whitted":
+			return new WhittedStrategy();
 		default:
 			throw new IllegalArgumentException("Invalid strategy name.");
 		}
@@ -48,6 +51,13 @@ public abstract class RenderStrategy {
 		return this.name;
 	}
 
+	/**
+	 * Called by the {@link Camera} before it renders or shades a frame, for
+	 * strategies that keep per-frame state. Does nothing by default.
+	 */
+	public void beginFrame() {
+	}
+
 	/**
 	 * Processes a raycast result and determines the resulting color.
 	 * 
@@ -63,6 +73,27 @@ public abstract class RenderStrategy {
 	 */
 	public abstract Vector3 render(Camera cam, Scene s, Ray ray, RaycastHit hit);
 
+	/**
+	 * Determines the color of one sample of a {@link GBuffer}, during the shade
+	 * stage of a deferred render. By default the sample's hit and primary ray
+	 * are rebuilt and passed to
+	 * {@link #render(Camera, Scene, Ray, RaycastHit)}; strategies can read the
+	 * buffer directly instead.
+	 * 
+	 * @param cam the camera taking the picture
+	 * @param s   the scene the picture is of
+	 * @param g   the traced primary hits
+	 * @param i   index of a sample that hit something
+	 * 
+	 * @return the resulting color, like
+	 *         {@link #render(Camera, Scene, Ray, RaycastHit)}
+	 */
+	public Vector3 render(Camera cam, Scene s, GBuffer g, int i) {
+		RaycastHit hit = g.getHit(i);
+		Ray ray = new Ray(g.getEye().clone(), hit.hitPoint.getSubtract(g.getEye()));
+		return render(cam, s, ray, hit);
+	}
+
 	@Override
 	public String toString() {
 		return "RenderStrategy#" + this.name;
@@ -0,0 +1,198 @@
+package render.strategies;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import geometry.Ray;
+import geometry.Vector3;
+import lighting.Material;
+import render.Camera;
+import scene.Scene;
+import tools.RaycastHit;
+
+/**
+ * Whitted-style ray tracing. Surfaces are lit like the {@link PhongStrategy}
+ * lights them, and reflective or transparent materials (see
+ * {@link Material#getReflectivity()} and {@link Material#getTransparency()})
+ * also cast a reflected and a refracted ray, following Snell's law, and mix in
+ * the color those rays find. Light that can't get out of a material is
+ * reflected instead (total internal reflection).<br/>
+ * <br/>
+ * Secondary rays are only cast when they can still change the picture. Three
+ * limits decide that:
+ * <ul>
+ * <li>The <b>max depth</b>: the number of bounces a path can take.</li>
+ * <li>The <b>throughput cutoff</b>: the fraction of a sample's color a ray
+ * would contribute, the product of the reflectivities and transparencies along
+ * its path. Rays below it are not cast.</li>
+ * <li>The <b>ray budget</b>: the number of secondary rays a frame may cast,
+ * shared by every thread. Once it is spent, the rest of the frame is shaded
+ * without secondary rays, so which pixels miss out depends on the order the
+ * tiles are rendered in.</li>
+ * </ul>
+ * A ray that isn't cast is replaced by the surface's own Phong color, so
+ * mirrors and glass fade into plain surfaces instead of turning black. Matte
+ * materials never cast secondary rays and look exactly like they do with the
+ * {@link PhongStrategy}. Shadow rays are still blocked by transparent objects.
+ *
+ * @author Don Isaac
+ *
+ */
+public class WhittedStrategy extends RenderStrategy {
+	public static final int DEFAULT_MAX_DEPTH = 5;
+	/** About one color level out of 255 */
+	public static final double DEFAULT_MIN_THROUGHPUT = .004;
+	/** Budget that never runs out */
+	public static final long UNLIMITED = Long.MAX_VALUE;
+	/**
+	 * Secondary rays start this far from the surface, on the side they leave
+	 * through, so they don't hit the surface they start on.
+	 */
+	private static final double SURFACE_OFFSET = 1e-5;
+
+	private final PhongStrategy phong = new PhongStrategy();
+	private int maxDepth = DEFAULT_MAX_DEPTH;
+	private double minThroughput = DEFAULT_MIN_THROUGHPUT;
+	private long rayBudget = UNLIMITED;
+	/** Secondary rays cast this frame */
+	private final AtomicLong cast = new AtomicLong();
+
+	public WhittedStrategy() {
+		this.name = "whitted";
+	}
+
+	@Override
+	public void beginFrame() {
+		cast.set(0);
+	}
+
+	@Override
+	public Vector3 render(Camera cam, Scene s, Ray ray, RaycastHit hit) {
+		return shade(cam, s, ray, hit, 0, 1);
+	}
+
+	/**
+	 * Finds the color of a hit, casting secondary rays if its material needs
+	 * them and the limits allow it.
+	 *
+	 * @param depth      Number of bounces before this hit
+	 * @param throughput Fraction of the sample's color this hit contributes
+	 */
+	private Vector3 shade(Camera cam, Scene s, Ray ray, RaycastHit hit, int depth, double throughput) {
+		Vector3 local = phong.render(cam, s, ray, hit);
+		Material m = hit.itemHit.getMaterial();
+		double kr = clamp(m.getReflectivity(), 0, 1), kt = clamp(m.getTransparency(), 0, 1 - kr);
+		if (kr == 0 && kt == 0)
+			return local;
+
+		Vector3 d = ray.getDir();
+		Vector3 n = hit.normal.getNormalized();
+		double cos = -d.dot(n);
+		boolean inside = cos < 0;
+		if (inside) {
+			n.scl(-1);
+			cos = -cos;
+		}
+		Vector3 c = local.getScale(1 - kr - kt);
+		if (kt > 0) {
+			// Snell's law, with eta the ratio of the indices on either side
+			double ior = m.getRefractiveIndex();
+			double eta = inside ? ior : 1 / ior;
+			double k = 1 - eta * eta * (1 - cos * cos);
+			if (k < 0) {
+				kr += kt;
+			} else {
+				Vector3 dir = d.getScale(eta).add(n.getScale(eta * cos - Math.sqrt(k)));
+				c.add(secondary(cam, s, hit.hitPoint.getSubtract(n.getScale(SURFACE_OFFSET)), dir, local, kt,
+						depth, throughput));
+			}
+		}
+		if (kr > 0) {
+			Vector3 dir = d.getAdd(n.getScale(2 * cos));
+			c.add(secondary(cam, s, hit.hitPoint.getAdd(n.getScale(SURFACE_OFFSET)), dir, local, kr, depth,
+					throughput));
+		}
+		return phong.clamp(c);
+	}
+
+	/**
+	 * Casts a reflected or refracted ray, if the limits allow it.
+	 *
+	 * @param local  The color of the surface the ray leaves
+	 * @param weight Fraction of the surface's color the ray contributes
+	 * @return the ray's contribution to the surface's color
+	 */
+	private Vector3 secondary(Camera cam, Scene s, Vector3 origin, Vector3 dir, Vector3 local, double weight,
+			int depth, double throughput) {
+		throughput *= weight;
+		if (depth >= maxDepth || throughput < minThroughput || !takeRay())
+			return local.getScale(weight);
+		Ray r = new Ray(origin, dir);
+		RaycastHit hit = cam.raycast(r, s);
+		if (!hit.isHit)
+			return new Vector3(0.0, 0.0, 0.0);
+		return shade(cam, s, r, hit, depth + 1, throughput).scl(weight);
+	}
+
+	/**
+	 * Takes a ray out of the frame's budget.
+	 *
+	 * @return false if the budget is spent
+	 */
+	private boolean takeRay() {
+		if (cast.incrementAndGet() <= rayBudget)
+			return true;
+		cast.decrementAndGet();
+		return false;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 *
+	 * @param maxDepth Number of bounces a path can take. 0 casts no secondary
+	 *                 rays.
+	 */
+	public void setMaxDepth(int maxDepth) {
+		if (maxDepth < 0)
+			throw new IllegalArgumentException("Max depth can't be negative");
+		this.maxDepth = maxDepth;
+	}
+
+	public double getMinThroughput() {
+		return minThroughput;
+	}
+
+	/**
+	 *
+	 * @param minThroughput Rays contributing less than this fraction of a
+	 *                      sample's color are not cast
+	 */
+	public void setMinThroughput(double minThroughput) {
+		this.minThroughput = minThroughput;
+	}
+
+	public long getRayBudget() {
+		return rayBudget;
+	}
+
+	/**
+	 *
+	 * @param rayBudget Number of secondary rays a frame may cast, or
+	 *                  {@link #UNLIMITED}
+	 */
+	public void setRayBudget(long rayBudget) {
+		if (rayBudget < 0)
+			throw new IllegalArgumentException("Ray budget can't be negative");
+		this.rayBudget = rayBudget;
+	}
+
+	/**
+	 *
+	 * @return the number of secondary rays cast since the frame began
+	 */
+	public long getSecondaryRayCount() {
+		return cast.get();
+	}
+}
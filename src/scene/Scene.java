@@ -3,9 +3,14 @@ package scene;
 import java.awt.Color;
 import java.util.ArrayList;
 
+import accel.LightTree;
+import accel.RayPacket;
+import accel.SceneBVH;
+import geometry.Ray;
 import lighting.AmbientLight;
 import lighting.Light;
 import model.IModel;
+import render.Camera;
 
 /**
  * Stores information about a scene. The scene is then passed to a
@@ -21,6 +26,18 @@ public class Scene {
 	public AmbientLight ambient;
 	/** Light sources in the Scene */
 	public ArrayList<Light> lights;
+	/**
+	 * Lights are ignored at points where their intensity is below this, which
+	 * gives {@link lighting.PointLight}s a limited range that they fade out
+	 * over (see {@link LightTree#getFade}). Lights are not dimmed by distance
+	 * otherwise, so no cutoff leaves the picture as it is, and culling is
+	 * opt-in: 0 lets every light reach everywhere at full strength.
+	 */
+	public double lightCutoff = 0;
+	/** Acceleration structure over {@link #objects}. Built lazily. */
+	private volatile SceneBVH accelerator;
+	/** Finds the {@link #lights} that reach a point. Built lazily. */
+	private volatile LightTree lightTree;
 
 	/**
 	 * Constructs a new Scene with some objects in it. Has some ambient light,
@@ -49,4 +66,87 @@ public class Scene {
 
 	}
 
+	/**
+	 * Gets the acceleration structure used to raycast against the Scene's
+	 * objects. The structure is rebuilt if objects were added or removed
+	 * since it was last built. Moving objects is not detected here since that
+	 * would mean checking every object on every raycast; call
+	 * {@link #update()} after moving objects instead.
+	 * 
+	 * @return the acceleration structure
+	 */
+	public SceneBVH getAccelerator() {
+		SceneBVH acc = accelerator;
+		if (acc == null || acc.size() != objects.size()) {
+			synchronized (this) {
+				acc = accelerator;
+				if (acc == null || acc.size() != objects.size())
+					accelerator = acc = new SceneBVH(objects);
+			}
+		}
+		return acc;
+	}
+
+	/**
+	 * Gets the structure used to find the lights that reach a point. Like the
+	 * accelerator, it is rebuilt if lights were added or removed or
+	 * {@link #lightCutoff} changed, but moving lights needs a call to
+	 * {@link #update()}.
+	 * 
+	 * @return the light tree
+	 */
+	public LightTree getLightTree() {
+		LightTree tree = lightTree;
+		if (tree == null || tree.size() != lights.size() || tree.getCutoff() != lightCutoff) {
+			synchronized (this) {
+				tree = lightTree;
+				if (tree == null || tree.size() != lights.size() || tree.getCutoff() != lightCutoff)
+					lightTree = tree = new LightTree(lights, lightCutoff);
+			}
+		}
+		return tree;
+	}
+
+	/**
+	 * Checks if any object blocks a {@link Ray} between two distances along
+	 * it. Stops at the first blocker found and doesn't allocate anything, so
+	 * this is much cheaper than finding the closest hit. Used for shadow rays.
+	 * 
+	 * @param r
+	 *            The {@link Ray} to cast
+	 * @param tMin
+	 *            Hits closer than this along the ray are ignored
+	 * @param tMax
+	 *            Hits farther than this along the ray are ignored
+	 * @return <code>true</code> if something is in the way
+	 */
+	public boolean occluded(Ray r, double tMin, double tMax) {
+		return getAccelerator().occluded(r, tMin, tMax);
+	}
+
+	/**
+	 * Finds the closest hit of every ray in a {@link RayPacket}, tracing them
+	 * together. The results are left in the packet.
+	 * 
+	 * @param packet
+	 *            The rays to cast
+	 */
+	public void intersect(RayPacket packet) {
+		getAccelerator().intersect(packet);
+	}
+
+	/**
+	 * Brings the acceleration structure up to date with the Scene's objects.
+	 * Added or removed objects cause a rebuild; moved objects cause a refit.
+	 * The light tree is rebuilt the next time it is needed, in case lights
+	 * moved. {@link Camera}s call this before taking a picture.
+	 */
+	public synchronized void update() {
+		if (accelerator == null)
+			accelerator = new SceneBVH(objects);
+		else
+			accelerator.update(objects);
+		lightTree = null;
+	}
+
 }
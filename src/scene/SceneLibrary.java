@@ -0,0 +1,116 @@
+package scene;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+
+import geometry.Vector3;
+import lighting.DefaultMaterial;
+import lighting.PointLight;
+import model.ModelInstance;
+import model.ModelLoader;
+import model.PlaneModel;
+import model.SphereModel;
+import render.Camera;
+
+/**
+ * The demo scenes used by the engines and benchmarks. Each builder adds
+ * objects and lights to a {@link Scene} and moves the {@link Camera} into
+ * place. The camera should start at the origin, looking down the z axis.
+ *
+ * @author Don Isaac
+ *
+ */
+public class SceneLibrary {
+	/** Shininess, specular and diffuse coefficients of the library's materials */
+	public static final double ALPHA = 100, KS = .25, KD = 1.0;
+	public static final DefaultMaterial RED = new DefaultMaterial(Color.red, ALPHA, KS, KD);
+	public static final DefaultMaterial ORANGE = new DefaultMaterial(Color.orange, ALPHA, KS, KD);
+	public static final DefaultMaterial GREEN = new DefaultMaterial(Color.green, ALPHA, KS, KD);
+	public static final DefaultMaterial CYAN = new DefaultMaterial(Color.cyan, ALPHA, KS, KD);
+	public static final DefaultMaterial YELLOW = new DefaultMaterial(Color.yellow, ALPHA, KS, KD);
+	public static final DefaultMaterial BLUE = new DefaultMaterial(Color.blue, ALPHA, KS, KD);
+	public static final DefaultMaterial PINK = new DefaultMaterial(Color.pink, ALPHA, KS, KD);
+	public static final DefaultMaterial WHITE = new DefaultMaterial(Color.white, ALPHA, KS, KD);
+	public static final DefaultMaterial GREY = new DefaultMaterial(Color.white.darker(), ALPHA, KS, KD);
+	public static final DefaultMaterial BLACK = new DefaultMaterial(Color.black, ALPHA, KS, KD);
+	/** Reflective and transparent materials, for the {@link render.strategies.WhittedStrategy} */
+	public static final DefaultMaterial MIRROR = new DefaultMaterial(new Color(230, 230, 230), 200, .8, .2, .85, 0, 1);
+	public static final DefaultMaterial GLASS = new DefaultMaterial(Color.white, 200, .8, .1, .1, .85, 1.5);
+
+	private SceneLibrary() {
+	}
+
+	/**
+	 * A snowman standing on a green plane.
+	 */
+	public static void loadSnowman(Scene s, Camera cam) {
+		s.lights.add(new PointLight(new Vector3(-3, 4, 0), Color.white, 1.0));
+		s.objects.add(new PlaneModel(new Vector3(0, -1.2, 0), new Vector3(0, 1, 0), GREEN));
+		s.objects.add(new SphereModel(new Vector3(0, -.7, 4), 1.0, WHITE));// bottom
+		s.objects.add(new SphereModel(new Vector3(0, .7, 4), .8, WHITE));// middle
+		s.objects.add(new SphereModel(new Vector3(0, 1.8, 4), .5, WHITE));// top
+		s.objects.add(new SphereModel(new Vector3(-.2, 1.7, 3), .1, BLACK));// left eye
+		s.objects.add(new SphereModel(new Vector3(.2, 1.7, 3), .1, BLACK));// right eye
+	}
+
+	/**
+	 * A cluster of colored spheres floating in space.
+	 */
+	public static void loadSphereModels(Scene s, Camera cam) {
+		cam.translate(new Vector3(-.3f, .7f, 0f));
+		s.lights.add(new PointLight(new Vector3(-3, 4, 0), Color.white, 1.0));
+		s.objects.add(new SphereModel(new Vector3(0, 0, 3.5), 1.0, GREEN));
+		s.objects.add(new SphereModel(new Vector3(0, 1.0, 3.8), 1.5, PINK));
+		s.objects.add(new SphereModel(new Vector3(1.0, -.2, 3.0), .5, YELLOW));
+		s.objects.add(new SphereModel(new Vector3(-1, .8, 3.2), .7, CYAN));
+		s.objects.add(new SphereModel(new Vector3(.8, .6, 2.8), .56, ORANGE));
+	}
+
+	/**
+	 * A mirror ball and a glass ball among colored spheres, for the
+	 * {@link render.strategies.WhittedStrategy}.
+	 */
+	public static void loadMirrors(Scene s, Camera cam) {
+		cam.translate(new Vector3(0, 1.2, -1));
+		cam.rotateX(10 * Math.PI / 180, true);
+		s.lights.add(new PointLight(new Vector3(-3, 5, 0), Color.white, 1.0));
+		s.lights.add(new PointLight(new Vector3(4, 3, 2), Color.white, .6));
+		s.objects.add(new PlaneModel(new Vector3(0, -1, 0), new Vector3(0, 1, 0), GREY));
+		s.objects.add(new SphereModel(new Vector3(-1.3, 0, 5), 1.0, MIRROR));
+		s.objects.add(new SphereModel(new Vector3(1.1, -.2, 4), .8, GLASS));
+		s.objects.add(new SphereModel(new Vector3(0, -.5, 7), .5, RED));
+		s.objects.add(new SphereModel(new Vector3(2.5, 0, 7), 1.0, BLUE));
+		s.objects.add(new SphereModel(new Vector3(-3, .2, 3), .6, YELLOW));
+	}
+
+	/**
+	 * Two spheres on a blue plane, seen from above.
+	 */
+	public static void loadSphereModels2(Scene s, Camera cam) {
+		cam.translate(Vector3.J.getScale(2));
+		cam.rotateX(20 * Math.PI / 180, true);
+		s.lights.add(new PointLight(new Vector3(-3, 3, 3.5), Color.white, 1.0));
+		s.objects.add(new PlaneModel(Vector3.ZERO.clone(), Vector3.J.clone(), BLUE));
+		s.objects.add(new SphereModel(new Vector3(-1, .8, 4), 1.2, GREEN));
+		s.objects.add(new SphereModel(new Vector3(0, .8, 5.5), 1.2, RED));
+	}
+
+	/**
+	 * A single .obj model at the origin, seen from above and to the side.
+	 *
+	 * @param file
+	 *            The .obj file to load
+	 * @throws IOException
+	 *             if the model could not be read
+	 */
+	public static void loadModel(Scene s, Camera cam, File file) throws IOException {
+		s.lights.add(new PointLight(new Vector3(-3, 5, -2), Color.white, 1.0));
+		cam.translate(new Vector3(2.5, 1.5, -2.5));
+		cam.rotateX(.3, true);
+		cam.rotateY(-Math.PI / 4.0, true);
+		ModelInstance m = ModelLoader.loadObjModel(file, RED);
+		System.out.println(m);
+		s.objects.add(m);
+	}
+}
@@ -0,0 +1,428 @@
+package scene;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import geometry.Transform;
+import geometry.Transformable;
+import geometry.Vector3;
+import lighting.AmbientLight;
+import lighting.DefaultMaterial;
+import lighting.Material;
+import lighting.PointLight;
+import model.ModelInstance;
+import model.ModelLoader;
+import model.PlaneModel;
+import model.SphereModel;
+import render.Camera;
+
+/**
+ * Loads a {@link Scene} and its {@link Camera} from a text file. The file is
+ * read one line at a time and every line adds its object to the scene straight
+ * away, so no tree of the whole file is ever built. Each line is a statement;
+ * words are separated by spaces and <code>#</code> starts a comment.
+ *
+ * <pre>
+ * camera   X Y Z [focal F] [TRANSFORM...]
+ * ambient  COLOR INTENSITY
+ * light    X Y Z COLOR INTENSITY
+ * cutoff   INTENSITY
+ * material NAME COLOR [alpha A] [ks KS] [kd KD] [reflect R] [transparent T] [ior N]
+ * mesh     NAME FILE
+ * instance MESH MATERIAL [TRANSFORM...]
+ * sphere   X Y Z RADIUS MATERIAL
+ * plane    X Y Z NX NY NZ MATERIAL
+ * </pre>
+ *
+ * <ul>
+ * <li>A COLOR is a {@link Color} name (<code>white</code>,
+ * <code>orange</code>...), a hex value (<code>0xff8000</code>) or three
+ * numbers from 0 to 255.</li>
+ * <li>A TRANSFORM is <code>translate X Y Z</code>, <code>rotate AXIS
+ * DEGREES</code> (around the object's own origin) or <code>orbit AXIS
+ * DEGREES</code> (around the world's origin). They are applied in order.</li>
+ * <li>Materials and meshes must be declared before they are used. The
+ * materials of {@link SceneLibrary} (<code>red</code>, <code>green</code>...)
+ * are always declared. Missing material properties default to those of
+ * {@link SceneLibrary}'s materials, which are neither reflective nor
+ * transparent. Reflections and refractions are only rendered by the
+ * {@link render.strategies.WhittedStrategy}.</li>
+ * <li>A mesh's FILE is an .obj file, relative to the scene file. It is loaded
+ * once, when it is declared, and every instance of it shares its geometry and
+ * {@link accel.BVH}. Instances of the same material share it too.</li>
+ * <li>Without a <code>camera</code> line, the camera sits at the origin looking
+ * down the z axis. The scene's ambient light is kept unless there is an
+ * <code>ambient</code> line.</li>
+ * <li><code>cutoff</code> sets {@link Scene#lightCutoff}, limiting how far
+ * lights reach. Lights fade out towards the end of their reach.</li>
+ * </ul>
+ *
+ * @author Don Isaac
+ *
+ */
+public class SceneLoader {
+	/** Extension of scene files */
+	public static final String EXTENSION = ".scene";
+	/** Focal length of cameras that don't set one */
+	public static final double DEFAULT_FOCAL_LENGTH = 1.7;
+
+	private static final Map<String, Color> COLORS = colors();
+
+	private final File baseDirectory;
+	private final String source;
+	private final Scene s;
+	private final Map<String, Material> materials = new HashMap<String, Material>();
+	private final Map<String, ModelInstance> meshes = new HashMap<String, ModelInstance>();
+	/** Meshes by file, so two names for one file still load it once */
+	private final Map<File, ModelInstance> files = new HashMap<File, ModelInstance>();
+	private Camera cam;
+
+	// the line being read
+	private String line;
+	private int lineNumber;
+	private int position;
+
+	private SceneLoader(File baseDirectory, String source, Scene s) {
+		this.baseDirectory = baseDirectory;
+		this.source = source;
+		this.s = s;
+		materials.put("red", SceneLibrary.RED);
+		materials.put("orange", SceneLibrary.ORANGE);
+		materials.put("green", SceneLibrary.GREEN);
+		materials.put("cyan", SceneLibrary.CYAN);
+		materials.put("yellow", SceneLibrary.YELLOW);
+		materials.put("blue", SceneLibrary.BLUE);
+		materials.put("pink", SceneLibrary.PINK);
+		materials.put("white", SceneLibrary.WHITE);
+		materials.put("grey", SceneLibrary.GREY);
+		materials.put("black", SceneLibrary.BLACK);
+		materials.put("mirror", SceneLibrary.MIRROR);
+		materials.put("glass", SceneLibrary.GLASS);
+	}
+
+	/**
+	 * Loads a scene file.
+	 *
+	 * @param file
+	 *            The scene file
+	 * @param s
+	 *            The {@link Scene} to add the file's objects and lights to
+	 * @return the camera described by the file
+	 * @throws FileNotFoundException
+	 *             if the file doesn't exist
+	 * @throws IOException
+	 *             if the file, or a mesh it uses, can't be read or is
+	 *             malformed
+	 */
+	public static Camera load(File file, Scene s) throws IOException, FileNotFoundException {
+		if (!file.isFile())
+			throw new FileNotFoundException(file.toString());
+		try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			return load(in, file.getAbsoluteFile().getParentFile(), file.toString(), s);
+		}
+	}
+
+	/**
+	 * Loads a scene from a stream of text.
+	 *
+	 * @param in
+	 *            The scene description. Not closed.
+	 * @param baseDirectory
+	 *            The directory mesh files are relative to
+	 * @param source
+	 *            Name of the scene used in error messages
+	 * @param s
+	 *            The {@link Scene} to add the objects and lights to
+	 * @return the camera described by the scene
+	 * @throws IOException
+	 *             if the scene, or a mesh it uses, can't be read or is
+	 *             malformed
+	 */
+	public static Camera load(Reader in, File baseDirectory, String source, Scene s) throws IOException {
+		SceneLoader loader = new SceneLoader(baseDirectory, source, s);
+		BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+		while ((loader.line = reader.readLine()) != null) {
+			loader.lineNumber++;
+			loader.position = 0;
+			loader.statement();
+		}
+		if (loader.cam == null)
+			loader.cam = new Camera(Vector3.ZERO.clone(), Transform.getIdentityInstance(), DEFAULT_FOCAL_LENGTH);
+		return loader.cam;
+	}
+
+	private void statement() throws IOException {
+		String keyword = next();
+		if (keyword == null)
+			return;
+		switch (keyword) {
+		case "camera":
+			camera();
+			break;
+		case "ambient":
+			s.ambient = new AmbientLight(color(), number());
+			break;
+		case "light":
+			s.lights.add(new PointLight(vector(), color(), number()));
+			break;
+		case "cutoff":
+			s.lightCutoff = number();
+			break;
+		case "material":
+			material();
+			break;
+		case "mesh":
+			mesh();
+			break;
+		case "instance":
+			instance();
+			break;
+		case "sphere":
+			s.objects.add(new SphereModel(vector(), number(), materialRef()));
+			break;
+		case "plane":
+			s.objects.add(new PlaneModel(vector(), vector(), materialRef()));
+			break;
+		default:
+			throw error("Unknown statement '" + keyword + "'");
+		}
+		String extra = next();
+		if (extra != null)
+			throw error("Unexpected '" + extra + "'");
+	}
+
+	private void camera() throws IOException {
+		if (cam != null)
+			throw error("The camera is already defined");
+		Vector3 pos = vector();
+		double focalLength = DEFAULT_FOCAL_LENGTH;
+		if ("focal".equals(peek())) {
+			next();
+			focalLength = number();
+		}
+		cam = new Camera(pos, Transform.getIdentityInstance(), focalLength);
+		transforms(cam);
+	}
+
+	private void material() throws IOException {
+		String name = name();
+		if (materials.containsKey(name))
+			throw error("Material '" + name + "' is already defined");
+		Color color = color();
+		double alpha = SceneLibrary.ALPHA, ks = SceneLibrary.KS, kd = SceneLibrary.KD;
+		double reflect = 0, transparent = 0, ior = 1;
+		String property;
+		while ((property = next()) != null) {
+			switch (property) {
+			case "alpha":
+				alpha = number();
+				break;
+			case "ks":
+				ks = number();
+				break;
+			case "kd":
+				kd = number();
+				break;
+			case "reflect":
+				reflect = number();
+				break;
+			case "transparent":
+				transparent = number();
+				break;
+			case "ior":
+				ior = number();
+				break;
+			default:
+				throw error("Unknown material property '" + property + "'");
+			}
+		}
+		materials.put(name, new DefaultMaterial(color, alpha, ks, kd, reflect, transparent, ior));
+	}
+
+	private void mesh() throws IOException {
+		String name = name();
+		if (meshes.containsKey(name))
+			throw error("Mesh '" + name + "' is already defined");
+		String path = name();
+		File file = new File(path);
+		if (!file.isAbsolute())
+			file = new File(baseDirectory, path);
+		file = file.getCanonicalFile();
+		ModelInstance mesh = files.get(file);
+		if (mesh == null) {
+			try {
+				mesh = ModelLoader.loadObjModel(file, null);
+			} catch (IOException e) {
+				throw error("Could not load mesh '" + name + "': " + e.getMessage());
+			}
+			files.put(file, mesh);
+		}
+		meshes.put(name, mesh);
+	}
+
+	private void instance() throws IOException {
+		String name = name();
+		ModelInstance mesh = meshes.get(name);
+		if (mesh == null)
+			throw error("Unknown mesh '" + name + "'");
+		ModelInstance m = new ModelInstance(mesh.getMesh(), mesh.getBVH(), materialRef());
+		transforms(m);
+		s.objects.add(m);
+	}
+
+	/**
+	 * Applies the transforms at the end of the line to an object.
+	 */
+	private void transforms(Transformable t) throws IOException {
+		String op;
+		while ((op = next()) != null) {
+			switch (op) {
+			case "translate":
+				t.translate(vector());
+				break;
+			case "rotate":
+			case "orbit":
+				boolean aroundOrigin = op.equals("rotate");
+				String axis = name();
+				double theta = number() * Math.PI / 180;
+				switch (axis) {
+				case "x":
+					t.rotateX(theta, aroundOrigin);
+					break;
+				case "y":
+					t.rotateY(theta, aroundOrigin);
+					break;
+				case "z":
+					t.rotateZ(theta, aroundOrigin);
+					break;
+				default:
+					throw error("Unknown axis '" + axis + "'");
+				}
+				break;
+			default:
+				throw error("Unknown transform '" + op + "'");
+			}
+		}
+	}
+
+	private Material materialRef() throws IOException {
+		String name = name();
+		Material m = materials.get(name);
+		if (m == null)
+			throw error("Unknown material '" + name + "'");
+		return m;
+	}
+
+	private Color color() throws IOException {
+		String word = name();
+		Color named = COLORS.get(word.toLowerCase(Locale.ROOT));
+		if (named != null)
+			return named;
+		if (word.startsWith("0x") || word.startsWith("0X")) {
+			try {
+				return Color.decode(word);
+			} catch (NumberFormatException e) {
+				throw error("Bad color '" + word + "'");
+			}
+		}
+		try {
+			return new Color(channel(word), channel(name()), channel(name()));
+		} catch (IllegalArgumentException e) {
+			throw error("Bad color: " + e.getMessage());
+		}
+	}
+
+	private int channel(String word) throws IOException {
+		try {
+			return Integer.parseInt(word);
+		} catch (NumberFormatException e) {
+			throw error("Expected a color, found '" + word + "'");
+		}
+	}
+
+	private Vector3 vector() throws IOException {
+		return new Vector3(number(), number(), number());
+	}
+
+	private double number() throws IOException {
+		String word = name();
+		try {
+			return Double.parseDouble(word);
+		} catch (NumberFormatException e) {
+			throw error("Expected a number, found '" + word + "'");
+		}
+	}
+
+	/**
+	 *
+	 * @return the next word, which must exist
+	 */
+	private String name() throws IOException {
+		String word = next();
+		if (word == null)
+			throw error("Unexpected end of line");
+		return word;
+	}
+
+	/**
+	 *
+	 * @return the next word without moving past it, or <code>null</code> at
+	 *         the end of the line
+	 */
+	private String peek() {
+		int p = position;
+		String word = next();
+		position = p;
+		return word;
+	}
+
+	/**
+	 *
+	 * @return the next word on the line, or <code>null</code> at the end of
+	 *         the line or at a comment
+	 */
+	private String next() {
+		int length = line.length();
+		while (position < length && Character.isWhitespace(line.charAt(position)))
+			position++;
+		if (position == length || line.charAt(position) == '#')
+			return null;
+		int start = position;
+		while (position < length && !Character.isWhitespace(line.charAt(position)) && line.charAt(position) != '#')
+			position++;
+		return line.substring(start, position);
+	}
+
+	private IOException error(String message) {
+		return new IOException(source + ":" + lineNumber + ": " + message);
+	}
+
+	/**
+	 * Finds the named colors of {@link Color}, e.g. <code>Color.orange</code>.
+	 */
+	private static Map<String, Color> colors() {
+		Map<String, Color> colors = new HashMap<String, Color>();
+		for (Field f : Color.class.getFields()) {
+			if (f.getType() == Color.class && Modifier.isStatic(f.getModifiers())) {
+				try {
+					colors.put(f.getName().toLowerCase(Locale.ROOT), (Color) f.get(null));
+				} catch (IllegalAccessException e) {
+					// public fields, can't happen
+				}
+			}
+		}
+		return colors;
+	}
+
+}
@@ -0,0 +1,163 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+import static test.ImageAssert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import geometry.Ray;
+import geometry.Transform;
+import geometry.Vector3;
+import lighting.DefaultMaterial;
+import lighting.PointLight;
+import model.IModel;
+import model.PlaneModel;
+import model.SphereModel;
+import render.Camera;
+import render.ImageData;
+import render.strategies.RenderStrategy;
+import scene.Scene;
+import tools.RaycastHit;
+
+public class AdaptiveTests {
+	/**
+	 * Colors the sphere white and everything else grey, or everything grey,
+	 * and counts the samples it colors.
+	 */
+	private static class CountingStrategy extends RenderStrategy {
+		final AtomicInteger samples = new AtomicInteger();
+		final IModel sphere;
+		final boolean flat;
+
+		CountingStrategy(IModel sphere, boolean flat) {
+			this.sphere = sphere;
+			this.flat = flat;
+		}
+
+		@Override
+		public Vector3 render(Camera cam, Scene s, Ray ray, RaycastHit hit) {
+			samples.incrementAndGet();
+			return hit.itemHit == sphere && !flat ? new Vector3(255.0, 255.0, 255.0) : new Vector3(50.0, 50.0, 50.0);
+		}
+	}
+
+	private Scene s;
+	private IModel sphere;
+	private Camera cam;
+
+	@Before
+	public void setUp() {
+		s = new Scene();
+		s.lights.add(new PointLight(new Vector3(-3, 4, 0), Color.white, 1));
+		// a wall behind everything, so every ray hits something
+		s.objects.add(new PlaneModel(new Vector3(0, 0, 10), new Vector3(0, 0, -1),
+				new DefaultMaterial(Color.green, 5, .2, .8)));
+		sphere = new SphereModel(new Vector3(0, 0, 5), 1.5, new DefaultMaterial(Color.red, 20, .6, .7));
+		cam = new Camera(Vector3.ZERO.clone(), Transform.getIdentityInstance(), 1.7);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		cam.shutdown();
+	}
+
+	private static ImageData image(int depth) {
+		ImageData data = new ImageData(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB, false);
+		data.setAdaptiveDepth(depth);
+		return data;
+	}
+
+	/**
+	 * Renders with a {@link CountingStrategy}.
+	 *
+	 * @return the number of samples taken
+	 */
+	private int samples(int depth, boolean flat, BufferedImage[] picture) {
+		CountingStrategy strategy = new CountingStrategy(sphere, flat);
+		cam.setRenderStrategy(strategy);
+		picture[0] = cam.takePicture(s, image(depth));
+		return strategy.samples.get();
+	}
+
+	/**
+	 * @return true if a pixel's color differs from one of its four neighbors'
+	 */
+	private static boolean isEdge(BufferedImage pic, int x, int y) {
+		int c = pic.getRGB(x, y);
+		return (x > 0 && pic.getRGB(x - 1, y) != c) || (x < WIDTH - 1 && pic.getRGB(x + 1, y) != c)
+				|| (y > 0 && pic.getRGB(x, y - 1) != c) || (y < HEIGHT - 1 && pic.getRGB(x, y + 1) != c);
+	}
+
+	private static int countEdges(BufferedImage pic) {
+		int edges = 0;
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				if (isEdge(pic, x, y))
+					edges++;
+			}
+		}
+		return edges;
+	}
+
+	@Test
+	public void flatRegionsGetOneSample() {
+		BufferedImage[] pic = new BufferedImage[1];
+		assertEquals(WIDTH * HEIGHT, samples(3, false, pic));
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++)
+				assertEquals(new Color(50, 50, 50).getRGB(), pic[0].getRGB(x, y));
+		}
+	}
+
+	@Test
+	public void refinesEdgesUpToTheDepth() {
+		s.objects.add(sphere);
+		BufferedImage[] base = new BufferedImage[1], refined = new BufferedImage[1];
+		assertEquals(WIDTH * HEIGHT, samples(0, false, base));
+		int edges = countEdges(base[0]);
+		assertTrue(edges > 0);
+
+		// one split per edge pixel: its four quadrants are sampled once
+		assertEquals(WIDTH * HEIGHT + 4 * edges, samples(1, false, refined));
+		// quadrants on the silhouette are split again, up to the depth
+		int previous = WIDTH * HEIGHT + 4 * edges, perPixel = 4;
+		for (int depth = 2; depth <= 3; depth++) {
+			perPixel = perPixel * 4 + 4;
+			int taken = samples(depth, false, refined);
+			assertTrue(taken > previous);
+			assertTrue(taken <= WIDTH * HEIGHT + perPixel * edges);
+			previous = taken;
+		}
+
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				// flat pixels keep their one sample
+				if (!isEdge(base[0], x, y))
+					assertEquals("pixel " + x + "," + y, base[0].getRGB(x, y), refined[0].getRGB(x, y));
+			}
+		}
+	}
+
+	@Test
+	public void refinesObjectChangesOfTheSameColor() {
+		s.objects.add(sphere);
+		BufferedImage[] base = new BufferedImage[1], flat = new BufferedImage[1];
+		samples(0, false, base);
+		int edges = countEdges(base[0]);
+		// the colors match, but the objects don't
+		assertEquals(WIDTH * HEIGHT + 4 * edges, samples(1, true, flat));
+	}
+
+	@Test
+	public void depthZeroMatchesTheFirstPass() {
+		// only the lit wall, so no silhouettes: with the threshold at its
+		// highest, nothing is refined and the adaptive render is its one
+		// sample pass
+		BufferedImage expected = cam.takePicture(s, image(0));
+		ImageData data = image(3);
+		data.setAdaptiveThreshold(1);
+		assertSameImage(expected, cam.takePicture(s, data));
+	}
+}
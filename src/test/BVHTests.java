@@ -0,0 +1,148 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import accel.BVH;
+import geometry.BoundingBox;
+
+public class BVHTests {
+
+	/**
+	 * Creates random unit-ish boxes scattered around the origin.
+	 */
+	private double[] randomBoxes(int count, long seed) {
+		Random r = new Random(seed);
+		double[] bounds = new double[count * 6];
+		for (int i = 0; i < count; i++) {
+			for (int axis = 0; axis < 3; axis++) {
+				double min = r.nextDouble() * 20.0 - 10.0;
+				bounds[i * 6 + axis] = min;
+				bounds[i * 6 + 3 + axis] = min + r.nextDouble();
+			}
+		}
+		return bounds;
+	}
+
+	@Test
+	public void visitsEveryPrimitiveOnce() {
+		int count = 1000;
+		BVH bvh = new BVH(randomBoxes(count, 1));
+		boolean[] seen = new boolean[count];
+		for (int i = 0; i < bvh.getPrimitiveCount(); i++) {
+			assertFalse(seen[bvh.getPrimitive(i)]);
+			seen[bvh.getPrimitive(i)] = true;
+		}
+		assertEquals(count, bvh.getPrimitiveCount());
+		assertTrue(bvh.getNodeCount() < 2 * count);
+		assertTrue(bvh.getDepth() > 1);
+		assertTrue(bvh.getDepth() < 64);
+	}
+
+	@Test
+	public void findsClosestBox() {
+		int count = 500;
+		double[] bounds = randomBoxes(count, 2);
+		BVH bvh = new BVH(bounds);
+		Random r = new Random(3);
+
+		for (int ray = 0; ray < 200; ray++) {
+			double ox = r.nextDouble() * 30.0 - 15.0, oy = r.nextDouble() * 30.0 - 15.0, oz = -20.0;
+			double dx = r.nextDouble() - .5, dy = r.nextDouble() - .5, dz = 1.0;
+
+			// brute force closest entry distance
+			double expected = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				double t = enter(bounds, i, ox, oy, oz, dx, dy, dz, Double.POSITIVE_INFINITY);
+				expected = Math.min(expected, t);
+			}
+
+			double actual = bvh.traverse(ox, oy, oz, dx, dy, dz, 0.0, Double.POSITIVE_INFINITY,
+					(first, n, tMax) -> {
+						for (int i = first; i < first + n; i++)
+							tMax = Math.min(tMax, enter(bounds, bvh.getPrimitive(i), ox, oy, oz, dx, dy, dz, tMax));
+						return tMax;
+					});
+			assertEquals(expected, actual, 1e-9);
+		}
+	}
+
+	@Test
+	public void wideLeavesAreFuller() {
+		double[] bounds = randomBoxes(1000, 5);
+		BVH narrow = new BVH(bounds), wide = new BVH(bounds, 8);
+		assertEquals(1, narrow.getLeafWidth());
+		assertEquals(8, wide.getLeafWidth());
+		assertEquals(1000, wide.getPrimitiveCount());
+		assertTrue(wide.getNodeCount() < narrow.getNodeCount());
+		int[] data = wide.getNodeData();
+		for (int node = 0; node < wide.getNodeCount(); node++)
+			assertTrue(data[node * 2 + 1] <= 8);
+	}
+
+	@Test
+	public void refitFollowsMovedPrimitives() {
+		int count = 200;
+		double[] bounds = randomBoxes(count, 4);
+		BVH bvh = new BVH(bounds);
+		for (int i = 0; i < bounds.length; i += 3)
+			bounds[i] += 50.0;
+		bvh.refit(bounds);
+
+		BoundingBox b = bvh.getBounds();
+		assertTrue(b.minX >= 40.0);
+		double t = bvh.traverse(55.0, 0.0, -20.0, 0.0, 0.0, 1.0, 0.0, Double.POSITIVE_INFINITY,
+				(first, n, tMax) -> {
+					for (int i = first; i < first + n; i++)
+						tMax = Math.min(tMax, enter(bounds, bvh.getPrimitive(i), 55.0, 0.0, -20.0, 0.0, 0.0, 1.0, tMax));
+					return tMax;
+				});
+		double expected = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < count; i++)
+			expected = Math.min(expected, enter(bounds, i, 55.0, 0.0, -20.0, 0.0, 0.0, 1.0, Double.POSITIVE_INFINITY));
+		assertEquals(expected, t, 1e-9);
+	}
+
+	@Test
+	public void queryFindsContainingBoxes() {
+		int count = 500;
+		double[] bounds = randomBoxes(count, 6);
+		BVH bvh = new BVH(bounds);
+		Random r = new Random(7);
+		for (int q = 0; q < 200; q++) {
+			double x = r.nextDouble() * 20 - 10, y = r.nextDouble() * 20 - 10, z = r.nextDouble() * 20 - 10;
+			boolean[] found = new boolean[count];
+			bvh.query(x, y, z, (first, n) -> {
+				for (int j = first; j < first + n; j++)
+					found[bvh.getPrimitive(j)] = true;
+			});
+			for (int i = 0; i < count; i++) {
+				boolean inside = x >= bounds[i * 6] && y >= bounds[i * 6 + 1] && z >= bounds[i * 6 + 2]
+						&& x <= bounds[i * 6 + 3] && y <= bounds[i * 6 + 4] && z <= bounds[i * 6 + 5];
+				// leaves may hold boxes that don't contain the point, but never
+				// leave out one that does
+				if (inside)
+					assertTrue(found[i]);
+			}
+		}
+	}
+
+	@Test
+	public void emptyHierarchy() {
+		BVH bvh = new BVH(new double[0]);
+		assertEquals(0, bvh.getNodeCount());
+		assertTrue(bvh.getBounds().isEmpty());
+		double t = bvh.traverse(0, 0, 0, 0, 0, 1, 0.0, 5.0, (first, n, tMax) -> {
+			fail("Empty BVH has no leaves to visit");
+			return tMax;
+		});
+		assertEquals(5.0, t, 0.0);
+	}
+
+	private double enter(double[] b, int i, double ox, double oy, double oz, double dx, double dy, double dz,
+			double tMax) {
+		return BoundingBox.intersects(b[i * 6], b[i * 6 + 1], b[i * 6 + 2], b[i * 6 + 3], b[i * 6 + 4],
+				b[i * 6 + 5], ox, oy, oz, 1.0 / dx, 1.0 / dy, 1.0 / dz, 0.0, tMax);
+	}
+}
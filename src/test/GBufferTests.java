@@ -0,0 +1,97 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+import static test.ImageAssert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import geometry.Transform;
+import geometry.Vector3;
+import lighting.DefaultMaterial;
+import lighting.PointLight;
+import model.PlaneModel;
+import model.SphereModel;
+import render.Camera;
+import render.GBuffer;
+import render.ImageData;
+import scene.Scene;
+
+public class GBufferTests {
+
+	private DefaultMaterial shiny, floor;
+	private PointLight light;
+	private Scene s;
+	private Camera cam;
+
+	@Before
+	public void setUp() {
+		shiny = new DefaultMaterial(Color.red, 20, .6, .7);
+		floor = new DefaultMaterial(Color.green, 5, .2, .8);
+		light = new PointLight(new Vector3(-3, 4, 0), Color.white, 1);
+		s = new Scene();
+		s.lights.add(light);
+		s.objects.add(new PlaneModel(new Vector3(0, -1, 0), new Vector3(0, 1, 0), floor));
+		s.objects.add(new SphereModel(new Vector3(0, 0, 4), 1, shiny));
+		s.objects.add(new SphereModel(new Vector3(1.5, .5, 5), .7, shiny));
+		cam = new Camera(Vector3.ZERO.clone(), Transform.getIdentityInstance(), 1.7);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		cam.shutdown();
+	}
+
+	private static ImageData image(boolean antiAliasing, int packetSize) {
+		ImageData data = new ImageData(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB, antiAliasing);
+		data.setPacketSize(packetSize);
+		return data;
+	}
+
+	@Test
+	public void matchesSinglePassRender() {
+		for (boolean antiAliasing : new boolean[] { false, true }) {
+			for (int packetSize : new int[] { 1, 4 }) {
+				ImageData data = image(antiAliasing, packetSize);
+				assertSameImage(cam.takePicture(s, data), cam.shade(cam.trace(s, data), s));
+			}
+		}
+	}
+
+	@Test
+	public void storesPrimaryHits() {
+		GBuffer g = cam.trace(s, image(false, 4));
+		int center = g.index(WIDTH / 2, HEIGHT / 2, 0);
+		assertSame(s.objects.get(1), g.getObject(center));
+		assertSame(shiny, g.getMaterial(center));
+		assertEquals(3, g.depth[center], 1e-9);
+		assertTrue(new Vector3(0, 0, -1).equals(g.getNormal(center)));
+		// the top corners look over the floor's horizon
+		assertFalse(g.isHit(g.index(0, 0, 0)));
+		assertSame(s.objects.get(0), g.getObject(g.index(0, HEIGHT - 1, 0)));
+	}
+
+	@Test
+	public void reshadesLightAndMaterialChanges() {
+		ImageData data = image(true, 1);
+		GBuffer g = cam.trace(s, data);
+		BufferedImage before = cam.shade(g, s);
+
+		light.setPos(new Vector3(3, 2, 1));
+		light.setColor(Color.orange);
+		shiny.setColor(Color.blue);
+		floor.setKs(.9);
+		BufferedImage after = cam.shade(g, s);
+		assertSameImage(cam.takePicture(s, data), after);
+		assertTrue(before.getRGB(WIDTH / 2, HEIGHT / 2) != after.getRGB(WIDTH / 2, HEIGHT / 2));
+	}
+
+	@Test
+	public void retracesIntoTheSameBuffer() {
+		ImageData data = image(false, 1);
+		GBuffer g = cam.trace(s, data);
+		cam.translate(new Vector3(.5, 0, 0));
+		assertSame(g, cam.trace(s, g));
+		assertSameImage(cam.takePicture(s, data), cam.shade(g, s));
+	}
+}
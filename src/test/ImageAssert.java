@@ -0,0 +1,51 @@
+package test;
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+/**
+ * Image size and comparisons shared by the tests that render pictures.
+ *
+ * @author Don Isaac
+ *
+ */
+final class ImageAssert {
+	/** Size of the pictures rendered by the tests, small enough to be quick */
+	static final int WIDTH = 64, HEIGHT = 48;
+
+	private ImageAssert() {
+	}
+
+	/**
+	 * Checks that two pictures are the same size and have exactly the same
+	 * pixels.
+	 */
+	static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+		assertSameImage(expected, actual, 0);
+	}
+
+	/**
+	 * Checks that two pictures are the same size and that each color channel
+	 * of every pixel is within a tolerance.
+	 *
+	 * @param tolerance Largest difference allowed, in color levels
+	 */
+	static void assertSameImage(BufferedImage expected, BufferedImage actual, int tolerance) {
+		assertEquals("width", expected.getWidth(), actual.getWidth());
+		assertEquals("height", expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				String pixel = "pixel " + x + "," + y;
+				if (tolerance == 0) {
+					assertEquals(pixel, expected.getRGB(x, y), actual.getRGB(x, y));
+					continue;
+				}
+				Color e = new Color(expected.getRGB(x, y)), a = new Color(actual.getRGB(x, y));
+				assertEquals(pixel, e.getRed(), a.getRed(), tolerance);
+				assertEquals(pixel, e.getGreen(), a.getGreen(), tolerance);
+				assertEquals(pixel, e.getBlue(), a.getBlue(), tolerance);
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import geometry.HitRecord;
+import geometry.Intersection;
+import geometry.Ray;
+import geometry.Vector3;
+import model.IModel;
+import model.ModelInstance;
+import model.ObjParser;
+import model.PlaneModel;
+import model.SphereModel;
+import scene.SceneLibrary;
+
+public class IntersectTests {
+	private static final double MISS = Double.POSITIVE_INFINITY;
+
+	@Test
+	public void sphereHitsFarSideFromInside() {
+		SphereModel s = new SphereModel(new Vector3(0, 0, 5), 1, SceneLibrary.WHITE);
+		HitRecord hit = new HitRecord();
+
+		assertEquals(4, s.intersect(new Ray(Vector3.ZERO.clone(), Vector3.K.clone()), 1e-6, MISS, hit), 1e-9);
+		assertEquals(1, s.intersect(new Ray(new Vector3(0, 0, 5), Vector3.K.clone()), 1e-6, MISS, hit), 1e-9);
+		assertTrue(new Vector3(0, 0, 1).equals(s.getSurface(new Ray(new Vector3(0, 0, 5), Vector3.K.clone()), hit).normal));
+	}
+
+	@Test
+	public void missesLeaveTheRecordAlone() {
+		IModel[] models = { new SphereModel(new Vector3(0, 0, 5), 1, SceneLibrary.WHITE),
+				new PlaneModel(new Vector3(0, 0, 5), new Vector3(0, 0, -1), SceneLibrary.WHITE) };
+		Ray r = new Ray(Vector3.ZERO.clone(), Vector3.K.clone());
+		for (IModel m : models) {
+			HitRecord hit = new HitRecord();
+			hit.t = 42;
+			assertEquals(MISS, m.intersect(r, 1e-6, 3, hit), 0);
+			assertEquals(MISS, m.intersect(r, 6, 10, hit), 0);
+			assertEquals(42, hit.t, 0);
+			assertEquals(-1, hit.primitive);
+			assertTrue(m.intersect(r, 1e-6, 10, hit) < 10);
+			assertEquals(0, hit.primitive);
+		}
+	}
+
+	@Test
+	public void meshMatchesClosestHitQuery() throws IOException {
+		File obj = File.createTempFile("intersect", ".obj");
+		obj.deleteOnExit();
+		Random r = new Random(5);
+		try (PrintWriter out = new PrintWriter(obj)) {
+			for (int i = 0; i < 300; i++)
+				out.printf("v %f %f %f%n", r.nextDouble() * 2 - 1, r.nextDouble() * 2 - 1, r.nextDouble() * 2 - 1);
+			for (int i = 0; i < 100; i++)
+				out.printf("f %d %d %d%n", i * 3 + 1, i * 3 + 2, i * 3 + 3);
+		}
+		ModelInstance m = new ModelInstance(ObjParser.parse(obj), SceneLibrary.RED);
+		m.translate(new Vector3(0, 0, 4));
+		m.rotateY(.5, true);
+
+		HitRecord hit = new HitRecord();
+		for (int i = 0; i < 500; i++) {
+			Ray ray = new Ray(Vector3.ZERO.clone(), new Vector3(r.nextDouble() - .5, r.nextDouble() - .5, 1));
+			Intersection expected = m.intersects(ray);
+			double t = m.intersect(ray, 0, MISS, hit);
+			assertEquals(expected.isHit, t != MISS);
+			if (expected.isHit) {
+				Intersection actual = m.getSurface(ray, hit);
+				assertEquals(expected.primitive, actual.primitive);
+				assertEquals(0, expected.hit.distFrom(actual.hit), 1e-12);
+				assertEquals(t, expected.hit.distFrom(ray.getOrigin()), 1e-9);
+				// nothing is closer than the closest hit
+				assertEquals(MISS, m.intersect(ray, 0, t, new HitRecord()), 0);
+			}
+		}
+	}
+
+	@Test
+	public void distanceUsesEveryAxis() {
+		assertEquals(Math.sqrt(29), new Vector3(1, 2, 3).distFrom(new Vector3(3, 5, 7)), 1e-12);
+	}
+}
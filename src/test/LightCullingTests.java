@@ -0,0 +1,135 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+import static test.ImageAssert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Random;
+
+import accel.LightTree;
+import geometry.Transform;
+import geometry.Vector3;
+import lighting.AmbientLight;
+import lighting.DefaultMaterial;
+import lighting.Light;
+import lighting.PointLight;
+import model.PlaneModel;
+import model.SphereModel;
+import render.Camera;
+import render.ImageData;
+import scene.Scene;
+
+public class LightCullingTests {
+
+	private static ArrayList<Light> randomLights(int count, long seed) {
+		Random r = new Random(seed);
+		ArrayList<Light> lights = new ArrayList<Light>();
+		for (int i = 0; i < count; i++)
+			lights.add(new PointLight(new Vector3(r.nextDouble() * 40 - 20, r.nextDouble() * 40 - 20,
+					r.nextDouble() * 40 - 20), Color.white, .5 + r.nextDouble() * 4));
+		return lights;
+	}
+
+	private static BufferedImage render(Scene s) throws InterruptedException {
+		Camera cam = new Camera(Vector3.ZERO.clone(), Transform.getIdentityInstance(), 1.7);
+		try {
+			return cam.takePicture(s, new ImageData(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB, false));
+		} finally {
+			cam.shutdown();
+		}
+	}
+
+	@Test
+	public void findsTheLightsInRange() {
+		ArrayList<Light> lights = randomLights(300, 1);
+		lights.add(new AmbientLight(Color.white, .5));
+		double cutoff = .05;
+		LightTree tree = new LightTree(lights, cutoff);
+		int[] found = new int[tree.size()];
+		Random r = new Random(2);
+		for (int q = 0; q < 200; q++) {
+			Vector3 p = new Vector3(r.nextDouble() * 40 - 20, r.nextDouble() * 40 - 20, r.nextDouble() * 40 - 20);
+			int n = tree.query(p, found), expected = 0;
+			for (int i = 0; i < lights.size(); i++) {
+				if (lights.get(i).getIntensityAt(p) >= cutoff)
+					assertEquals(i, found[expected++]);
+			}
+			assertEquals(expected, n);
+			// the ambient light reaches everywhere
+			assertEquals(lights.size() - 1, found[n - 1]);
+		}
+	}
+
+	@Test
+	public void noCutoffKeepsEveryLight() {
+		LightTree tree = new LightTree(randomLights(10, 3), 0);
+		int[] found = new int[tree.size()];
+		assertEquals(10, tree.query(new Vector3(1000, 0, 0), found));
+		for (int i = 0; i < 10; i++)
+			assertEquals(i, found[i]);
+	}
+
+	@Test
+	public void lightsBehindASurfaceAddNothing() throws InterruptedException {
+		Scene s = new Scene();
+		s.objects.add(new PlaneModel(new Vector3(0, -1, 0), new Vector3(0, 1, 0),
+				new DefaultMaterial(Color.green, 5, .2, .8)));
+		BufferedImage dark = render(s);
+		// under the floor, but close enough to the camera's view that the
+		// highlight it used to leave would show
+		s.lights.add(new PointLight(new Vector3(0, -1.5, 3), Color.white, 1));
+		assertSameImage(dark, render(s));
+	}
+
+	@Test
+	public void cutoffOnlyDropsDistantLights() throws InterruptedException {
+		Scene s = new Scene();
+		s.objects.add(new PlaneModel(new Vector3(0, -1, 0), new Vector3(0, 1, 0),
+				new DefaultMaterial(Color.green, 5, .2, .8)));
+		s.objects.add(new SphereModel(new Vector3(0, 0, 4), 1, new DefaultMaterial(Color.red, 20, .6, .7)));
+		s.lights.add(new PointLight(new Vector3(-2, 3, 2), Color.white, 100));
+		s.lightCutoff = .01;
+		BufferedImage near = render(s);
+		s.lights.add(new PointLight(new Vector3(0, 300, -300), Color.blue, 1));
+		assertSameImage(near, render(s));
+		s.lightCutoff = 0;
+		assertTrue(near.getRGB(WIDTH / 2, HEIGHT - 1) != render(s).getRGB(WIDTH / 2, HEIGHT - 1));
+	}
+
+	@Test
+	public void lightsFadeOutBeforeTheyAreCulled() throws InterruptedException {
+		Scene s = new Scene();
+		s.objects.add(new PlaneModel(new Vector3(0, -1, 0), new Vector3(0, 1, 0),
+				new DefaultMaterial(Color.green, 5, .2, .8)));
+		BufferedImage dark = render(s);
+		// reaches 3 units, so its range ends on the floor in front of the camera
+		s.lights.add(new PointLight(new Vector3(0, 0, 5), Color.white, 1));
+		s.lightCutoff = 1 / 9.0;
+		BufferedImage lit = render(s);
+
+		int edges = 0, brightest = 0;
+		for (int y = 0; y < HEIGHT; y++) {
+			brightest = Math.max(brightest, maxChannelDifference(lit.getRGB(0, y), dark.getRGB(0, y)));
+			for (int x = 1; x < WIDTH; x++) {
+				brightest = Math.max(brightest, maxChannelDifference(lit.getRGB(x, y), dark.getRGB(x, y)));
+				boolean culled = lit.getRGB(x, y) == dark.getRGB(x, y);
+				if (culled == (lit.getRGB(x - 1, y) == dark.getRGB(x - 1, y)))
+					continue;
+				// no step where the light stops
+				edges++;
+				assertTrue("pixel " + x + "," + y, maxChannelDifference(lit.getRGB(x, y), lit.getRGB(x - 1, y)) <= 4);
+			}
+		}
+		assertTrue(edges > 0);
+		assertTrue(brightest > 50);
+	}
+
+	private static int maxChannelDifference(int a, int b) {
+		int max = 0;
+		for (int shift = 0; shift < 24; shift += 8)
+			max = Math.max(max, Math.abs((a >> shift & 0xff) - (b >> shift & 0xff)));
+		return max;
+	}
+}
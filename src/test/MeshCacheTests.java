@@ -0,0 +1,159 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+
+import accel.BVH;
+import model.Mesh;
+import model.MeshCache;
+import model.ObjParser;
+
+public class MeshCacheTests {
+
+	private File source, cache;
+
+	@Before
+	public void writeSource() throws IOException {
+		source = File.createTempFile("meshcache", ".obj");
+		cache = MeshCache.getCacheFile(source);
+		try (PrintWriter out = new PrintWriter(source)) {
+			out.print("v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\nvt 0 0\nvn 0 0 1\nf 1/1/1 2/1/1 3/1/1 4/1/1\n");
+		}
+	}
+
+	@After
+	public void deleteFiles() {
+		source.delete();
+		cache.delete();
+	}
+
+	@Test
+	public void roundTrips() throws IOException {
+		Mesh mesh = ObjParser.parse(source);
+		BVH bvh = new BVH(mesh.getTriangleBounds());
+		MeshCache.write(cache, source, mesh, bvh);
+
+		MeshCache.Entry entry = MeshCache.read(cache, source);
+		assertNotNull(entry);
+		assertArrayEquals(mesh.getPositions(), entry.mesh.getPositions(), 0f);
+		assertArrayEquals(mesh.getNormals(), entry.mesh.getNormals(), 0f);
+		assertArrayEquals(mesh.getTexcoords(), entry.mesh.getTexcoords(), 0f);
+		assertArrayEquals(mesh.getVertexIndices(), entry.mesh.getVertexIndices());
+		assertArrayEquals(mesh.getNormalIndices(), entry.mesh.getNormalIndices());
+		assertArrayEquals(mesh.getTexcoordIndices(), entry.mesh.getTexcoordIndices());
+		assertEquals(bvh.getNodeCount(), entry.bvh.getNodeCount());
+		assertEquals(bvh.getDepth(), entry.bvh.getDepth());
+		assertEquals(bvh.getBounds().toString(), entry.bvh.getBounds().toString());
+	}
+
+	@Test
+	public void roundTripsUnusedTexcoords() throws IOException {
+		try (PrintWriter out = new PrintWriter(source)) {
+			out.print("v 0 0 0\nv 1 0 0\nv 1 1 0\nvt 0 0\nvt 1 0\nvt 0 1\nvn 0 0 1\nf 1//1 2//1 3//1\n");
+		}
+		Mesh mesh = ObjParser.parse(source);
+		assertEquals(3, mesh.getTexcoordCount());
+		assertEquals(0, mesh.getTexcoordIndices().length);
+		MeshCache.write(cache, source, mesh, new BVH(mesh.getTriangleBounds()));
+
+		MeshCache.Entry entry = MeshCache.read(cache, source);
+		assertNotNull(entry);
+		assertArrayEquals(mesh.getTexcoords(), entry.mesh.getTexcoords(), 0f);
+		assertEquals(0, entry.mesh.getTexcoordIndices().length);
+	}
+
+	@Test
+	public void ignoresStaleCache() throws IOException {
+		Mesh mesh = ObjParser.parse(source);
+		MeshCache.write(cache, source, mesh, new BVH(mesh.getTriangleBounds()));
+		try (PrintWriter out = new PrintWriter(source)) {
+			out.print("v 0 0 0\nv 1 0 0\nv 1 1 0\nf 1 2 3\n");
+		}
+		assertNull(MeshCache.read(cache, source));
+	}
+
+	/**
+	 * Writes the cache of a mesh big enough for its hierarchy to have interior
+	 * nodes.
+	 *
+	 * @return the hierarchy written
+	 */
+	private BVH writeGrid() throws IOException {
+		try (PrintWriter out = new PrintWriter(source)) {
+			for (int i = 0; i < 40; i++)
+				out.print("v " + i + " 0 0\nv " + i + " 1 0\nv " + i + " 0 1\n");
+			for (int i = 0; i < 40; i++)
+				out.print("f " + (3 * i + 1) + " " + (3 * i + 2) + " " + (3 * i + 3) + "\n");
+		}
+		Mesh mesh = ObjParser.parse(source);
+		BVH bvh = new BVH(mesh.getTriangleBounds());
+		assertTrue(bvh.getDepth() > 1);
+		MeshCache.write(cache, source, mesh, bvh);
+		assertNotNull(MeshCache.read(cache, source));
+		return bvh;
+	}
+
+	/**
+	 * Overwrites a little endian int of the cache.
+	 */
+	private void corrupt(long offset, int value) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(cache, "rw")) {
+			file.seek(offset);
+			file.writeInt(Integer.reverseBytes(value));
+		}
+	}
+
+	/**
+	 * @return where the cache's BVH node data starts
+	 */
+	private long nodeDataOffset() throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(cache, "r")) {
+			file.seek(24);
+			int[] header = new int[9];
+			for (int i = 0; i < header.length; i++)
+				header[i] = Integer.reverseBytes(file.readInt());
+			// the texture coordinate index count is the header's last int
+			return 64 + 48L * header[4] + 4L * (header[0] + header[1] + header[2])
+					+ 4L * (2L * header[3] + header[8]);
+		}
+	}
+
+	@Test
+	public void ignoresChildrenOutOfRange() throws IOException {
+		BVH bvh = writeGrid();
+		// the root is an interior node; point it past the last node
+		corrupt(nodeDataOffset(), bvh.getNodeCount());
+		assertNull(MeshCache.read(cache, source));
+	}
+
+	@Test
+	public void ignoresCycles() throws IOException {
+		writeGrid();
+		corrupt(nodeDataOffset(), 0);
+		assertNull(MeshCache.read(cache, source));
+	}
+
+	@Test
+	public void ignoresLeavesOutOfRange() throws IOException {
+		BVH bvh = writeGrid();
+		int[] nodeData = bvh.getNodeData();
+		int leaf = 0;
+		while (nodeData[leaf * 2 + 1] == 0)
+			leaf++;
+		corrupt(nodeDataOffset() + 8L * leaf + 4, bvh.getPrimitiveCount() + 1);
+		assertNull(MeshCache.read(cache, source));
+	}
+
+	@Test
+	public void ignoresWrongDepth() throws IOException {
+		BVH bvh = writeGrid();
+		corrupt(48, bvh.getDepth() - 1);
+		assertNull(MeshCache.read(cache, source));
+		corrupt(48, Integer.MAX_VALUE);
+		assertNull(MeshCache.read(cache, source));
+	}
+}
@@ -0,0 +1,90 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import model.Mesh;
+import model.ObjParser;
+
+public class ObjParserTests {
+
+	private File write(String contents) throws IOException {
+		File file = File.createTempFile("objparser", ".obj");
+		file.deleteOnExit();
+		try (PrintWriter out = new PrintWriter(file)) {
+			out.print(contents);
+		}
+		return file;
+	}
+
+	@Test
+	public void parsesEveryFaceForm() throws IOException {
+		Mesh m = ObjParser.parse(write("# comment\n" + "o thing\n" + "v 0 0 0\nv 1.5 0 0\nv 0 -2e-1 0\n"
+				+ "vt 0 0\nvt 1 0\nvt 0 1\n" + "vn 0 0 2\r\n" + "f 1 2 3\n" + "f 1/1 2/2 3/3\n"
+				+ "f 1//1 2//1 3//1\n" + "f\t1/1/1  2/2/1 3/3/1 # trailing\n"));
+		assertEquals(3, m.getVertexCount());
+		assertEquals(3, m.getTexcoordCount());
+		assertEquals(1, m.getNormalCount());
+		assertEquals(4, m.getTriangleCount());
+		assertEquals(1.5f, m.getPositions()[3], 0f);
+		assertEquals(-.2f, m.getPositions()[7], 0f);
+		assertEquals(1f, m.getNormals()[2], 0f);
+		assertArrayEquals(new int[] { 0, 1, 2, 0, 1, 2, 0, 1, 2, 0, 1, 2 }, m.getVertexIndices());
+		assertArrayEquals(new int[] { -1, -1, -1, 0, 1, 2, -1, -1, -1, 0, 1, 2 }, m.getTexcoordIndices());
+		assertArrayEquals(new int[] { -1, -1, -1, -1, -1, -1, 0, 0, 0, 0, 0, 0 }, m.getNormalIndices());
+	}
+
+	@Test
+	public void splitsPolygonsWithNegativeIndices() throws IOException {
+		Mesh m = ObjParser.parse(write("v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\nvn 0 0 1\nf -4//-1 -3//-1 -2//-1 -1//-1\n"));
+		assertEquals(2, m.getTriangleCount());
+		assertArrayEquals(new int[] { 0, 1, 2, 0, 2, 3 }, m.getVertexIndices());
+		assertArrayEquals(new int[] { 0, 0, 0, 0, 0, 0 }, m.getNormalIndices());
+	}
+
+	@Test
+	public void skipsTexcoordIndicesWithoutTexcoords() throws IOException {
+		Mesh m = ObjParser.parse(write("v 0 0 0\nv 1 0 0\nv 1 1 0\nvn 0 0 1\nf 1//1 2//1 3//1\nf 1 2 3\n"));
+		assertEquals(2, m.getTriangleCount());
+		assertEquals(0, m.getTexcoordIndices().length);
+	}
+
+	@Test
+	public void chunksMatchSingleThreadedParse() throws IOException {
+		Random r = new Random(7);
+		StringBuilder obj = new StringBuilder();
+		int vertices = 0;
+		for (int i = 0; i < 2000; i++) {
+			obj.append("v ").append(r.nextDouble()).append(' ').append(-r.nextDouble() * 10).append(' ')
+					.append(r.nextInt(100)).append('\n');
+			obj.append("vn ").append(r.nextDouble()).append(" 1 0\n");
+			vertices++;
+			if (vertices >= 3 && r.nextBoolean()) {
+				// mix absolute and relative indices
+				obj.append("f ").append(vertices).append("//").append(vertices).append(" -2//-2 -3//-3\n");
+			}
+		}
+		File file = write(obj.toString());
+		Mesh single = new ObjParser(Integer.MAX_VALUE, 1).read(file);
+		Mesh chunked = new ObjParser(100, 4).read(file);
+		assertTrue(single.getTriangleCount() > 0);
+		assertArrayEquals(single.getPositions(), chunked.getPositions(), 0f);
+		assertArrayEquals(single.getNormals(), chunked.getNormals(), 0f);
+		assertArrayEquals(single.getVertexIndices(), chunked.getVertexIndices());
+		assertArrayEquals(single.getNormalIndices(), chunked.getNormalIndices());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsMissingVertices() throws IOException {
+		ObjParser.parse(write("v 0 0 0\nv 1 0 0\nf 1 2 3\n"));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsDegenerateFaces() throws IOException {
+		ObjParser.parse(write("v 0 0 0\nv 1 0 0\nf 1 2\n"));
+	}
+}
@@ -0,0 +1,130 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Random;
+
+import accel.RayPacket;
+import accel.SceneBVH;
+import geometry.HitRecord;
+import geometry.Ray;
+import geometry.Vector3;
+import lighting.DefaultMaterial;
+import model.IModel;
+import model.PlaneModel;
+import model.SphereModel;
+
+public class PacketTests {
+	private static final double T_MIN = 1e-6;
+	private static final int PACKET_SIZE = 8;
+
+	/**
+	 * Scatters small spheres in front of the origin, leaving the sky above
+	 * them empty.
+	 */
+	private static ArrayList<IModel> spheres(int count, long seed) {
+		Random r = new Random(seed);
+		ArrayList<IModel> objects = new ArrayList<IModel>();
+		for (int i = 0; i < count; i++)
+			objects.add(new SphereModel(new Vector3(r.nextDouble() * 20 - 10, r.nextDouble() * 4 - 3,
+					5 + r.nextDouble() * 20), .2 + r.nextDouble() * .6, new DefaultMaterial(Color.red, 5, .2, .8)));
+		return objects;
+	}
+
+	/**
+	 * Finds a ray's closest hit one ray at a time.
+	 *
+	 * @return the distance to the hit; the object is left in <b>hit</b>
+	 */
+	private static double closest(SceneBVH bvh, Ray r, IModel[] hit) {
+		HitRecord record = new HitRecord();
+		double[] dist = { Double.MAX_VALUE };
+		hit[0] = null;
+		bvh.traverse(r, Double.MAX_VALUE, (model, tMax) -> {
+			double t = model.intersect(r, T_MIN, dist[0], record);
+			if (t < dist[0]) {
+				dist[0] = t;
+				hit[0] = model;
+			}
+			return Math.min(tMax, dist[0]);
+		});
+		return dist[0];
+	}
+
+	/**
+	 * Traces the rays through an 8 by 8 block of a 1 by 1 screen at the
+	 * origin, as a packet, and checks every ray against the scalar traversal.
+	 *
+	 * @return the number of rays of the packet that hit something
+	 */
+	private static int assertPacketMatches(SceneBVH bvh, double x, double y, double pixel) {
+		RayPacket packet = new RayPacket(PACKET_SIZE * PACKET_SIZE, T_MIN);
+		for (int j = 0; j < PACKET_SIZE; j++) {
+			for (int i = 0; i < PACKET_SIZE; i++)
+				packet.add(new Ray(Vector3.ZERO.clone(), new Vector3(x + i * pixel, y + j * pixel, 1).getNormalized()));
+		}
+		bvh.intersect(packet);
+
+		int hits = 0;
+		IModel[] expected = new IModel[1];
+		for (int i = 0; i < packet.size(); i++) {
+			double t = closest(bvh, packet.rays[i], expected);
+			assertSame("ray " + i, expected[0], packet.models[i]);
+			if (expected[0] != null) {
+				assertEquals("ray " + i, t, packet.tMax[i], 0);
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	@Test
+	public void matchesScalarTraversal() {
+		SceneBVH bvh = new SceneBVH(spheres(200, 1));
+		int hits = 0, rays = 0;
+		// blocks of neighboring pixels, like a camera's
+		for (double y = -.5; y < .5; y += .125) {
+			for (double x = -.5; x < .5; x += .125) {
+				hits += assertPacketMatches(bvh, x, y, .125 / PACKET_SIZE);
+				rays += PACKET_SIZE * PACKET_SIZE;
+			}
+		}
+		// both hits and misses were compared
+		assertTrue(hits > 0);
+		assertTrue(hits < rays);
+	}
+
+	@Test
+	public void matchesScalarTraversalWhenRaysDiverge() {
+		SceneBVH bvh = new SceneBVH(spheres(200, 2));
+		// one packet spanning the whole view: its rays point in different
+		// directions along x and y, and only some of them reach each node
+		int hits = assertPacketMatches(bvh, -.5, -.5, 1.0 / PACKET_SIZE);
+		assertTrue(hits > 0);
+		assertTrue(hits < PACKET_SIZE * PACKET_SIZE);
+	}
+
+	@Test
+	public void missesEverything() {
+		SceneBVH bvh = new SceneBVH(spheres(200, 3));
+		// up into the empty sky
+		assertEquals(0, assertPacketMatches(bvh, -.1, 2, .01));
+	}
+
+	@Test
+	public void matchesScalarTraversalWithUnboundedObjects() {
+		ArrayList<IModel> objects = spheres(200, 4);
+		objects.add(new PlaneModel(new Vector3(0, -2, 0), new Vector3(0, 1, 0),
+				new DefaultMaterial(Color.green, 5, .2, .8)));
+		// a wall behind the spheres; hidden wherever a sphere is in front
+		objects.add(new PlaneModel(new Vector3(0, 0, 15), new Vector3(0, 0, -1),
+				new DefaultMaterial(Color.blue, 5, .2, .8)));
+		SceneBVH bvh = new SceneBVH(objects);
+		for (double y = -.5; y < .5; y += .25) {
+			for (double x = -.5; x < .5; x += .25)
+				assertEquals(PACKET_SIZE * PACKET_SIZE, assertPacketMatches(bvh, x, y, .25 / PACKET_SIZE));
+		}
+	}
+}
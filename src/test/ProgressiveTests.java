@@ -0,0 +1,101 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+import static test.ImageAssert.assertSameImage;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import geometry.Transform;
+import geometry.Vector3;
+import lighting.DefaultMaterial;
+import lighting.PointLight;
+import model.PlaneModel;
+import model.SphereModel;
+import render.Camera;
+import render.FrameBuffer;
+import render.ImageData;
+import scene.Scene;
+
+public class ProgressiveTests {
+	// not multiples of the block sizes, so edge blocks are cut off
+	private static final int WIDTH = 70, HEIGHT = 50;
+
+	private Scene s;
+	private Camera cam;
+
+	@Before
+	public void setUp() {
+		DefaultMaterial shiny = new DefaultMaterial(Color.red, 20, .6, .7);
+		s = new Scene();
+		s.lights.add(new PointLight(new Vector3(-3, 4, 0), Color.white, 1));
+		s.objects.add(new PlaneModel(new Vector3(0, -1, 0), new Vector3(0, 1, 0),
+				new DefaultMaterial(Color.green, 5, .2, .8)));
+		s.objects.add(new SphereModel(new Vector3(0, 0, 4), 1, shiny));
+		s.objects.add(new SphereModel(new Vector3(1.5, .5, 5), .7, shiny));
+		cam = new Camera(Vector3.ZERO.clone(), Transform.getIdentityInstance(), 1.7);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		cam.shutdown();
+	}
+
+	private static ImageData image(boolean antiAliasing) {
+		return new ImageData(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB, antiAliasing);
+	}
+
+	/**
+	 * Records the block size of every pass, optionally taking some time over
+	 * each.
+	 */
+	private List<Integer> listen(long delay) {
+		List<Integer> blocks = new ArrayList<Integer>();
+		cam.addListener((event, args) -> {
+			assertTrue(args[0] instanceof FrameBuffer);
+			blocks.add((Integer) args[1]);
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, Camera.PROGRESS_EVENT);
+		return blocks;
+	}
+
+	@Test
+	public void finalPassMatchesTakePicture() {
+		for (boolean antiAliasing : new boolean[] { false, true }) {
+			assertSameImage(cam.takePicture(s, image(antiAliasing)),
+					cam.takeProgressivePicture(s, image(antiAliasing), 0));
+		}
+	}
+
+	@Test
+	public void emitsProgressOncePerBlockSize() {
+		List<Integer> blocks = listen(0);
+		cam.takeProgressivePicture(s, image(false), 0);
+		assertEquals(Arrays.asList(16, 8, 4, 2, 1), blocks);
+	}
+
+	@Test
+	public void timeBudgetStopsRefinement() {
+		// the first pass is always finished; the budget runs out while the
+		// listener handles it
+		List<Integer> blocks = listen(50);
+		BufferedImage coarse = cam.takeProgressivePicture(s, image(false), 1);
+		assertEquals(Arrays.asList(16), blocks);
+
+		BufferedImage full = cam.takePicture(s, image(false));
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				// every block has the color traced at its top left pixel
+				int bx = x / 16 * 16, by = y / 16 * 16;
+				assertEquals("pixel " + x + "," + y, full.getRGB(bx, by), coarse.getRGB(x, y));
+			}
+		}
+	}
+}
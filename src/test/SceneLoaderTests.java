@@ -0,0 +1,112 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+
+import lighting.DefaultMaterial;
+import lighting.PointLight;
+import model.MeshCache;
+import model.ModelInstance;
+import model.SphereModel;
+import render.Camera;
+import scene.Scene;
+import scene.SceneLibrary;
+import scene.SceneLoader;
+
+public class SceneLoaderTests {
+
+	private static Camera load(String contents, File baseDirectory, Scene s) throws IOException {
+		return SceneLoader.load(new StringReader(contents), baseDirectory, "test.scene", s);
+	}
+
+	private static String errorOf(String contents) {
+		try {
+			load(contents, new File("."), new Scene());
+		} catch (IOException e) {
+			return e.getMessage();
+		}
+		fail("Loaded a broken scene: " + contents);
+		return null;
+	}
+
+	@Test
+	public void loadsObjectsAndLights() throws IOException {
+		Scene s = new Scene();
+		load("# comment\n\nambient 0xff0000 .3\nlight 1 2 3 orange 2 # trailing comment\n"
+				+ "cutoff .01\n" + "material shiny 10 20 30 ks .5 reflect .3 transparent .2 ior 1.3\n" + "sphere 0 0 4 1.5 shiny\n" + "sphere 1 0 4 .5 shiny\n"
+				+ "plane 0 -1 0 0 1 0 green\n", new File("."), s);
+
+		assertEquals(Color.red, s.ambient.getColor());
+		assertEquals(.3, s.ambient.getInitialIntensity(), 0);
+		assertEquals(1, s.lights.size());
+		PointLight light = (PointLight) s.lights.get(0);
+		assertEquals(Color.orange, light.getColor());
+		assertEquals(3, light.getPos().z, 0);
+		assertEquals(.01, s.lightCutoff, 0);
+		assertEquals(3, s.objects.size());
+
+		DefaultMaterial shiny = (DefaultMaterial) s.objects.get(0).getMaterial();
+		assertEquals(new Color(10, 20, 30), shiny.getColor());
+		assertEquals(.5, shiny.Ks(), 0);
+		assertEquals(SceneLibrary.KD, shiny.Kd(), 0);
+		assertEquals(.3, shiny.getReflectivity(), 0);
+		assertEquals(.2, shiny.getTransparency(), 0);
+		assertEquals(1.3, shiny.getRefractiveIndex(), 0);
+		assertEquals(0, SceneLibrary.GREEN.getReflectivity(), 0);
+		assertSame(shiny, s.objects.get(1).getMaterial());
+		assertSame(SceneLibrary.GREEN, s.objects.get(2).getMaterial());
+		assertEquals(1.5, ((SphereModel) s.objects.get(0)).getRadius(), 0);
+	}
+
+	@Test
+	public void instancesShareTheirMesh() throws IOException {
+		File obj = File.createTempFile("sceneloader", ".obj");
+		obj.deleteOnExit();
+		MeshCache.getCacheFile(obj).deleteOnExit();
+		try (PrintWriter out = new PrintWriter(obj)) {
+			out.print("v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3\n");
+		}
+
+		Scene s = new Scene();
+		load("mesh a " + obj.getName() + "\nmesh b " + obj.getAbsolutePath() + "\n"
+				+ "instance a red translate 1 0 0\ninstance a blue rotate y 90\ninstance b red\n",
+				obj.getParentFile(), s);
+
+		assertEquals(3, s.objects.size());
+		ModelInstance first = (ModelInstance) s.objects.get(0);
+		for (int i = 1; i < 3; i++) {
+			ModelInstance m = (ModelInstance) s.objects.get(i);
+			assertSame(first.getMesh(), m.getMesh());
+			assertSame(first.getBVH(), m.getBVH());
+		}
+		assertSame(SceneLibrary.BLUE, s.objects.get(1).getMaterial());
+		assertEquals(1, first.getBounds().minX, 1e-6);
+	}
+
+	@Test
+	public void defaultsToCameraAtOrigin() throws IOException {
+		Scene s = new Scene();
+		Color ambient = s.ambient.getColor();
+		assertNotNull(load("", new File("."), s));
+		assertEquals(ambient, s.ambient.getColor());
+	}
+
+	@Test
+	public void reportsErrorsWithLineNumbers() {
+		assertEquals("test.scene:2: Unknown statement 'cube'", errorOf("sphere 0 0 0 1 red\ncube 1\n"));
+		assertEquals("test.scene:1: Unknown material 'gold'", errorOf("sphere 0 0 0 1 gold"));
+		assertEquals("test.scene:1: Expected a number, found 'x'", errorOf("sphere 0 x 0 1 red"));
+		assertEquals("test.scene:1: Unexpected end of line", errorOf("light 0 0 0 white"));
+		assertEquals("test.scene:1: Unexpected 'extra'", errorOf("sphere 0 0 0 1 red extra"));
+		assertEquals("test.scene:1: Unknown mesh 'm'", errorOf("instance m red"));
+		assertEquals("test.scene:2: Material 'red' is already defined", errorOf("\nmaterial red white"));
+		assertEquals("test.scene:2: The camera is already defined", errorOf("camera 0 0 0\ncamera 0 0 0"));
+		assertEquals("test.scene:1: Unknown axis 'w'", errorOf("camera 0 0 0 focal 2 rotate w 10"));
+		assertTrue(errorOf("mesh m missing.obj").startsWith("test.scene:1: Could not load mesh 'm'"));
+	}
+}
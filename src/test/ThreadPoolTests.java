@@ -2,6 +2,14 @@ package test;
 import org.junit.*;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import tools.ThreadPool;
@@ -50,4 +58,194 @@ public class ThreadPoolTests {
 		assertEquals(taskCount, result.get());
 		assertTrue(pool.getState() == PoolState.COMPLETE);
 	}
+
+	@Test
+	public void runsHigherPrioritiesFirst() throws InterruptedException {
+		ThreadPool pool = new ThreadPool(1);
+		List<Integer> order = new ArrayList<Integer>();
+
+		pool.register(() -> order.add(0), 0);
+		pool.register(() -> order.add(1), 2);
+		pool.register(() -> order.add(2), 0);
+		pool.register(() -> order.add(3), 5);
+		pool.start();
+		pool.shutdown();
+
+		assertEquals(Arrays.asList(3, 1, 0, 2), order);
+	}
+
+	@Test
+	public void runsTasksSubmittedByTasks() throws InterruptedException {
+		ThreadPool pool = new ThreadPool(2);
+		AtomicInteger result = new AtomicInteger(0);
+
+		pool.submit(() -> {
+			for (int i = 0; i < 10; i++)
+				pool.submit(() -> result.incrementAndGet());
+		});
+		pool.shutdown();
+
+		assertEquals(10, result.get());
+		assertEquals(PoolState.COMPLETE, pool.getState());
+		assertEquals(0, pool.getQueuedTaskCount());
+	}
+
+	@Test
+	public void canBeReused() throws InterruptedException {
+		ThreadPool pool = new ThreadPool(2);
+		AtomicInteger result = new AtomicInteger(0);
+
+		for (int run = 0; run < 3; run++) {
+			for (int i = 0; i < 4; i++)
+				pool.register(() -> result.incrementAndGet());
+			pool.start();
+			pool.shutdown();
+		}
+
+		assertEquals(12, result.get());
+	}
+
+	@Test
+	public void survivesFailingTasks() throws InterruptedException {
+		ThreadPool pool = new ThreadPool(1);
+		AtomicInteger result = new AtomicInteger(0);
+
+		pool.register(() -> {
+			throw new IllegalStateException("expected by ThreadPoolTests");
+		});
+		pool.register(() -> result.incrementAndGet());
+		pool.start();
+		pool.shutdown();
+
+		assertEquals(1, result.get());
+	}
+
+	@Test
+	public void awaitTerminationTimesOut() throws InterruptedException {
+		ThreadPool pool = new ThreadPool(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		pool.submit(() -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		assertFalse(pool.awaitTermination(50, TimeUnit.MILLISECONDS));
+		assertTrue(pool.isRunning());
+		release.countDown();
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(PoolState.COMPLETE, pool.getState());
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void rejectsTasksPastCapacityWhenIdle() {
+		ThreadPool pool = new ThreadPool(1, 2);
+		pool.register(() -> {});
+		pool.register(() -> {});
+		pool.register(() -> {});
+	}
+
+	@Test
+	public void blocksSubmittersWhenFull() throws InterruptedException {
+		ThreadPool pool = new ThreadPool(1, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger result = new AtomicInteger(0);
+
+		// the first task holds the only worker, the second fills the queue
+		pool.submit(() -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		while (pool.getQueuedTaskCount() > 0)
+			Thread.sleep(1);
+		pool.submit(() -> result.incrementAndGet());
+
+		Thread producer = new Thread(() -> pool.submit(() -> result.incrementAndGet()));
+		producer.start();
+		producer.join(100);
+		assertTrue(producer.isAlive());
+
+		release.countDown();
+		producer.join();
+		pool.shutdown();
+		assertEquals(2, result.get());
+	}
+
+	@Test
+	public void keepsWorkersBetweenBatches() throws InterruptedException {
+		ThreadPool pool = new ThreadPool(2);
+		Set<Thread> first = ConcurrentHashMap.newKeySet(), second = ConcurrentHashMap.newKeySet();
+
+		runBatch(pool, first);
+		// the pool ran out of work, but its workers wait for more
+		while (pool.isRunning())
+			Thread.sleep(1);
+		assertEquals(PoolState.COMPLETE, pool.getState());
+		for (Thread t : first)
+			assertTrue(t.isAlive());
+
+		runBatch(pool, second);
+		assertEquals(first, second);
+
+		pool.shutdown();
+		for (Thread t : first) {
+			t.join(1000);
+			assertFalse(t.isAlive());
+		}
+	}
+
+	/**
+	 * Runs two tasks that wait for each other, so each worker of a two worker
+	 * pool runs one, and records the threads they ran on.
+	 */
+	private static void runBatch(ThreadPool pool, Set<Thread> workers) throws InterruptedException {
+		CountDownLatch meet = new CountDownLatch(2);
+		for (int i = 0; i < 2; i++) {
+			pool.submit(() -> {
+				workers.add(Thread.currentThread());
+				meet.countDown();
+				try {
+					meet.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		assertTrue(meet.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void idleWorkersStealQueuedTasks() throws InterruptedException {
+		ThreadPool pool = new ThreadPool(2);
+		int taskCount = 8;
+		CountDownLatch done = new CountDownLatch(taskCount);
+		AtomicInteger stolen = new AtomicInteger(0);
+
+		// the tasks go to the blocked worker's own queue, so only the other
+		// worker can run them
+		pool.submit(() -> {
+			Thread owner = Thread.currentThread();
+			for (int i = 0; i < taskCount; i++) {
+				pool.register(() -> {
+					if (Thread.currentThread() != owner)
+						stolen.incrementAndGet();
+					done.countDown();
+				});
+			}
+			try {
+				assertTrue(done.await(5, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		pool.shutdown();
+		assertEquals(taskCount, stolen.get());
+	}
 }
@@ -0,0 +1,123 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.util.Random;
+
+import geometry.HitRecord;
+import geometry.Ray;
+import geometry.Triangle;
+import geometry.TriangleBlock;
+import geometry.TriangleKernel;
+import geometry.Vector3;
+import lighting.DefaultMaterial;
+import model.Mesh;
+import model.ModelInstance;
+
+/**
+ * Checks the vector kernel against the scalar triangle test, and a mesh's
+ * hierarchy, whichever leaf test it uses, against testing every triangle.
+ * The kernel test is skipped unless the kernel is available (run with
+ * <code>--add-modules jdk.incubator.vector</code> and the src-vector classes on
+ * the classpath).
+ */
+public class TriangleKernelTests {
+	private static final int TRIANGLES = 64;
+
+	@Test
+	public void matchesScalarTest() {
+		TriangleKernel kernel = TriangleKernel.getVectorized();
+		Assume.assumeTrue("the vector kernel is unavailable", kernel != null);
+		Random r = new Random(3);
+		float[] positions = new float[TRIANGLES * 9];
+		int[] indices = new int[TRIANGLES * 3];
+		int[] order = new int[TRIANGLES];
+		for (int i = 0; i < positions.length; i++)
+			positions[i] = (float) (r.nextDouble() * 2 - 1);
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = i;
+		// a degenerate triangle and a duplicate, to check ties
+		indices[3] = indices[4] = indices[5] = 0;
+		System.arraycopy(positions, 18, positions, 27, 9);
+		for (int i = 0; i < TRIANGLES; i++)
+			order[i] = TRIANGLES - 1 - i;
+		TriangleBlock block = new TriangleBlock(positions, indices, order);
+
+		for (int ray = 0; ray < 2000; ray++) {
+			double ox = r.nextDouble() - .5, oy = r.nextDouble() - .5, oz = -3;
+			double dx = r.nextDouble() * .4 - .2, dy = r.nextDouble() * .4 - .2, dz = 1;
+			int first = r.nextInt(TRIANGLES), count = 1 + r.nextInt(Math.min(8, TRIANGLES - first));
+			for (boolean anyHit : new boolean[] { false, true }) {
+				HitRecord expected = new HitRecord(), actual = new HitRecord();
+				int expectedIndex = -1;
+				double tMax = 10;
+				for (int i = first; i < first + count; i++) {
+					int a = indices[order[i] * 3] * 3, b = indices[order[i] * 3 + 1] * 3,
+							c = indices[order[i] * 3 + 2] * 3;
+					if (Triangle.intersect(ox, oy, oz, dx, dy, dz, positions[a], positions[a + 1], positions[a + 2],
+							positions[b], positions[b + 1], positions[b + 2], positions[c], positions[c + 1],
+							positions[c + 2], 1e-6, tMax, expected)) {
+						expectedIndex = i;
+						tMax = expected.t;
+						if (anyHit)
+							break;
+					}
+				}
+				int index = kernel.intersect(block, first, count, ox, oy, oz, dx, dy, dz, 1e-6, 10, anyHit, actual);
+				assertEquals(expectedIndex, index);
+				if (index >= 0) {
+					assertEquals(expected.t, actual.t, 0.0);
+					assertEquals(expected.u, actual.u, 0.0);
+					assertEquals(expected.v, actual.v, 0.0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void meshMatchesTestingEveryTriangle() {
+		Random r = new Random(4);
+		Mesh.Builder builder = new Mesh.Builder();
+		for (int i = 0; i < TRIANGLES * 3; i++)
+			builder.addVertex(r.nextDouble() * 2 - 1, r.nextDouble() * 2 - 1, r.nextDouble() * 2 - 1);
+		for (int i = 0; i < TRIANGLES; i++)
+			builder.addTriangle(i * 3, i * 3 + 1, i * 3 + 2);
+		Mesh mesh = builder.build();
+		float[] positions = mesh.getPositions();
+		int[] indices = mesh.getVertexIndices();
+		// the leaves are tested one triangle at a time unless the kernel is
+		// available
+		ModelInstance model = new ModelInstance(mesh, new DefaultMaterial(Color.red, 5, .2, .8));
+
+		int hits = 0;
+		for (int n = 0; n < 2000; n++) {
+			Ray ray = new Ray(new Vector3(r.nextDouble() - .5, r.nextDouble() - .5, -3),
+					new Vector3(r.nextDouble() * .4 - .2, r.nextDouble() * .4 - .2, 1));
+			Vector3 o = ray.getOrigin(), d = ray.getDir();
+			HitRecord expected = new HitRecord(), actual = new HitRecord();
+			int expectedFace = -1;
+			double tMax = 10;
+			for (int i = 0; i < TRIANGLES; i++) {
+				int a = indices[i * 3] * 3, b = indices[i * 3 + 1] * 3, c = indices[i * 3 + 2] * 3;
+				if (Triangle.intersect(o.x, o.y, o.z, d.x, d.y, d.z, positions[a], positions[a + 1],
+						positions[a + 2], positions[b], positions[b + 1], positions[b + 2], positions[c],
+						positions[c + 1], positions[c + 2], 1e-6, tMax, expected)) {
+					expectedFace = i;
+					tMax = expected.t;
+				}
+			}
+			double t = model.intersect(ray, 1e-6, 10, actual);
+			if (expectedFace < 0) {
+				assertEquals(Double.POSITIVE_INFINITY, t, 0.0);
+				continue;
+			}
+			hits++;
+			assertEquals(expectedFace, actual.primitive);
+			assertEquals(expected.t, t, 1e-9);
+			assertEquals(expected.u, actual.u, 1e-9);
+			assertEquals(expected.v, actual.v, 1e-9);
+		}
+		assertTrue(hits > 0);
+	}
+}
@@ -0,0 +1,83 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+import static test.ImageAssert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import geometry.Transform;
+import geometry.Vector3;
+import lighting.DefaultMaterial;
+import lighting.PointLight;
+import model.PlaneModel;
+import model.SphereModel;
+import render.Camera;
+import render.ImageData;
+import render.WavefrontRenderer;
+import scene.Scene;
+
+public class WavefrontTests {
+
+	private static Scene scene(int lights) {
+		Random r = new Random(3);
+		Scene s = new Scene();
+		DefaultMaterial shiny = new DefaultMaterial(Color.red, 20, .6, .7);
+		s.objects.add(new PlaneModel(new Vector3(0, -1, 0), new Vector3(0, 1, 0),
+				new DefaultMaterial(Color.green, 5, .2, .8)));
+		for (int i = 0; i < 20; i++)
+			s.objects.add(new SphereModel(new Vector3(r.nextDouble() * 6 - 3, r.nextDouble() * 2 - 1,
+					4 + r.nextDouble() * 4), .2 + r.nextDouble() * .5, shiny));
+		for (int i = 0; i < lights; i++)
+			s.lights.add(new PointLight(new Vector3(r.nextDouble() * 10 - 5, 2 + r.nextDouble() * 3,
+					r.nextDouble() * 6), new Color(r.nextInt(256), r.nextInt(256), r.nextInt(256)), 1));
+		return s;
+	}
+
+	private static BufferedImage render(Scene s, boolean antiAliasing, int packetSize, int workers,
+			boolean wavefront) throws InterruptedException {
+		Camera cam = new Camera(Vector3.ZERO.clone(), Transform.getIdentityInstance(), 1.7);
+		ImageData data = new ImageData(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB, antiAliasing);
+		data.setPacketSize(packetSize);
+		data.setWorkerCount(workers);
+		data.setWavefront(wavefront);
+		try {
+			return cam.takePicture(s, data);
+		} finally {
+			cam.shutdown();
+		}
+	}
+
+	@Test
+	public void matchesTileRender() throws InterruptedException {
+		Scene s = scene(2);
+		for (boolean antiAliasing : new boolean[] { false, true }) {
+			for (int packetSize : new int[] { 1, 8 }) {
+				assertSameImage(render(s, antiAliasing, packetSize, 1, false),
+						render(s, antiAliasing, packetSize, 3, true));
+			}
+		}
+	}
+
+	@Test
+	public void splitsManyLightsIntoWaves() throws InterruptedException {
+		// more shadow rays than fit in one wave
+		int lights = 2 * WavefrontRenderer.WAVE_SIZE / (WIDTH * HEIGHT) + 1;
+		Scene s = scene(lights);
+		assertSameImage(render(s, false, 8, 1, false), render(s, false, 8, 2, true));
+	}
+
+	@Test
+	public void matchesTileRenderWithLightCutoff() throws InterruptedException {
+		Scene s = scene(40);
+		s.lightCutoff = .05;
+		assertSameImage(render(s, true, 8, 1, false), render(s, true, 8, 2, true));
+	}
+
+	@Test
+	public void rendersWithoutLights() throws InterruptedException {
+		Scene s = scene(0);
+		assertSameImage(render(s, true, 1, 1, false), render(s, true, 1, 2, true));
+	}
+}
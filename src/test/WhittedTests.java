@@ -0,0 +1,122 @@
+package test;
+import org.junit.*;
+import static org.junit.Assert.*;
+import static test.ImageAssert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import geometry.Transform;
+import geometry.Vector3;
+import lighting.DefaultMaterial;
+import lighting.PointLight;
+import model.PlaneModel;
+import model.SphereModel;
+import render.Camera;
+import render.ImageData;
+import render.strategies.PhongStrategy;
+import render.strategies.RenderStrategy;
+import render.strategies.WhittedStrategy;
+import scene.Scene;
+
+public class WhittedTests {
+
+	private Scene s;
+	private Camera cam;
+	private WhittedStrategy whitted;
+
+	@Before
+	public void setUp() {
+		s = new Scene();
+		s.lights.add(new PointLight(new Vector3(-3, 4, 0), Color.white, 1));
+		s.objects.add(new PlaneModel(new Vector3(0, -1, 0), new Vector3(0, 1, 0),
+				new DefaultMaterial(Color.green, 5, .2, .8)));
+		s.objects.add(new SphereModel(new Vector3(1.5, .5, 5), .7, new DefaultMaterial(Color.red, 20, .6, .7)));
+		cam = new Camera(Vector3.ZERO.clone(), Transform.getIdentityInstance(), 1.7);
+		whitted = new WhittedStrategy();
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		cam.shutdown();
+	}
+
+	private BufferedImage render(RenderStrategy strategy) {
+		cam.setRenderStrategy(strategy);
+		return cam.takePicture(s, new ImageData(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB, false));
+	}
+
+	private DefaultMaterial addMirror(double reflectivity) {
+		DefaultMaterial mirror = new DefaultMaterial(Color.white, 50, .5, .5, reflectivity, 0, 1);
+		s.objects.add(new SphereModel(new Vector3(0, 0, 4), 1, mirror));
+		return mirror;
+	}
+
+	@Test
+	public void resolvesByName() {
+		assertEquals("whitted", RenderStrategy.getStrategy("whitted").getName());
+		RenderStrategy.getStrategy("phong");
+	}
+
+	@Test
+	public void matteScenesMatchPhong() {
+		assertSameImage(render(new PhongStrategy()), render(whitted), 0);
+		assertEquals(0, whitted.getSecondaryRayCount());
+	}
+
+	@Test
+	public void mirrorsReflect() {
+		addMirror(.9);
+		BufferedImage phong = render(new PhongStrategy()), mirrored = render(whitted);
+		assertTrue(whitted.getSecondaryRayCount() > 0);
+		// the bottom of the mirror reflects the green floor
+		int x = WIDTH / 2, y = HEIGHT / 2 + 4;
+		Color plain = new Color(phong.getRGB(x, y)), reflected = new Color(mirrored.getRGB(x, y));
+		assertEquals(plain.getRed(), plain.getGreen());
+		assertTrue(reflected.getGreen() > reflected.getRed() + 100);
+	}
+
+	@Test
+	public void skippedRaysFallBackToPhong() {
+		addMirror(.9);
+		BufferedImage phong = render(new PhongStrategy());
+		whitted.setMaxDepth(0);
+		assertSameImage(phong, render(whitted), 1);
+		assertEquals(0, whitted.getSecondaryRayCount());
+	}
+
+	@Test
+	public void dimRaysAreNotCast() {
+		addMirror(.5);
+		whitted.setMinThroughput(.6);
+		render(whitted);
+		assertEquals(0, whitted.getSecondaryRayCount());
+		whitted.setMinThroughput(.4);
+		render(whitted);
+		assertTrue(whitted.getSecondaryRayCount() > 0);
+	}
+
+	@Test
+	public void budgetLimitsEachFrame() {
+		addMirror(.9);
+		render(whitted);
+		long unlimited = whitted.getSecondaryRayCount();
+		assertTrue(unlimited > 100);
+		whitted.setRayBudget(100);
+		render(whitted);
+		assertEquals(100, whitted.getSecondaryRayCount());
+		// the budget starts over with every frame
+		render(whitted);
+		assertEquals(100, whitted.getSecondaryRayCount());
+	}
+
+	@Test
+	public void clearGlassIsInvisible() {
+		// without point lights there are no shadows to give the glass away
+		s.lights.clear();
+		BufferedImage empty = render(whitted);
+		s.objects.add(new SphereModel(new Vector3(0, 0, 4), 1, new DefaultMaterial(Color.white, 50, .5, .5, 0, 1, 1)));
+		assertSameImage(empty, render(whitted), 0);
+		assertTrue(whitted.getSecondaryRayCount() > 0);
+	}
+}
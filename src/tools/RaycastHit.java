@@ -8,12 +8,19 @@ import model.IModel;
  *
  */
 public class RaycastHit {
-	/***/
+	/**
+	 * The object that was hit. This is the object in the scene itself, not a
+	 * copy, so it should not be modified while rendering.
+	 */
 	public IModel itemHit;
 	public Vector3 hitPoint;
 	public Vector3 normal;
 	public double dist;
 	public boolean isHit;
+	/** Index of the primitive within {@link #itemHit} that was hit */
+	public int primitive;
+	/** Barycentric coordinates of the hit, if the primitive is a triangle */
+	public double u, v;
 	
 	public RaycastHit(IModel itemHit, Vector3 hitPoint, Vector3 normal, double dist, boolean isHit){
 		this.itemHit=itemHit;
@@ -22,4 +29,15 @@ public class RaycastHit {
 		this.dist=dist;
 		this.isHit=isHit;
 	}
+
+	/**
+	 * Full constructor.
+	 */
+	public RaycastHit(IModel itemHit, Vector3 hitPoint, Vector3 normal, double dist, boolean isHit, int primitive,
+			double u, double v) {
+		this(itemHit, hitPoint, normal, dist, isHit);
+		this.primitive = primitive;
+		this.u = u;
+		this.v = v;
+	}
 }
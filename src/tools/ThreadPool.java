@@ -1,50 +1,86 @@
 package tools;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EmptyStackException;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages a pool of threads, because ExecutorServices apparently don't want to
  * work.
- * 
- * Threads can be registered to be executed immediately, or they can be executed
- * immediately. Threads registered for immediate execution will be added to the
- * execution queue if all thread resources are in use.
- * 
+ *
+ * Tasks can be registered to be executed once the pool is started, or they can
+ * be submitted to be executed right away. A fixed number of worker threads run
+ * the tasks. Workers are started once and wait for more work when the pool
+ * runs out of tasks, so a pool that is used over and over, like a camera's,
+ * creates its threads once and keeps their thread local state. They only exit
+ * on {@link #shutdown()}, {@link #stop()} or {@link #awaitTermination}, and
+ * they are daemon threads, so an idle pool doesn't keep the JVM alive.<br/>
+ * <br/>
+ * Every worker has its own double-ended queue, sorted by priority (higher
+ * first) and then by the order the tasks were registered in. Tasks are dealt
+ * to the queues round-robin, and tasks submitted by a running task go to its
+ * worker's own queue. A worker takes tasks from the front of its own queue;
+ * once it is empty, it steals from the back of the others, so no worker sits
+ * idle while there is work left and thieves take the work their victim would
+ * get to last. Priorities are kept within each queue; across the pool, higher
+ * priority tasks start first as long as no worker has to steal.<br/>
+ * <br/>
+ * A pool can be given a capacity. Once that many tasks are waiting, submitting
+ * another blocks until a worker picks one up, so a fast producer can't queue
+ * up unbounded amounts of work.
+ *
  * @author Don Isaac
  *
  */
-public class ThreadPool extends AbstractEventEmitter implements EventListener {
+public class ThreadPool extends AbstractEventEmitter {
 
+	private static int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
 	/**
-	 * Initial size for the thread queue.
+	 * The number of threads that can run at once
 	 */
-	private static int QUEUE_SIZE = 32;
+	private final int poolSize;
+	/** The maximum number of waiting tasks */
+	private final int capacity;
+	/** One permit per free slot in the queues */
+	private final Semaphore slots;
 	/**
-	 * Percentage of the computer's processing resources to dedicate to thread
-	 * execution.
+	 * Each worker's queue. The owner polls the first task and thieves the
+	 * last.
 	 */
-	private static float DEFAULT_DESIRED_LOAD = 0.7f;
-	private static int DEFAULT_POOL_SIZE = (int) (Runtime.getRuntime().availableProcessors() * DEFAULT_DESIRED_LOAD);
+	private final List<ConcurrentSkipListSet<Task>> queues;
 	/**
-	 * The number of threads that can run at once
+	 * Tasks registered while the pool is not running. They are dealt to the
+	 * workers' queues when the pool starts. Guarded by the pool's lock.
 	 */
-	private int poolSize;
-	private Queue<Task> taskQueue;
+	private final List<Task> pending;
+	/** Number of tasks in the workers' queues */
+	private final AtomicInteger queued = new AtomicInteger();
+	/** Number of tasks being run */
+	private final AtomicInteger active = new AtomicInteger();
+	/** Number of workers waiting for tasks */
+	private final AtomicInteger idle = new AtomicInteger();
+	private final AtomicInteger nextQueue = new AtomicInteger();
+	private final AtomicLong sequence = new AtomicLong();
+	/** Number of workers that haven't exited yet. Guarded by the pool's lock. */
+	private int liveWorkers;
+	/** True while {@link #stop()} is waiting for the queued tasks to finish */
+	private volatile boolean stopping;
 	/**
-	 * Currently running threads
+	 * Tells workers to exit once there is nothing left to run. Guarded by the
+	 * pool's lock.
 	 */
-	private Collection<Thread> running;
+	private boolean exiting;
 
 	/**
 	 * ThreadPool's execution state. The ThreadPool can have the following states:
-	 * 
+	 *
 	 * <ul>
 	 * <li><b>INCOMPLETE:</b> Pool is not executing anything, but there are tasks
 	 * still queued;</li>
@@ -52,7 +88,7 @@ public class ThreadPool extends AbstractEventEmitter implements EventListener {
 	 * <li><b>PENDING:</b> The task queue is empty and the pool is finishing the
 	 * execution of currently running threads.</li>
 	 * <li><b>COMPLETE:</b> Pool is not executing and there are no more tasks left
-	 * to execute.</li>
+	 * to execute. Started workers wait for more.</li>
 	 * </ul>
 	 *
 	 * @author Don Isaac
@@ -64,64 +100,112 @@ public class ThreadPool extends AbstractEventEmitter implements EventListener {
 
 	/**
 	 * ThreadPools' current execution state
-	 * 
+	 *
 	 * @see PoolState
 	 */
-	private PoolState state;
+	private volatile PoolState state;
 
 	/**
-	 * Creates a new ThreadPool with the default pool size. The default pool size
-	 * depends on the number of cores the computer has.
+	 * Creates a new ThreadPool with the default pool size, one worker per
+	 * available processor.
 	 */
 	public ThreadPool() {
 		this(DEFAULT_POOL_SIZE);
 	}
 
 	/**
-	 * Creates a new ThreadPool.
-	 * 
+	 * Creates a new ThreadPool with no limit on the number of waiting tasks.
+	 *
 	 * The size of the thread pool will determine how many threads the pool can run
 	 * at once.
-	 * 
+	 *
 	 * @param poolSize the size of the thread pool.
 	 */
 	public ThreadPool(int poolSize) {
+		this(poolSize, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a new ThreadPool.
+	 *
+	 * @param poolSize the size of the thread pool.
+	 * @param capacity the maximum number of tasks that can wait to be run.
+	 *                 Submitting more blocks until a worker picks one up.
+	 */
+	public ThreadPool(int poolSize, int capacity) {
+		if (poolSize < 1)
+			throw new IllegalArgumentException("A pool needs at least 1 thread");
+		if (capacity < 1)
+			throw new IllegalArgumentException("A pool must be able to queue at least 1 task");
 		this.poolSize = poolSize;
-		this.taskQueue = new PriorityBlockingQueue<Task>(QUEUE_SIZE);
-		this.running = new LinkedBlockingQueue<>();
+		this.capacity = capacity;
+		this.slots = new Semaphore(capacity);
+		this.queues = new ArrayList<ConcurrentSkipListSet<Task>>(poolSize);
+		for (int i = 0; i < poolSize; i++)
+			queues.add(new ConcurrentSkipListSet<Task>());
+		this.pending = new ArrayList<Task>();
 		this.state = PoolState.COMPLETE;
 	}
 
 	/**
 	 * Registers a task in the task pool, but does not start execution. The task
-	 * will have an execution priority of 0.
-	 * 
+	 * will have an execution priority of 0. If the workers are already started,
+	 * the task is queued for them straight away.
+	 *
 	 * @param task the task to register
+	 * @throws RejectedExecutionException if the pool is full and not running,
+	 *                                    or the thread is interrupted while
+	 *                                    waiting for room
 	 */
 	public void register(Runnable task) {
 		register(task, 0);
 	}
 
 	/**
-	 * Registers a task in the task pool, but does not start execution.
-	 * 
-	 * @param task     the task to register
-	 * @param priority the execution priority of the task
+	 * Registers a task in the task pool, but does not start execution. If the
+	 * pool is full, this blocks until a worker picks up a task; if the pool is
+	 * full and not running, nothing would ever make room, so the task is
+	 * rejected instead. Tasks registered by the pool's own tasks never block.
+	 *
+	 * @param target   the task to register
+	 * @param priority the execution priority of the task. Tasks with higher
+	 *                 priorities are run first.
+	 * @throws RejectedExecutionException if the pool is full and not running,
+	 *                                    or the thread is interrupted while
+	 *                                    waiting for room
 	 */
 	public void register(Runnable target, int priority) {
-		Task task = new Task(target, target.hashCode());
-		task.addListener(this, "run");
-		task.priority = priority;
-		this.taskQueue.add(task);
+		Worker worker = currentWorker();
+		Task task = new Task(target, priority, sequence.getAndIncrement(), worker == null);
+		if (task.holdsSlot && !slots.tryAcquire()) {
+			if (!isRunning())
+				throw new RejectedExecutionException("The pool is full (" + capacity + " tasks) and not running");
+			try {
+				slots.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting for room in the pool", e);
+			}
+		}
 
-		if (this.state == PoolState.COMPLETE)
-			this.state = PoolState.INCOMPLETE;
+		synchronized (this) {
+			if (liveWorkers > 0 && !exiting && !stopping) {
+				enqueue(task, worker == null ? Math.floorMod(nextQueue.getAndIncrement(), poolSize) : worker.index);
+				this.state = PoolState.EXECUTING;
+				if (idle.get() > 0)
+					notifyAll();
+			} else {
+				pending.add(task);
+				if (this.state == PoolState.COMPLETE)
+					this.state = PoolState.INCOMPLETE;
+			}
+		}
 	}
 
 	/**
 	 * Registers a task for execution with an execution priority of 1 and starts the
 	 * execution process.
-	 * 
+	 *
 	 * @param task
 	 */
 	public void submit(Runnable task) {
@@ -136,106 +220,220 @@ public class ThreadPool extends AbstractEventEmitter implements EventListener {
 	 */
 	public void submit(Runnable task, int priority) {
 		this.register(task, priority);
-		if (!this.isRunning())
-			start();
+		synchronized (this) {
+			if (!pending.isEmpty())
+				start();
+		}
 	}
 
 	/**
-	 * 
-	 * @return the number of tasks that will be run when start is called.
-	 * 
-	 * @throws EmptyStackException if the task queue is empty
+	 * Starts the workers if they aren't running yet, and deals the registered
+	 * tasks to their queues, highest priority first. Does nothing if the
+	 * workers are running and no tasks are waiting to be dealt.
+	 *
+	 * @throws EmptyStackException if the workers aren't running and no tasks
+	 *                             are registered
 	 */
-	public void start() throws EmptyStackException {
-		if (this.taskQueue.isEmpty())
+	public synchronized void start() throws EmptyStackException {
+		if (this.pending.isEmpty()) {
+			// Already started, do nothing
+			if (liveWorkers > 0)
+				return;
 			throw new EmptyStackException();
+		}
 
-		// Already started, do nothing
-		if (this.isRunning())
-			return;
+		Collections.sort(pending);
+		for (Task task : pending)
+			enqueue(task, Math.floorMod(nextQueue.getAndIncrement(), poolSize));
+		pending.clear();
 
 		this.state = PoolState.EXECUTING;
-
-		this.populateRunningList();
-
-//		if (this.taskQueue.isEmpty())
-//			return;
+		if (liveWorkers > 0) {
+			notifyAll();
+			return;
+		}
+		this.liveWorkers = poolSize;
+		for (int i = 0; i < poolSize; i++)
+			new Worker(i).start();
 	}
 
 	/**
-	 * Stops future thread execution and waits for currently executing tasks to
-	 * stop, blocking the current thread until all tasks are COMPLETE. Once all
-	 * tasks are COMPLETE, all waiting threads will be notified.
-	 * 
-	 * 
+	 * Stops the pool: the tasks that were queued when this was called are run,
+	 * and then the workers exit. Tasks registered while the pool is stopping
+	 * are kept for the next {@link #start()}. Blocks until the workers have
+	 * exited.
+	 *
+	 *
 	 * @return <b>true</b> if all queued tasks have completed execution,
 	 *         <b>false</b> otherwise.
-	 * 
-	 * @throws InterruptedException if any running threads throw an
-	 *                              InterruptedException
+	 *
+	 * @throws InterruptedException if the current thread is interrupted while
+	 *                              waiting
 	 */
 	public boolean stop() throws InterruptedException {
-		for (Thread t : this.running) {
-			t.join();
+		synchronized (this) {
+			stopping = true;
+			try {
+				while (this.isRunning())
+					wait();
+				exitWorkers();
+			} finally {
+				stopping = false;
+			}
 		}
 
-		if (this.taskQueue.isEmpty())
-			this.state = PoolState.COMPLETE;
-		else
-			this.state = PoolState.INCOMPLETE;
-
-		// notifyAll();
-		this.emit("stopped", this.taskQueue.size());
+		this.emit("stopped", getQueuedTaskCount());
 		return this.state == PoolState.COMPLETE;
-		
 	}
-	
+
 	/**
-	 * Blocks the current thread and waits for all currently running and 
-	 * queue threads to finish execution.
-	 * 
-	 * @throws InterruptedException if any of the underlying threads throw an
-	 * InterruptedException
+	 * Blocks the current thread and waits for all currently running and queued
+	 * tasks, including tasks they submit, to finish execution. Then the
+	 * workers exit; the next {@link #start()} starts new ones.
+	 *
+	 * @throws InterruptedException if the current thread is interrupted while
+	 *                              waiting
 	 */
 	public synchronized void shutdown() throws InterruptedException {
 		while (this.isRunning()) {
 			wait();
 		}
-		System.out.println(this.taskQueue.size() + " " + this.taskQueue.isEmpty() + " " + this.running.size());
-//		if (this.isRunning()) {
-//			if (this.state == PoolState.EXECUTING)
-//				this.populateRunningList();
-//			
-//			shutdown();
-//		}
+		exitWorkers();
 		this.emit("completed");
 	}
 
 	/**
-	 * Populates the running thread list from the task queue, starting the task in
-	 * the process. If the pool is not running (i.e. it has not been started) no
-	 * action will occur.
+	 * Like {@link #shutdown()}, but gives up waiting after a while.
+	 *
+	 * @param timeout the longest time to wait
+	 * @param unit    the unit of the timeout
+	 * @return <b>true</b> if the pool finished running, <b>false</b> if the time
+	 *         ran out first
+	 * @throws InterruptedException if the current thread is interrupted while
+	 *                              waiting
 	 */
-	private void populateRunningList() {
-		if (!this.isRunning())
+	public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (this.isRunning()) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+				return false;
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		exitWorkers();
+		return true;
+	}
+
+	/**
+	 * Tells the waiting workers to exit and waits until they have. Called with
+	 * the pool's lock held, once there is nothing left to run.
+	 */
+	private void exitWorkers() throws InterruptedException {
+		if (liveWorkers == 0)
 			return;
+		exiting = true;
+		notifyAll();
+		try {
+			while (liveWorkers > 0)
+				wait();
+		} finally {
+			exiting = false;
+		}
+	}
+
+	/**
+	 * Adds a task to a worker's queue. The count goes up first, so that
+	 * workers never see an empty pool while a task is on its way in.
+	 */
+	private void enqueue(Task task, int queue) {
+		queued.incrementAndGet();
+		queues.get(queue).add(task);
+	}
 
-		while (this.running.size() < this.poolSize) {
+	/**
+	 * Takes a task for a worker: the first of its own queue if possible,
+	 * otherwise the last of another worker's queue.
+	 *
+	 * @return the task, or null if every queue is empty
+	 */
+	private Task take(int index) {
+		Task task = queues.get(index).pollFirst();
+		for (int i = 1; task == null && i < poolSize; i++)
+			task = queues.get((index + i) % poolSize).pollLast();
+		if (task == null)
+			return null;
+		// counted as active before it stops being counted as queued, so the
+		// pool never looks finished while a task changes hands
+		active.incrementAndGet();
+		queued.decrementAndGet();
+		if (task.holdsSlot)
+			slots.release();
+		return task;
+	}
 
-			if (this.taskQueue.isEmpty()) {
-				this.state = this.running.isEmpty() ? PoolState.COMPLETE : PoolState.PENDING;
-				return;
+	private void run(Task task) {
+		try {
+			task.target.run();
+		} catch (Throwable t) {
+			// a failing task must not take its worker down with it
+			t.printStackTrace();
+		} finally {
+			// the worker looks for its next task right after this, and finds
+			// out itself if the pool is done
+			active.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Called by a worker that found no tasks. Marks the pool as done if every
+	 * queue is empty and no task is running, since nothing could queue more
+	 * work, and waits for more. Workers told to exit do so once the pool is
+	 * done.
+	 *
+	 * @return <b>true</b> if the worker should exit
+	 */
+	private synchronized boolean idle() {
+		idle.incrementAndGet();
+		try {
+			if (queued.get() > 0)
+				return false;
+			if (active.get() == 0) {
+				if (isRunning()) {
+					this.state = pending.isEmpty() ? PoolState.COMPLETE : PoolState.INCOMPLETE;
+					notifyAll();
+				}
+				if (exiting) {
+					liveWorkers--;
+					notifyAll();
+					return true;
+				}
+			} else {
+				this.state = PoolState.PENDING;
 			}
-			
-			Task task = this.taskQueue.poll();
-			task.start();
-			this.running.add(task);
+			wait();
+			return false;
+		} catch (InterruptedException e) {
+			// workers are never interrupted by the pool; just look again
+			return false;
+		} finally {
+			idle.decrementAndGet();
 		}
 	}
 
+	/**
+	 *
+	 * @return the worker running the current thread, if it belongs to this pool
+	 */
+	private Worker currentWorker() {
+		Thread t = Thread.currentThread();
+		if (t instanceof Worker && ((Worker) t).pool() == this)
+			return (Worker) t;
+		return null;
+	}
+
 	/**
 	 * Checks if the pool is executing tasks.
-	 * 
+	 *
 	 * @return <b>true</b> if the pool is currently executing tasks, <b>false</b>
 	 *         otherwise.
 	 */
@@ -244,95 +442,90 @@ public class ThreadPool extends AbstractEventEmitter implements EventListener {
 	}
 
 	/**
-	 * 
+	 *
 	 * @return the pool's current state.
 	 */
 	public PoolState getState() {
 		return this.state;
 	}
 
-	@Override
-	public synchronized void onEvent(String event, Object... args) {
-		if (args.length == 0 || !(args[0] instanceof Task))
-			throw new IllegalStateException("The terminated task must be passed on run event.");
-		
-		Task ended = (Task)args[0];
-		this.running.remove(ended);
-		// System.out.println("Thread " + ended + " ended. " + (this.running.size() + this.taskQueue.size()) + " tasks left.");
-		if (this.running.isEmpty() && this.taskQueue.isEmpty()) {
-			this.state = PoolState.COMPLETE;
-			notifyAll();
-		}
-			
-		
-		if (this.isRunning())
-			this.populateRunningList();
-
+	/**
+	 *
+	 * @return the number of threads that run tasks
+	 */
+	public int getPoolSize() {
+		return poolSize;
 	}
-	
-	public Queue<? extends Thread> getTaskQueue() {
-		return this.taskQueue;
+
+	/**
+	 *
+	 * @return the number of tasks waiting to be run
+	 */
+	public synchronized int getQueuedTaskCount() {
+		return queued.get() + pending.size();
 	}
 
 	/**
-	 * Decorator class for Threads registered in the ThreadPool. Tasks have a
-	 * priority assigned with them. The priority determines the order in which the
-	 * Task will be executed by the ThreadPool.
-	 * 
+	 * A worker thread. Runs tasks, waiting for more whenever the pool runs out,
+	 * until it is told to exit.
+	 *
 	 * @author Don Isaac
 	 *
 	 */
-	private class Task extends Thread implements EventEmitter, Comparable<Task> {
-
-		private Runnable task;
-		private LinkedList<EventListener> listeners;
-
-		private int priority;
-
-		public Task(Runnable task, int priority) {
-			super();
-			this.task = task;
-			this.listeners = new LinkedList<>();
-			this.priority = 0;
-		}
-
-		public void run() {
-			task.run();
-			this.emit("run", this);
-		}
-
-		@Override
-		public int addListener(EventListener l, String event) {
-			if (!event.equals("run"))
-				throw new UnsupportedOperationException("Task does not publish the event " + event);
+	private class Worker extends Thread {
+		private final int index;
 
-			this.listeners.add(l);
-			return this.listeners.size();
+		public Worker(int index) {
+			super("ThreadPool-worker-" + index);
+			this.index = index;
+			setDaemon(true);
 		}
 
-		@Override
-		public int removeListener(EventListener l, String event) {
-			if (!event.equals("run"))
-				throw new UnsupportedOperationException("Task does not publish the event " + event);
-
-			this.listeners.remove(l);
-			return this.listeners.size();
+		private ThreadPool pool() {
+			return ThreadPool.this;
 		}
 
-		@Override
-		public void emit(String event, Object... args) {
-			for (EventListener listener : listeners) {
-				listener.onEvent(event, args);
+		public void run() {
+			while (true) {
+				Task task = take(index);
+				if (task != null)
+					ThreadPool.this.run(task);
+				else if (idle())
+					return;
 			}
+		}
+	}
 
+	/**
+	 * A task registered in the ThreadPool. Tasks have a priority assigned with
+	 * them. The priority determines the order in which the Task will be executed
+	 * by the ThreadPool; tasks with the same priority run in the order they were
+	 * registered.
+	 *
+	 * @author Don Isaac
+	 *
+	 */
+	private static class Task implements Comparable<Task> {
+
+		private final Runnable target;
+		private final int priority;
+		private final long sequence;
+		/** True if the task took one of the pool's slots */
+		private final boolean holdsSlot;
+
+		public Task(Runnable target, int priority, long sequence, boolean holdsSlot) {
+			this.target = target;
+			this.priority = priority;
+			this.sequence = sequence;
+			this.holdsSlot = holdsSlot;
 		}
 
 		@Override
 		public int compareTo(Task task) {
-			return this.priority = task.priority;
+			if (this.priority != task.priority)
+				return this.priority > task.priority ? -1 : 1;
+			return Long.compare(this.sequence, task.sequence);
 		}
 	}
 
-
-
 }
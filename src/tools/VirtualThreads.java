@@ -0,0 +1,65 @@
+package tools;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Starts virtual threads when the JVM has them (Java 21 or newer). The
+ * project is compiled for older JVMs, so <code>Thread.startVirtualThread</code>
+ * is looked up by reflection.
+ *
+ * @author Don Isaac
+ *
+ */
+public class VirtualThreads {
+	private static final Method START = find();
+
+	private static Method find() {
+		try {
+			Method start = Thread.class.getMethod("startVirtualThread", Runnable.class);
+			// Java 19 and 20 have the method, but it throws unless preview
+			// features are enabled
+			((Thread) start.invoke(null, (Runnable) () -> {
+			})).join();
+			return start;
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 *
+	 * @return <b>true</b> if the JVM can start virtual threads
+	 */
+	public static boolean isAvailable() {
+		return START != null;
+	}
+
+	/**
+	 * Starts a virtual thread.
+	 *
+	 * @param task What the thread runs
+	 * @return the started thread
+	 * @throws UnsupportedOperationException if virtual threads are not
+	 *                                       {@link #isAvailable() available}
+	 */
+	public static Thread start(Runnable task) {
+		if (START == null)
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or newer");
+		try {
+			return (Thread) START.invoke(null, task);
+		} catch (IllegalAccessException e) {
+			throw new UnsupportedOperationException(e);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new UnsupportedOperationException(cause);
+		}
+	}
+}